@@ -45,7 +45,7 @@ public class GBDaoGenerator {
 
 
     public static void main(String[] args) throws Exception {
-        Schema schema = new Schema(20, MAIN_PACKAGE + ".entities");
+        Schema schema = new Schema(22, MAIN_PACKAGE + ".entities");
 
         Entity userAttributes = addUserAttributes(schema);
         Entity user = addUserInfo(schema, userAttributes);
@@ -81,6 +81,8 @@ public class GBDaoGenerator {
 
         addBipActivitySummary(schema, user, device);
 
+        addActivityRollup(schema, device);
+
         new DaoGenerator().generateAll(schema, "app/src/main/java");
     }
 
@@ -331,6 +333,12 @@ public class GBDaoGenerator {
         activitySample.addToOne(device, deviceId);
         Property userId = activitySample.addLongProperty("userId").notNull().codeBeforeGetterAndSetter(OVERRIDE).getProperty();
         activitySample.addToOne(user, userId);
+
+        // samples are always queried by device and time range, the primary key starts with the timestamp
+        Index deviceTimestampIndex = new Index();
+        deviceTimestampIndex.addProperty(deviceId);
+        deviceTimestampIndex.addProperty(getPropertyByName(activitySample, "timestamp"));
+        activitySample.addIndex(deviceTimestampIndex);
     }
 
     private static void addCalendarSyncState(Schema schema, Entity device) {
@@ -420,6 +428,30 @@ public class GBDaoGenerator {
         summary.addToOne(user, userId);
     }
 
+    private static void addActivityRollup(Schema schema, Entity device) {
+        Entity rollup = addEntity(schema, "ActivityRollup");
+        rollup.setJavaDoc(
+                "Pre-aggregated activity data of one device for one hour or one day, derived from the\n" +
+                        "device specific samples. See {@link nodomain.freeyourgadget.gadgetbridge.database.ActivityRollups}.");
+        rollup.addIntProperty("timestamp").notNull().primaryKey().javaDocGetterAndSetter("The start of the aggregated time span.");
+        Property deviceId = rollup.addLongProperty("deviceId").primaryKey().notNull().getProperty();
+        rollup.addToOne(device, deviceId);
+        rollup.addIntProperty("period").notNull().primaryKey().javaDocGetterAndSetter("The length of the aggregated time span in seconds.");
+        rollup.addIntProperty(SAMPLE_STEPS).notNull();
+        rollup.addIntProperty("activitySeconds").notNull();
+        rollup.addIntProperty("activitySteps").notNull();
+        rollup.addIntProperty("lightSleepSeconds").notNull();
+        rollup.addIntProperty("lightSleepSteps").notNull();
+        rollup.addIntProperty("deepSleepSeconds").notNull();
+        rollup.addIntProperty("deepSleepSteps").notNull();
+        rollup.addIntProperty("notWornSeconds").notNull();
+        rollup.addIntProperty("notWornSteps").notNull();
+        rollup.addIntProperty("heartRateMin").notNull();
+        rollup.addIntProperty("heartRateMax").notNull();
+        rollup.addIntProperty("heartRateAverage").notNull();
+        rollup.addIntProperty("heartRateCount").notNull().javaDocGetterAndSetter("The number of valid heart rate measurements, used for weighting the average.");
+    }
+
     private static Property findProperty(Entity entity, String propertyName) {
         for (Property prop : entity.getProperties()) {
             if (propertyName.equals(prop.getPropertyName())) {
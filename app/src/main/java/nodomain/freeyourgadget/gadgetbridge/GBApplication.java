@@ -72,7 +72,8 @@ import nodomain.freeyourgadget.gadgetbridge.util.AndroidUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
-import nodomain.freeyourgadget.gadgetbridge.util.LimitedQueue;
+import nodomain.freeyourgadget.gadgetbridge.util.IntLruCache;
+import nodomain.freeyourgadget.gadgetbridge.util.LockWaitStatistics;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 
 import static nodomain.freeyourgadget.gadgetbridge.model.DeviceType.AMAZFITBIP;
@@ -95,12 +96,18 @@ public class GBApplication extends Application {
 
     private static GBApplication context;
     private static final Lock dbLock = new ReentrantLock();
+    private static final LockWaitStatistics dbLockStatistics = new LockWaitStatistics("DB write");
+    private static final LockWaitStatistics dbReaderStatistics = new LockWaitStatistics("DB read");
+    /**
+     * Waiting longer than this for database access is logged.
+     */
+    private static final long DB_SLOW_WAIT_MILLIS = 500;
     private static DeviceService deviceService;
     private static SharedPreferences sharedPrefs;
     private static final String PREFS_VERSION = "shared_preferences_version";
     //if preferences have to be migrated, increment the following and add the migration logic in migratePrefs below; see http://stackoverflow.com/questions/16397848/how-can-i-migrate-android-preferences-with-a-new-version
     private static final int CURRENT_PREFS_VERSION = 4;
-    private static LimitedQueue mIDSenderLookup = new LimitedQueue(16);
+    private static final IntLruCache<String> mIDSenderLookup = new IntLruCache<>(16);
     private static Prefs prefs;
     private static GBPrefs gbPrefs;
     private static LockHandler lockHandler;
@@ -264,6 +271,10 @@ public class GBApplication extends Application {
         } else {
             helper = new DBOpenHelper(this, DATABASE_NAME, null);
         }
+        if (!env.isTest()) {
+            // lets readers (see #acquireReadOnlyDB()) run concurrently with a writer
+            helper.setWriteAheadLoggingEnabled(true);
+        }
         SQLiteDatabase db = helper.getWritableDatabase();
         DaoMaster daoMaster = new DaoMaster(db);
         if (lockHandler == null) {
@@ -294,22 +305,80 @@ public class GBApplication extends Application {
      * <p>
      * Callers must not hold a reference to the returned instance because it
      * will be invalidated at some point.
+     * <p>
+     * This lock is exclusive, use it for writing and for changes of the database as a whole.
+     * For queries, use #acquireReadOnlyDB().
      *
      * @return the DBHandler
      * @throws GBException
      * @see #releaseDB()
      */
     public static DBHandler acquireDB() throws GBException {
+        long start = System.nanoTime();
         try {
             if (dbLock.tryLock(30, TimeUnit.SECONDS)) {
+                recordDBWait(dbLockStatistics, start, true);
                 return lockHandler;
             }
         } catch (InterruptedException ex) {
             Log.i(TAG, "Interrupted while waiting for DB lock");
         }
+        recordDBWait(dbLockStatistics, start, false);
+        throw new GBException("Unable to access the database.");
+    }
+
+    /**
+     * Returns a DBHandler for queries, which does not wait for the exclusive lock of
+     * #acquireDB(). Readers see the last committed state of the database. Callers must
+     * close the handler (from the same thread) when they are done, e.g. with
+     * try-with-resources, and must not write to the database through it.
+     *
+     * @return the DBHandler for reading
+     * @throws GBException if the database is not available
+     */
+    public static DBHandler acquireReadOnlyDB() throws GBException {
+        long start = System.nanoTime();
+        try {
+            if (lockHandler != null) {
+                DBHandler reader = lockHandler.getReaderPool().acquire(30, TimeUnit.SECONDS);
+                if (reader != null) {
+                    recordDBWait(dbReaderStatistics, start, true);
+                    return reader;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Log.i(TAG, "Interrupted while waiting for a DB reader");
+        }
+        recordDBWait(dbReaderStatistics, start, false);
         throw new GBException("Unable to access the database.");
     }
 
+    private static void recordDBWait(LockWaitStatistics statistics, long start, boolean acquired) {
+        long waitNanos = System.nanoTime() - start;
+        if (acquired) {
+            statistics.recordAcquired(waitNanos);
+        } else {
+            statistics.recordFailed(waitNanos);
+        }
+        if (waitNanos >= DB_SLOW_WAIT_MILLIS * 1000000) {
+            Log.w(TAG, "Waited " + waitNanos / 1000000 + " ms for the database on thread " + Thread.currentThread().getName() + ", " + statistics);
+        }
+    }
+
+    /**
+     * Returns the wait times of #acquireDB().
+     */
+    public static LockWaitStatistics getDBLockStatistics() {
+        return dbLockStatistics;
+    }
+
+    /**
+     * Returns the wait times of #acquireReadOnlyDB().
+     */
+    public static LockWaitStatistics getDBReaderStatistics() {
+        return dbReaderStatistics;
+    }
+
     /**
      * Releases the database lock.
      *
@@ -788,7 +857,7 @@ public class GBApplication extends Application {
         LocalBroadcastManager.getInstance(context).sendBroadcast(intent);
     }
 
-    public static LimitedQueue getIDSenderLookup() {
+    public static IntLruCache<String> getIDSenderLookup() {
         return mIDSenderLookup;
     }
 
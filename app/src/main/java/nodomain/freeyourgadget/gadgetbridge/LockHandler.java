@@ -19,18 +19,24 @@ package nodomain.freeyourgadget.gadgetbridge;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import java.util.concurrent.TimeUnit;
+
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DBReaderPool;
+import nodomain.freeyourgadget.gadgetbridge.database.SampleRangeQuery;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 
 /**
- * Provides low-level access to the database.
+ * Provides low-level access to the database. Also manages the pool of read-only sessions,
+ * see {@link #getReaderPool()}.
  */
 public class LockHandler implements DBHandler {
 
     private DaoMaster daoMaster = null;
     private DaoSession session = null;
     private SQLiteOpenHelper helper = null;
+    private final DBReaderPool readerPool = new DBReaderPool();
 
     public LockHandler() {
     }
@@ -52,6 +58,11 @@ public class LockHandler implements DBHandler {
         if (session == null) {
             throw new RuntimeException("Unable to create database session");
         }
+        readerPool.open(daoMaster, helper);
+    }
+
+    public DBReaderPool getReaderPool() {
+        return readerPool;
     }
 
     @Override
@@ -89,7 +100,9 @@ public class LockHandler implements DBHandler {
         if (session == null) {
             throw new IllegalStateException("session must not be null");
         }
+        readerPool.close(30, TimeUnit.SECONDS);
         session.clear();
+        SampleRangeQuery.release(session.getDatabase());
         session.getDatabase().close();
         session = null;
         helper = null;
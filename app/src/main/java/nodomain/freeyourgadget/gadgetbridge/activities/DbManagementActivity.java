@@ -21,6 +21,7 @@ import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.SharedPreferences;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.view.MenuItem;
@@ -35,14 +36,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.List;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
+import nodomain.freeyourgadget.gadgetbridge.database.DBBackup;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.database.ExportDirectory;
+import nodomain.freeyourgadget.gadgetbridge.database.PeriodicExporter;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.externalevents.NotificationFilterIndex;
 import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.ImportExportSharedPreferences;
@@ -74,6 +80,13 @@ public class DbManagementActivity extends AbstractGBActivity {
                 importDB();
             }
         });
+        Button importIncrementalButton = findViewById(R.id.importIncrementalButton);
+        importIncrementalButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                importIncrementalExport();
+            }
+        });
 
         int oldDBVisibility = hasOldActivityDatabase() ? View.VISIBLE : View.GONE;
 
@@ -168,11 +181,10 @@ public class DbManagementActivity extends AbstractGBActivity {
     }
 
     private void exportDB() {
-        try (DBHandler dbHandler = GBApplication.acquireDB()) {
+        try {
             exportShared();
-            DBHelper helper = new DBHelper(this);
             File dir = FileUtils.getExternalFilesDir();
-            File destFile = helper.exportDB(dbHandler, dir);
+            File destFile = new DBBackup(this).exportDB(dir);
             GB.toast(this, getString(R.string.dbmanagementactivity_exported_to, destFile.getAbsolutePath()), Toast.LENGTH_LONG, GB.INFO);
         } catch (Exception ex) {
             GB.toast(this, getString(R.string.dbmanagementactivity_error_exporting_db, ex.getMessage()), Toast.LENGTH_LONG, GB.ERROR, ex);
@@ -198,6 +210,7 @@ public class DbManagementActivity extends AbstractGBActivity {
                         } catch (Exception ex) {
                             GB.toast(DbManagementActivity.this, getString(R.string.dbmanagementactivity_error_importing_db, ex.getMessage()), Toast.LENGTH_LONG, GB.ERROR, ex);
                         }
+                        NotificationFilterIndex.invalidate();
                         importShared();
                     }
                 })
@@ -209,6 +222,65 @@ public class DbManagementActivity extends AbstractGBActivity {
                 .show();
     }
 
+    private void importIncrementalExport() {
+        new AlertDialog.Builder(this)
+                .setCancelable(true)
+                .setTitle(R.string.dbmanagementactivity_import_data_title)
+                .setMessage(R.string.dbmanagementactivity_overwrite_database_confirmation)
+                .setPositiveButton(R.string.dbmanagementactivity_overwrite, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        new ImportIncrementalTask().execute();
+                    }
+                })
+                .setNegativeButton(R.string.Cancel, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                    }
+                })
+                .show();
+    }
+
+    /**
+     * Merges the incremental export and imports it, which both take a while.
+     */
+    private class ImportIncrementalTask extends AsyncTask<Void, Void, Exception> {
+        @Override
+        protected Exception doInBackground(Void... params) {
+            File restoredFile = null;
+            try {
+                ExportDirectory exportDir = PeriodicExporter.getIncrementalExportDirectory(DbManagementActivity.this);
+                if (exportDir == null) {
+                    return new FileNotFoundException(getString(R.string.dbmanagementactivity_incremental_export_location_not_set));
+                }
+                // merging the chunks does not need the database
+                restoredFile = new DBBackup(DbManagementActivity.this).restoreIncremental(exportDir);
+                try (DBHandler dbHandler = GBApplication.acquireDB()) {
+                    DBHelper helper = new DBHelper(DbManagementActivity.this);
+                    helper.importDB(dbHandler, restoredFile);
+                    helper.validateDB(dbHandler.getHelper());
+                }
+                return null;
+            } catch (Exception ex) {
+                return ex;
+            } finally {
+                if (restoredFile != null) {
+                    restoredFile.delete();
+                }
+                NotificationFilterIndex.invalidate();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Exception ex) {
+            if (ex == null) {
+                GB.toast(DbManagementActivity.this, getString(R.string.dbmanagementactivity_import_successful), Toast.LENGTH_LONG, GB.INFO);
+            } else {
+                GB.toast(DbManagementActivity.this, getString(R.string.dbmanagementactivity_error_importing_db, ex.getMessage()), Toast.LENGTH_LONG, GB.ERROR, ex);
+            }
+        }
+    }
+
     private void deleteActivityDatabase() {
         new AlertDialog.Builder(this)
                 .setCancelable(true)
@@ -217,7 +289,9 @@ public class DbManagementActivity extends AbstractGBActivity {
                 .setPositiveButton(R.string.Delete, new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        if (GBApplication.deleteActivityDatabase(DbManagementActivity.this)) {
+                        boolean deleted = GBApplication.deleteActivityDatabase(DbManagementActivity.this);
+                        NotificationFilterIndex.invalidate();
+                        if (deleted) {
                             GB.toast(DbManagementActivity.this, getString(R.string.dbmanagementactivity_database_successfully_deleted), Toast.LENGTH_SHORT, GB.INFO);
                         } else {
                             GB.toast(DbManagementActivity.this, getString(R.string.dbmanagementactivity_db_deletion_failed), Toast.LENGTH_SHORT, GB.INFO);
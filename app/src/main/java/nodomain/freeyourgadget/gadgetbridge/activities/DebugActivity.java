@@ -40,24 +40,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Objects;
 
 import androidx.core.app.NavUtils;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.RemoteInput;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
-import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.model.CallSpec;
-import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 import nodomain.freeyourgadget.gadgetbridge.model.MusicSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.MusicStateSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.model.RecordedDataTypes;
+import nodomain.freeyourgadget.gadgetbridge.service.RealtimeSampleStream;
+import nodomain.freeyourgadget.gadgetbridge.service.SyncScheduler;
 import nodomain.freeyourgadget.gadgetbridge.service.serial.GBDeviceProtocol;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
@@ -85,9 +83,6 @@ public class DebugActivity extends AbstractGBActivity {
                     GB.toast(context, "got wearable reply: " + reply, Toast.LENGTH_SHORT, GB.INFO);
                     break;
                 }
-                case DeviceService.ACTION_REALTIME_SAMPLES:
-                    handleRealtimeSample(intent.getSerializableExtra(DeviceService.EXTRA_REALTIME_SAMPLE));
-                    break;
                 default:
                     LOG.info("ignoring intent action " + intent.getAction());
                     break;
@@ -95,12 +90,12 @@ public class DebugActivity extends AbstractGBActivity {
         }
     };
 
-    private void handleRealtimeSample(Serializable extra) {
-        if (extra instanceof ActivitySample) {
-            ActivitySample sample = (ActivitySample) extra;
-            GB.toast(this, "Heart Rate measured: " + sample.getHeartRate(), Toast.LENGTH_LONG, GB.INFO);
+    private final RealtimeSampleStream.Subscriber mRealtimeSampleSubscriber = new RealtimeSampleStream.Subscriber() {
+        @Override
+        public void onRealtimeSample(String deviceAddress, int timestamp, int heartRate, int steps) {
+            GB.toast(DebugActivity.this, "Heart Rate measured: " + heartRate, Toast.LENGTH_LONG, GB.INFO);
         }
-    }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -109,9 +104,8 @@ public class DebugActivity extends AbstractGBActivity {
 
         IntentFilter filter = new IntentFilter();
         filter.addAction(ACTION_REPLY);
-        filter.addAction(DeviceService.ACTION_REALTIME_SAMPLES);
-        LocalBroadcastManager.getInstance(this).registerReceiver(mReceiver, filter);
-        registerReceiver(mReceiver, filter); // for ACTION_REPLY
+        registerReceiver(mReceiver, filter);
+        RealtimeSampleStream.getInstance().subscribe(mRealtimeSampleSubscriber, 0);
 
         editContent = findViewById(R.id.editContent);
 
@@ -285,6 +279,14 @@ public class DebugActivity extends AbstractGBActivity {
             }
         });
 
+        Button syncScheduleButton = findViewById(R.id.syncScheduleButton);
+        syncScheduleButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showSyncSchedule();
+            }
+        });
+
         Button shareLogButton = findViewById(R.id.shareLog);
         shareLogButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -314,6 +316,16 @@ public class DebugActivity extends AbstractGBActivity {
                 .show();
     }
 
+    private void showSyncSchedule() {
+        String schedule = SyncScheduler.getInstance().getDebugInfo();
+        new AlertDialog.Builder(this)
+                .setCancelable(true)
+                .setTitle("Sync schedule")
+                .setMessage(schedule.isEmpty() ? "No scheduled tasks" : schedule)
+                .setPositiveButton(R.string.ok, null)
+                .show();
+    }
+
     private void testNewFunctionality() {
         GBApplication.deviceService().onTestNewFunction();
     }
@@ -392,7 +404,7 @@ public class DebugActivity extends AbstractGBActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        LocalBroadcastManager.getInstance(this).unregisterReceiver(mReceiver);
+        RealtimeSampleStream.getInstance().unsubscribe(mRealtimeSampleSubscriber);
         unregisterReceiver(mReceiver);
     }
 
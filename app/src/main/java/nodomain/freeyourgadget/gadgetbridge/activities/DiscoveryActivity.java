@@ -195,7 +195,7 @@ public class DiscoveryActivity extends AbstractGBActivity implements AdapterView
     private final BluetoothAdapter.LeScanCallback leScanCallback = new BluetoothAdapter.LeScanCallback() {
         @Override
         public void onLeScan(BluetoothDevice device, int rssi, byte[] scanRecord) {
-            LOG.warn(device.getName() + ": " + ((scanRecord != null) ? scanRecord.length : -1));
+            LOG.warn(device.getAddress() + ": " + ((scanRecord != null) ? scanRecord.length : -1));
             logMessageContent(scanRecord);
             handleDeviceFound(device, (short) rssi);
         }
@@ -223,7 +223,7 @@ public class DiscoveryActivity extends AbstractGBActivity implements AdapterView
                                 uuids = serviceUuids.toArray(new ParcelUuid[0]);
                             }
                         }
-                        LOG.warn(result.getDevice().getName() + ": " +
+                        LOG.warn(result.getDevice().getAddress() + ": " +
                                 ((scanRecord != null) ? scanRecord.getBytes().length : -1));
                         handleDeviceFound(result.getDevice(), (short) result.getRssi(), uuids);
                     } catch (NullPointerException e) {
@@ -350,7 +350,7 @@ public class DiscoveryActivity extends AbstractGBActivity implements AdapterView
 
 
     private void handleDeviceFound(BluetoothDevice device, short rssi, ParcelUuid[] uuids) {
-        LOG.debug("found device: " + device.getName() + ", " + device.getAddress());
+        LOG.debug("found device: " + device.getAddress());
         if (LOG.isDebugEnabled()) {
             if (uuids != null && uuids.length > 0) {
                 for (ParcelUuid uuid : uuids) {
@@ -42,6 +42,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.NotificationFilter;
 import nodomain.freeyourgadget.gadgetbridge.entities.NotificationFilterDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.NotificationFilterEntry;
 import nodomain.freeyourgadget.gadgetbridge.entities.NotificationFilterEntryDao;
+import nodomain.freeyourgadget.gadgetbridge.externalevents.NotificationFilterIndex;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
 public class NotificationFilterActivity extends AbstractGBActivity {
@@ -211,6 +212,8 @@ public class NotificationFilterActivity extends AbstractGBActivity {
         } catch (Exception e) {
             GB.toast(NotificationFilterActivity.this, "Error accessing the database: " + e.getLocalizedMessage(), Toast.LENGTH_LONG, GB.ERROR);
         }
+        // also on error, some of the changes may have been written already
+        NotificationFilterIndex.invalidate();
     }
 
     /**
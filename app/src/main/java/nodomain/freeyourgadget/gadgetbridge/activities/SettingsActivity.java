@@ -39,6 +39,7 @@ import android.provider.DocumentsContract;
 import android.widget.Toast;
 
 import androidx.core.app.ActivityCompat;
+import androidx.documentfile.provider.DocumentFile;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import org.slf4j.Logger;
@@ -75,6 +76,7 @@ public class SettingsActivity extends AbstractSettingsActivity {
     public static final String PREF_MEASUREMENT_SYSTEM = "measurement_system";
 
     private static final int FILE_REQUEST_CODE = 4711;
+    private static final int FOLDER_REQUEST_CODE = 4712;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -311,6 +313,24 @@ public class SettingsActivity extends AbstractSettingsActivity {
         });
         pref.setSummary(getAutoExportLocationSummary());
 
+        pref = findPreference(GBPrefs.AUTO_EXPORT_INCREMENTAL_LOCATION);
+        if (GBApplication.isRunningLollipopOrLater()) {
+            pref.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+                public boolean onPreferenceClick(Preference preference) {
+                    Intent i = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+                    i.addFlags(Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+                    String title = getApplicationContext().getString(R.string.choose_auto_export_incremental_location);
+                    startActivityForResult(Intent.createChooser(i, title), FOLDER_REQUEST_CODE);
+                    return true;
+                }
+            });
+            pref.setSummary(getAutoExportIncrementalLocationSummary());
+        } else {
+            // choosing a folder needs Android 5, and incremental exports need a folder
+            pref.setEnabled(false);
+            findPreference(GBPrefs.AUTO_EXPORT_INCREMENTAL).setEnabled(false);
+        }
+
         pref = findPreference(GBPrefs.AUTO_EXPORT_INTERVAL);
         pref.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
             @Override
@@ -400,7 +420,36 @@ public class SettingsActivity extends AbstractSettingsActivity {
             int autoExportPeriod = GBApplication
                     .getPrefs().getInt(GBPrefs.AUTO_EXPORT_INTERVAL, 0);
             PeriodicExporter.sheduleAlarm(getApplicationContext(), autoExportPeriod, autoExportEnabled);
+        } else if (requestCode == FOLDER_REQUEST_CODE && intent != null) {
+            Uri uri = intent.getData();
+            // the chunks of an incremental export are merged again when importing it
+            getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+            PreferenceManager
+                    .getDefaultSharedPreferences(this)
+                    .edit()
+                    .putString(GBPrefs.AUTO_EXPORT_INCREMENTAL_LOCATION, uri.toString())
+                    .apply();
+            findPreference(GBPrefs.AUTO_EXPORT_INCREMENTAL_LOCATION).setSummary(getAutoExportIncrementalLocationSummary());
+        }
+    }
+
+    /*
+    Returns the name of the selected folder, or an empty string
+     */
+    private String getAutoExportIncrementalLocationSummary() {
+        String location = GBApplication.getPrefs().getString(GBPrefs.AUTO_EXPORT_INCREMENTAL_LOCATION, null);
+        if (location == null) {
+            return "";
+        }
+        try {
+            DocumentFile folder = DocumentFile.fromTreeUri(getApplicationContext(), Uri.parse(location));
+            if (folder != null && folder.getName() != null) {
+                return folder.getName();
+            }
+        } catch (Exception ex) {
+            LOG.warn("Unable to get the name of the incremental export folder", ex);
         }
+        return location;
     }
 
     /*
@@ -23,6 +23,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -33,7 +34,6 @@ import android.widget.PopupMenu;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,11 +52,11 @@ import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.ExternalPebbleJSActivity;
 import nodomain.freeyourgadget.gadgetbridge.adapter.GBDeviceAppAdapter;
+import nodomain.freeyourgadget.gadgetbridge.devices.pebble.PebbleAppCache;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceApp;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.pebble.PebbleProtocol;
-import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.PebbleUtils;
 
 
@@ -80,15 +80,45 @@ public abstract class AbstractAppManagerFragment extends Fragment {
     }
 
     protected void onChangedAppOrder() {
+        final List<UUID> uuidList = getUuidsInList();
+        final String sortFilename = getSortFilename();
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                AppManagerActivity.rewriteAppOrderFile(sortFilename, uuidList);
+            }
+        });
+    }
+
+    private List<UUID> getUuidsInList() {
         List<UUID> uuidList = new ArrayList<>();
         for (GBDeviceApp gbDeviceApp : mGBDeviceAppAdapter.getAppList()) {
             uuidList.add(gbDeviceApp.getUUID());
         }
-        AppManagerActivity.rewriteAppOrderFile(getSortFilename(), uuidList);
+        return uuidList;
     }
 
+    /**
+     * Runs the given task in the background, after the tasks that have been started before,
+     * including the refresh of the list. Used for everything that accesses the pbw cache
+     * index, which may have to be loaded first.
+     */
+    protected void runInBackground(Runnable task) {
+        AsyncTask.SERIAL_EXECUTOR.execute(task);
+    }
+
+    /**
+     * Loads the app list in the background and shows it when done.
+     */
     protected void refreshList() {
-        appList.clear();
+        cancelRefreshTask();
+        refreshTask = new RefreshTask().execute();
+    }
+
+    /**
+     * Called in the background to load the app list.
+     */
+    protected List<GBDeviceApp> loadAppList() {
         ArrayList<UUID> uuids = AppManagerActivity.getUuidsFromFile(getSortFilename());
         List<GBDeviceApp> systemApps = getSystemAppsInCategory();
         boolean needsRewrite = false;
@@ -101,10 +131,35 @@ public abstract class AbstractAppManagerFragment extends Fragment {
         if (needsRewrite) {
             AppManagerActivity.rewriteAppOrderFile(getSortFilename(), uuids);
         }
-        appList.addAll(getCachedApps(uuids));
+        return getCachedApps(uuids);
+    }
+
+    private void cancelRefreshTask() {
+        if (refreshTask != null && refreshTask.getStatus() != AsyncTask.Status.FINISHED) {
+            refreshTask.cancel(true);
+        }
+        refreshTask = null;
+    }
+
+    private class RefreshTask extends AsyncTask<Void, Void, List<GBDeviceApp>> {
+        @Override
+        protected List<GBDeviceApp> doInBackground(Void... params) {
+            return loadAppList();
+        }
+
+        @Override
+        protected void onPostExecute(List<GBDeviceApp> apps) {
+            if (isCancelled() || !isAdded()) {
+                return;
+            }
+            appList.clear();
+            appList.addAll(apps);
+            mGBDeviceAppAdapter.notifyDataSetChanged();
+        }
     }
 
     private void refreshListFromPebble(Intent intent) {
+        cancelRefreshTask();
         appList.clear();
         int appCount = intent.getIntExtra("app_count", 0);
         for (int i = 0; i < appCount; i++) {
@@ -131,111 +186,112 @@ public abstract class AbstractAppManagerFragment extends Fragment {
                     if (!isCacheManager()) {
                         LOG.info("will refresh list based on data from pebble");
                         refreshListFromPebble(intent);
+                        mGBDeviceAppAdapter.notifyDataSetChanged();
                     }
                 } else if (PebbleUtils.getFwMajor(mGBDevice.getFirmwareVersion()) >= 3 || isCacheManager()) {
                     refreshList();
                 }
-                mGBDeviceAppAdapter.notifyDataSetChanged();
             }
         }
     };
 
     protected final List<GBDeviceApp> appList = new ArrayList<>();
     private GBDeviceAppAdapter mGBDeviceAppAdapter;
+    private AsyncTask refreshTask;
     protected GBDevice mGBDevice = null;
 
+    /**
+     * Returns the apps with the given uuids from the pbw cache, or all cached apps if uuids is
+     * null. Must not be called on the UI thread, as the pbw cache index may not be loaded yet.
+     */
     protected List<GBDeviceApp> getCachedApps(List<UUID> uuids) {
         List<GBDeviceApp> cachedAppList = new ArrayList<>();
-        File cachePath;
+        PebbleAppCache appCache;
         try {
-            cachePath = PebbleUtils.getPbwCacheDir();
+            appCache = PebbleAppCache.getInstance();
         } catch (IOException e) {
             LOG.warn("could not get external dir while reading pbw cache.");
             return cachedAppList;
         }
 
-        File[] files;
         if (uuids == null) {
-            files = cachePath.listFiles();
+            cachedAppList.addAll(appCache.getApps());
+            for (UUID uuid : appCache.getAppsWithoutMetadata()) {
+                if (!addSystemApp(cachedAppList, uuid.toString())) {
+                    cachedAppList.add(new GBDeviceApp(uuid, uuid.toString(), "N/A", "", GBDeviceApp.Type.UNKNOWN));
+                }
+            }
         } else {
-            files = new File[uuids.size()];
-            int index = 0;
             for (UUID uuid : uuids) {
-                files[index++] = new File(uuid.toString() + ".pbw");
+                GBDeviceApp app = appCache.getApp(uuid);
+                if (app != null) {
+                    cachedAppList.add(app);
+                } else {
+                    LOG.info("no metadata in pbw cache for " + uuid);
+                    addSystemApp(cachedAppList, uuid.toString());
+                }
             }
         }
-        if (files != null) {
-            for (File file : files) {
-                if (file.getName().endsWith(".pbw")) {
-                    String baseName = file.getName().substring(0, file.getName().length() - 4);
-                    //metadata
-                    File jsonFile = new File(cachePath, baseName + ".json");
-                    //configuration
-                    File configFile = new File(cachePath, baseName + "_config.js");
-                    try {
-                        String jsonstring = FileUtils.getStringFromFile(jsonFile);
-                        JSONObject json = new JSONObject(jsonstring);
-                        cachedAppList.add(new GBDeviceApp(json, configFile.exists()));
-                    } catch (Exception e) {
-                        LOG.info("could not read json file for " + baseName);
-                        //FIXME: this is really ugly, if we do not find system uuids in pbw cache add them manually. Also duplicated code
-                        switch (baseName) {
-                            case "8f3c8686-31a1-4f5f-91f5-01600c9bdc59":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Tic Toc (System)", "Pebble Inc.", "", GBDeviceApp.Type.WATCHFACE_SYSTEM));
-                                break;
-                            case "1f03293d-47af-4f28-b960-f2b02a6dd757":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Music (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                break;
-                            case "b2cae818-10f8-46df-ad2b-98ad2254a3c1":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Notifications (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                break;
-                            case "67a32d95-ef69-46d4-a0b9-854cc62f97f9":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Alarms (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                break;
-                            case "18e443ce-38fd-47c8-84d5-6d0c775fbe55":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Watchfaces (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                break;
-                            case "0863fc6a-66c5-4f62-ab8a-82ed00a98b5d":
-                                cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Send Text (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                break;
-                        }
-                        /*
-                        else if (baseName.equals("4dab81a6-d2fc-458a-992c-7a1f3b96a970")) {
-                            cachedAppList.add(new GBDeviceApp(UUID.fromString("4dab81a6-d2fc-458a-992c-7a1f3b96a970"), "Sports (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                        } else if (baseName.equals("cf1e816a-9db0-4511-bbb8-f60c48ca8fac")) {
-                            cachedAppList.add(new GBDeviceApp(UUID.fromString("cf1e816a-9db0-4511-bbb8-f60c48ca8fac"), "Golf (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                        }
-                        */
-                        if (mGBDevice != null) {
-                            if (PebbleUtils.hasHealth(mGBDevice.getModel())) {
-                                if (baseName.equals(PebbleProtocol.UUID_PEBBLE_HEALTH.toString())) {
-                                    cachedAppList.add(new GBDeviceApp(PebbleProtocol.UUID_PEBBLE_HEALTH, "Health (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                    continue;
-                                }
-                            }
-                            if (PebbleUtils.hasHRM(mGBDevice.getModel())) {
-                                if (baseName.equals(PebbleProtocol.UUID_WORKOUT.toString())) {
-                                    cachedAppList.add(new GBDeviceApp(PebbleProtocol.UUID_WORKOUT, "Workout (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                    continue;
-                                }
-                            }
-                            if (PebbleUtils.getFwMajor(mGBDevice.getFirmwareVersion()) >= 4) {
-                                if (baseName.equals("3af858c3-16cb-4561-91e7-f1ad2df8725f")) {
-                                    cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), "Kickstart (System)", "Pebble Inc.", "", GBDeviceApp.Type.WATCHFACE_SYSTEM));
-                                }
-                                if (baseName.equals(PebbleProtocol.UUID_WEATHER.toString())) {
-                                    cachedAppList.add(new GBDeviceApp(PebbleProtocol.UUID_WEATHER, "Weather (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
-                                }
-                            }
-                        }
-                        if (uuids == null) {
-                            cachedAppList.add(new GBDeviceApp(UUID.fromString(baseName), baseName, "N/A", "", GBDeviceApp.Type.UNKNOWN));
-                        }
-                    }
+        return cachedAppList;
+    }
+
+    /**
+     * Adds the system app with the given uuid, if the device has it.
+     *
+     * @return true if a system app has been added which must not be listed as unknown app
+     */
+    private boolean addSystemApp(List<GBDeviceApp> apps, String baseName) {
+        //FIXME: this is really ugly, if we do not find system uuids in pbw cache add them manually. Also duplicated code
+        switch (baseName) {
+            case "8f3c8686-31a1-4f5f-91f5-01600c9bdc59":
+                apps.add(new GBDeviceApp(UUID.fromString(baseName), "Tic Toc (System)", "Pebble Inc.", "", GBDeviceApp.Type.WATCHFACE_SYSTEM));
+                break;
+            case "1f03293d-47af-4f28-b960-f2b02a6dd757":
+                apps.add(new GBDeviceApp(UUID.fromString(baseName), "Music (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                break;
+            case "b2cae818-10f8-46df-ad2b-98ad2254a3c1":
+                apps.add(new GBDeviceApp(UUID.fromString(baseName), "Notifications (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                break;
+            case "67a32d95-ef69-46d4-a0b9-854cc62f97f9":
+                apps.add(new GBDeviceApp(UUID.fromString(baseName), "Alarms (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                break;
+            case "18e443ce-38fd-47c8-84d5-6d0c775fbe55":
+                apps.add(new GBDeviceApp(UUID.fromString(baseName), "Watchfaces (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                break;
+            case "0863fc6a-66c5-4f62-ab8a-82ed00a98b5d":
+                apps.add(new GBDeviceApp(UUID.fromString(baseName), "Send Text (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                break;
+        }
+        /*
+        else if (baseName.equals("4dab81a6-d2fc-458a-992c-7a1f3b96a970")) {
+            apps.add(new GBDeviceApp(UUID.fromString("4dab81a6-d2fc-458a-992c-7a1f3b96a970"), "Sports (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+        } else if (baseName.equals("cf1e816a-9db0-4511-bbb8-f60c48ca8fac")) {
+            apps.add(new GBDeviceApp(UUID.fromString("cf1e816a-9db0-4511-bbb8-f60c48ca8fac"), "Golf (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+        }
+        */
+        if (mGBDevice != null) {
+            if (PebbleUtils.hasHealth(mGBDevice.getModel())) {
+                if (baseName.equals(PebbleProtocol.UUID_PEBBLE_HEALTH.toString())) {
+                    apps.add(new GBDeviceApp(PebbleProtocol.UUID_PEBBLE_HEALTH, "Health (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                    return true;
+                }
+            }
+            if (PebbleUtils.hasHRM(mGBDevice.getModel())) {
+                if (baseName.equals(PebbleProtocol.UUID_WORKOUT.toString())) {
+                    apps.add(new GBDeviceApp(PebbleProtocol.UUID_WORKOUT, "Workout (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
+                    return true;
+                }
+            }
+            if (PebbleUtils.getFwMajor(mGBDevice.getFirmwareVersion()) >= 4) {
+                if (baseName.equals("3af858c3-16cb-4561-91e7-f1ad2df8725f")) {
+                    apps.add(new GBDeviceApp(UUID.fromString(baseName), "Kickstart (System)", "Pebble Inc.", "", GBDeviceApp.Type.WATCHFACE_SYSTEM));
+                }
+                if (baseName.equals(PebbleProtocol.UUID_WEATHER.toString())) {
+                    apps.add(new GBDeviceApp(PebbleProtocol.UUID_WEATHER, "Weather (System)", "Pebble Inc.", "", GBDeviceApp.Type.APP_SYSTEM));
                 }
             }
         }
-        return cachedAppList;
+        return false;
     }
 
     @Override
@@ -287,16 +343,18 @@ public abstract class AbstractAppManagerFragment extends Fragment {
         return rootView;
     }
 
-    protected void sendOrderToDevice(String concatFilename) {
-        ArrayList<UUID> uuids = new ArrayList<>();
-        for (GBDeviceApp gbDeviceApp : mGBDeviceAppAdapter.getAppList()) {
-            uuids.add(gbDeviceApp.getUUID());
-        }
-        if (concatFilename != null) {
-            ArrayList<UUID> concatUuids = AppManagerActivity.getUuidsFromFile(concatFilename);
-            uuids.addAll(concatUuids);
-        }
-        GBApplication.deviceService().onAppReorder(uuids.toArray(new UUID[uuids.size()]));
+    protected void sendOrderToDevice(final String concatFilename) {
+        final List<UUID> uuids = getUuidsInList();
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                if (concatFilename != null) {
+                    ArrayList<UUID> concatUuids = AppManagerActivity.getUuidsFromFile(concatFilename);
+                    uuids.addAll(concatUuids);
+                }
+                GBApplication.deviceService().onAppReorder(uuids.toArray(new UUID[uuids.size()]));
+            }
+        });
     }
 
     public boolean openPopupMenu(View view, GBDeviceApp deviceApp) {
@@ -363,34 +421,10 @@ public abstract class AbstractAppManagerFragment extends Fragment {
     private boolean onContextItemSelected(MenuItem item, GBDeviceApp selectedApp) {
         switch (item.getItemId()) {
             case R.id.appmanager_app_delete_cache:
-                File pbwCacheDir;
-                try {
-                    pbwCacheDir = PebbleUtils.getPbwCacheDir();
-                } catch (IOException e) {
-                    LOG.warn("could not get external dir while trying to access pbw cache.");
-                    return true;
-                }
-                String baseName = selectedApp.getUUID().toString();
-                String[] suffixToDelete = new String[]{".pbw", ".json", "_config.js", "_preset.json"};
-
-                for (String suffix : suffixToDelete) {
-                    File fileToDelete = new File(pbwCacheDir,baseName + suffix);
-                    if (!fileToDelete.delete()) {
-                        LOG.warn("could not delete file from pbw cache: " + fileToDelete.toString());
-                    } else {
-                        LOG.info("deleted file: " + fileToDelete.toString());
-                    }
-                }
-                AppManagerActivity.deleteFromAppOrderFile("pbwcacheorder.txt", selectedApp.getUUID()); // FIXME: only if successful
-                // fall through
+                deleteApp(selectedApp.getUUID(), true);
+                return true;
             case R.id.appmanager_app_delete:
-                if (PebbleUtils.getFwMajor(mGBDevice.getFirmwareVersion()) >= 3) {
-                    AppManagerActivity.deleteFromAppOrderFile(mGBDevice.getAddress() + ".watchapps", selectedApp.getUUID()); // FIXME: only if successful
-                    AppManagerActivity.deleteFromAppOrderFile(mGBDevice.getAddress() + ".watchfaces", selectedApp.getUUID()); // FIXME: only if successful
-                    Intent refreshIntent = new Intent(AbstractAppManagerFragment.ACTION_REFRESH_APPLIST);
-                    LocalBroadcastManager.getInstance(getContext()).sendBroadcast(refreshIntent);
-                }
-                GBApplication.deviceService().onAppDelete(selectedApp.getUUID());
+                deleteApp(selectedApp.getUUID(), false);
                 return true;
             case R.id.appmanager_app_reinstall:
                 File cachePath;
@@ -439,9 +473,53 @@ public abstract class AbstractAppManagerFragment extends Fragment {
         }
     }
 
+    private void deleteApp(final UUID uuid, final boolean deleteFromCache) {
+        final Context context = getContext().getApplicationContext();
+        final boolean hasAppOrder = PebbleUtils.getFwMajor(mGBDevice.getFirmwareVersion()) >= 3;
+        final String address = mGBDevice.getAddress();
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                if (deleteFromCache) {
+                    File pbwCacheDir;
+                    try {
+                        pbwCacheDir = PebbleUtils.getPbwCacheDir();
+                    } catch (IOException e) {
+                        LOG.warn("could not get external dir while trying to access pbw cache.");
+                        return;
+                    }
+                    String baseName = uuid.toString();
+                    String[] suffixToDelete = new String[]{".pbw", ".json", "_config.js", "_preset.json"};
+
+                    for (String suffix : suffixToDelete) {
+                        File fileToDelete = new File(pbwCacheDir, baseName + suffix);
+                        if (!fileToDelete.delete()) {
+                            LOG.warn("could not delete file from pbw cache: " + fileToDelete.toString());
+                        } else {
+                            LOG.info("deleted file: " + fileToDelete.toString());
+                        }
+                    }
+                    try {
+                        PebbleAppCache.getInstance().removeApp(uuid, PebbleAppCache.CACHE_ORDER); // FIXME: only if successful
+                    } catch (IOException e) {
+                        LOG.warn("could not remove app from pbw cache index", e);
+                    }
+                }
+                if (hasAppOrder) {
+                    AppManagerActivity.deleteFromAppOrderFile(address + ".watchapps", uuid); // FIXME: only if successful
+                    AppManagerActivity.deleteFromAppOrderFile(address + ".watchfaces", uuid); // FIXME: only if successful
+                    Intent refreshIntent = new Intent(AbstractAppManagerFragment.ACTION_REFRESH_APPLIST);
+                    LocalBroadcastManager.getInstance(context).sendBroadcast(refreshIntent);
+                }
+                GBApplication.deviceService().onAppDelete(uuid);
+            }
+        });
+    }
+
     @Override
     public void onDestroy() {
         LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(mReceiver);
+        cancelRefreshTask();
         super.onDestroy();
     }
 
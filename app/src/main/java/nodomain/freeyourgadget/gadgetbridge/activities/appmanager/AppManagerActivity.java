@@ -28,10 +28,6 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -45,8 +41,8 @@ import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractFragmentPagerAdapter;
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractGBFragmentActivity;
 import nodomain.freeyourgadget.gadgetbridge.activities.FwAppInstallerActivity;
+import nodomain.freeyourgadget.gadgetbridge.devices.pebble.PebbleAppCache;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
-import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
 
 
 public class AppManagerActivity extends AbstractGBFragmentActivity {
@@ -99,10 +95,12 @@ public class AppManagerActivity extends AbstractGBFragmentActivity {
         return new SectionsPagerAdapter(fragmentManager);
     }
 
-    public static synchronized void deleteFromAppOrderFile(String filename, UUID uuid) {
-        ArrayList<UUID> uuids = getUuidsFromFile(filename);
-        uuids.remove(uuid);
-        rewriteAppOrderFile(filename, uuids);
+    public static void deleteFromAppOrderFile(String filename, UUID uuid) {
+        try {
+            PebbleAppCache.getInstance().removeFromOrder(filename, uuid);
+        } catch (IOException e) {
+            LOG.warn("can't remove app from app order", e);
+        }
     }
 
     public class SectionsPagerAdapter extends AbstractFragmentPagerAdapter {
@@ -156,36 +154,29 @@ public class AppManagerActivity extends AbstractGBFragmentActivity {
     }
 
 
-    static synchronized void rewriteAppOrderFile(String filename, List<UUID> uuids) {
-        try (BufferedWriter out = new BufferedWriter(new FileWriter(FileUtils.getExternalFilesDir() + "/" + filename))) {
-            for (UUID uuid : uuids) {
-                out.write(uuid.toString());
-                out.newLine();
-            }
+    static void rewriteAppOrderFile(String filename, List<UUID> uuids) {
+        try {
+            PebbleAppCache.getInstance().setOrder(filename, uuids);
         } catch (IOException e) {
-            LOG.warn("can't write app order to file!");
+            LOG.warn("can't write app order!", e);
         }
     }
 
-    synchronized public static void addToAppOrderFile(String filename, UUID uuid) {
-        ArrayList<UUID> uuids = getUuidsFromFile(filename);
-        if (!uuids.contains(uuid)) {
-            uuids.add(uuid);
-            rewriteAppOrderFile(filename, uuids);
+    public static void addToAppOrderFile(String filename, UUID uuid) {
+        try {
+            PebbleAppCache.getInstance().addToOrder(filename, uuid);
+        } catch (IOException e) {
+            LOG.warn("can't add app to app order", e);
         }
     }
 
-    static synchronized ArrayList<UUID> getUuidsFromFile(String filename) {
-        ArrayList<UUID> uuids = new ArrayList<>();
-        try (BufferedReader in = new BufferedReader(new FileReader(FileUtils.getExternalFilesDir() + "/" + filename))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                uuids.add(UUID.fromString(line));
-            }
+    static ArrayList<UUID> getUuidsFromFile(String filename) {
+        try {
+            return PebbleAppCache.getInstance().getOrder(filename);
         } catch (IOException e) {
-            LOG.warn("could not read sort file");
+            LOG.warn("could not read app order", e);
+            return new ArrayList<>();
         }
-        return uuids;
     }
 
     @Override
@@ -18,13 +18,13 @@ package nodomain.freeyourgadget.gadgetbridge.activities.appmanager;
 
 import java.util.List;
 
+import nodomain.freeyourgadget.gadgetbridge.devices.pebble.PebbleAppCache;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceApp;
 
 public class AppManagerFragmentCache extends AbstractAppManagerFragment {
     @Override
-    public void refreshList() {
-        appList.clear();
-        appList.addAll(getCachedApps(null));
+    protected List<GBDeviceApp> loadAppList() {
+        return getCachedApps(null);
     }
 
     @Override
@@ -39,7 +39,7 @@ public class AppManagerFragmentCache extends AbstractAppManagerFragment {
 
     @Override
     public String getSortFilename() {
-        return "pbwcacheorder.txt";
+        return PebbleAppCache.CACHE_ORDER;
     }
 
     @Override
@@ -67,6 +67,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
 
@@ -335,6 +336,15 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
         return provider.getAllActivitySamples(tsFrom, tsTo);
     }
 
+    /**
+     * Returns the values of all kinds of samples for the given device, in columnar form.
+     * To be called from a background thread.
+     */
+    protected SampleColumns getAllSampleColumns(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
+        SampleProvider<? extends ActivitySample> provider = getProvider(db, device);
+        return provider.getAllActivitySampleColumns(tsFrom, tsTo);
+    }
+
     protected List<? extends AbstractActivitySample> getActivitySamples(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
         SampleProvider<? extends AbstractActivitySample> provider = getProvider(db, device);
         return provider.getActivitySamples(tsFrom, tsTo);
@@ -416,6 +426,10 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
     protected abstract void renderCharts();
 
     protected DefaultChartsData<LineData> refresh(GBDevice gbDevice, List<? extends ActivitySample> samples) {
+        return refresh(gbDevice, SampleColumns.of(samples));
+    }
+
+    protected DefaultChartsData<LineData> refresh(GBDevice gbDevice, SampleColumns samples) {
 //        Calendar cal = GregorianCalendar.getInstance();
 //        cal.clear();
         TimestampTranslation tsTranslation = new TimestampTranslation();
@@ -442,11 +456,14 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
             List<Integer> colors = new ArrayList<>(numEntries); // this is kinda inefficient...
             int lastHrSampleIndex = -1;
             HeartRateUtils heartRateUtilsInstance = HeartRateUtils.getInstance();
+            int[] timestamps = samples.timestamps();
+            int[] kinds = samples.kinds();
+            float[] intensities = samples.intensities();
+            int[] heartRates = samples.heartRates();
 
             for (int i = 0; i < numEntries; i++) {
-                ActivitySample sample = samples.get(i);
-                int type = sample.getKind();
-                int ts = tsTranslation.shorten(sample.getTimestamp());
+                int type = kinds[i];
+                int ts = tsTranslation.shorten(timestamps[i]);
 
 //                System.out.println(ts);
 //                ts = i;
@@ -461,7 +478,7 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
 //                    dateStringTo = dateFormat.format(date);
 //                }
 
-                float movement = sample.getIntensity();
+                float movement = intensities[i];
 
                 float value = movement;
                 switch (type) {
@@ -511,13 +528,14 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
                         }
                         activityEntries.add(createLineEntry(value, ts));
                 }
-                if (hr && sample.getKind() != ActivityKind.TYPE_NOT_WORN && heartRateUtilsInstance.isValidHeartRateValue(sample.getHeartRate())) {
+                int heartRate = heartRates[i];
+                if (hr && type != ActivityKind.TYPE_NOT_WORN && heartRateUtilsInstance.isValidHeartRateValue(heartRate)) {
                     if (lastHrSampleIndex > -1 && ts - lastHrSampleIndex > 1800*HeartRateUtils.MAX_HR_MEASUREMENTS_GAP_MINUTES) {
                         heartrateEntries.add(createLineEntry(0, lastHrSampleIndex + 1));
                         heartrateEntries.add(createLineEntry(0, ts - 1));
                     }
 
-                    heartrateEntries.add(createLineEntry(sample.getHeartRate(), ts));
+                    heartrateEntries.add(createLineEntry(heartRate, ts));
                     lastHrSampleIndex = ts;
                 }
 
@@ -576,6 +594,19 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
         return new DefaultChartsData(lineData, xValueFormatter);
     }
 
+    /**
+     * Returns the number of points worth drawing in the given chart, see {@link SampleDownsampler}.
+     * May be called from a background thread.
+     */
+    protected int getMaxChartPoints(Chart chart) {
+        int width = chart.getWidth();
+        if (width <= 0) {
+            // not laid out yet
+            width = getResources().getDisplayMetrics().widthPixels;
+        }
+        return width * SampleDownsampler.POINTS_PER_PIXEL;
+    }
+
     /**
      * Implement this to supply the samples to be displayed.
      *
@@ -587,6 +618,14 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
      */
     protected abstract List<? extends ActivitySample> getSamples(DBHandler db, GBDevice device, int tsFrom, int tsTo);
 
+    /**
+     * Override this to supply the samples to be displayed in columnar form, which is cheaper
+     * for large numbers of samples. By default, the result of #getSamples() is converted.
+     */
+    protected SampleColumns getSampleColumns(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
+        return SampleColumns.of(getSamples(db, device, tsFrom, tsTo));
+    }
+
     protected abstract void setupLegend(Chart chart);
 
     protected Entry createLineEntry(float value, int xValue) {
@@ -644,6 +683,11 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
             super(task, context);
         }
 
+        @Override
+        protected boolean isReadOnly() {
+            return true;
+        }
+
         @Override
         protected void doInBackground(DBHandler db) {
             ChartsHost chartsHost = getChartsHost();
@@ -712,6 +756,33 @@ public abstract class AbstractChartFragment extends AbstractGBFragment {
         return samples;
     }
 
+    protected SampleColumns getSampleColumns(DBHandler db, GBDevice device) {
+        int tsStart = getTSStart();
+        int tsEnd = getTSEnd();
+        SampleColumns samples = getSampleColumns(db, device, tsStart, tsEnd);
+        ensureStartAndEndSamples(samples, getProvider(db, device), tsStart, tsEnd);
+        return samples;
+    }
+
+    /**
+     * Like #ensureStartAndEndSamples(List, int, int), but keeps the samples ordered.
+     */
+    protected void ensureStartAndEndSamples(SampleColumns samples, SampleProvider<?> provider, int tsStart, int tsEnd) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        int kind = provider.normalizeType(ActivitySample.NOT_MEASURED);
+        float intensity = provider.normalizeIntensity(ActivitySample.NOT_MEASURED);
+        if (samples.getTimestamp(samples.size() - 1) < tsEnd) {
+            samples.add(tsEnd, ActivitySample.NOT_MEASURED, kind, ActivitySample.NOT_MEASURED, intensity,
+                    ActivitySample.NOT_MEASURED, ActivitySample.NOT_MEASURED);
+        }
+        if (samples.getTimestamp(0) > tsStart) {
+            samples.insert(0, tsStart, ActivitySample.NOT_MEASURED, kind, ActivitySample.NOT_MEASURED, intensity,
+                    ActivitySample.NOT_MEASURED, ActivitySample.NOT_MEASURED);
+        }
+    }
+
     protected void ensureStartAndEndSamples(List<ActivitySample> samples, int tsStart, int tsEnd) {
         if (samples == null || samples.isEmpty()) {
             return;
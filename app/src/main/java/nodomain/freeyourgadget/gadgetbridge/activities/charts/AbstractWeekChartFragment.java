@@ -18,6 +18,7 @@
 package nodomain.freeyourgadget.gadgetbridge.activities.charts;
 
 import android.app.Activity;
+import android.content.Context;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.view.LayoutInflater;
@@ -43,17 +44,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
+import nodomain.freeyourgadget.gadgetbridge.database.ActivityRollups;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.entities.ActivityRollup;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
-import nodomain.freeyourgadget.gadgetbridge.util.LimitedQueue;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
+import nodomain.freeyourgadget.gadgetbridge.util.IntLruCache;
 
 
 public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
@@ -69,6 +76,18 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
 
     private int mOffsetHours = getOffsetHours();
 
+    @Override
+    protected RefreshTask createRefreshTask(String task, Context context) {
+        // missing activity rollups are stored, which requires the writable database; otherwise a
+        // rollup calculated from outdated samples could be stored after it had been invalidated
+        return new RefreshTask(task, context) {
+            @Override
+            protected boolean isReadOnly() {
+                return false;
+            }
+        };
+    }
+
     @Override
     protected ChartsData refreshInBackground(ChartsHost chartsHost, DBHandler db, GBDevice device) {
         Calendar day = Calendar.getInstance();
@@ -124,8 +143,9 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
         ArrayList<String> labels = new ArrayList<String>();
 
         long balance = 0;
+        ActivityAmounts[] amountsOfDays = getActivityAmountsForDays(db, day, TOTAL_DAYS, device);
         for (int counter = 0; counter < TOTAL_DAYS; counter++) {
-            ActivityAmounts amounts = getActivityAmountsForDay(db, day, device);
+            ActivityAmounts amounts = amountsOfDays[counter];
 
             balance += calculateBalance(amounts);
             entries.add(new BarEntry(counter, getTotalsForActivityAmounts(amounts)));
@@ -279,20 +299,21 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
         yAxisRight.setTextColor(CHART_TEXT_COLOR);
     }
 
-    private List<? extends ActivitySample> getSamplesOfDay(DBHandler db, Calendar day, int offsetHours, GBDevice device) {
-        int startTs;
-        int endTs;
+    private SampleColumns getSamplesOfDay(DBHandler db, Calendar day, int offsetHours, GBDevice device) {
+        int startTs = getStartOfDay(day, offsetHours);
+        int endTs = startTs + 24 * 60 * 60 - 1;
+
+        return getSampleColumns(db, device, startTs, endTs);
+    }
 
+    private int getStartOfDay(Calendar day, int offsetHours) {
         day = (Calendar) day.clone(); // do not modify the caller's argument
         day.set(Calendar.HOUR_OF_DAY, 0);
         day.set(Calendar.MINUTE, 0);
         day.set(Calendar.SECOND, 0);
         day.add(Calendar.HOUR, offsetHours);
 
-        startTs = (int) (day.getTimeInMillis() / 1000);
-        endTs = startTs + 24 * 60 * 60 - 1;
-
-        return getSamples(db, device, startTs, endTs);
+        return (int) (day.getTimeInMillis() / 1000);
     }
 
     @Override
@@ -300,6 +321,11 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
         return super.getAllSamples(db, device, tsFrom, tsTo);
     }
 
+    @Override
+    protected SampleColumns getSampleColumns(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
+        return super.getAllSampleColumns(db, device, tsFrom, tsTo);
+    }
+
     private static class DayData {
         private final PieData data;
         private final CharSequence centerText;
@@ -329,26 +355,67 @@ public abstract class AbstractWeekChartFragment extends AbstractChartFragment {
     }
 
     private ActivityAmounts getActivityAmountsForDay(DBHandler db, Calendar day, GBDevice device) {
+        return getActivityAmountsForDays(db, day, 1, device)[0];
+    }
 
-        LimitedQueue activityAmountCache = null;
-        ActivityAmounts amounts = null;
-
+    /**
+     * Returns the activity amounts of the given number of consecutive days. Days that have
+     * already passed are read from the pre-aggregated activity rollups, all others are
+     * calculated from the samples.
+     */
+    private ActivityAmounts[] getActivityAmountsForDays(DBHandler db, Calendar firstDay, int days, GBDevice device) {
+        ActivityAmounts[] result = new ActivityAmounts[days];
+        Calendar[] missingDays = new Calendar[days];
+        int[] missingDayStarts = new int[days];
+        int[] missingIndexes = new int[days];
+        int missing = 0;
+
+        IntLruCache<ActivityAmounts> activityAmountCache = null;
         Activity activity = getActivity();
-        int key = (int) (day.getTimeInMillis() / 1000) + (mOffsetHours * 3600);
         if (activity != null) {
             activityAmountCache = ((ChartsActivity) activity).mActivityAmountCache;
-            amounts = (ActivityAmounts) (activityAmountCache.lookup(key));
         }
 
-        if (amounts == null) {
-            ActivityAnalysis analysis = new ActivityAnalysis();
-            amounts = analysis.calculateActivityAmounts(getSamplesOfDay(db, day, mOffsetHours, device));
+        Calendar day = (Calendar) firstDay.clone(); // do not modify the caller's argument
+        for (int i = 0; i < days; i++) {
+            int key = (int) (day.getTimeInMillis() / 1000) + (mOffsetHours * 3600);
+            if (activityAmountCache != null) {
+                result[i] = activityAmountCache.get(key);
+            }
+            if (result[i] == null) {
+                missingDays[missing] = (Calendar) day.clone();
+                missingDayStarts[missing] = getStartOfDay(day, mOffsetHours);
+                missingIndexes[missing] = i;
+                missing++;
+            }
+            day.add(Calendar.DATE, 1);
+        }
+        if (missing == 0) {
+            return result;
+        }
+
+        ActivityRollup[] rollups = new ActivityRollup[missing];
+        Device dbDevice = DBHelper.findDevice(device, db.getDaoSession());
+        if (dbDevice != null) {
+            rollups = ActivityRollups.getDailyRollups(getProvider(db, device), dbDevice, Arrays.copyOf(missingDayStarts, missing), db.getDaoSession());
+        }
+
+        for (int i = 0; i < missing; i++) {
+            ActivityAmounts amounts;
+            if (rollups[i] != null) {
+                amounts = ActivityRollups.toActivityAmounts(rollups[i]);
+            } else {
+                ActivityAnalysis analysis = new ActivityAnalysis();
+                amounts = analysis.calculateActivityAmounts(getSamplesOfDay(db, missingDays[i], mOffsetHours, device));
+            }
+            result[missingIndexes[i]] = amounts;
             if (activityAmountCache != null) {
-                activityAmountCache.add(key, amounts);
+                int key = (int) (missingDays[i].getTimeInMillis() / 1000) + (mOffsetHours * 3600);
+                activityAmountCache.put(key, amounts);
             }
         }
 
-        return amounts;
+        return result;
     }
 
     private int getRangeDays(){
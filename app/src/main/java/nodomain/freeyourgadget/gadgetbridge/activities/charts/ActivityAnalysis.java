@@ -27,6 +27,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmount;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
 
 class ActivityAnalysis {
     private static final Logger LOG = LoggerFactory.getLogger(ActivityAnalysis.class);
@@ -37,16 +38,26 @@ class ActivityAnalysis {
     private int maxSpeed = 0;
 
     ActivityAmounts calculateActivityAmounts(List<? extends ActivitySample> samples) {
+        return calculateActivityAmounts(SampleColumns.of(samples));
+    }
+
+    ActivityAmounts calculateActivityAmounts(SampleColumns samples) {
+        int[] timestamps = samples.timestamps();
+        int[] rawKinds = samples.rawKinds();
+        int[] kinds = samples.kinds();
+        int[] allSteps = samples.steps();
+
         ActivityAmount deepSleep = new ActivityAmount(ActivityKind.TYPE_DEEP_SLEEP);
         ActivityAmount lightSleep = new ActivityAmount(ActivityKind.TYPE_LIGHT_SLEEP);
         ActivityAmount notWorn = new ActivityAmount(ActivityKind.TYPE_NOT_WORN);
         ActivityAmount activity = new ActivityAmount(ActivityKind.TYPE_ACTIVITY);
 
         ActivityAmount previousAmount = null;
-        ActivitySample previousSample = null;
-        for (ActivitySample sample : samples) {
+        for (int i = 0; i < samples.size(); i++) {
+            int kind = kinds[i];
+            int timestamp = timestamps[i];
             ActivityAmount amount;
-            switch (sample.getKind()) {
+            switch (kind) {
                 case ActivityKind.TYPE_DEEP_SLEEP:
                     amount = deepSleep;
                     break;
@@ -62,14 +73,14 @@ class ActivityAnalysis {
                     break;
             }
 
-            int steps = sample.getSteps();
+            int steps = allSteps[i];
             if (steps > 0) {
                 amount.addSteps(steps);
             }
 
-            if (previousSample != null) {
-                long timeDifference = sample.getTimestamp() - previousSample.getTimestamp();
-                if (previousSample.getRawKind() == sample.getRawKind()) {
+            if (i > 0) {
+                long timeDifference = timestamp - timestamps[i - 1];
+                if (rawKinds[i - 1] == rawKinds[i]) {
                     amount.addSeconds(timeDifference);
                 } else {
                     long sharedTimeDifference = (long) (timeDifference / 2.0f);
@@ -78,7 +89,7 @@ class ActivityAnalysis {
                 }
 
                 // add time
-                if (steps > 0 && sample.getKind() == ActivityKind.TYPE_ACTIVITY) {
+                if (steps > 0 && kind == ActivityKind.TYPE_ACTIVITY) {
                     if (steps > maxSpeed) {
                         maxSpeed = steps;
                     }
@@ -94,11 +105,10 @@ class ActivityAnalysis {
                 }
             }
 
-            amount.setStartDate(sample.getTimestamp());
-            amount.setEndDate(sample.getTimestamp());
+            amount.setStartDate(timestamp);
+            amount.setEndDate(timestamp);
 
             previousAmount = amount;
-            previousSample = sample;
         }
 
         ActivityAmounts result = new ActivityAmounts();
@@ -126,4 +136,16 @@ class ActivityAnalysis {
         }
         return totalSteps;
     }
+
+    int calculateTotalSteps(SampleColumns samples) {
+        int[] allSteps = samples.steps();
+        int totalSteps = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            int steps = allSteps[i];
+            if (steps > 0) {
+                totalSteps += steps;
+            }
+        }
+        return totalSteps;
+    }
 }
@@ -19,10 +19,13 @@ package nodomain.freeyourgadget.gadgetbridge.activities.charts;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import androidx.fragment.app.FragmentActivity;
 
 import com.github.mikephil.charting.animation.Easing;
 import com.github.mikephil.charting.charts.Chart;
@@ -32,6 +35,8 @@ import com.github.mikephil.charting.components.LegendEntry;
 import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.components.YAxis;
 import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,9 +46,11 @@ import java.util.List;
 
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
+import nodomain.freeyourgadget.gadgetbridge.database.DBAccess;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
 
 
 public class ActivitySleepChartFragment extends AbstractChartFragment {
@@ -56,6 +63,13 @@ public class ActivitySleepChartFragment extends AbstractChartFragment {
     private int mTimestampFrom = -1;
     private int mSmartAlarmGoneOff = -1;
 
+    /**
+     * The downsampled samples of the whole time span, and the resolution they were reduced to.
+     */
+    private volatile SampleColumns mOverviewSamples;
+    private volatile int mOverviewBucketSeconds;
+    private DetailTask mDetailTask;
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -107,6 +121,45 @@ public class ActivitySleepChartFragment extends AbstractChartFragment {
         yAxisRight.setAxisMaximum(HeartRateUtils.getInstance().getMaxHeartRate());
         yAxisRight.setAxisMinimum(HeartRateUtils.getInstance().getMinHeartRate());
 
+        mChart.setOnChartGestureListener(new OnChartGestureListener() {
+            @Override
+            public void onChartGestureStart(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+            }
+
+            @Override
+            public void onChartGestureEnd(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+                if (lastPerformedGesture == ChartTouchListener.ChartGesture.PINCH_ZOOM
+                        || lastPerformedGesture == ChartTouchListener.ChartGesture.DRAG
+                        || lastPerformedGesture == ChartTouchListener.ChartGesture.DOUBLE_TAP) {
+                    loadVisibleDetails();
+                }
+            }
+
+            @Override
+            public void onChartLongPressed(MotionEvent me) {
+            }
+
+            @Override
+            public void onChartDoubleTapped(MotionEvent me) {
+            }
+
+            @Override
+            public void onChartSingleTapped(MotionEvent me) {
+            }
+
+            @Override
+            public void onChartFling(MotionEvent me1, MotionEvent me2, float velocityX, float velocityY) {
+            }
+
+            @Override
+            public void onChartScale(MotionEvent me, float scaleX, float scaleY) {
+            }
+
+            @Override
+            public void onChartTranslate(MotionEvent me, float dX, float dY) {
+            }
+        });
+
         // refresh immediately instead of use refreshIfVisible(), for perceived performance
         refresh();
     }
@@ -128,8 +181,42 @@ public class ActivitySleepChartFragment extends AbstractChartFragment {
 
     @Override
     protected ChartsData refreshInBackground(ChartsHost chartsHost, DBHandler db, GBDevice device) {
-        List<? extends ActivitySample> samples = getSamples(db, device);
-        return refresh(device, samples);
+        SampleColumns samples = getSampleColumns(db, device);
+        int maxPoints = getMaxChartPoints(mChart);
+        SampleColumns overview = SampleDownsampler.downsample(samples, maxPoints);
+        if (!samples.isEmpty()) {
+            mOverviewBucketSeconds = SampleDownsampler.getBucketSeconds(samples.getTimestamp(0), samples.getTimestamp(samples.size() - 1), maxPoints);
+        }
+        mOverviewSamples = overview;
+        LOG.debug("Drawing " + overview.size() + " of " + samples.size() + " samples");
+        return refresh(device, overview);
+    }
+
+    /**
+     * Reloads the visible part of the chart in higher resolution, if the overview is too coarse for it.
+     */
+    private void loadVisibleDetails() {
+        SampleColumns overview = mOverviewSamples;
+        if (overview == null || overview.size() < 3) {
+            return;
+        }
+        int firstTimestamp = overview.getTimestamp(0);
+        // keep the first and last overview points, they define the time span of the chart
+        int tsFrom = Math.max(firstTimestamp + (int) mChart.getLowestVisibleX(), firstTimestamp + 1);
+        int tsTo = Math.min(firstTimestamp + (int) Math.ceil(mChart.getHighestVisibleX()), overview.getTimestamp(overview.size() - 1) - 1);
+        if (tsFrom > tsTo) {
+            return;
+        }
+        int maxPoints = getMaxChartPoints(mChart);
+        if (SampleDownsampler.getBucketSeconds(tsFrom, tsTo, maxPoints) >= mOverviewBucketSeconds) {
+            // the overview is already detailed enough
+            return;
+        }
+        if (mDetailTask != null && mDetailTask.getStatus() != AsyncTask.Status.FINISHED) {
+            mDetailTask.cancel(true);
+        }
+        mDetailTask = new DetailTask(getActivity(), overview, tsFrom, tsTo, maxPoints);
+        mDetailTask.execute();
     }
 
     @Override
@@ -186,4 +273,56 @@ public class ActivitySleepChartFragment extends AbstractChartFragment {
     protected List<? extends ActivitySample> getSamples(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
         return getAllSamples(db, device, tsFrom, tsTo);
     }
+
+    /**
+     * Loads the samples of the visible time span and merges them into the overview.
+     */
+    private class DetailTask extends DBAccess {
+        private final SampleColumns overview;
+        private final int tsFrom;
+        private final int tsTo;
+        private final int maxPoints;
+        private ChartsData chartsData;
+
+        DetailTask(Context context, SampleColumns overview, int tsFrom, int tsTo, int maxPoints) {
+            super("Loading chart details", context);
+            this.overview = overview;
+            this.tsFrom = tsFrom;
+            this.tsTo = tsTo;
+            this.maxPoints = maxPoints;
+        }
+
+        @Override
+        protected boolean isReadOnly() {
+            return true;
+        }
+
+        @Override
+        protected void doInBackground(DBHandler db) {
+            ChartsHost chartsHost = getChartsHost();
+            if (chartsHost == null || overview != mOverviewSamples) {
+                cancel(true);
+                return;
+            }
+            GBDevice device = chartsHost.getDevice();
+            SampleColumns details = SampleDownsampler.downsample(getAllSampleColumns(db, device, tsFrom, tsTo), maxPoints);
+            chartsData = refresh(device, SampleDownsampler.replaceRange(overview, details, tsFrom, tsTo));
+        }
+
+        @Override
+        protected void onPostExecute(Object o) {
+            super.onPostExecute(o);
+            FragmentActivity activity = getActivity();
+            if (chartsData != null && overview == mOverviewSamples && activity != null && !activity.isFinishing()) {
+                // keeps the current zoom and position
+                updateChartsnUIThread(chartsData);
+                mChart.invalidate();
+            }
+        }
+    }
+
+    @Override
+    protected SampleColumns getSampleColumns(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
+        return getAllSampleColumns(db, device, tsFrom, tsTo);
+    }
 }
@@ -49,11 +49,12 @@ import nodomain.freeyourgadget.gadgetbridge.activities.AbstractFragmentPagerAdap
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractGBFragmentActivity;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 import nodomain.freeyourgadget.gadgetbridge.model.RecordedDataTypes;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
-import nodomain.freeyourgadget.gadgetbridge.util.LimitedQueue;
+import nodomain.freeyourgadget.gadgetbridge.util.IntLruCache;
 
 public class ChartsActivity extends AbstractGBFragmentActivity implements ChartsHost {
 
@@ -63,7 +64,7 @@ public class ChartsActivity extends AbstractGBFragmentActivity implements Charts
     private Date mEndDate;
     private SwipeRefreshLayout swipeLayout;
 
-    LimitedQueue mActivityAmountCache = new LimitedQueue(60);
+    final IntLruCache<ActivityAmounts> mActivityAmountCache = new IntLruCache<>(60);
 
     private static class ShowDurationDialog extends Dialog {
         private final String mDuration;
@@ -17,10 +17,6 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.activities.charts;
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.graphics.Paint;
 import android.os.Bundle;
 import android.view.LayoutInflater;
@@ -55,7 +51,6 @@ import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.Nullable;
 import androidx.fragment.app.FragmentActivity;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
@@ -63,7 +58,7 @@ import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
-import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
+import nodomain.freeyourgadget.gadgetbridge.service.RealtimeSampleStream;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
 public class LiveActivityFragment extends AbstractChartFragment {
@@ -71,6 +66,7 @@ public class LiveActivityFragment extends AbstractChartFragment {
     private static final int MAX_STEPS_PER_MINUTE = 300;
     private static final int MIN_STEPS_PER_MINUTE = 60;
     private static final int RESET_COUNT = 10; // reset the max steps per minute value every 10s
+    private static final int REPLAY_SECONDS = 60; // show the last minute again when recreated
 
     private BarEntry totalStepsEntry;
     private BarEntry stepsPerMinuteEntry;
@@ -154,36 +150,22 @@ public class LiveActivityFragment extends AbstractChartFragment {
         }
     }
 
-    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+    private final RealtimeSampleStream.Subscriber mSubscriber = new RealtimeSampleStream.Subscriber() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-            switch (action) {
-                case DeviceService.ACTION_REALTIME_SAMPLES: {
-                    ActivitySample sample = (ActivitySample) intent.getSerializableExtra(DeviceService.EXTRA_REALTIME_SAMPLE);
-                    addSample(sample);
-                    break;
-                }
-            }
+        public void onRealtimeSample(String deviceAddress, int timestamp, int heartRate, int steps) {
+            addSample(tsTranslation.shorten(timestamp), heartRate, steps);
         }
     };
 
-    private void addSample(ActivitySample sample) {
-        int heartRate = sample.getHeartRate();
-        int timestamp = tsTranslation.shorten(sample.getTimestamp());
+    private void addSample(int timestamp, int heartRate, int steps) {
         if (HeartRateUtils.getInstance().isValidHeartRateValue(heartRate)) {
             setCurrentHeartRate(heartRate, timestamp);
         }
-        int steps = sample.getSteps();
         if (steps > 0) {
             addEntries(steps, timestamp);
         }
     }
 
-    private int translateTimestampFrom(Intent intent) {
-        return translateTimestamp(intent.getLongExtra(DeviceService.EXTRA_TIMESTAMP, System.currentTimeMillis()));
-    }
-
     private int translateTimestamp(long tsMillis) {
         int timestamp = (int) (tsMillis / 1000); // translate to seconds
         return tsTranslation.shorten(timestamp); // and shorten
@@ -263,8 +245,6 @@ public class LiveActivityFragment extends AbstractChartFragment {
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        IntentFilter filterLocal = new IntentFilter();
-        filterLocal.addAction(DeviceService.ACTION_REALTIME_SAMPLES);
         tsTranslation = new TimestampTranslation();
 
         View rootView = inflater.inflate(R.layout.fragment_live_activity, container, false);
@@ -285,7 +265,7 @@ public class LiveActivityFragment extends AbstractChartFragment {
         setupHistoryChart(mStepsPerMinuteHistoryChart);
         mMaxHeartRateView = rootView.findViewById(R.id.livechart_max_heart_rate);
 
-        LocalBroadcastManager.getInstance(getActivity()).registerReceiver(mReceiver, filterLocal);
+        RealtimeSampleStream.getInstance().subscribe(mSubscriber, REPLAY_SECONDS);
 
         return rootView;
     }
@@ -390,7 +370,7 @@ public class LiveActivityFragment extends AbstractChartFragment {
     @Override
     public void onDestroyView() {
         onMadeInvisibleInActivity();
-        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(mReceiver);
+        RealtimeSampleStream.getInstance().unsubscribe(mSubscriber);
         super.onDestroyView();
     }
 
@@ -0,0 +1,199 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.activities.charts;
+
+import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
+
+/**
+ * Reduces the number of samples to be drawn in a chart to about what the chart can display.
+ * <p/>
+ * The time span of the samples is split into buckets of equal length. Within each bucket, all
+ * consecutive samples of the same activity kind are merged into one point, so that the kind
+ * transitions stay exact. A merged point starts at its first sample, has the maximum intensity
+ * and the sum of the steps of its samples. The heart rate is reduced separately with
+ * "Largest Triangle Three Buckets", which selects one measurement per bucket and preserves
+ * the visual shape of the curve, including its peaks. The first and the last sample are
+ * always kept, so that the time span does not change.
+ * <p/>
+ * The result is only meant for drawing, the analysis must use the full samples.
+ */
+public class SampleDownsampler {
+    /**
+     * Drawing more than about two points per pixel does not make any visible difference.
+     */
+    public static final int POINTS_PER_PIXEL = 2;
+
+    /**
+     * Returns the bucket length in seconds to reduce the given time span to the given number of points.
+     */
+    public static int getBucketSeconds(int tsFrom, int tsTo, int maxPoints) {
+        long span = (long) tsTo - tsFrom + 1;
+        return (int) Math.max(1, (span + maxPoints - 1) / Math.max(1, maxPoints));
+    }
+
+    /**
+     * Reduces the given samples to about the given number of points, plus the kind transitions.
+     *
+     * @return the reduced samples, or the given ones if they do not need to be reduced
+     */
+    public static SampleColumns downsample(SampleColumns samples, int maxPoints) {
+        int size = samples.size();
+        if (size <= maxPoints || size < 3) {
+            return samples;
+        }
+        int[] timestamps = samples.timestamps();
+        int[] rawKinds = samples.rawKinds();
+        int[] kinds = samples.kinds();
+        int[] rawIntensities = samples.rawIntensities();
+        float[] intensities = samples.intensities();
+        int[] steps = samples.steps();
+
+        int firstTimestamp = timestamps[0];
+        int bucketSeconds = getBucketSeconds(firstTimestamp, timestamps[size - 1], maxPoints);
+        SampleColumns result = new SampleColumns(maxPoints + maxPoints / 4);
+        // the index of the point that each sample has been merged into
+        int[] pointOfSample = new int[size];
+
+        int currentBucket = -1;
+        int currentKind = 0;
+        for (int i = 0; i < size; i++) {
+            int bucket = (timestamps[i] - firstTimestamp) / bucketSeconds;
+            if (bucket != currentBucket || kinds[i] != currentKind || i == size - 1) {
+                result.add(timestamps[i], rawKinds[i], kinds[i], rawIntensities[i], intensities[i], steps[i], ActivitySample.NOT_MEASURED);
+                currentBucket = bucket;
+                currentKind = kinds[i];
+            } else {
+                int point = result.size() - 1;
+                if (intensities[i] > result.getIntensity(point)) {
+                    result.setIntensity(point, rawIntensities[i], intensities[i]);
+                }
+                if (steps[i] > 0) {
+                    result.setSteps(point, Math.max(0, result.getSteps(point)) + steps[i]);
+                }
+            }
+            pointOfSample[i] = result.size() - 1;
+        }
+
+        selectHeartRates(samples, firstTimestamp, bucketSeconds, result, pointOfSample);
+        return result;
+    }
+
+    /**
+     * Returns the given coarse samples, with those between tsFrom and tsTo replaced by the
+     * given detailed samples. Used to show a zoomed-in time span in full resolution, while
+     * keeping the rest of the chart.
+     */
+    public static SampleColumns replaceRange(SampleColumns coarse, SampleColumns detail, int tsFrom, int tsTo) {
+        SampleColumns result = new SampleColumns(coarse.size() + detail.size());
+        int i = 0;
+        while (i < coarse.size() && coarse.getTimestamp(i) < tsFrom) {
+            result.add(coarse, i++);
+        }
+        for (int j = 0; j < detail.size(); j++) {
+            result.add(detail, j);
+        }
+        while (i < coarse.size() && coarse.getTimestamp(i) <= tsTo) {
+            i++;
+        }
+        while (i < coarse.size()) {
+            result.add(coarse, i++);
+        }
+        return result;
+    }
+
+    /**
+     * Largest Triangle Three Buckets over the valid heart rate measurements, using the same
+     * time buckets as the points, so that each point gets at most one heart rate.
+     */
+    private static void selectHeartRates(SampleColumns samples, int firstTimestamp, int bucketSeconds,
+                                         SampleColumns result, int[] pointOfSample) {
+        int[] timestamps = samples.timestamps();
+        int[] heartRates = samples.heartRates();
+        HeartRateUtils heartRateUtils = HeartRateUtils.getInstance();
+
+        int size = samples.size();
+        int[] valid = new int[size];
+        int validCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (heartRateUtils.isValidHeartRateValue(heartRates[i])) {
+                valid[validCount++] = i;
+            }
+        }
+        if (validCount == 0) {
+            return;
+        }
+
+        // the start (in valid) of each non-empty bucket, plus the end
+        int[] bucketStarts = new int[validCount + 1];
+        int bucketCount = 0;
+        int previousBucket = -1;
+        for (int v = 0; v < validCount; v++) {
+            int bucket = (timestamps[valid[v]] - firstTimestamp) / bucketSeconds;
+            if (bucket != previousBucket) {
+                bucketStarts[bucketCount++] = v;
+                previousBucket = bucket;
+            }
+        }
+        bucketStarts[bucketCount] = validCount;
+
+        // always keep the first measurement
+        int selected = valid[0];
+        setHeartRate(result, pointOfSample, selected, heartRates[selected]);
+        for (int b = 1; b < bucketCount; b++) {
+            int start = bucketStarts[b];
+            int end = bucketStarts[b + 1];
+            int best;
+            if (b == bucketCount - 1) {
+                // always keep the last measurement
+                best = valid[end - 1];
+            } else {
+                // the average of the next bucket is the third corner of the triangle
+                int nextEnd = bucketStarts[b + 2];
+                double nextTimestamp = 0;
+                double nextHeartRate = 0;
+                for (int v = end; v < nextEnd; v++) {
+                    nextTimestamp += timestamps[valid[v]] - firstTimestamp;
+                    nextHeartRate += heartRates[valid[v]];
+                }
+                nextTimestamp /= nextEnd - end;
+                nextHeartRate /= nextEnd - end;
+
+                double selectedTimestamp = timestamps[selected] - firstTimestamp;
+                double selectedHeartRate = heartRates[selected];
+                best = valid[start];
+                double maxArea = -1;
+                for (int v = start; v < end; v++) {
+                    int index = valid[v];
+                    double area = Math.abs((selectedTimestamp - nextTimestamp) * (heartRates[index] - selectedHeartRate)
+                            - (selectedTimestamp - (timestamps[index] - firstTimestamp)) * (nextHeartRate - selectedHeartRate));
+                    if (area > maxArea) {
+                        maxArea = area;
+                        best = index;
+                    }
+                }
+            }
+            setHeartRate(result, pointOfSample, best, heartRates[best]);
+            selected = best;
+        }
+    }
+
+    private static void setHeartRate(SampleColumns result, int[] pointOfSample, int sampleIndex, int heartRate) {
+        result.setHeartRate(pointOfSample[sampleIndex], heartRate);
+    }
+}
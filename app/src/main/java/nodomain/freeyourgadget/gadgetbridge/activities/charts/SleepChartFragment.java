@@ -56,6 +56,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmount;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
 
 
@@ -73,15 +74,16 @@ public class SleepChartFragment extends AbstractChartFragment {
 
     @Override
     protected ChartsData refreshInBackground(ChartsHost chartsHost, DBHandler db, GBDevice device) {
-        List<? extends ActivitySample> samples = getSamples(db, device);
+        SampleColumns samples = getSampleColumns(db, device);
 
         MySleepChartsData mySleepChartsData = refreshSleepAmounts(device, samples);
-        DefaultChartsData chartsData = refresh(device, samples);
+        // the analysis above needs all samples, the chart only as many as it can show
+        DefaultChartsData chartsData = refresh(device, SampleDownsampler.downsample(samples, getMaxChartPoints(mActivityChart)));
 
         return new MyChartsData(mySleepChartsData, chartsData);
     }
 
-    private MySleepChartsData refreshSleepAmounts(GBDevice mGBDevice, List<? extends ActivitySample> samples) {
+    private MySleepChartsData refreshSleepAmounts(GBDevice mGBDevice, SampleColumns samples) {
         ActivityAnalysis analysis = new ActivityAnalysis();
         ActivityAmounts amounts = analysis.calculateActivityAmounts(samples);
         PieData data = new PieData();
@@ -266,6 +268,11 @@ public class SleepChartFragment extends AbstractChartFragment {
         return super.getAllSamples(db, device, tsFrom, tsTo);
     }
 
+    @Override
+    protected SampleColumns getSampleColumns(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
+        return super.getAllSampleColumns(db, device, tsFrom, tsTo);
+    }
+
     @Override
     protected void renderCharts() {
         mActivityChart.animateX(ANIM_TIME, Easing.EaseInOutQuart);
@@ -42,6 +42,7 @@ import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
 
 
@@ -52,14 +53,14 @@ public class SpeedZonesFragment extends AbstractChartFragment {
 
     @Override
     protected ChartsData refreshInBackground(ChartsHost chartsHost, DBHandler db, GBDevice device) {
-        List<? extends ActivitySample> samples = getSamples(db, device);
+        SampleColumns samples = getSampleColumns(db, device);
 
         MySpeedZonesData mySpeedZonesData = refreshStats(samples);
 
         return new MyChartsData(mySpeedZonesData);
     }
 
-    private MySpeedZonesData refreshStats(List<? extends ActivitySample> samples) {
+    private MySpeedZonesData refreshStats(SampleColumns samples) {
         ActivityAnalysis analysis = new ActivityAnalysis();
         analysis.calculateActivityAmounts(samples);
         BarData data = new BarData();
@@ -138,6 +139,11 @@ public class SpeedZonesFragment extends AbstractChartFragment {
         return super.getAllSamples(db, device, tsFrom, tsTo);
     }
 
+    @Override
+    protected SampleColumns getSampleColumns(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
+        return super.getAllSampleColumns(db, device, tsFrom, tsTo);
+    }
+
     @Override
     protected void setupLegend(Chart chart) {
         // no legend here, it is all about the steps here
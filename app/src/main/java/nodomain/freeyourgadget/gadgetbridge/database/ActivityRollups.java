@@ -0,0 +1,353 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import de.greenrobot.dao.query.QueryBuilder;
+import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.ActivityRollup;
+import nodomain.freeyourgadget.gadgetbridge.entities.ActivityRollupDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmount;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
+
+/**
+ * Maintains the {@link ActivityRollup} table, which holds pre-aggregated hourly and daily
+ * activity data per device, so that charts over long time ranges do not need to read
+ * every single sample.
+ * <p/>
+ * Hourly rollups are recalculated whenever a batch of samples is added through a
+ * {@link SampleProvider}. Daily rollups are derived from the hourly ones when they are
+ * first requested, and discarded whenever an hour of that day changes. Rollups are only
+ * stored for time spans that have already passed; missing ones are calculated from the
+ * samples on demand, which also takes care of databases that existed before.
+ * <p/>
+ * Durations and steps are attributed like in ActivityAnalysis: steps count for the kind of
+ * their sample, the time between two samples counts for the later one, and is split in half
+ * if the kind changes. Whoever changes the kind of stored samples without adding samples,
+ * e.g. by storing activity overlays, has to {@link #invalidate(Device, int, int, DaoSession)}
+ * the affected time span.
+ */
+public class ActivityRollups {
+    private static final Logger LOG = LoggerFactory.getLogger(ActivityRollups.class);
+
+    public static final int PERIOD_HOUR = 60 * 60;
+    public static final int PERIOD_DAY = 24 * PERIOD_HOUR;
+
+    private ActivityRollups() {
+    }
+
+    /**
+     * Recalculates the hourly rollups affected by samples in the given time span
+     * and discards the overlapping daily rollups. Must be called after the samples
+     * have been stored.
+     */
+    public static void update(@NonNull SampleProvider<?> provider, long deviceId, int tsFrom, int tsTo, @NonNull DaoSession session) {
+        int firstHour = floor(tsFrom, PERIOD_HOUR);
+        // the last sample also accounts for the time until the first sample of the next hour
+        int hours = (floor(tsTo, PERIOD_HOUR) - firstHour) / PERIOD_HOUR + 2;
+        ActivityRollup[] rollups = calculateHourlyRollups(provider, deviceId, firstHour, hours);
+        storeRollups(rollups, session);
+        deleteRollups(deviceId, PERIOD_DAY, firstHour - PERIOD_DAY + 1, firstHour + hours * PERIOD_HOUR - 1, session);
+    }
+
+    /**
+     * Discards the rollups containing the given timestamp, so that they will be recalculated
+     * when needed. Meant for single samples, e.g. realtime ones.
+     */
+    public static void invalidate(long deviceId, int timestamp, @NonNull DaoSession session) {
+        int hour = floor(timestamp, PERIOD_HOUR);
+        int now = (int) (System.currentTimeMillis() / 1000);
+        if (hour + PERIOD_HOUR > now) {
+            // rollups are only stored for passed time spans, so there is none for this hour
+            // or its day, which spares a delete per realtime sample
+            return;
+        }
+        deleteRollups(deviceId, PERIOD_HOUR, hour, hour, session);
+        deleteRollups(deviceId, PERIOD_DAY, hour - PERIOD_DAY + 1, hour, session);
+    }
+
+    /**
+     * Discards the rollups overlapping the given time span, so that they will be recalculated
+     * when needed. Meant for changes that do not come with samples, like activity overlays,
+     * which change the kind of the samples they cover.
+     */
+    public static void invalidate(@NonNull Device device, int tsFrom, int tsTo, @NonNull DaoSession session) {
+        int firstHour = floor(tsFrom, PERIOD_HOUR);
+        // the first sample after the span shares its time with the last one in it
+        int lastHour = floor(tsTo, PERIOD_HOUR) + PERIOD_HOUR;
+        deleteRollups(device.getId(), PERIOD_HOUR, firstHour, lastHour, session);
+        deleteRollups(device.getId(), PERIOD_DAY, firstHour - PERIOD_DAY + 1, lastHour, session);
+    }
+
+    public static void deleteAll(@NonNull Device device, @NonNull DaoSession session) {
+        QueryBuilder<?> qb = session.getActivityRollupDao().queryBuilder();
+        qb.where(ActivityRollupDao.Properties.DeviceId.eq(device.getId())).buildDelete().executeDeleteWithoutDetachingEntities();
+    }
+
+    /**
+     * Returns the daily rollups for the days starting at the given timestamps. Missing rollups
+     * are calculated from the hourly ones, which in turn are calculated from the samples if
+     * necessary. The calculated rollups are stored, so the session must be the writable one of
+     * {@link nodomain.freeyourgadget.gadgetbridge.GBApplication#acquireDB()}, never a read-only one.
+     *
+     * @param dayStarts the start timestamps of the days, in ascending order
+     * @return the rollups in the same order as dayStarts; an element is null if the day has not
+     * yet passed or does not start at a full hour, so it has to be calculated from the samples
+     */
+    public static ActivityRollup[] getDailyRollups(@NonNull SampleProvider<?> provider, @NonNull Device device, int[] dayStarts, @NonNull DaoSession session) {
+        ActivityRollup[] result = new ActivityRollup[dayStarts.length];
+        if (dayStarts.length == 0) {
+            return result;
+        }
+        int now = (int) (System.currentTimeMillis() / 1000);
+        List<ActivityRollup> stored = loadRollups(device.getId(), PERIOD_DAY, dayStarts[0], dayStarts[dayStarts.length - 1], session);
+        int storedIndex = 0;
+        List<ActivityRollup> calculated = new ArrayList<>();
+        for (int i = 0; i < dayStarts.length; i++) {
+            int dayStart = dayStarts[i];
+            while (storedIndex < stored.size() && stored.get(storedIndex).getTimestamp() < dayStart) {
+                storedIndex++;
+            }
+            if (storedIndex < stored.size() && stored.get(storedIndex).getTimestamp() == dayStart) {
+                result[i] = stored.get(storedIndex);
+                continue;
+            }
+            if (dayStart % PERIOD_HOUR != 0 || dayStart + PERIOD_DAY > now) {
+                continue;
+            }
+            ActivityRollup day = createRollup(device.getId(), dayStart, PERIOD_DAY);
+            for (ActivityRollup hour : getHourlyRollups(provider, device, dayStart, PERIOD_DAY / PERIOD_HOUR, session)) {
+                add(day, hour);
+            }
+            result[i] = day;
+            calculated.add(day);
+        }
+        if (!calculated.isEmpty()) {
+            LOG.info("Calculated " + calculated.size() + " daily rollups for device " + device.getIdentifier());
+            session.getActivityRollupDao().insertOrReplaceInTx(calculated);
+        }
+        return result;
+    }
+
+    /**
+     * Converts the given rollup to the activity amounts as they would have been calculated
+     * from the samples by ActivityAnalysis, without start and end dates.
+     */
+    @NonNull
+    public static ActivityAmounts toActivityAmounts(@NonNull ActivityRollup rollup) {
+        ActivityAmounts result = new ActivityAmounts();
+        addAmount(result, ActivityKind.TYPE_DEEP_SLEEP, rollup.getDeepSleepSeconds(), rollup.getDeepSleepSteps());
+        addAmount(result, ActivityKind.TYPE_LIGHT_SLEEP, rollup.getLightSleepSeconds(), rollup.getLightSleepSteps());
+        addAmount(result, ActivityKind.TYPE_ACTIVITY, rollup.getActivitySeconds(), rollup.getActivitySteps());
+        result.calculatePercentages();
+        return result;
+    }
+
+    private static void addAmount(ActivityAmounts amounts, int kind, int seconds, int steps) {
+        // like ActivityAnalysis, only kinds with a duration are reported
+        if (seconds > 0) {
+            ActivityAmount amount = new ActivityAmount(kind);
+            amount.addSeconds(seconds);
+            amount.addSteps(steps);
+            amounts.addAmount(amount);
+        }
+    }
+
+    private static List<ActivityRollup> getHourlyRollups(SampleProvider<?> provider, Device device, int firstHour, int hours, DaoSession session) {
+        List<ActivityRollup> stored = loadRollups(device.getId(), PERIOD_HOUR, firstHour, firstHour + (hours - 1) * PERIOD_HOUR, session);
+        if (stored.size() == hours) {
+            return stored;
+        }
+        // backfill: calculate the whole span at once, hours are cheap compared to the sample query
+        ActivityRollup[] calculated = calculateHourlyRollups(provider, device.getId(), firstHour, hours);
+        storeRollups(calculated, session);
+        List<ActivityRollup> result = new ArrayList<>(hours);
+        for (ActivityRollup rollup : calculated) {
+            result.add(rollup);
+        }
+        return result;
+    }
+
+    private static ActivityRollup[] calculateHourlyRollups(SampleProvider<?> provider, long deviceId, int firstHour, int hours) {
+        ActivityRollup[] rollups = new ActivityRollup[hours];
+        for (int i = 0; i < hours; i++) {
+            rollups[i] = createRollup(deviceId, firstHour + i * PERIOD_HOUR, PERIOD_HOUR);
+        }
+        int end = firstHour + hours * PERIOD_HOUR;
+        SampleColumns samples = provider.getAllActivitySampleColumns(firstHour - PERIOD_HOUR, end - 1);
+        int[] timestamps = samples.timestamps();
+        int[] rawKinds = samples.rawKinds();
+        int[] kinds = samples.kinds();
+        int[] allSteps = samples.steps();
+        int[] heartRates = samples.heartRates();
+        HeartRateUtils heartRateUtils = HeartRateUtils.getInstance();
+
+        for (int i = 0; i < samples.size(); i++) {
+            int timestamp = timestamps[i];
+            if (timestamp >= firstHour && timestamp < end) {
+                ActivityRollup rollup = rollups[(timestamp - firstHour) / PERIOD_HOUR];
+                int steps = allSteps[i];
+                if (steps > 0) {
+                    addSteps(rollup, kinds[i], steps);
+                }
+                int heartRate = heartRates[i];
+                if (heartRateUtils.isValidHeartRateValue(heartRate)) {
+                    addHeartRate(rollup, heartRate, heartRate, heartRate, 1);
+                }
+                if (i > 0) {
+                    int timeDifference = timestamp - timestamps[i - 1];
+                    if (rawKinds[i - 1] == rawKinds[i]) {
+                        addSeconds(rollup, kinds[i], timeDifference);
+                    } else {
+                        int sharedTimeDifference = (int) (timeDifference / 2.0f);
+                        addSeconds(rollup, kinds[i - 1], sharedTimeDifference);
+                        addSeconds(rollup, kinds[i], sharedTimeDifference);
+                    }
+                }
+            }
+        }
+        return rollups;
+    }
+
+    private static void addSteps(ActivityRollup rollup, int kind, int steps) {
+        rollup.setSteps(rollup.getSteps() + steps);
+        switch (kind) {
+            case ActivityKind.TYPE_DEEP_SLEEP:
+                rollup.setDeepSleepSteps(rollup.getDeepSleepSteps() + steps);
+                break;
+            case ActivityKind.TYPE_LIGHT_SLEEP:
+                rollup.setLightSleepSteps(rollup.getLightSleepSteps() + steps);
+                break;
+            case ActivityKind.TYPE_NOT_WORN:
+                rollup.setNotWornSteps(rollup.getNotWornSteps() + steps);
+                break;
+            case ActivityKind.TYPE_ACTIVITY:
+            default:
+                rollup.setActivitySteps(rollup.getActivitySteps() + steps);
+                break;
+        }
+    }
+
+    private static void addSeconds(ActivityRollup rollup, int kind, int seconds) {
+        switch (kind) {
+            case ActivityKind.TYPE_DEEP_SLEEP:
+                rollup.setDeepSleepSeconds(rollup.getDeepSleepSeconds() + seconds);
+                break;
+            case ActivityKind.TYPE_LIGHT_SLEEP:
+                rollup.setLightSleepSeconds(rollup.getLightSleepSeconds() + seconds);
+                break;
+            case ActivityKind.TYPE_NOT_WORN:
+                rollup.setNotWornSeconds(rollup.getNotWornSeconds() + seconds);
+                break;
+            case ActivityKind.TYPE_ACTIVITY:
+            default:
+                rollup.setActivitySeconds(rollup.getActivitySeconds() + seconds);
+                break;
+        }
+    }
+
+    private static void addHeartRate(ActivityRollup rollup, int min, int max, int average, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int previousCount = rollup.getHeartRateCount();
+        if (previousCount == 0) {
+            rollup.setHeartRateMin(min);
+            rollup.setHeartRateMax(max);
+            rollup.setHeartRateAverage(average);
+        } else {
+            rollup.setHeartRateMin(Math.min(rollup.getHeartRateMin(), min));
+            rollup.setHeartRateMax(Math.max(rollup.getHeartRateMax(), max));
+            long sum = (long) rollup.getHeartRateAverage() * previousCount + (long) average * count;
+            rollup.setHeartRateAverage((int) (sum / (previousCount + count)));
+        }
+        rollup.setHeartRateCount(previousCount + count);
+    }
+
+    private static void add(ActivityRollup target, ActivityRollup source) {
+        target.setSteps(target.getSteps() + source.getSteps());
+        target.setActivitySeconds(target.getActivitySeconds() + source.getActivitySeconds());
+        target.setActivitySteps(target.getActivitySteps() + source.getActivitySteps());
+        target.setLightSleepSeconds(target.getLightSleepSeconds() + source.getLightSleepSeconds());
+        target.setLightSleepSteps(target.getLightSleepSteps() + source.getLightSleepSteps());
+        target.setDeepSleepSeconds(target.getDeepSleepSeconds() + source.getDeepSleepSeconds());
+        target.setDeepSleepSteps(target.getDeepSleepSteps() + source.getDeepSleepSteps());
+        target.setNotWornSeconds(target.getNotWornSeconds() + source.getNotWornSeconds());
+        target.setNotWornSteps(target.getNotWornSteps() + source.getNotWornSteps());
+        addHeartRate(target, source.getHeartRateMin(), source.getHeartRateMax(), source.getHeartRateAverage(), source.getHeartRateCount());
+    }
+
+    /**
+     * Stores the rollups of time spans that have already passed, and discards the others.
+     */
+    private static void storeRollups(ActivityRollup[] rollups, DaoSession session) {
+        int now = (int) (System.currentTimeMillis() / 1000);
+        List<ActivityRollup> complete = new ArrayList<>(rollups.length);
+        for (ActivityRollup rollup : rollups) {
+            if (rollup.getTimestamp() + rollup.getPeriod() <= now) {
+                complete.add(rollup);
+            } else {
+                deleteRollups(rollup.getDeviceId(), rollup.getPeriod(), rollup.getTimestamp(), rollup.getTimestamp(), session);
+            }
+        }
+        if (!complete.isEmpty()) {
+            session.getActivityRollupDao().insertOrReplaceInTx(complete);
+        }
+    }
+
+    private static List<ActivityRollup> loadRollups(long deviceId, int period, int tsFrom, int tsTo, DaoSession session) {
+        QueryBuilder<ActivityRollup> qb = session.getActivityRollupDao().queryBuilder();
+        qb.where(ActivityRollupDao.Properties.DeviceId.eq(deviceId),
+                ActivityRollupDao.Properties.Period.eq(period),
+                ActivityRollupDao.Properties.Timestamp.between(tsFrom, tsTo))
+                .orderAsc(ActivityRollupDao.Properties.Timestamp);
+        List<ActivityRollup> result = qb.build().list();
+        session.getActivityRollupDao().detachAll();
+        return result;
+    }
+
+    private static void deleteRollups(long deviceId, int period, int tsFrom, int tsTo, DaoSession session) {
+        QueryBuilder<ActivityRollup> qb = session.getActivityRollupDao().queryBuilder();
+        qb.where(ActivityRollupDao.Properties.DeviceId.eq(deviceId),
+                ActivityRollupDao.Properties.Period.eq(period),
+                ActivityRollupDao.Properties.Timestamp.between(tsFrom, tsTo))
+                .buildDelete().executeDeleteWithoutDetachingEntities();
+    }
+
+    private static ActivityRollup createRollup(long deviceId, int timestamp, int period) {
+        ActivityRollup rollup = new ActivityRollup();
+        rollup.setDeviceId(deviceId);
+        rollup.setTimestamp(timestamp);
+        rollup.setPeriod(period);
+        return rollup;
+    }
+
+    private static int floor(int timestamp, int period) {
+        return timestamp - (((timestamp % period) + period) % period);
+    }
+}
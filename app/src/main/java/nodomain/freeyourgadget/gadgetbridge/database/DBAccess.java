@@ -40,9 +40,17 @@ public abstract class DBAccess extends AsyncTask {
 
     protected abstract void doInBackground(DBHandler handler);
 
+    /**
+     * Returns true if the task only queries the database, so that it can run concurrently
+     * with writers, see GBApplication#acquireReadOnlyDB().
+     */
+    protected boolean isReadOnly() {
+        return false;
+    }
+
     @Override
     protected Object doInBackground(Object[] params) {
-        try (DBHandler db = GBApplication.acquireDB()) {
+        try (DBHandler db = isReadOnly() ? GBApplication.acquireReadOnlyDB() : GBApplication.acquireDB()) {
             doInBackground(db);
         } catch (Exception e) {
             mError = e;
@@ -0,0 +1,744 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import androidx.annotation.Nullable;
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
+
+/**
+ * Exports the database while it stays open.
+ * <p/>
+ * A full export first takes a snapshot of the database into a local file, which is then
+ * written to the destination, optionally gzip compressed. The snapshot is copied table by
+ * table on a separate connection, in a single read transaction. With write-ahead logging,
+ * syncs and other writers do not have to wait for it.
+ * <p/>
+ * An incremental export keeps a full export as base, and adds a chunk file for every further
+ * export. The sample tables are exported incrementally: a chunk contains the rows which have
+ * been added or replaced since the previous export, found by their rowid, so that samples
+ * which arrive late with an older timestamp are included as well. Triggers in the database
+ * log the rows of the sample tables which are updated in place or deleted, so that a chunk
+ * also contains the updated rows and the keys of the deleted rows. The other, small tables
+ * are contained as a whole. Existing files are never rewritten, and
+ * #restoreIncremental(ExportDirectory) merges them into a database again. A new base is
+ * written when the database schema changes, when the change log was missing (e.g. after
+ * importing a database), or when requested.
+ */
+public class DBBackup {
+    private static final Logger LOG = LoggerFactory.getLogger(DBBackup.class);
+
+    private static final String BASE_FILE = "base.db.gz";
+    private static final String CHUNK_PREFIX = "chunk-";
+    private static final String CHUNK_SUFFIX = ".db.gz";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String STATE_FILE = "state.properties";
+    private static final String STATE_SCHEMA_VERSION = "schemaVersion";
+    private static final String STATE_NEXT_CHUNK = "nextChunk";
+    private static final String STATE_ROWID_PREFIX = "rowid.";
+    private static final String STATE_CHANGE = "change";
+    private static final String TIMESTAMP_COLUMN = "TIMESTAMP";
+    /**
+     * Logs the keys of the deleted and updated rows of the sample tables, in the database and
+     * in the chunks (deleted rows only).
+     */
+    private static final String CHANGE_LOG = "EXPORT_CHANGE_LOG";
+    private static final String CHANGE_LOG_TRIGGER_PREFIX = CHANGE_LOG + "_";
+    /**
+     * Lists the tables of a chunk which are exported incrementally.
+     */
+    private static final String CHUNK_TABLES = "EXPORT_CHUNK_TABLES";
+    /**
+     * The maximum number of primary key columns of a table which is exported incrementally.
+     */
+    private static final int MAX_KEY_COLUMNS = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Context context;
+    private final File dbFile;
+
+    public DBBackup(Context context) {
+        this(context, context.getDatabasePath(GBApplication.DATABASE_NAME));
+    }
+
+    DBBackup(Context context, File dbFile) {
+        this.context = context;
+        this.dbFile = dbFile;
+    }
+
+    /**
+     * The amount of data and the time needed for an export.
+     */
+    public static class Stats {
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long durationMillis;
+
+        Stats(long bytesRead, long bytesWritten, long durationMillis) {
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.durationMillis = durationMillis;
+        }
+
+        /**
+         * @return the uncompressed size of the exported data
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * @return the number of bytes written to the destination
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        /**
+         * @return the uncompressed bytes exported per second
+         */
+        public long getBytesPerSecond() {
+            return durationMillis > 0 ? bytesRead * 1000 / durationMillis : bytesRead;
+        }
+
+        @Override
+        public String toString() {
+            return bytesRead + " bytes read, " + bytesWritten + " bytes written in " + durationMillis + " ms";
+        }
+    }
+
+    /**
+     * Exports the database to the given stream, which is not closed.
+     */
+    public Stats exportDB(OutputStream dest, boolean compress) throws IOException {
+        long start = System.currentTimeMillis();
+        File snapshot = createSnapshot(null);
+        try {
+            long written = copy(snapshot, dest, compress);
+            return new Stats(snapshot.length(), written, System.currentTimeMillis() - start);
+        } finally {
+            delete(snapshot);
+        }
+    }
+
+    /**
+     * Exports the database uncompressed into the given directory, so that it can be imported
+     * with DBHelper#importDB(). An existing export is renamed.
+     *
+     * @return the exported file
+     */
+    public File exportDB(File toDir) throws IOException {
+        File destFile = new File(toDir, dbFile.getName());
+        if (destFile.exists()) {
+            File backup = new File(toDir, destFile.getName() + "_" + getDate());
+            destFile.renameTo(backup);
+        } else if (!toDir.exists()) {
+            if (!toDir.mkdirs()) {
+                throw new IOException("Unable to create directory: " + toDir.getAbsolutePath());
+            }
+        }
+        try (OutputStream out = new FileOutputStream(destFile)) {
+            Stats stats = exportDB(out, false);
+            LOG.info("Exported database to " + destFile + ": " + stats);
+        }
+        return destFile;
+    }
+
+    private String getDate() {
+        return new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+    }
+
+    /**
+     * Adds a chunk with the changes since the last export to the incremental export in the
+     * given directory, or starts it with a new base.
+     *
+     * @param newBase whether to start with a new base, even if the existing one could be used
+     */
+    public Stats exportIncremental(ExportDirectory dir, boolean newBase) throws IOException {
+        long start = System.currentTimeMillis();
+        Properties state = readState(dir);
+        boolean logged = prepareChangeLog(state);
+        String schemaVersion = String.valueOf(DaoMaster.SCHEMA_VERSION);
+        if (newBase || !logged || !dir.exists(BASE_FILE) || state.getProperty(STATE_CHANGE) == null
+                || !schemaVersion.equals(state.getProperty(STATE_SCHEMA_VERSION))) {
+            return exportBase(dir, start);
+        }
+        Stats stats = exportChunk(dir, state, start);
+        return stats != null ? stats : exportBase(dir, start);
+    }
+
+    /**
+     * Removes the change log which is only needed for incremental exports from the database.
+     * It is installed again with the next incremental export, which then starts a new base.
+     */
+    public void removeChangeLog() {
+        SQLiteDatabase db = openWithLiveDB(null);
+        try {
+            for (String trigger : getNames(db, "live", "trigger")) {
+                if (trigger.startsWith(CHANGE_LOG_TRIGGER_PREFIX)) {
+                    db.execSQL("DROP TRIGGER live." + quote(trigger));
+                }
+            }
+            if (getNames(db, "live", "table").contains(CHANGE_LOG)) {
+                LOG.info("Removing the change log of incremental exports");
+                db.execSQL("DROP TABLE live." + CHANGE_LOG);
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Makes sure that the database logs the deleted and updated rows of the sample tables,
+     * and removes the entries which have already been exported.
+     *
+     * @return false if the log had to be created, so that changes may not have been logged
+     */
+    private boolean prepareChangeLog(Properties state) {
+        SQLiteDatabase db = openWithLiveDB(null);
+        try {
+            boolean complete = true;
+            if (!getNames(db, "live", "table").contains(CHANGE_LOG)) {
+                complete = false;
+                db.execSQL("CREATE TABLE live." + CHANGE_LOG + " (TABLE_NAME TEXT NOT NULL, DELETED INTEGER NOT NULL, ROW_ID INTEGER, KEY1, KEY2, KEY3, KEY4)");
+            }
+            Set<String> triggers = getNames(db, "live", "trigger");
+            for (String table : getIncrementalTables(db, "live")) {
+                List<String> keys = getKeyColumns(db, "live", table);
+                String deleteTrigger = CHANGE_LOG_TRIGGER_PREFIX + table + "_DELETE";
+                if (!triggers.contains(deleteTrigger)) {
+                    complete = false;
+                    db.execSQL("CREATE TRIGGER live." + quote(deleteTrigger) + " AFTER DELETE ON " + quote(table)
+                            + " BEGIN " + logChange(table, keys, "OLD", "OLD.rowid", true) + "; END");
+                }
+                String updateTrigger = CHANGE_LOG_TRIGGER_PREFIX + table + "_UPDATE";
+                if (!triggers.contains(updateTrigger)) {
+                    complete = false;
+                    db.execSQL("CREATE TRIGGER live." + quote(updateTrigger) + " AFTER UPDATE ON " + quote(table)
+                            + " BEGIN " + logChange(table, keys, "OLD", "NULL", true) + "; " + logChange(table, keys, "NEW", "NULL", false) + "; END");
+                }
+            }
+            String exportedChange = state.getProperty(STATE_CHANGE);
+            if (exportedChange != null) {
+                // keeps the last exported entry, so that its rowid is not used again
+                db.execSQL("DELETE FROM live." + CHANGE_LOG + " WHERE rowid < ?", new Object[]{Long.parseLong(exportedChange)});
+            }
+            return complete;
+        } finally {
+            db.close();
+        }
+    }
+
+    private static String logChange(String table, List<String> keys, String row, String rowid, boolean deleted) {
+        StringBuilder columns = new StringBuilder("TABLE_NAME, DELETED, ROW_ID");
+        StringBuilder values = new StringBuilder(quoteLiteral(table)).append(", ").append(deleted ? 1 : 0).append(", ").append(rowid);
+        for (int i = 0; i < keys.size(); i++) {
+            columns.append(", KEY").append(i + 1);
+            values.append(", ").append(row).append('.').append(quote(keys.get(i)));
+        }
+        return "INSERT INTO " + CHANGE_LOG + " (" + columns + ") VALUES (" + values + ")";
+    }
+
+    private Stats exportBase(ExportDirectory dir, long start) throws IOException {
+        Properties state = new Properties();
+        state.setProperty(STATE_SCHEMA_VERSION, String.valueOf(DaoMaster.SCHEMA_VERSION));
+        state.setProperty(STATE_NEXT_CHUNK, "0");
+        File snapshot = createSnapshot(state);
+        try {
+            String tmpName = BASE_FILE + TMP_SUFFIX;
+            long written;
+            try (OutputStream out = dir.openOutputStream(tmpName)) {
+                written = copy(snapshot, out, true);
+            }
+            // without a state, an interrupted export is continued with a new base
+            dir.delete(STATE_FILE);
+            // the chunks of the previous base must not be merged into the new one
+            for (String chunk : getChunks(dir)) {
+                dir.delete(chunk);
+            }
+            dir.rename(tmpName, BASE_FILE);
+            writeState(dir, state);
+            return new Stats(snapshot.length(), written, System.currentTimeMillis() - start);
+        } finally {
+            delete(snapshot);
+        }
+    }
+
+    /**
+     * @return null if the database has been replaced since the last export, so that a new
+     * base is needed
+     */
+    @Nullable
+    private Stats exportChunk(ExportDirectory dir, Properties state, long start) throws IOException {
+        int chunkNumber = Integer.parseInt(state.getProperty(STATE_NEXT_CHUNK, "0"));
+        File chunkDb = File.createTempFile("chunk", ".db", context.getCacheDir());
+        try {
+            SQLiteDatabase db = openWithLiveDB(chunkDb);
+            try {
+                beginSnapshot(db);
+                long exportedChange = Long.parseLong(state.getProperty(STATE_CHANGE));
+                long lastChange = getMaxRowid(db, "live", CHANGE_LOG);
+                if (lastChange < exportedChange) {
+                    LOG.info("Change log has been reset, starting a new base");
+                    return null;
+                }
+                db.execSQL("CREATE TABLE main." + CHUNK_TABLES + " (NAME TEXT NOT NULL)");
+                db.execSQL("CREATE TABLE main." + CHANGE_LOG + " AS SELECT * FROM live." + CHANGE_LOG + " WHERE 0");
+                db.execSQL("INSERT INTO main." + CHANGE_LOG + " SELECT * FROM live." + CHANGE_LOG
+                        + " WHERE DELETED = 1 AND rowid > ? AND rowid <= ? ORDER BY rowid", new Object[]{exportedChange, lastChange});
+
+                Set<String> incrementalTables = new HashSet<>(getIncrementalTables(db, "live"));
+                for (String table : getTables(db, "live")) {
+                    String name = quote(table);
+                    db.execSQL("CREATE TABLE main." + name + " AS SELECT * FROM live." + name + " WHERE 0");
+                    if (!incrementalTables.contains(table)) {
+                        db.execSQL("INSERT INTO main." + name + " SELECT * FROM live." + name);
+                        continue;
+                    }
+                    long exportedRowid = Long.parseLong(state.getProperty(STATE_ROWID_PREFIX + table, "0"));
+                    long lastRowid = getMaxRowid(db, "live", table);
+                    // once the last exported row is deleted, its rowid may be used again
+                    if (lastRowid < exportedRowid || DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM live." + CHANGE_LOG
+                                    + " WHERE TABLE_NAME = ? AND ROW_ID = ? AND rowid > ? AND rowid <= ?",
+                            new String[]{table, String.valueOf(exportedRowid), String.valueOf(exportedChange), String.valueOf(lastChange)}) > 0) {
+                        LOG.info("Rowids of " + table + " may have been reused, starting a new base");
+                        return null;
+                    }
+                    db.execSQL("INSERT INTO main." + CHUNK_TABLES + " VALUES (?)", new Object[]{table});
+                    // inserting a row, or replacing one, gives it a new rowid
+                    db.execSQL("INSERT INTO main." + name + " SELECT * FROM live." + name + " WHERE rowid > ?", new Object[]{exportedRowid});
+                    db.execSQL("INSERT INTO main." + name + " SELECT DISTINCT t.* FROM live." + name + " t JOIN live." + CHANGE_LOG + " c ON "
+                                    + keyCondition("t", "c", getKeyColumns(db, "live", table))
+                                    + " WHERE c.TABLE_NAME = ? AND c.DELETED = 0 AND c.rowid > ? AND c.rowid <= ? AND t.rowid <= ?",
+                            new Object[]{table, exportedChange, lastChange, exportedRowid});
+                    state.setProperty(STATE_ROWID_PREFIX + table, String.valueOf(lastRowid));
+                }
+                state.setProperty(STATE_CHANGE, String.valueOf(lastChange));
+                endSnapshot(db);
+            } finally {
+                db.close();
+            }
+
+            String chunkName = String.format(Locale.ROOT, "%s%06d%s", CHUNK_PREFIX, chunkNumber, CHUNK_SUFFIX);
+            String tmpName = chunkName + TMP_SUFFIX;
+            long written;
+            try (OutputStream out = dir.openOutputStream(tmpName)) {
+                written = copy(chunkDb, out, true);
+            }
+            dir.rename(tmpName, chunkName);
+            state.setProperty(STATE_NEXT_CHUNK, String.valueOf(chunkNumber + 1));
+            writeState(dir, state);
+            return new Stats(chunkDb.length(), written, System.currentTimeMillis() - start);
+        } finally {
+            delete(chunkDb);
+        }
+    }
+
+    /**
+     * Merges the base and chunks of the incremental export in the given directory.
+     *
+     * @return a temporary file with the restored database, to be imported with
+     * DBHelper#importDB() and deleted afterwards
+     */
+    public File restoreIncremental(ExportDirectory dir) throws IOException {
+        if (!dir.exists(BASE_FILE)) {
+            throw new FileNotFoundException("No incremental export in " + dir);
+        }
+        File restored = File.createTempFile("restore", ".db", context.getCacheDir());
+        File chunkDb = File.createTempFile("chunk", ".db", context.getCacheDir());
+        boolean success = false;
+        try {
+            decompress(dir, BASE_FILE, restored);
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(restored.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+            try {
+                for (String chunk : getChunks(dir)) {
+                    LOG.info("Merging " + chunk);
+                    decompress(dir, chunk, chunkDb);
+                    mergeChunk(db, chunkDb);
+                }
+            } finally {
+                db.close();
+            }
+            success = true;
+            return restored;
+        } finally {
+            delete(chunkDb);
+            if (!success) {
+                delete(restored);
+            }
+        }
+    }
+
+    private void mergeChunk(SQLiteDatabase db, File chunkDb) {
+        db.execSQL("ATTACH DATABASE ? AS chunk", new Object[]{chunkDb.getPath()});
+        try {
+            Set<String> tables = new HashSet<>(getTables(db, "main"));
+            Set<String> incrementalTables = new HashSet<>();
+            try (Cursor cursor = db.rawQuery("SELECT NAME FROM chunk." + CHUNK_TABLES, null)) {
+                while (cursor.moveToNext()) {
+                    incrementalTables.add(cursor.getString(0));
+                }
+            }
+            db.beginTransaction();
+            try {
+                for (String table : getTables(db, "chunk")) {
+                    if (!tables.contains(table)) {
+                        LOG.warn("Skipping unknown table " + table);
+                        continue;
+                    }
+                    String name = quote(table);
+                    StringBuilder columns = new StringBuilder();
+                    for (String column : getColumns(db, "chunk", table)) {
+                        if (columns.length() > 0) {
+                            columns.append(", ");
+                        }
+                        columns.append(quote(column));
+                    }
+                    if (incrementalTables.contains(table)) {
+                        // deleted first, as a deleted row may have been added again
+                        db.execSQL("DELETE FROM main." + name + " WHERE rowid IN (SELECT t.rowid FROM main." + name + " t JOIN chunk." + CHANGE_LOG + " c ON "
+                                + keyCondition("t", "c", getKeyColumns(db, "main", table)) + " WHERE c.TABLE_NAME = ?)", new Object[]{table});
+                        db.execSQL("INSERT OR REPLACE INTO main." + name + " (" + columns + ") SELECT " + columns + " FROM chunk." + name);
+                    } else {
+                        // the chunk contains the whole table, without the deleted rows
+                        db.execSQL("DELETE FROM main." + name);
+                        db.execSQL("INSERT INTO main." + name + " (" + columns + ") SELECT " + columns + " FROM chunk." + name);
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            db.execSQL("DETACH DATABASE chunk");
+        }
+    }
+
+    /**
+     * Copies a consistent state of the database into a temporary file.
+     *
+     * @param state if not null, receives the progress of the incremental export as of the
+     *              snapshot
+     */
+    private File createSnapshot(@Nullable Properties state) throws IOException {
+        File snapshot = File.createTempFile("snapshot", ".db", context.getCacheDir());
+        boolean success = false;
+        try {
+            SQLiteDatabase db = openWithLiveDB(snapshot);
+            try {
+                beginSnapshot(db);
+                List<String> tables = getTables(db, "live");
+                for (String table : tables) {
+                    db.execSQL(getSchemaSql(db, table));
+                    db.execSQL("INSERT INTO main." + quote(table) + " SELECT * FROM live." + quote(table));
+                }
+                if (getNames(db, "live", "table").contains("sqlite_sequence") && getNames(db, "main", "table").contains("sqlite_sequence")) {
+                    // replaces the entries added while copying the tables
+                    db.execSQL("DELETE FROM main.sqlite_sequence");
+                    db.execSQL("INSERT INTO main.sqlite_sequence SELECT * FROM live.sqlite_sequence");
+                }
+                // created after the data, which is faster
+                List<String> statements = new ArrayList<>();
+                try (Cursor cursor = db.rawQuery("SELECT name, tbl_name, sql FROM live.sqlite_master WHERE type IN ('index', 'trigger', 'view') AND sql IS NOT NULL", null)) {
+                    while (cursor.moveToNext()) {
+                        if (!cursor.getString(0).startsWith(CHANGE_LOG_TRIGGER_PREFIX) && !CHANGE_LOG.equals(cursor.getString(1))) {
+                            statements.add(cursor.getString(2));
+                        }
+                    }
+                }
+                for (String statement : statements) {
+                    db.execSQL(statement);
+                }
+                db.execSQL("PRAGMA main.user_version = " + DatabaseUtils.longForQuery(db, "PRAGMA live.user_version", null));
+
+                if (state != null) {
+                    for (String table : getIncrementalTables(db, "live")) {
+                        state.setProperty(STATE_ROWID_PREFIX + table, String.valueOf(getMaxRowid(db, "live", table)));
+                    }
+                    state.setProperty(STATE_CHANGE, String.valueOf(getNames(db, "live", "table").contains(CHANGE_LOG) ? getMaxRowid(db, "live", CHANGE_LOG) : 0));
+                }
+                endSnapshot(db);
+            } finally {
+                db.close();
+            }
+            success = true;
+            return snapshot;
+        } finally {
+            if (!success) {
+                delete(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Opens the given file, or an in-memory database if null, with the database to export
+     * attached as "live".
+     */
+    private SQLiteDatabase openWithLiveDB(@Nullable File file) {
+        SQLiteDatabase db = file != null
+                ? SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.CREATE_IF_NECESSARY | SQLiteDatabase.NO_LOCALIZED_COLLATORS)
+                : SQLiteDatabase.create(null);
+        try {
+            db.execSQL("ATTACH DATABASE ? AS live", new Object[]{dbFile.getPath()});
+            return db;
+        } catch (RuntimeException ex) {
+            db.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Starts a transaction in which all reads of the attached database see the same state.
+     * The transactions of the framework lock the database for writing, but a savepoint
+     * outside of a transaction starts a deferred one, which only reads the attached database.
+     * With write-ahead logging, its writers do not have to wait for it. Closing the
+     * database rolls it back.
+     */
+    private static void beginSnapshot(SQLiteDatabase db) {
+        db.execSQL("SAVEPOINT snapshot");
+    }
+
+    private static void endSnapshot(SQLiteDatabase db) {
+        db.execSQL("RELEASE snapshot");
+    }
+
+    private static String getSchemaSql(SQLiteDatabase db, String table) {
+        try (Cursor cursor = db.rawQuery("SELECT sql FROM live.sqlite_master WHERE type = 'table' AND name = ?", new String[]{table})) {
+            if (!cursor.moveToFirst()) {
+                throw new IllegalStateException("No such table: " + table);
+            }
+            // when run on a connection, creates the table in its main database
+            return cursor.getString(0);
+        }
+    }
+
+    /**
+     * @return the tables to export, without those of SQLite, Android and the change log
+     */
+    private static List<String> getTables(SQLiteDatabase db, String schema) {
+        List<String> tables = new ArrayList<>();
+        for (String table : getNames(db, schema, "table")) {
+            if (!table.startsWith("sqlite_") && !"android_metadata".equals(table)
+                    && !CHANGE_LOG.equals(table) && !CHUNK_TABLES.equals(table)) {
+                tables.add(table);
+            }
+        }
+        Collections.sort(tables);
+        return tables;
+    }
+
+    /**
+     * @return the sample tables, which are exported incrementally
+     */
+    private static List<String> getIncrementalTables(SQLiteDatabase db, String schema) {
+        List<String> tables = new ArrayList<>();
+        for (String table : getTables(db, schema)) {
+            int keyCount = getKeyColumns(db, schema, table).size();
+            if (keyCount > 0 && keyCount <= MAX_KEY_COLUMNS && getColumns(db, schema, table).contains(TIMESTAMP_COLUMN)) {
+                tables.add(table);
+            }
+        }
+        return tables;
+    }
+
+    private static Set<String> getNames(SQLiteDatabase db, String schema, String type) {
+        Set<String> names = new HashSet<>();
+        try (Cursor cursor = db.rawQuery("SELECT name FROM " + schema + ".sqlite_master WHERE type = ?", new String[]{type})) {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        }
+        return names;
+    }
+
+    private static List<String> getColumns(SQLiteDatabase db, String schema, String table) {
+        List<String> columns = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("PRAGMA " + schema + ".table_info(" + quote(table) + ")", null)) {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(nameIndex));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @return the primary key columns of the table, in the order of the key
+     */
+    private static List<String> getKeyColumns(SQLiteDatabase db, String schema, String table) {
+        SortedMap<Integer, String> columns = new TreeMap<>();
+        try (Cursor cursor = db.rawQuery("PRAGMA " + schema + ".table_info(" + quote(table) + ")", null)) {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            int keyIndex = cursor.getColumnIndexOrThrow("pk");
+            while (cursor.moveToNext()) {
+                int position = cursor.getInt(keyIndex);
+                if (position > 0) {
+                    columns.put(position, cursor.getString(nameIndex));
+                }
+            }
+        }
+        return new ArrayList<>(columns.values());
+    }
+
+    /**
+     * @return the condition which matches the rows of a table with the entries of the change log
+     */
+    private static String keyCondition(String row, String change, List<String> keys) {
+        StringBuilder condition = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) {
+                condition.append(" AND ");
+            }
+            condition.append(row).append('.').append(quote(keys.get(i))).append(" = ").append(change).append(".KEY").append(i + 1);
+        }
+        return condition.toString();
+    }
+
+    private static long getMaxRowid(SQLiteDatabase db, String schema, String table) {
+        return DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(rowid), 0) FROM " + schema + "." + quote(table), null);
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String quoteLiteral(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private static List<String> getChunks(ExportDirectory dir) throws IOException {
+        List<String> chunks = new ArrayList<>();
+        for (String name : dir.list()) {
+            if (name.startsWith(CHUNK_PREFIX) && name.endsWith(CHUNK_SUFFIX)) {
+                chunks.add(name);
+            }
+        }
+        // the names are zero padded, so they sort in the order in which they were written
+        Collections.sort(chunks);
+        return chunks;
+    }
+
+    private static Properties readState(ExportDirectory dir) throws IOException {
+        Properties state = new Properties();
+        if (dir.exists(STATE_FILE)) {
+            try (InputStream in = dir.openInputStream(STATE_FILE)) {
+                state.load(in);
+            }
+        }
+        return state;
+    }
+
+    private static void writeState(ExportDirectory dir, Properties state) throws IOException {
+        String tmpName = STATE_FILE + TMP_SUFFIX;
+        try (OutputStream out = dir.openOutputStream(tmpName)) {
+            state.store(out, null);
+        }
+        dir.rename(tmpName, STATE_FILE);
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            LOG.warn("Unable to delete " + file);
+        }
+    }
+
+    /**
+     * Copies the file to the stream, which is not closed.
+     *
+     * @return the number of bytes written to the stream
+     */
+    private static long copy(File src, OutputStream dest, boolean compress) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(dest);
+        OutputStream out = compress ? new GZIPOutputStream(counter, BUFFER_SIZE) : counter;
+        try (InputStream in = new FileInputStream(src)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        }
+        if (compress) {
+            ((GZIPOutputStream) out).finish();
+        }
+        out.flush();
+        return counter.count;
+    }
+
+    private static void decompress(ExportDirectory dir, String name, File dest) throws IOException {
+        try (InputStream in = new GZIPInputStream(dir.openInputStream(name), BUFFER_SIZE); OutputStream out = new FileOutputStream(dest)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
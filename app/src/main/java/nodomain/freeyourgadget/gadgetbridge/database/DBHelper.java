@@ -26,15 +26,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 import java.util.Objects;
+import java.util.zip.GZIPInputStream;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -103,48 +105,35 @@ public class DBHelper {
         return path;
     }
 
-    public File exportDB(DBHandler dbHandler, File toDir) throws IllegalStateException, IOException {
+    /**
+     * Replaces the database with the given file, which may also be a gzip compressed export.
+     */
+    public void importDB(DBHandler dbHandler, File fromFile) throws IllegalStateException, IOException {
         String dbPath = getClosedDBPath(dbHandler);
         try {
-            File sourceFile = new File(dbPath);
-            File destFile = new File(toDir, sourceFile.getName());
-            if (destFile.exists()) {
-                File backup = new File(toDir, destFile.getName() + "_" + getDate());
-                destFile.renameTo(backup);
-            } else if (!toDir.exists()) {
-                if (!toDir.mkdirs()) {
-                    throw new IOException("Unable to create directory: " + toDir.getAbsolutePath());
+            File toFile = new File(dbPath);
+            // a leftover write-ahead log would be applied to the imported database
+            new File(dbPath + "-wal").delete();
+            new File(dbPath + "-shm").delete();
+            if (isGzipFile(fromFile)) {
+                try (InputStream in = new GZIPInputStream(new FileInputStream(fromFile)); OutputStream out = new FileOutputStream(toFile)) {
+                    byte[] buffer = new byte[8192];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                    }
                 }
+            } else {
+                FileUtils.copyFile(fromFile, toFile);
             }
-
-            FileUtils.copyFile(sourceFile, destFile);
-            return destFile;
         } finally {
             dbHandler.openDb();
         }
     }
 
-    public void exportDB(DBHandler dbHandler, OutputStream dest) throws IOException {
-        String dbPath = getClosedDBPath(dbHandler);
-        try {
-            File source = new File(dbPath);
-            FileUtils.copyFileToStream(source, dest);
-        } finally {
-            dbHandler.openDb();
-        }
-    }
-
-    private String getDate() {
-        return new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
-    }
-
-    public void importDB(DBHandler dbHandler, File fromFile) throws IllegalStateException, IOException {
-        String dbPath = getClosedDBPath(dbHandler);
-        try {
-            File toFile = new File(dbPath);
-            FileUtils.copyFile(fromFile, toFile);
-        } finally {
-            dbHandler.openDb();
+    private static boolean isGzipFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() == (GZIPInputStream.GZIP_MAGIC & 0xff) && in.read() == (GZIPInputStream.GZIP_MAGIC >> 8);
         }
     }
 
@@ -0,0 +1,190 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import androidx.annotation.Nullable;
+import de.greenrobot.dao.identityscope.IdentityScopeType;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+
+/**
+ * A small pool of sessions for reading from the database, without taking the exclusive
+ * database lock.
+ * <p/>
+ * With write-ahead logging, SQLite lets readers run concurrently with each other and with
+ * a writer, each reader seeing the last committed state. So chart queries do not have to
+ * wait for a long running sync that holds the exclusive lock.
+ * <p/>
+ * The sessions have no identity scope, so the entities they return are not shared with
+ * other threads. They are meant for queries only; writes through them are possible, since
+ * they use the same database, but they are not serialized with the writers holding the
+ * exclusive lock.
+ * <p/>
+ * Closing and reopening the database (e.g. for import, export and deletion) waits until all
+ * readers have been released.
+ */
+public class DBReaderPool {
+    public static final int DEFAULT_SIZE = 3;
+
+    private final int size;
+    // the read lock is held by every acquired reader, the write lock while opening and closing
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private BlockingQueue<Reader> idleReaders;
+
+    public DBReaderPool() {
+        this(DEFAULT_SIZE);
+    }
+
+    public DBReaderPool(int size) {
+        this.size = size;
+    }
+
+    public void open(DaoMaster daoMaster, SQLiteOpenHelper helper) {
+        stateLock.writeLock().lock();
+        try {
+            BlockingQueue<Reader> readers = new ArrayBlockingQueue<>(size);
+            for (int i = 0; i < size; i++) {
+                readers.add(new Reader(daoMaster, helper));
+            }
+            idleReaders = readers;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Waits until all acquired readers have been released, and closes the pool.
+     *
+     * @throws IllegalStateException if the readers were not released in time
+     */
+    public void close(long timeout, TimeUnit unit) {
+        try {
+            if (!stateLock.writeLock().tryLock(timeout, unit)) {
+                throw new IllegalStateException("Database readers were not released in time");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for database readers", ex);
+        }
+        try {
+            if (idleReaders != null) {
+                for (Reader reader : idleReaders) {
+                    reader.session.clear();
+                }
+            }
+            idleReaders = null;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Acquires a reader, which must be closed again by the same thread.
+     *
+     * @return the reader, or null if the database is closed or no reader became available in time
+     */
+    @Nullable
+    public DBHandler acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!stateLock.readLock().tryLock(timeout, unit)) {
+            return null;
+        }
+        boolean acquired = false;
+        try {
+            BlockingQueue<Reader> readers = idleReaders;
+            if (readers == null) {
+                return null;
+            }
+            Reader reader = readers.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (reader == null) {
+                return null;
+            }
+            acquired = true;
+            return reader;
+        } finally {
+            if (!acquired) {
+                stateLock.readLock().unlock();
+            }
+        }
+    }
+
+    private void release(Reader reader) {
+        try {
+            BlockingQueue<Reader> readers = idleReaders;
+            if (readers != null) {
+                readers.add(reader);
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    private class Reader implements DBHandler {
+        private final DaoMaster daoMaster;
+        private final SQLiteOpenHelper helper;
+        private final DaoSession session;
+
+        Reader(DaoMaster daoMaster, SQLiteOpenHelper helper) {
+            this.daoMaster = daoMaster;
+            this.helper = helper;
+            session = daoMaster.newSession(IdentityScopeType.None);
+        }
+
+        @Override
+        public void closeDb() {
+            throw new UnsupportedOperationException("Read-only database access");
+        }
+
+        @Override
+        public void openDb() {
+            throw new UnsupportedOperationException("Read-only database access");
+        }
+
+        @Override
+        public SQLiteOpenHelper getHelper() {
+            return helper;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+
+        @Override
+        public SQLiteDatabase getDatabase() {
+            return daoMaster.getDatabase();
+        }
+
+        @Override
+        public DaoMaster getDaoMaster() {
+            return daoMaster;
+        }
+
+        @Override
+        public DaoSession getDaoSession() {
+            return session;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.documentfile.provider.DocumentFile;
+
+/**
+ * A flat directory with the files of an incremental export, see
+ * DBBackup#exportIncremental(ExportDirectory, boolean). Either a local directory, or a folder
+ * chosen by the user with the storage access framework.
+ */
+public abstract class ExportDirectory {
+    private static final String MIME_TYPE = "application/octet-stream";
+
+    public static ExportDirectory of(File dir) {
+        return new LocalDirectory(dir);
+    }
+
+    /**
+     * @param treeUri a folder chosen with Intent#ACTION_OPEN_DOCUMENT_TREE, which needs
+     *                Android 5
+     */
+    public static ExportDirectory of(Context context, Uri treeUri) throws IOException {
+        DocumentFile dir = DocumentFile.fromTreeUri(context, treeUri);
+        if (dir == null || !dir.isDirectory()) {
+            throw new FileNotFoundException("Not a folder: " + treeUri);
+        }
+        return new DocumentDirectory(context, dir);
+    }
+
+    public abstract boolean exists(String name) throws IOException;
+
+    public abstract InputStream openInputStream(String name) throws IOException;
+
+    /**
+     * Creates the file, or replaces it if it exists.
+     */
+    public abstract OutputStream openOutputStream(String name) throws IOException;
+
+    /**
+     * Renames the file, replacing an existing file with the new name.
+     */
+    public abstract void rename(String from, String to) throws IOException;
+
+    /**
+     * Deletes the file, if it exists.
+     */
+    public abstract void delete(String name) throws IOException;
+
+    public abstract List<String> list() throws IOException;
+
+    private static class LocalDirectory extends ExportDirectory {
+        private final File dir;
+
+        LocalDirectory(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public boolean exists(String name) {
+            return new File(dir, name).exists();
+        }
+
+        @Override
+        public InputStream openInputStream(String name) throws IOException {
+            return new FileInputStream(new File(dir, name));
+        }
+
+        @Override
+        public OutputStream openOutputStream(String name) throws IOException {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create directory: " + dir.getAbsolutePath());
+            }
+            return new FileOutputStream(new File(dir, name));
+        }
+
+        @Override
+        public void rename(String from, String to) throws IOException {
+            File toFile = new File(dir, to);
+            if (!new File(dir, from).renameTo(toFile)) {
+                throw new IOException("Unable to rename " + from + " to " + toFile);
+            }
+        }
+
+        @Override
+        public void delete(String name) throws IOException {
+            File file = new File(dir, name);
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to delete " + file);
+            }
+        }
+
+        @Override
+        public List<String> list() {
+            List<String> names = new ArrayList<>();
+            String[] files = dir.list();
+            if (files != null) {
+                for (String name : files) {
+                    names.add(name);
+                }
+            }
+            return names;
+        }
+
+        @Override
+        public String toString() {
+            return dir.getAbsolutePath();
+        }
+    }
+
+    private static class DocumentDirectory extends ExportDirectory {
+        private final Context context;
+        private final DocumentFile dir;
+
+        DocumentDirectory(Context context, DocumentFile dir) {
+            this.context = context;
+            this.dir = dir;
+        }
+
+        @Override
+        public boolean exists(String name) {
+            return dir.findFile(name) != null;
+        }
+
+        @Override
+        public InputStream openInputStream(String name) throws IOException {
+            InputStream in = context.getContentResolver().openInputStream(getFile(name).getUri());
+            if (in == null) {
+                throw new IOException("Unable to read " + name);
+            }
+            return in;
+        }
+
+        @Override
+        public OutputStream openOutputStream(String name) throws IOException {
+            delete(name);
+            DocumentFile file = dir.createFile(MIME_TYPE, name);
+            if (file == null) {
+                throw new IOException("Unable to create " + name + " in " + dir.getUri());
+            }
+            if (!name.equals(file.getName())) {
+                // the provider made up a different name, which we would not find again
+                file.delete();
+                throw new IOException("Unable to create " + name + " in " + dir.getUri() + ", got " + file.getName());
+            }
+            OutputStream out = context.getContentResolver().openOutputStream(file.getUri());
+            if (out == null) {
+                throw new IOException("Unable to write " + name);
+            }
+            return out;
+        }
+
+        @Override
+        public void rename(String from, String to) throws IOException {
+            DocumentFile file = getFile(from);
+            delete(to);
+            if (!file.renameTo(to)) {
+                throw new IOException("Unable to rename " + from + " to " + to + " in " + dir.getUri());
+            }
+        }
+
+        @Override
+        public void delete(String name) throws IOException {
+            DocumentFile file = dir.findFile(name);
+            if (file != null && !file.delete()) {
+                throw new IOException("Unable to delete " + name + " in " + dir.getUri());
+            }
+        }
+
+        @Override
+        public List<String> list() {
+            List<String> names = new ArrayList<>();
+            for (DocumentFile file : dir.listFiles()) {
+                names.add(file.getName());
+            }
+            return names;
+        }
+
+        private DocumentFile getFile(String name) throws FileNotFoundException {
+            DocumentFile file = dir.findFile(name);
+            if (file == null) {
+                throw new FileNotFoundException("Does not exist: " + name + " in " + dir.getUri());
+            }
+            return file;
+        }
+
+        @Override
+        public String toString() {
+            return dir.getUri().toString();
+        }
+    }
+}
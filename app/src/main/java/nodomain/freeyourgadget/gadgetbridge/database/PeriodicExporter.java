@@ -23,12 +23,16 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.SystemClock;
+import android.text.format.Formatter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.OutputStream;
 
+import androidx.annotation.Nullable;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
@@ -71,19 +75,66 @@ public class PeriodicExporter extends BroadcastReceiver {
     }
 
     @Override
-    public void onReceive(Context context, Intent intent) {
-        LOG.info("Exporting DB");
-        try (DBHandler dbHandler = GBApplication.acquireDB()) {
-            DBHelper helper = new DBHelper(context);
-            String dst = GBApplication.getPrefs().getString(GBPrefs.AUTO_EXPORT_LOCATION, null);
-            if (dst == null) {
-                LOG.info("Unable to export DB, export location not set");
-                return;
+    public void onReceive(final Context context, Intent intent) {
+        // exporting may take a while, so it must not block the main thread
+        final PendingResult pendingResult = goAsync();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    export(context);
+                } finally {
+                    pendingResult.finish();
+                }
             }
-            Uri dstUri = Uri.parse(dst);
-            try (OutputStream out = context.getContentResolver().openOutputStream(dstUri)) {
-                helper.exportDB(dbHandler, out);
+        }, "PeriodicExporter").start();
+    }
+
+    /**
+     * @return the folder for incremental exports chosen by the user, or null if there is none
+     */
+    @Nullable
+    public static ExportDirectory getIncrementalExportDirectory(Context context) throws IOException {
+        String location = GBApplication.getPrefs().getString(GBPrefs.AUTO_EXPORT_INCREMENTAL_LOCATION, null);
+        if (location == null) {
+            return null;
+        }
+        return ExportDirectory.of(context, Uri.parse(location));
+    }
+
+    private static void export(Context context) {
+        LOG.info("Exporting DB");
+        try {
+            Prefs prefs = GBApplication.getPrefs();
+            DBBackup backup = new DBBackup(context);
+            DBBackup.Stats stats;
+            // incremental exports need a folder, which can only be chosen on Android 5 and later
+            if (prefs.getBoolean(GBPrefs.AUTO_EXPORT_INCREMENTAL, false) && GBApplication.isRunningLollipopOrLater()) {
+                ExportDirectory dir = getIncrementalExportDirectory(context);
+                if (dir == null) {
+                    // reported like any other failure, so that the user notices that nothing is exported
+                    throw new FileNotFoundException("Incremental export folder not set");
+                }
+                stats = backup.exportIncremental(dir, false);
+            } else {
+                // the database does not need to log its changes anymore
+                backup.removeChangeLog();
+                String dst = prefs.getString(GBPrefs.AUTO_EXPORT_LOCATION, null);
+                if (dst == null) {
+                    LOG.info("Unable to export DB, export location not set");
+                    return;
+                }
+                Uri dstUri = Uri.parse(dst);
+                try (OutputStream out = context.getContentResolver().openOutputStream(dstUri)) {
+                    stats = backup.exportDB(out, prefs.getBoolean(GBPrefs.AUTO_EXPORT_COMPRESSED, false));
+                }
             }
+            LOG.info("Exported DB: " + stats);
+            GB.removeExportFailedNotification(context);
+            GB.updateExportNotification(context.getString(R.string.notif_export_finished_text,
+                    Formatter.formatShortFileSize(context, stats.getBytesRead()),
+                    stats.getDurationMillis() / 1000f,
+                    Formatter.formatShortFileSize(context, stats.getBytesPerSecond())), context);
         } catch (Exception ex) {
             GB.updateExportFailedNotification(context.getString(R.string.notif_export_failed_title), context);
             LOG.info("Exception while exporting DB: ", ex);
@@ -0,0 +1,172 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import de.greenrobot.dao.AbstractDao;
+import de.greenrobot.dao.Property;
+import de.greenrobot.dao.identityscope.IdentityScopeType;
+import de.greenrobot.dao.query.Query;
+import de.greenrobot.dao.query.QueryBuilder;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
+
+/**
+ * Fast time range queries over the samples of a single device.
+ * <p/>
+ * The queries run on a separate read-only session without identity scope, so that the
+ * loaded samples are neither looked up in nor added to the identity scope of the regular
+ * session (which would otherwise have to be cleared after every query). The compiled
+ * queries are cached and only the parameters are bound for each execution, so SQLite
+ * can reuse its prepared statements. The queries are served by the (deviceId, timestamp)
+ * index of the sample tables.
+ * <p/>
+ * Samples returned from here are detached, changes to them are not written back.
+ * Alternatively, the values can be read straight from the cursor into {@link SampleColumns},
+ * without creating any entities.
+ */
+public class SampleRangeQuery {
+    // the sessions reference their database, so they have to be released when it is closed
+    private static final Map<SQLiteDatabase, ReadSession> readSessions = new HashMap<>();
+
+    /**
+     * Returns the samples of the given device in the given time range, ordered by timestamp.
+     *
+     * @param dao               the sample DAO of the regular session
+     * @param rawKindProperty   the raw kind property, only needed if rawKinds is given
+     * @param rawKinds          the raw kinds to return, or null for all samples
+     * @param timestampFrom     the first timestamp to include, in seconds
+     * @param timestampTo       the last timestamp to include, in seconds
+     */
+    public static <T> List<T> list(@NonNull AbstractDao<T, ?> dao, @NonNull Property deviceProperty, @NonNull Property timestampProperty,
+                                   @Nullable Property rawKindProperty, @Nullable int[] rawKinds,
+                                   long deviceId, int timestampFrom, int timestampTo) {
+        Query<T> query = getReadSession(dao.getDatabase()).getQuery(dao, deviceProperty, timestampProperty, rawKindProperty, rawKinds);
+        query.setParameter(0, deviceId);
+        query.setParameter(1, timestampFrom);
+        query.setParameter(2, timestampTo);
+        return query.list();
+    }
+
+    /**
+     * Reads the values of the samples of the given device in the given time range, ordered by
+     * timestamp, straight from the cursor into columns. Only the raw values are read, the caller
+     * has to {@link SampleColumns#normalize normalize} them.
+     *
+     * @param rawIntensityProperty the raw intensity property, or null if not available
+     * @param heartRateProperty    the heart rate property, or null if not available
+     */
+    public static SampleColumns columns(@NonNull AbstractDao<?, ?> dao, @NonNull Property deviceProperty, @NonNull Property timestampProperty,
+                                        @NonNull Property rawKindProperty, @Nullable Property rawIntensityProperty,
+                                        @NonNull Property stepsProperty, @Nullable Property heartRateProperty,
+                                        long deviceId, int timestampFrom, int timestampTo) {
+        // the statement is the same for every call, so SQLite's statement cache can reuse it
+        String sql = "SELECT " + timestampProperty.columnName
+                + ", " + rawKindProperty.columnName
+                + ", " + columnOrNotMeasured(rawIntensityProperty)
+                + ", " + stepsProperty.columnName
+                + ", " + columnOrNotMeasured(heartRateProperty)
+                + " FROM " + dao.getTablename()
+                + " WHERE " + deviceProperty.columnName + " = ?"
+                + " AND " + timestampProperty.columnName + " >= ? AND " + timestampProperty.columnName + " <= ?"
+                + " ORDER BY " + timestampProperty.columnName;
+        String[] args = {String.valueOf(deviceId), String.valueOf(timestampFrom), String.valueOf(timestampTo)};
+        try (Cursor cursor = dao.getDatabase().rawQuery(sql, args)) {
+            SampleColumns columns = new SampleColumns(cursor.getCount());
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getInt(0), cursor.getInt(1), ActivitySample.NOT_MEASURED, cursor.getInt(2),
+                        ActivitySample.NOT_MEASURED, cursor.getInt(3), cursor.getInt(4));
+            }
+            return columns;
+        }
+    }
+
+    private static String columnOrNotMeasured(@Nullable Property property) {
+        return property != null ? property.columnName : String.valueOf(ActivitySample.NOT_MEASURED);
+    }
+
+    /**
+     * Releases the read session and the compiled queries of the given database.
+     * Must be called when the database is closed.
+     */
+    public static void release(@NonNull SQLiteDatabase db) {
+        synchronized (readSessions) {
+            readSessions.remove(db);
+        }
+    }
+
+    private static ReadSession getReadSession(SQLiteDatabase db) {
+        synchronized (readSessions) {
+            ReadSession readSession = readSessions.get(db);
+            if (readSession == null) {
+                readSession = new ReadSession(new DaoMaster(db).newSession(IdentityScopeType.None));
+                readSessions.put(db, readSession);
+            }
+            return readSession;
+        }
+    }
+
+    private static class ReadSession {
+        private final Map<String, AbstractDao<?, ?>> daosByTable = new HashMap<>();
+        private final Map<String, Query<?>> queries = new HashMap<>();
+
+        ReadSession(DaoSession session) {
+            for (AbstractDao<?, ?> dao : session.getAllDaos()) {
+                daosByTable.put(dao.getTablename(), dao);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized <T> Query<T> getQuery(AbstractDao<T, ?> dao, Property deviceProperty, Property timestampProperty,
+                                           Property rawKindProperty, int[] rawKinds) {
+            String key = dao.getTablename() + (rawKinds != null ? Arrays.toString(rawKinds) : "");
+            Query<T> query = (Query<T>) queries.get(key);
+            if (query == null) {
+                AbstractDao<T, ?> readDao = (AbstractDao<T, ?>) daosByTable.get(dao.getTablename());
+                if (readDao == null) {
+                    throw new IllegalArgumentException("Unknown sample table: " + dao.getTablename());
+                }
+                QueryBuilder<T> qb = readDao.queryBuilder();
+                // the values are placeholders, bound for each execution
+                qb.where(deviceProperty.eq(0L), timestampProperty.ge(0), timestampProperty.le(0));
+                if (rawKinds != null) {
+                    Object[] kinds = new Object[rawKinds.length];
+                    for (int i = 0; i < rawKinds.length; i++) {
+                        kinds[i] = rawKinds[i];
+                    }
+                    qb.where(rawKindProperty.in(kinds));
+                }
+                qb.orderAsc(timestampProperty);
+                query = qb.build();
+                queries.put(key, query);
+            }
+            // a built query may only be used by the thread that created it
+            return query.forCurrentThread();
+        }
+    }
+}
@@ -17,6 +17,9 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.devices;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -26,13 +29,15 @@ import androidx.annotation.Nullable;
 import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
 import de.greenrobot.dao.query.QueryBuilder;
-import de.greenrobot.dao.query.WhereCondition;
+import nodomain.freeyourgadget.gadgetbridge.database.ActivityRollups;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.database.SampleRangeQuery;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
 
 /**
  * Base class for all sample providers. A Sample provider is device specific and provides
@@ -40,9 +45,10 @@ import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
  * @param <T> the sample type
  */
 public abstract class AbstractSampleProvider<T extends AbstractActivitySample> implements SampleProvider<T> {
-    private static final WhereCondition[] NO_CONDITIONS = new WhereCondition[0];
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractSampleProvider.class);
     private final DaoSession mSession;
     private final GBDevice mDevice;
+    private Long mDeviceId;
 
     protected AbstractSampleProvider(GBDevice device, DaoSession session) {
         mDevice = device;
@@ -62,6 +68,28 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
         return getGBActivitySamples(timestamp_from, timestamp_to, ActivityKind.TYPE_ALL);
     }
 
+    @NonNull
+    @Override
+    public SampleColumns getAllActivitySampleColumns(int timestamp_from, int timestamp_to) {
+        Property rawKindProperty = getRawKindSampleProperty();
+        Property stepsProperty = getStepsSampleProperty();
+        if (rawKindProperty == null || stepsProperty == null) {
+            // the values are not plain columns, go through the samples
+            return SampleColumns.of(getAllActivitySamples(timestamp_from, timestamp_to));
+        }
+        Long deviceId = getDeviceId();
+        if (deviceId == null) {
+            // no device, no samples
+            return new SampleColumns(0);
+        }
+        SampleColumns columns = SampleRangeQuery.columns(getSampleDao(), getDeviceIdentifierSampleProperty(), getTimestampSampleProperty(),
+                rawKindProperty, getRawIntensitySampleProperty(), stepsProperty, getHeartRateSampleProperty(),
+                deviceId, timestamp_from, timestamp_to);
+        postprocess(columns);
+        columns.normalize(this);
+        return columns;
+    }
+
     @Override
     public List<T> getActivitySamples(int timestamp_from, int timestamp_to) {
         if (getRawKindSampleProperty() != null) {
@@ -83,11 +111,44 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
     @Override
     public void addGBActivitySample(T activitySample) {
         getSampleDao().insertOrReplace(activitySample);
+        try {
+            Long deviceId = getDeviceId();
+            if (deviceId != null) {
+                ActivityRollups.invalidate(deviceId, activitySample.getTimestamp(), getSession());
+            }
+        } catch (Exception ex) {
+            LOG.error("Error invalidating activity rollups", ex);
+        }
     }
 
     @Override
     public void addGBActivitySamples(T[] activitySamples) {
         getSampleDao().insertOrReplaceInTx(activitySamples);
+        updateRollups(activitySamples);
+    }
+
+    /**
+     * Updates the pre-aggregated rollups for the time span covered by the given, already stored
+     * samples. Failures are only logged, since the samples themselves are safe.
+     */
+    protected void updateRollups(T[] activitySamples) {
+        if (activitySamples.length == 0) {
+            return;
+        }
+        int tsFrom = Integer.MAX_VALUE;
+        int tsTo = Integer.MIN_VALUE;
+        for (T sample : activitySamples) {
+            tsFrom = Math.min(tsFrom, sample.getTimestamp());
+            tsTo = Math.max(tsTo, sample.getTimestamp());
+        }
+        try {
+            Long deviceId = getDeviceId();
+            if (deviceId != null) {
+                ActivityRollups.update(this, deviceId, tsFrom, tsTo, getSession());
+            }
+        } catch (Exception ex) {
+            LOG.error("Error updating activity rollups", ex);
+        }
     }
 
     @Nullable
@@ -115,24 +176,42 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
             // if we do not have a raw kind property we cannot query anything else then TYPE_ALL
             return Collections.emptyList();
         }
-        QueryBuilder<T> qb = getSampleDao().queryBuilder();
-        Property timestampProperty = getTimestampSampleProperty();
-        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        Long deviceId = getDeviceId();
+        if (deviceId == null) {
             // no device, no samples
             return Collections.emptyList();
         }
-        Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId()), timestampProperty.ge(timestamp_from))
-            .where(timestampProperty.le(timestamp_to), getClauseForActivityType(qb, activityType));
-        List<T> samples = qb.build().list();
+        int[] dbActivityTypes = null;
+        if (activityType != ActivityKind.TYPE_ALL) {
+            dbActivityTypes = ActivityKind.mapToDBActivityTypes(activityType, this);
+            if (dbActivityTypes.length == 0) {
+                return Collections.emptyList();
+            }
+        }
+        List<T> samples = SampleRangeQuery.list(getSampleDao(), getDeviceIdentifierSampleProperty(), getTimestampSampleProperty(),
+                getRawKindSampleProperty(), dbActivityTypes, deviceId, timestamp_from, timestamp_to);
         for (T sample : samples) {
             sample.setProvider(this);
         }
-        detachFromSession();
         return samples;
     }
 
+    /**
+     * Returns the database id of this provider's device, looked up only once.
+     *
+     * @return the id, or null if the device is not in the database
+     */
+    @Nullable
+    protected Long getDeviceId() {
+        if (mDeviceId == null) {
+            Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
+            if (dbDevice != null) {
+                mDeviceId = dbDevice.getId();
+            }
+        }
+        return mDeviceId;
+    }
+
     /**
      * Detaches all samples of this type from the session. Changes to them may not be
      * written back to the database.
@@ -143,45 +222,6 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
         getSampleDao().detachAll();
     }
 
-    private WhereCondition[] getClauseForActivityType(QueryBuilder qb, int activityTypes) {
-        if (activityTypes == ActivityKind.TYPE_ALL) {
-            return NO_CONDITIONS;
-        }
-
-        int[] dbActivityTypes = ActivityKind.mapToDBActivityTypes(activityTypes, this);
-        WhereCondition activityTypeCondition = getActivityTypeConditions(qb, dbActivityTypes);
-        return new WhereCondition[] { activityTypeCondition };
-    }
-
-    private WhereCondition getActivityTypeConditions(QueryBuilder qb, int[] dbActivityTypes) {
-        // What a crappy QueryBuilder API ;-( QueryBuilder.or(WhereCondition[]) with a runtime array length
-        // check would have worked just fine.
-        if (dbActivityTypes.length == 0) {
-            return null;
-        }
-        Property rawKindProperty = getRawKindSampleProperty();
-        if (rawKindProperty == null) {
-            return null;
-        }
-
-        if (dbActivityTypes.length == 1) {
-            return rawKindProperty.eq(dbActivityTypes[0]);
-        }
-        if (dbActivityTypes.length == 2) {
-            return qb.or(rawKindProperty.eq(dbActivityTypes[0]),
-                    rawKindProperty.eq(dbActivityTypes[1]));
-        }
-        final int offset = 2;
-        int len = dbActivityTypes.length - offset;
-        WhereCondition[] trailingConditions = new WhereCondition[len];
-        for (int i = 0; i < len; i++) {
-            trailingConditions[i] = rawKindProperty.eq(dbActivityTypes[i + offset]);
-        }
-        return qb.or(rawKindProperty.eq(dbActivityTypes[0]),
-                rawKindProperty.eq(dbActivityTypes[1]),
-                trailingConditions);
-    }
-
     private List<T> getActivitySamplesByActivityFilter(int timestamp_from, int timestamp_to, int activityFilter) {
         List<T> samples = getAllActivitySamples(timestamp_from, timestamp_to);
         List<T> filteredSamples = new ArrayList<>();
@@ -194,6 +234,14 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
         return filteredSamples;
     }
 
+    /**
+     * Applies the same post-processing to the raw values of the given columns as
+     * #getGBActivitySamples() does to the samples. Only called if the columns were read
+     * directly from the database.
+     */
+    protected void postprocess(SampleColumns columns) {
+    }
+
     public abstract AbstractDao<T,?> getSampleDao();
 
     @Nullable
@@ -204,4 +252,24 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
 
     @NonNull
     protected abstract Property getDeviceIdentifierSampleProperty();
+
+    /**
+     * Returns the property of the steps, if the values of the samples are stored as they are
+     * and can be read column by column, see #getAllActivitySampleColumns(). Providers that
+     * compute the values of their samples, or merge them with other data, must return null.
+     */
+    @Nullable
+    protected Property getStepsSampleProperty() {
+        return null;
+    }
+
+    @Nullable
+    protected Property getRawIntensitySampleProperty() {
+        return null;
+    }
+
+    @Nullable
+    protected Property getHeartRateSampleProperty() {
+        return null;
+    }
 }
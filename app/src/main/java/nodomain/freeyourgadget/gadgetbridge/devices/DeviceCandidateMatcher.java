@@ -0,0 +1,88 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.devices;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * The names, service UUIDs and address prefixes by which a coordinator recognizes its devices.
+ * A candidate that has none of them is never supported by the coordinator, so the coordinator
+ * does not need to be asked about it, see {@link DeviceCoordinatorIndex}.
+ * <p/>
+ * Names and name prefixes are compared ignoring case. A matcher only narrows down the
+ * coordinators to ask, the final decision is still made by
+ * {@link DeviceCoordinator#getSupportedType(nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceCandidate)}.
+ */
+public class DeviceCandidateMatcher {
+    private final List<String> names = new ArrayList<>();
+    private final List<String> namePrefixes = new ArrayList<>();
+    private final List<Pattern> namePatterns = new ArrayList<>();
+    private final List<UUID> serviceUuids = new ArrayList<>();
+    private final List<String> addressPrefixes = new ArrayList<>();
+
+    public DeviceCandidateMatcher addName(String name) {
+        names.add(name);
+        return this;
+    }
+
+    public DeviceCandidateMatcher addNamePrefix(String prefix) {
+        namePrefixes.add(prefix);
+        return this;
+    }
+
+    /**
+     * Adds a pattern the whole name must match, as with {@link java.util.regex.Matcher#matches()}.
+     */
+    public DeviceCandidateMatcher addNamePattern(Pattern pattern) {
+        namePatterns.add(pattern);
+        return this;
+    }
+
+    public DeviceCandidateMatcher addServiceUuid(UUID uuid) {
+        serviceUuids.add(uuid);
+        return this;
+    }
+
+    public DeviceCandidateMatcher addAddressPrefix(String prefix) {
+        addressPrefixes.add(prefix);
+        return this;
+    }
+
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    public List<String> getNamePrefixes() {
+        return Collections.unmodifiableList(namePrefixes);
+    }
+
+    public List<Pattern> getNamePatterns() {
+        return Collections.unmodifiableList(namePatterns);
+    }
+
+    public List<UUID> getServiceUuids() {
+        return Collections.unmodifiableList(serviceUuids);
+    }
+
+    public List<String> getAddressPrefixes() {
+        return Collections.unmodifiableList(addressPrefixes);
+    }
+}
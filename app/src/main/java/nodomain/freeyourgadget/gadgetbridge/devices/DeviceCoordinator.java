@@ -82,6 +82,16 @@ public interface DeviceCoordinator {
      */
     boolean supports(GBDeviceCandidate candidate);
 
+    /**
+     * Returns the names, service UUIDs and address prefixes by which this coordinator
+     * recognizes its candidates, so that it is only asked about candidates which have at
+     * least one of them.
+     *
+     * @return the matcher, or null if this coordinator must be asked about every candidate
+     */
+    @Nullable
+    DeviceCandidateMatcher getCandidateMatcher();
+
     /**
      * Checks whether this candidate handles the given device.
      *
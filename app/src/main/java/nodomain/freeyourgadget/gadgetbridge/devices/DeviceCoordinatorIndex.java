@@ -0,0 +1,205 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.devices;
+
+import android.os.ParcelUuid;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceCandidate;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
+
+/**
+ * Finds the coordinator for a device or discovered candidate without asking every coordinator.
+ * <p/>
+ * The index is built once from the {@link DeviceCandidateMatcher} of every coordinator. For a
+ * candidate, the name and service UUIDs are looked up in the index, and only the coordinators
+ * found there, plus those without a matcher, are asked in their original order. The result is
+ * therefore the same as asking all coordinators one after the other. Devices are looked up by
+ * their type.
+ * <p/>
+ * Instances are immutable and can be shared between threads.
+ */
+public class DeviceCoordinatorIndex {
+    private final List<DeviceCoordinator> coordinators;
+    /** The coordinators without a matcher, which must be asked about every candidate. */
+    private final BitSet alwaysAsked = new BitSet();
+    private final Map<String, BitSet> byName = new HashMap<>();
+    private final Map<UUID, BitSet> byServiceUuid = new HashMap<>();
+    private final List<String> namePrefixes = new ArrayList<>();
+    private final List<Integer> namePrefixOwners = new ArrayList<>();
+    private final List<Pattern> namePatterns = new ArrayList<>();
+    private final List<Integer> namePatternOwners = new ArrayList<>();
+    private final List<String> addressPrefixes = new ArrayList<>();
+    private final List<Integer> addressPrefixOwners = new ArrayList<>();
+    private final Map<DeviceType, List<DeviceCoordinator>> byType = new EnumMap<>(DeviceType.class);
+
+    /**
+     * @param coordinators all coordinators, in the order in which they shall be asked
+     */
+    public DeviceCoordinatorIndex(List<DeviceCoordinator> coordinators) {
+        this.coordinators = Collections.unmodifiableList(new ArrayList<>(coordinators));
+        for (int i = 0; i < this.coordinators.size(); i++) {
+            DeviceCoordinator coordinator = this.coordinators.get(i);
+
+            List<DeviceCoordinator> sameType = byType.get(coordinator.getDeviceType());
+            if (sameType == null) {
+                sameType = new ArrayList<>(1);
+                byType.put(coordinator.getDeviceType(), sameType);
+            }
+            sameType.add(coordinator);
+
+            DeviceCandidateMatcher matcher = coordinator.getCandidateMatcher();
+            if (matcher == null) {
+                alwaysAsked.set(i);
+                continue;
+            }
+            for (String name : matcher.getNames()) {
+                add(byName, normalizeName(name), i);
+            }
+            for (UUID uuid : matcher.getServiceUuids()) {
+                add(byServiceUuid, uuid, i);
+            }
+            for (String prefix : matcher.getNamePrefixes()) {
+                namePrefixes.add(normalizeName(prefix));
+                namePrefixOwners.add(i);
+            }
+            for (Pattern pattern : matcher.getNamePatterns()) {
+                namePatterns.add(pattern);
+                namePatternOwners.add(i);
+            }
+            for (String prefix : matcher.getAddressPrefixes()) {
+                addressPrefixes.add(prefix.toUpperCase(Locale.ROOT));
+                addressPrefixOwners.add(i);
+            }
+        }
+    }
+
+    private static <K> void add(Map<K, BitSet> index, K key, int coordinator) {
+        BitSet owners = index.get(key);
+        if (owners == null) {
+            owners = new BitSet();
+            index.put(key, owners);
+        }
+        owners.set(coordinator);
+    }
+
+    private static String normalizeName(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    public List<DeviceCoordinator> getAllCoordinators() {
+        return coordinators;
+    }
+
+    /**
+     * @return the device type of the first coordinator that supports the given candidate,
+     * or DeviceType.UNKNOWN
+     */
+    public DeviceType getSupportedType(GBDeviceCandidate candidate) {
+        BitSet possible = getPossibleCoordinators(candidate);
+        for (int i = possible.nextSetBit(0); i >= 0; i = possible.nextSetBit(i + 1)) {
+            DeviceType deviceType = coordinators.get(i).getSupportedType(candidate);
+            if (deviceType.isSupported()) {
+                return deviceType;
+            }
+        }
+        return DeviceType.UNKNOWN;
+    }
+
+    /**
+     * @return the first coordinator that supports the given candidate, or null
+     */
+    public DeviceCoordinator findCoordinator(GBDeviceCandidate candidate) {
+        BitSet possible = getPossibleCoordinators(candidate);
+        for (int i = possible.nextSetBit(0); i >= 0; i = possible.nextSetBit(i + 1)) {
+            DeviceCoordinator coordinator = coordinators.get(i);
+            if (coordinator.supports(candidate)) {
+                return coordinator;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the first coordinator that supports the given device, or null
+     */
+    public DeviceCoordinator findCoordinator(GBDevice device) {
+        List<DeviceCoordinator> sameType = byType.get(device.getType());
+        if (sameType != null) {
+            for (DeviceCoordinator coordinator : sameType) {
+                if (coordinator.supports(device)) {
+                    return coordinator;
+                }
+            }
+        }
+        return null;
+    }
+
+    private BitSet getPossibleCoordinators(GBDeviceCandidate candidate) {
+        BitSet possible = (BitSet) alwaysAsked.clone();
+
+        String name = candidate.getDeviceName();
+        if (name != null) {
+            String normalizedName = normalizeName(name);
+            BitSet owners = byName.get(normalizedName);
+            if (owners != null) {
+                possible.or(owners);
+            }
+            for (int i = 0; i < namePrefixes.size(); i++) {
+                if (normalizedName.startsWith(namePrefixes.get(i))) {
+                    possible.set(namePrefixOwners.get(i));
+                }
+            }
+            for (int i = 0; i < namePatterns.size(); i++) {
+                if (namePatterns.get(i).matcher(name).matches()) {
+                    possible.set(namePatternOwners.get(i));
+                }
+            }
+        }
+
+        for (ParcelUuid uuid : candidate.getServiceUuids()) {
+            if (uuid != null) {
+                BitSet owners = byServiceUuid.get(uuid.getUuid());
+                if (owners != null) {
+                    possible.or(owners);
+                }
+            }
+        }
+
+        String address = candidate.getDevice().getAddress();
+        if (address != null) {
+            address = address.toUpperCase(Locale.ROOT);
+            for (int i = 0; i < addressPrefixes.size(); i++) {
+                if (address.startsWith(addressPrefixes.get(i))) {
+                    possible.set(addressPrefixOwners.get(i));
+                }
+            }
+        }
+        return possible;
+    }
+}
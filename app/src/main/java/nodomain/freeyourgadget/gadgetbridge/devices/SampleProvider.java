@@ -22,6 +22,7 @@ import java.util.List;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
 
 /**
  * Interface to retrieve samples from the database, and also create and add samples to the database.
@@ -53,6 +54,17 @@ public interface SampleProvider<T extends AbstractActivitySample> {
     @NonNull
     List<T> getAllActivitySamples(int timestamp_from, int timestamp_to);
 
+    /**
+     * Returns the values of all samples, of any type, within the given time span, in
+     * columnar form. This is cheaper than #getAllActivitySamples() for large time spans,
+     * since no sample objects have to be created.
+     * @param timestamp_from the start timestamp
+     * @param timestamp_to the end timestamp
+     * @return the values of the samples of any type
+     */
+    @NonNull
+    SampleColumns getAllActivitySampleColumns(int timestamp_from, int timestamp_to);
+
     /**
      * Returns the list of all samples that represent user "activity", within
      * the given time span. This excludes samples of type sleep, for example.
@@ -34,6 +34,7 @@ import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceCandidate;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
 
 public class UnknownDeviceCoordinator extends AbstractDeviceCoordinator {
     private final UnknownSampleProvider sampleProvider;
@@ -59,6 +60,12 @@ public class UnknownDeviceCoordinator extends AbstractDeviceCoordinator {
             return null;
         }
 
+        @NonNull
+        @Override
+        public SampleColumns getAllActivitySampleColumns(int timestamp_from, int timestamp_to) {
+            return new SampleColumns(0);
+        }
+
         @Override
         public List getActivitySamples(int timestamp_from, int timestamp_to) {
             return null;
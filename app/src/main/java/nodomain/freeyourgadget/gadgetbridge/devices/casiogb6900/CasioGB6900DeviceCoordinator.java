@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import androidx.annotation.NonNull;
 import nodomain.freeyourgadget.gadgetbridge.GBException;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractDeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCandidateMatcher;
 import nodomain.freeyourgadget.gadgetbridge.devices.InstallHandler;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
@@ -40,6 +41,13 @@ import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 public class CasioGB6900DeviceCoordinator extends AbstractDeviceCoordinator {
     protected static final Logger LOG = LoggerFactory.getLogger(CasioGB6900DeviceCoordinator.class);
 
+    @Override
+    public DeviceCandidateMatcher getCandidateMatcher() {
+        return new DeviceCandidateMatcher()
+                .addServiceUuid(CasioGB6900Constants.CASIO_VIRTUAL_SERVER_SERVICE)
+                .addNamePrefix("CASIO");
+    }
+
     @NonNull
     @Override
     public DeviceType getSupportedType(GBDeviceCandidate candidate) {
@@ -47,7 +55,7 @@ public class CasioGB6900DeviceCoordinator extends AbstractDeviceCoordinator {
             return DeviceType.CASIOGB6900;
         }
 
-        String name = candidate.getDevice().getName();
+        String name = candidate.getDeviceName();
         if (name != null) {
             if (name.startsWith("CASIO")) {
                 return DeviceType.CASIOGB6900;
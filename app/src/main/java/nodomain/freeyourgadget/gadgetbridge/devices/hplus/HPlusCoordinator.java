@@ -44,6 +44,7 @@ import nodomain.freeyourgadget.gadgetbridge.GBException;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.SettingsActivity;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractDeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCandidateMatcher;
 import nodomain.freeyourgadget.gadgetbridge.devices.InstallHandler;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
@@ -71,10 +72,16 @@ public class HPlusCoordinator extends AbstractDeviceCoordinator {
         return Collections.singletonList(filter);
     }
 
+    @Override
+    public DeviceCandidateMatcher getCandidateMatcher() {
+        return new DeviceCandidateMatcher()
+                .addNamePrefix("HPLUS");
+    }
+
     @NonNull
     @Override
     public DeviceType getSupportedType(GBDeviceCandidate candidate) {
-        String name = candidate.getDevice().getName();
+        String name = candidate.getDeviceName();
         if (name != null && name.startsWith("HPLUS")) {
             return DeviceType.HPLUS;
         }
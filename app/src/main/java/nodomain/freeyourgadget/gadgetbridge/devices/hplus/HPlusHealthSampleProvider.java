@@ -31,10 +31,8 @@ import androidx.annotation.NonNull;
 import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
 import de.greenrobot.dao.query.QueryBuilder;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.HPlusHealthActivityOverlay;
 import nodomain.freeyourgadget.gadgetbridge.entities.HPlusHealthActivityOverlayDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.HPlusHealthActivitySample;
@@ -127,14 +125,14 @@ public class HPlusHealthSampleProvider extends AbstractSampleProvider<HPlusHealt
     public List<HPlusHealthActivitySample> getAllActivitySamples(int timestamp_from, int timestamp_to) {
         List<HPlusHealthActivitySample> samples = super.getGBActivitySamples(timestamp_from, timestamp_to, ActivityKind.TYPE_ALL);
 
-        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        Long deviceId = getDeviceId();
+        if (deviceId == null) {
             return Collections.emptyList();
         }
 
         QueryBuilder<HPlusHealthActivityOverlay> qb = getSession().getHPlusHealthActivityOverlayDao().queryBuilder();
 
-        qb.where(HPlusHealthActivityOverlayDao.Properties.DeviceId.eq(dbDevice.getId()),
+        qb.where(HPlusHealthActivityOverlayDao.Properties.DeviceId.eq(deviceId),
                 HPlusHealthActivityOverlayDao.Properties.TimestampFrom.ge(timestamp_from - 3600 * 24),
                 HPlusHealthActivityOverlayDao.Properties.TimestampTo.le(timestamp_to),
                 HPlusHealthActivityOverlayDao.Properties.TimestampTo.ge(timestamp_from));
@@ -232,8 +230,6 @@ public class HPlusHealthSampleProvider extends AbstractSampleProvider<HPlusHealt
         if(lastSample != null)
             lastSample.setSteps(Math.max(stepsTodayCount, stepsTodayMax));
 
-        detachFromSession();
-
         return samples;
     }
 
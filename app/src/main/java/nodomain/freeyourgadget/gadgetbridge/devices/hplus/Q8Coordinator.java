@@ -22,6 +22,7 @@ package nodomain.freeyourgadget.gadgetbridge.devices.hplus;
 
 
 import androidx.annotation.NonNull;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCandidateMatcher;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceCandidate;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 
@@ -30,10 +31,16 @@ import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
  */
 public class Q8Coordinator extends HPlusCoordinator {
 
+    @Override
+    public DeviceCandidateMatcher getCandidateMatcher() {
+        return new DeviceCandidateMatcher()
+                .addNamePrefix("Q8");
+    }
+
     @NonNull
     @Override
     public DeviceType getSupportedType(GBDeviceCandidate candidate) {
-        String name = candidate.getDevice().getName();
+        String name = candidate.getDeviceName();
         if(name != null && name.startsWith("Q8")){
             return DeviceType.Q8;
         }
@@ -22,9 +22,9 @@ import android.net.Uri;
 
 import java.io.IOException;
 
-import androidx.annotation.NonNull;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiFWHelper;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.amazfitbip.AmazfitBipFirmwareInfo;
+import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 
 public class AmazfitBipFWHelper extends HuamiFWHelper {
 
@@ -32,10 +32,9 @@ public class AmazfitBipFWHelper extends HuamiFWHelper {
         super(uri, context);
     }
 
-    @NonNull
     @Override
-    protected void determineFirmwareInfo(byte[] wholeFirmwareBytes) {
-        firmwareInfo = new AmazfitBipFirmwareInfo(wholeFirmwareBytes);
+    protected void determineFirmwareInfo(UriHelper uriHelper) throws IOException {
+        firmwareInfo = new AmazfitBipFirmwareInfo(uriHelper);
         if (!firmwareInfo.isHeaderValid()) {
             throw new IllegalArgumentException("Not a an Amazifit Bip firmware");
         }
@@ -23,6 +23,7 @@ import java.io.IOException;
 
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiFWHelper;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.amazfitcor2.AmazfitCor2FirmwareInfo;
+import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 
 public class AmazfitCor2FWHelper extends HuamiFWHelper {
 
@@ -31,8 +32,8 @@ public class AmazfitCor2FWHelper extends HuamiFWHelper {
     }
 
     @Override
-    protected void determineFirmwareInfo(byte[] wholeFirmwareBytes) {
-        firmwareInfo = new AmazfitCor2FirmwareInfo(wholeFirmwareBytes);
+    protected void determineFirmwareInfo(UriHelper uriHelper) throws IOException {
+        firmwareInfo = new AmazfitCor2FirmwareInfo(uriHelper);
         if (!firmwareInfo.isHeaderValid()) {
             throw new IllegalArgumentException("Not a an Amazfit Cor 2 firmware");
         }
@@ -17,7 +17,6 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.devices.huami.miband2;
 
-import android.bluetooth.BluetoothDevice;
 import android.content.Context;
 import android.net.Uri;
 
@@ -27,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nodomain.freeyourgadget.gadgetbridge.R;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCandidateMatcher;
 import nodomain.freeyourgadget.gadgetbridge.devices.InstallHandler;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiCoordinator;
@@ -43,6 +43,13 @@ public class MiBand2Coordinator extends HuamiCoordinator {
         return DeviceType.MIBAND2;
     }
 
+    @Override
+    public DeviceCandidateMatcher getCandidateMatcher() {
+        return new DeviceCandidateMatcher()
+                .addServiceUuid(HuamiService.UUID_SERVICE_MIBAND2_SERVICE)
+                .addName(HuamiConst.MI_BAND2_NAME);
+    }
+
     @NonNull
     @Override
     public DeviceType getSupportedType(GBDeviceCandidate candidate) {
@@ -52,8 +59,7 @@ public class MiBand2Coordinator extends HuamiCoordinator {
 
         // and a heuristic for now
         try {
-            BluetoothDevice device = candidate.getDevice();
-            String name = device.getName();
+            String name = candidate.getDeviceName();
             if (name != null && name.equalsIgnoreCase(HuamiConst.MI_BAND2_NAME)) {
                 return DeviceType.MIBAND2;
             }
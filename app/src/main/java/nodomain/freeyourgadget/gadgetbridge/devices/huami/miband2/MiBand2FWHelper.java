@@ -22,9 +22,9 @@ import android.net.Uri;
 
 import java.io.IOException;
 
-import androidx.annotation.NonNull;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiFWHelper;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.miband2.Mi2FirmwareInfo;
+import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 
 public class MiBand2FWHelper extends HuamiFWHelper {
 
@@ -32,10 +32,9 @@ public class MiBand2FWHelper extends HuamiFWHelper {
         super(uri, context);
     }
 
-    @NonNull
     @Override
-    protected void determineFirmwareInfo(byte[] wholeFirmwareBytes) {
-        firmwareInfo = new Mi2FirmwareInfo(wholeFirmwareBytes);
+    protected void determineFirmwareInfo(UriHelper uriHelper) throws IOException {
+        firmwareInfo = new Mi2FirmwareInfo(uriHelper);
         if (!firmwareInfo.isHeaderValid()) {
             throw new IllegalArgumentException("Not a Mi Band 2 firmware");
         }
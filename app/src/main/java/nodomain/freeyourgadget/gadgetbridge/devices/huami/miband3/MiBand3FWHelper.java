@@ -23,6 +23,7 @@ import java.io.IOException;
 
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiFWHelper;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.miband3.MiBand3FirmwareInfo;
+import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 
 public class MiBand3FWHelper extends HuamiFWHelper {
 
@@ -31,8 +32,8 @@ public class MiBand3FWHelper extends HuamiFWHelper {
     }
 
     @Override
-    protected void determineFirmwareInfo(byte[] wholeFirmwareBytes) {
-        firmwareInfo = new MiBand3FirmwareInfo(wholeFirmwareBytes);
+    protected void determineFirmwareInfo(UriHelper uriHelper) throws IOException {
+        firmwareInfo = new MiBand3FirmwareInfo(uriHelper);
         if (!firmwareInfo.isHeaderValid()) {
             throw new IllegalArgumentException("Not a Mi Band 3 firmware");
         }
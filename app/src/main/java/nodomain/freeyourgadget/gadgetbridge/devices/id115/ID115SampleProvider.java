@@ -69,6 +69,11 @@ public class ID115SampleProvider extends AbstractSampleProvider<ID115ActivitySam
         return rawIntensity;
     }
 
+    @Override
+    protected Property getStepsSampleProperty() {
+        return ID115ActivitySampleDao.Properties.Steps;
+    }
+
     @Override
     public ID115ActivitySample createActivitySample() {
         return new ID115ActivitySample();
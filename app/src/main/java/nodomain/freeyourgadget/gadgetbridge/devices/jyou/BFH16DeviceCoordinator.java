@@ -32,6 +32,7 @@ import java.util.Collections;
 import androidx.annotation.NonNull;
 import nodomain.freeyourgadget.gadgetbridge.GBException;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractDeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCandidateMatcher;
 import nodomain.freeyourgadget.gadgetbridge.devices.InstallHandler;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
@@ -70,10 +71,16 @@ public class BFH16DeviceCoordinator extends AbstractDeviceCoordinator
         return Collections.singletonList(filter);
     }
 
+    @Override
+    public DeviceCandidateMatcher getCandidateMatcher() {
+        return new DeviceCandidateMatcher()
+                .addNamePrefix("BFH-16");
+    }
+
     @Override
     public DeviceType getSupportedType(GBDeviceCandidate candidate) {
 
-        String name = candidate.getDevice().getName();
+        String name = candidate.getDeviceName();
         if (name != null) {
             if (name.startsWith("BFH-16")) {
                 return DeviceType.BFH16;
@@ -36,6 +36,7 @@ import java.util.regex.Pattern;
 import androidx.annotation.NonNull;
 import nodomain.freeyourgadget.gadgetbridge.GBException;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractDeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCandidateMatcher;
 import nodomain.freeyourgadget.gadgetbridge.devices.InstallHandler;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
@@ -61,6 +62,15 @@ public class TeclastH30Coordinator extends AbstractDeviceCoordinator {
         return Collections.singletonList(filter);
     }
 
+    @Override
+    public DeviceCandidateMatcher getCandidateMatcher() {
+        return new DeviceCandidateMatcher()
+                .addServiceUuid(JYouConstants.UUID_SERVICE_JYOU)
+                .addNamePrefix("TECLAST_H30")
+                .addNamePrefix("TECLAST_H10")
+                .addNamePattern(deviceNamePattern);
+    }
+
     @NonNull
     @Override
     public DeviceType getSupportedType(GBDeviceCandidate candidate) {
@@ -68,7 +78,7 @@ public class TeclastH30Coordinator extends AbstractDeviceCoordinator {
             return DeviceType.TECLASTH30;
         }
 
-        String name = candidate.getDevice().getName();
+        String name = candidate.getDeviceName();
         if (name != null) {
             if (name.startsWith("TECLAST_H30") || name.startsWith("TECLAST_H10")) {
                 return DeviceType.TECLASTH30;
@@ -23,15 +23,12 @@ import android.net.Uri;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 
 import androidx.annotation.NonNull;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
-import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 
 /**
@@ -40,9 +37,6 @@ import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 public abstract class AbstractMiBandFWHelper {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractMiBandFWHelper.class);
 
-    @NonNull
-    private final byte[] fw;
-
     public AbstractMiBandFWHelper(Uri uri, Context context) throws IOException {
         UriHelper uriHelper = UriHelper.get(uri, context);
         String pebblePattern = ".*\\.(pbw|pbz|pbl)";
@@ -50,9 +44,8 @@ public abstract class AbstractMiBandFWHelper {
             throw new IOException("Firmware has a filename that looks like a Pebble app/firmware.");
         }
 
-        try (InputStream in = new BufferedInputStream(uriHelper.openInputStream())) {
-            this.fw = FileUtils.readAll(in, 1024 * 2048); // 2.0 MB
-            determineFirmwareInfo(fw);
+        try {
+            determineFirmwareInfo(uriHelper);
         } catch (IOException ex) {
             throw ex; // pass through
         } catch (IllegalArgumentException ex) {
@@ -93,11 +86,6 @@ public abstract class AbstractMiBandFWHelper {
         return formatFirmwareVersion(version);
     }
 
-    @NonNull
-    public byte[] getFw() {
-        return fw;
-    }
-
     public boolean isFirmwareWhitelisted() {
         for (int wlf : getWhitelistedFirmwareVersions()) {
             if (wlf == getFirmwareVersion()) {
@@ -114,12 +102,11 @@ public abstract class AbstractMiBandFWHelper {
     public abstract boolean isSingleFirmware();
 
     /**
-     * @param wholeFirmwareBytes
-     * @return
+     * Examines the firmware file, either by reading it into memory or while streaming it.
+     *
      * @throws IllegalArgumentException when the data is not recognized as firmware data
      */
-    @NonNull
-    protected abstract void determineFirmwareInfo(byte[] wholeFirmwareBytes);
+    protected abstract void determineFirmwareInfo(UriHelper uriHelper) throws IOException;
 
     public abstract void checkValid() throws IllegalArgumentException;
 }
@@ -66,6 +66,21 @@ public abstract class AbstractMiBandSampleProvider extends AbstractSampleProvide
         return MiBandActivitySampleDao.Properties.RawKind;
     }
 
+    @Override
+    protected Property getStepsSampleProperty() {
+        return MiBandActivitySampleDao.Properties.Steps;
+    }
+
+    @Override
+    protected Property getRawIntensitySampleProperty() {
+        return MiBandActivitySampleDao.Properties.RawIntensity;
+    }
+
+    @Override
+    protected Property getHeartRateSampleProperty() {
+        return MiBandActivitySampleDao.Properties.HeartRate;
+    }
+
     @Override
     public MiBandActivitySample createActivitySample() {
         return new MiBandActivitySample();
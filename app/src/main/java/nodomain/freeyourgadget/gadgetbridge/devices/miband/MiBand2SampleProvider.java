@@ -25,6 +25,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySampleDao;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
 
 import static nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst.TYPE_IGNORE;
 import static nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiConst.TYPE_NO_CHANGE;
@@ -52,7 +53,8 @@ public class MiBand2SampleProvider extends AbstractMiBandSampleProvider {
             return;
         }
 
-        int lastValidKind = determinePreviousValidActivityType(samples.get(0));
+        MiBandActivitySample first = samples.get(0);
+        int lastValidKind = determinePreviousValidActivityType(first.getDeviceId(), first.getUserId(), first.getTimestamp());
         for (MiBandActivitySample sample : samples) {
             int rawKind = sample.getRawKind();
             if (rawKind != TYPE_UNSET) {
@@ -74,12 +76,46 @@ public class MiBand2SampleProvider extends AbstractMiBandSampleProvider {
         }
     }
 
-    private int determinePreviousValidActivityType(MiBandActivitySample sample) {
+    /**
+     * Same as #postprocess(List), for the raw kinds of the given columns.
+     */
+    @Override
+    protected void postprocess(SampleColumns columns) {
+        if (columns.isEmpty()) {
+            return;
+        }
+
+        int lastValidKind = determinePreviousValidActivityType(getDeviceId(), null, columns.getTimestamp(0));
+        int[] rawKinds = columns.rawKinds();
+        for (int i = 0; i < columns.size(); i++) {
+            int rawKind = rawKinds[i];
+            if (rawKind != TYPE_UNSET) {
+                rawKind &= 0xf;
+                columns.setRawKind(i, rawKind);
+            }
+
+            switch (rawKind) {
+                case TYPE_IGNORE:
+                case TYPE_NO_CHANGE:
+                    if (lastValidKind != TYPE_UNSET) {
+                        columns.setRawKind(i, lastValidKind);
+                    }
+                    break;
+                default:
+                    lastValidKind = rawKind;
+                    break;
+            }
+        }
+    }
+
+    private int determinePreviousValidActivityType(long deviceId, Long userId, int timestamp) {
         QueryBuilder<MiBandActivitySample> qb = getSampleDao().queryBuilder();
-        qb.where(MiBandActivitySampleDao.Properties.DeviceId.eq(sample.getDeviceId()),
-                MiBandActivitySampleDao.Properties.UserId.eq(sample.getUserId()),
-                MiBandActivitySampleDao.Properties.Timestamp.lt(sample.getTimestamp()),
+        qb.where(MiBandActivitySampleDao.Properties.DeviceId.eq(deviceId),
+                MiBandActivitySampleDao.Properties.Timestamp.lt(timestamp),
                 MiBandActivitySampleDao.Properties.RawKind.notIn(TYPE_NO_CHANGE, TYPE_IGNORE, TYPE_UNSET, 16, 80, 96, 112)); // all I ever had that are 0 when doing &=0xf
+        if (userId != null) {
+            qb.where(MiBandActivitySampleDao.Properties.UserId.eq(userId));
+        }
         qb.orderDesc(MiBandActivitySampleDao.Properties.Timestamp);
         qb.limit(1);
         List<MiBandActivitySample> result = qb.build().list();
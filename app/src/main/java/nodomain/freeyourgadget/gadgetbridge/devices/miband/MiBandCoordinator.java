@@ -39,6 +39,7 @@ import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.GBException;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractDeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCandidateMatcher;
 import nodomain.freeyourgadget.gadgetbridge.devices.InstallHandler;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
@@ -66,6 +67,15 @@ public class MiBandCoordinator extends AbstractDeviceCoordinator {
         return Collections.singletonList(filter);
     }
 
+    @Override
+    public DeviceCandidateMatcher getCandidateMatcher() {
+        return new DeviceCandidateMatcher()
+                .addAddressPrefix(MiBandService.MAC_ADDRESS_FILTER_1_1A)
+                .addAddressPrefix(MiBandService.MAC_ADDRESS_FILTER_1S)
+                .addServiceUuid(MiBandService.UUID_SERVICE_MIBAND_SERVICE)
+                .addNamePrefix(MiBandConst.MI_GENERAL_NAME_PREFIX);
+    }
+
     @NonNull
     @Override
     public DeviceType getSupportedType(GBDeviceCandidate candidate) {
@@ -82,7 +92,7 @@ public class MiBandCoordinator extends AbstractDeviceCoordinator {
         try {
             BluetoothDevice device = candidate.getDevice();
             if (isHealthWearable(device)) {
-                String name = device.getName();
+                String name = candidate.getDeviceName();
                 if (name != null && name.toUpperCase().startsWith(MiBandConst.MI_GENERAL_NAME_PREFIX.toUpperCase())) {
                     return DeviceType.MIBAND;
                 }
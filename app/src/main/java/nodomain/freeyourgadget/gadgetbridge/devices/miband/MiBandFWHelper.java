@@ -23,13 +23,17 @@ import android.net.Uri;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import androidx.annotation.NonNull;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.miband.AbstractMiFirmwareInfo;
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 
 /**
  * Also see Mi1SFirmwareInfo.
@@ -45,6 +49,9 @@ public class MiBandFWHelper extends AbstractMiBandFWHelper {
     @NonNull
     private AbstractMiFirmwareInfo firmwareInfo;
 
+    @NonNull
+    private byte[] fw;
+
     /**
      * Provides a different notification API which is also used on Mi1A devices.
      */
@@ -108,13 +115,21 @@ public class MiBandFWHelper extends AbstractMiBandFWHelper {
     }
 
     /**
-     * @param wholeFirmwareBytes
-     * @return
+     * Reads the whole firmware into memory, as it is needed to determine the firmware info.
+     *
      * @throws IllegalArgumentException when the data is not recognized as firmware data
      */
     @Override
-    protected void determineFirmwareInfo(byte[] wholeFirmwareBytes) {
-        firmwareInfo = AbstractMiFirmwareInfo.determineFirmwareInfoFor(wholeFirmwareBytes);
+    protected void determineFirmwareInfo(UriHelper uriHelper) throws IOException {
+        try (InputStream in = new BufferedInputStream(uriHelper.openInputStream())) {
+            fw = FileUtils.readAll(in, 1024 * 2048); // 2.0 MB
+        }
+        firmwareInfo = AbstractMiFirmwareInfo.determineFirmwareInfoFor(fw);
+    }
+
+    @NonNull
+    public byte[] getFw() {
+        return fw;
     }
 
     @Override
@@ -272,9 +272,9 @@ public class MiBandPairingActivity extends AbstractGBActivity {
     }
 
     private void performApplicationLevelPair() {
-        GBApplication.deviceService().disconnect(); // just to make sure...
         GBDevice device = DeviceHelper.getInstance().toSupportedDevice(deviceCandidate);
         if (device != null) {
+            GBApplication.deviceService().forDevice(device).disconnect(); // just to make sure...
             GBApplication.deviceService().connect(device, true);
         } else {
             GB.toast(this, "Unable to connect, can't recognize the device type: " + deviceCandidate, Toast.LENGTH_LONG, GB.ERROR);
@@ -53,6 +53,21 @@ public class No1F1SampleProvider extends AbstractSampleProvider<No1F1ActivitySam
         return rawIntensity / (float) 8000.0;
     }
 
+    @Override
+    protected Property getStepsSampleProperty() {
+        return No1F1ActivitySampleDao.Properties.Steps;
+    }
+
+    @Override
+    protected Property getRawIntensitySampleProperty() {
+        return No1F1ActivitySampleDao.Properties.RawIntensity;
+    }
+
+    @Override
+    protected Property getHeartRateSampleProperty() {
+        return No1F1ActivitySampleDao.Properties.HeartRate;
+    }
+
     @Override
     public No1F1ActivitySample createActivitySample() {
         return new No1F1ActivitySample();
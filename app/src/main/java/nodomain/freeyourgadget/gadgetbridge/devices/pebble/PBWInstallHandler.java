@@ -35,7 +35,6 @@ import java.io.Writer;
 
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.InstallActivity;
-import nodomain.freeyourgadget.gadgetbridge.activities.appmanager.AppManagerActivity;
 import nodomain.freeyourgadget.gadgetbridge.devices.InstallHandler;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceApp;
@@ -49,6 +48,7 @@ public class PBWInstallHandler implements InstallHandler {
 
     private final Context mContext;
     private PBWReader mPBWReader;
+    private String mPlatformName;
     private final Uri mUri;
 
     public PBWInstallHandler(Uri uri, Context context) {
@@ -69,10 +69,9 @@ public class PBWInstallHandler implements InstallHandler {
             return;
         }
 
-        String platformName = PebbleUtils.getPlatformName(device.getModel());
-
+        mPlatformName = PebbleUtils.getPlatformName(device.getModel());
         try {
-            mPBWReader = new PBWReader(mUri, mContext, platformName);
+            mPBWReader = new PBWReader(mUri, mContext, mPlatformName);
         } catch (FileNotFoundException e) {
             installActivity.setInfoText("file not found");
             installActivity.setInstallEnabled(false);
@@ -82,6 +81,8 @@ public class PBWInstallHandler implements InstallHandler {
             installActivity.setInstallEnabled(false);
             return;
         }
+        // the metadata has been read, do not keep a copy of the archive while the user decides
+        mPBWReader.close();
 
         if (!mPBWReader.isValid()) {
             installActivity.setInfoText("pbw/pbz is broken or incompatible with your Hardware or Firmware.");
@@ -147,6 +148,11 @@ public class PBWInstallHandler implements InstallHandler {
 
     @Override
     public void onStartInstall(GBDevice device) {
+        // the device support reads the file on its own
+        copyToPbwCache();
+    }
+
+    private void copyToPbwCache() {
         if (mPBWReader.isFirmware() || mPBWReader.isLanguage()) {
             return;
         }
@@ -157,22 +163,14 @@ public class PBWInstallHandler implements InstallHandler {
             destDir = PebbleUtils.getPbwCacheDir();
             destDir.mkdirs();
             FileUtils.copyURItoFile(mContext, mUri, new File(destDir, app.getUUID().toString() + ".pbw"));
-
-            AppManagerActivity.addToAppOrderFile("pbwcacheorder.txt", app.getUUID());
         } catch (IOException e) {
             LOG.error("Installation failed: " + e.getMessage(), e);
             return;
         }
 
+        // the app keys are read from the json file of the app
         File outputFile = new File(destDir, app.getUUID().toString() + ".json");
-        Writer writer;
-        try {
-            writer = new BufferedWriter(new FileWriter(outputFile));
-        } catch (IOException e) {
-            LOG.error("Failed to open output file: " + e.getMessage(), e);
-            return;
-        }
-        try {
+        try (Writer writer = new BufferedWriter(new FileWriter(outputFile))) {
             LOG.info(app.getJSON().toString());
             JSONObject appJSON = app.getJSON();
             JSONObject appKeysJSON = mPBWReader.getAppKeysJSON();
@@ -180,27 +178,28 @@ public class PBWInstallHandler implements InstallHandler {
                 appJSON.put("appKeys", appKeysJSON);
             }
             writer.write(appJSON.toString());
-
-            writer.close();
         } catch (IOException e) {
             LOG.error("Failed to write to output file: " + e.getMessage(), e);
         } catch (JSONException e) {
             LOG.error(e.getMessage(), e);
         }
 
-        InputStream jsConfigFile = mPBWReader.getInputStreamFile("pebble-js-app.js");
-        if (jsConfigFile != null) {
-            try {
+        boolean configurable = false;
+        try (PBWReader reader = new PBWReader(mUri, mContext, mPlatformName)) {
+            InputStream jsConfigFile = reader.getInputStreamFile("pebble-js-app.js");
+            if (jsConfigFile != null) {
                 outputFile = new File(destDir, app.getUUID().toString() + "_config.js");
                 FileUtils.copyStreamToFile(jsConfigFile, outputFile);
-            } catch (IOException e) {
-                LOG.error("Failed to open output file: " + e.getMessage(), e);
-            } finally {
-                try {
-                    jsConfigFile.close();
-                } catch (IOException e) {
-                }
+                configurable = true;
             }
+        } catch (IOException e) {
+            LOG.error("Failed to copy config file: " + e.getMessage(), e);
+        }
+
+        try {
+            PebbleAppCache.getInstance().addApp(app, configurable, PebbleAppCache.CACHE_ORDER);
+        } catch (IOException e) {
+            LOG.error("Failed to add app to pbw cache index: " + e.getMessage(), e);
         }
     }
 
@@ -25,27 +25,39 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceApp;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.pebble.PebbleProtocol;
+import nodomain.freeyourgadget.gadgetbridge.util.CheckSums;
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 
-public class PBWReader {
+/**
+ * Reads the metadata and the files to install from a .pbw, .pbz or .pbl file.
+ * <p/>
+ * The central directory of .pbw and .pbz archives is read once, after that every entry is
+ * read directly from its offset. Uris that are not files are copied to the cache directory
+ * for that. The reader must be closed when the files are not needed anymore.
+ */
+public class PBWReader implements Closeable {
     private static final Logger LOG = LoggerFactory.getLogger(PBWReader.class);
     private static final HashMap<String, Byte> appFileTypesMap;
     private static final HashMap<String, Byte> fwFileTypesMap;
+    private static final int APP_HEADER_LENGTH = 108;
 
     static {
         appFileTypesMap = new HashMap<>();
@@ -61,6 +73,8 @@ public class PBWReader {
     }
 
     private final UriHelper uriHelper;
+    private ZipFile zipFile;
+    private File copiedFile;
     private GBDeviceApp app;
     private ArrayList<PebbleInstallable> pebbleInstallables = null;
     private boolean isFirmware = false;
@@ -80,11 +94,7 @@ public class PBWReader {
         if (uriHelper.getFileName().endsWith(".pbl")) {
             STM32CRC stm32crc = new STM32CRC();
             try (InputStream fin = uriHelper.openInputStream()) {
-                byte[] buf = new byte[2000];
-                while (fin.available() > 0) {
-                    int count = fin.read(buf);
-                    stm32crc.addData(buf, count);
-                }
+                CheckSums.update(fin, stm32crc);
             }
             int crc = stm32crc.getResult();
             // language file
@@ -97,9 +107,30 @@ public class PBWReader {
             return;
         }
 
+        try {
+            openZipFile(context);
+            readArchive(platform);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void openZipFile(Context context) throws IOException {
+        File file = uriHelper.getFile();
+        if (file == null) {
+            // content uris can only be read as a stream, random access needs a local copy
+            copiedFile = File.createTempFile("pbw", ".zip", context.getCacheDir());
+            FileUtils.copyURItoFile(context, uriHelper.getUri(), copiedFile);
+            file = copiedFile;
+        }
+        zipFile = new ZipFile(file);
+    }
+
+    private void readArchive(String platform) throws IOException {
         String platformDir = "";
         if (!uriHelper.getFileName().endsWith(".pbz")) {
-            platformDir = determinePlatformDir(uriHelper, platform);
+            platformDir = determinePlatformDir(platform);
 
             if (platform.equals("chalk") && platformDir.equals("")) {
                 return;
@@ -107,138 +138,143 @@ public class PBWReader {
         }
 
         LOG.info("using platformdir: '" + platformDir + "'");
-        String appName = null;
-        String appCreator = null;
-        String appVersion = null;
-        UUID appUUID = null;
-
-        ZipEntry ze;
         pebbleInstallables = new ArrayList<>();
-        byte[] buffer = new byte[1024];
-        int count;
-        try (ZipInputStream zis = new ZipInputStream(uriHelper.openInputStream())) {
-            while ((ze = zis.getNextEntry()) != null) {
-                String fileName = ze.getName();
-                if (fileName.equals(platformDir + "manifest.json")) {
-                    long bytes = ze.getSize();
-                    if (bytes > 8192) // that should be too much
-                        break;
-
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    while ((count = zis.read(buffer)) != -1) {
-                        baos.write(buffer, 0, count);
-                    }
 
-                    String jsonString = baos.toString();
+        ZipEntry manifestEntry = zipFile.getEntry(platformDir + "manifest.json");
+        if (manifestEntry != null) {
+            if (manifestEntry.getSize() > 8192) { // that should be too much
+                return;
+            }
+            try {
+                JSONObject json = new JSONObject(readString(manifestEntry, 8192));
+                HashMap<String, Byte> fileTypeMap;
+
+                try {
+                    JSONObject firmware = json.getJSONObject("firmware");
+                    fileTypeMap = fwFileTypesMap;
+                    isFirmware = true;
+                    hwRevision = firmware.getString("hwrev");
+                } catch (JSONException e) {
+                    fileTypeMap = appFileTypesMap;
+                    isFirmware = false;
+                }
+                for (Map.Entry<String, Byte> entry : fileTypeMap.entrySet()) {
                     try {
-                        JSONObject json = new JSONObject(jsonString);
-                        HashMap<String, Byte> fileTypeMap;
-
-                        try {
-                            JSONObject firmware = json.getJSONObject("firmware");
-                            fileTypeMap = fwFileTypesMap;
-                            isFirmware = true;
-                            hwRevision = firmware.getString("hwrev");
-                        } catch (JSONException e) {
-                            fileTypeMap = appFileTypesMap;
-                            isFirmware = false;
+                        JSONObject jo = json.getJSONObject(entry.getKey());
+                        String name = jo.getString("name");
+                        int size = jo.getInt("size");
+                        long crc = jo.getLong("crc");
+                        byte type = entry.getValue();
+                        ZipEntry fileEntry = zipFile.getEntry(platformDir + name);
+                        if (fileEntry == null) {
+                            LOG.warn("file to install is missing: " + platformDir + name);
+                            continue;
                         }
-                        for (Map.Entry<String, Byte> entry : fileTypeMap.entrySet()) {
-                            try {
-                                JSONObject jo = json.getJSONObject(entry.getKey());
-                                String name = jo.getString("name");
-                                int size = jo.getInt("size");
-                                long crc = jo.getLong("crc");
-                                byte type = entry.getValue();
-                                pebbleInstallables.add(new PebbleInstallable(platformDir + name, size, (int) crc, type));
-                                LOG.info("found file to install: " + platformDir + name);
-                                isValid = true;
-                            } catch (JSONException e) {
-                                // not fatal
-                            }
+                        if (fileEntry.getSize() != -1 && fileEntry.getSize() != size) {
+                            LOG.warn("size of " + platformDir + name + " is " + fileEntry.getSize() + ", manifest says " + size);
                         }
+                        pebbleInstallables.add(new PebbleInstallable(platformDir + name, size, (int) crc, type));
+                        LOG.info("found file to install: " + platformDir + name);
+                        isValid = true;
                     } catch (JSONException e) {
-                        // no JSON at all that is a problem
-                        isValid = false;
-                        e.printStackTrace();
-                        break;
-                    }
-
-                } else if (fileName.equals("appinfo.json")) {
-                    long bytes = ze.getSize();
-                    if (bytes > 500000) {
-                        LOG.warn(fileName + " exeeds maximum of 500000 bytes");
-                        // that should be too much
-                        break;
+                        // not fatal
                     }
+                }
+            } catch (JSONException e) {
+                // no JSON at all that is a problem
+                isValid = false;
+                e.printStackTrace();
+                return;
+            }
+        }
 
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    while ((count = zis.read(buffer)) != -1) {
-                        baos.write(buffer, 0, count);
-                    }
+        String appName = null;
+        String appCreator = null;
+        String appVersion = null;
+        UUID appUUID = null;
 
-                    String jsonString = baos.toString();
-                    try {
-                        JSONObject json = new JSONObject(jsonString);
-                        appName = json.getString("shortName");
-                        appCreator = json.getString("companyName");
-                        appVersion = json.getString("versionLabel");
-                        appUUID = UUID.fromString(json.getString("uuid"));
-                        if (json.has("appKeys")) {
-                            mAppKeys = json.getJSONObject("appKeys");
-                            LOG.info("found appKeys:" + mAppKeys.toString());
-                        }
-                    } catch (JSONException e) {
-                        isValid = false;
-                        e.printStackTrace();
-                        break;
-                    }
-                } else if (fileName.equals(platformDir + "pebble-app.bin")) {
-                    zis.read(buffer, 0, 108);
-                    byte[] tmp_buf = new byte[32];
-                    ByteBuffer buf = ByteBuffer.wrap(buffer);
-                    buf.order(ByteOrder.LITTLE_ENDIAN);
-                    buf.getLong();  // header, TODO: verify
-                    buf.getShort(); // struct version, TODO: verify
-                    mSdkVersion = buf.getShort();
-                    mAppVersion = buf.getShort();
-                    buf.getShort(); // size
-                    buf.getInt(); // offset
-                    buf.getInt(); // crc
-                    buf.get(tmp_buf, 0, 32); // app name
-                    buf.get(tmp_buf, 0, 32); // author
-                    mIconId = buf.getInt();
-                    LOG.info("got icon id from pebble-app.bin: " + mIconId);
-                    buf.getInt(); // symbol table addr
-                    mFlags = buf.getInt();
-                    LOG.info("got flags from pebble-app.bin: " + mFlags);
-                    // more follows but, not interesting for us
+        ZipEntry appInfoEntry = zipFile.getEntry("appinfo.json");
+        if (appInfoEntry != null) {
+            if (appInfoEntry.getSize() > 500000) {
+                LOG.warn(appInfoEntry.getName() + " exeeds maximum of 500000 bytes");
+                // that should be too much
+                isValid = false;
+                return;
+            }
+            try {
+                JSONObject json = new JSONObject(readString(appInfoEntry, 500000));
+                appName = json.getString("shortName");
+                appCreator = json.getString("companyName");
+                appVersion = json.getString("versionLabel");
+                appUUID = UUID.fromString(json.getString("uuid"));
+                if (json.has("appKeys")) {
+                    mAppKeys = json.getJSONObject("appKeys");
+                    LOG.info("found appKeys:" + mAppKeys.toString());
                 }
+            } catch (JSONException e) {
+                isValid = false;
+                e.printStackTrace();
+                return;
             }
-            if (appUUID != null && appName != null && appCreator != null && appVersion != null) {
-                GBDeviceApp.Type appType = GBDeviceApp.Type.APP_GENERIC;
+        }
 
-                if ((mFlags & 16) == 16) {
-                    appType = GBDeviceApp.Type.APP_ACTIVITYTRACKER;
-                } else if ((mFlags & 1) == 1) {
-                    appType = GBDeviceApp.Type.WATCHFACE;
+        ZipEntry appBinaryEntry = zipFile.getEntry(platformDir + "pebble-app.bin");
+        if (appBinaryEntry != null) {
+            byte[] header = new byte[APP_HEADER_LENGTH];
+            try (InputStream in = zipFile.getInputStream(appBinaryEntry)) {
+                int offset = 0;
+                int count;
+                while (offset < header.length && (count = in.read(header, offset, header.length - offset)) != -1) {
+                    offset += count;
                 }
-                app = new GBDeviceApp(appUUID, appName, appCreator, appVersion, appType);
             }
-            else if (!isFirmware) {
-                isValid = false;
+            byte[] tmp_buf = new byte[32];
+            ByteBuffer buf = ByteBuffer.wrap(header);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.getLong();  // header, TODO: verify
+            buf.getShort(); // struct version, TODO: verify
+            mSdkVersion = buf.getShort();
+            mAppVersion = buf.getShort();
+            buf.getShort(); // size
+            buf.getInt(); // offset
+            buf.getInt(); // crc
+            buf.get(tmp_buf, 0, 32); // app name
+            buf.get(tmp_buf, 0, 32); // author
+            mIconId = buf.getInt();
+            LOG.info("got icon id from pebble-app.bin: " + mIconId);
+            buf.getInt(); // symbol table addr
+            mFlags = buf.getInt();
+            LOG.info("got flags from pebble-app.bin: " + mFlags);
+            // more follows but, not interesting for us
+        }
+
+        if (appUUID != null && appName != null && appCreator != null && appVersion != null) {
+            GBDeviceApp.Type appType = GBDeviceApp.Type.APP_GENERIC;
+
+            if ((mFlags & 16) == 16) {
+                appType = GBDeviceApp.Type.APP_ACTIVITYTRACKER;
+            } else if ((mFlags & 1) == 1) {
+                appType = GBDeviceApp.Type.WATCHFACE;
             }
+            app = new GBDeviceApp(appUUID, appName, appCreator, appVersion, appType);
+        }
+        else if (!isFirmware) {
+            isValid = false;
+        }
+    }
+
+    private String readString(ZipEntry entry, long maxLength) throws IOException {
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            return new String(FileUtils.readAll(in, maxLength));
         }
     }
 
     /**
-     * Determines the platform dir to use for the given uri and platform.
-     * @param uriHelper
+     * Determines the platform dir to use for the given platform.
      * @param platform
      * @return the platform dir to use
-     * @throws IOException
      */
-    private String determinePlatformDir(UriHelper uriHelper, String platform) throws IOException {
+    private String determinePlatformDir(String platform) {
         String platformDir = "";
 
         /*
@@ -265,12 +301,10 @@ public class PBWReader {
         }
 
         for (String dir : platformDirs) {
-            try (ZipInputStream zis = new ZipInputStream(uriHelper.openInputStream())) {
-                ZipEntry ze;
-                while ((ze = zis.getNextEntry()) != null) {
-                    if (ze.getName().startsWith(dir)) {
-                        return dir;
-                    }
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                if (entries.nextElement().getName().startsWith(dir)) {
+                    return dir;
                 }
             }
         }
@@ -302,27 +336,19 @@ public class PBWReader {
                 return null;
             }
         }
-        ZipInputStream zis = null;
-        ZipEntry ze;
+        if (zipFile == null) {
+            return null;
+        }
+        ZipEntry entry = zipFile.getEntry(filename);
+        if (entry == null) {
+            return null;
+        }
         try {
-            zis = new ZipInputStream(uriHelper.openInputStream());
-            while ((ze = zis.getNextEntry()) != null) {
-                if (ze.getName().equals(filename)) {
-                    return zis; // return WITHOUT closing the stream!
-                }
-            }
-            zis.close();
-        } catch (Throwable e) {
-            try {
-                if (zis != null) {
-                    zis.close();
-                }
-            } catch (IOException e1) {
-                // ignore
-            }
-            e.printStackTrace();
+            return zipFile.getInputStream(entry);
+        } catch (IOException e) {
+            LOG.warn("unable to read " + filename + ": " + e.getMessage(), e);
+            return null;
         }
-        return null;
     }
 
     public PebbleInstallable[] getPebbleInstallables() {
@@ -355,4 +381,26 @@ public class PBWReader {
     public JSONObject getAppKeysJSON() {
         return mAppKeys;
     }
+
+    /**
+     * Closes the archive, which also closes all streams returned by
+     * {@link #getInputStreamFile(String)}. The metadata stays available.
+     */
+    @Override
+    public void close() {
+        if (zipFile != null) {
+            try {
+                zipFile.close();
+            } catch (IOException e) {
+                LOG.warn("unable to close " + uriHelper.getFileName(), e);
+            }
+            zipFile = null;
+        }
+        if (copiedFile != null) {
+            if (!copiedFile.delete()) {
+                LOG.warn("unable to delete " + copiedFile);
+            }
+            copiedFile = null;
+        }
+    }
 }
@@ -0,0 +1,368 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.devices.pebble;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceApp;
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.PebbleUtils;
+
+/**
+ * Index of the metadata of all apps in the pbw cache, and of the app orders (the cached apps
+ * and the apps and watchfaces of each device).
+ * <p/>
+ * The index is kept in memory and stored in the pbw cache, which replaces reading the .json
+ * file of every cached app and a file per app order. The metadata and the orders are stored
+ * in two files, so that reordering apps does not rewrite the metadata of every cached app.
+ * Every change is written to a new file which then replaces the old one, so an interrupted
+ * write never leaves a broken file behind.
+ * <p/>
+ * Loading and every change access the file system, so the index must not be used on the
+ * UI thread.
+ * <p/>
+ * When loaded, the index is checked against a single listing of the pbw cache directory.
+ * Only apps that have been added to the cache without the index, e.g. by an older version,
+ * are read from their .json file. App orders which are not in the index yet are read from
+ * their former order file when first needed.
+ */
+public class PebbleAppCache {
+    private static final Logger LOG = LoggerFactory.getLogger(PebbleAppCache.class);
+
+    public static final String CACHE_ORDER = "pbwcacheorder.txt";
+    private static final String INDEX_FILE = "pbwcacheindex.json";
+    private static final String ORDERS_FILE = "pbwcacheorders.json";
+    private static final int INDEX_VERSION = 1;
+
+    private static PebbleAppCache sInstance;
+
+    private final File cacheDir;
+    private final File orderDir;
+    private final File indexFile;
+    private final File ordersFile;
+    private final Map<UUID, GBDeviceApp> apps = new LinkedHashMap<>();
+    /** Apps in the cache whose metadata could not be read. */
+    private final Set<UUID> appsWithoutMetadata = new LinkedHashSet<>();
+    private final Map<String, List<UUID>> orders = new HashMap<>();
+
+    /**
+     * Returns the index of the pbw cache. The first call loads the index, so it must not
+     * be made on the UI thread.
+     */
+    public static synchronized PebbleAppCache getInstance() throws IOException {
+        if (sInstance == null) {
+            PebbleAppCache appCache = new PebbleAppCache(PebbleUtils.getPbwCacheDir(), FileUtils.getExternalFilesDir());
+            appCache.load();
+            sInstance = appCache;
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param cacheDir the pbw cache directory
+     * @param orderDir the directory with the former app order files
+     */
+    PebbleAppCache(File cacheDir, File orderDir) {
+        this.cacheDir = cacheDir;
+        this.orderDir = orderDir;
+        indexFile = new File(cacheDir, INDEX_FILE);
+        ordersFile = new File(cacheDir, ORDERS_FILE);
+    }
+
+    synchronized void load() {
+        boolean changed = !indexFile.exists();
+        if (!changed) {
+            try {
+                readIndex();
+            } catch (IOException | JSONException e) {
+                LOG.warn("unable to read pbw cache index, rebuilding it", e);
+                apps.clear();
+                changed = true;
+            }
+        }
+        if (ordersFile.exists()) {
+            try {
+                readOrders(readJSON(ordersFile));
+            } catch (IOException | JSONException | IllegalArgumentException e) {
+                LOG.warn("unable to read app orders, reading the former order files instead", e);
+                orders.clear();
+            }
+        }
+
+        String[] fileNames = cacheDir.list();
+        Set<String> files = new HashSet<>(fileNames != null ? Arrays.asList(fileNames) : Collections.<String>emptyList());
+        Set<UUID> cachedUuids = new HashSet<>();
+        for (String fileName : files) {
+            if (!fileName.endsWith(".pbw")) {
+                continue;
+            }
+            String baseName = fileName.substring(0, fileName.length() - 4);
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(baseName);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            cachedUuids.add(uuid);
+            boolean configurable = files.contains(baseName + "_config.js");
+            GBDeviceApp app = apps.get(uuid);
+            if (app == null) {
+                app = readAppMetadata(baseName, configurable);
+                if (app == null) {
+                    appsWithoutMetadata.add(uuid);
+                    continue;
+                }
+                apps.put(uuid, app);
+                changed = true;
+            } else if (app.isConfigurable() != configurable) {
+                apps.put(uuid, new GBDeviceApp(app.getJSON(), configurable));
+                changed = true;
+            }
+        }
+        for (Iterator<UUID> it = apps.keySet().iterator(); it.hasNext(); ) {
+            if (!cachedUuids.contains(it.next())) {
+                it.remove();
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            saveIndex();
+        }
+    }
+
+    private GBDeviceApp readAppMetadata(String baseName, boolean configurable) {
+        File jsonFile = new File(cacheDir, baseName + ".json");
+        try {
+            JSONObject json = new JSONObject(FileUtils.getStringFromFile(jsonFile));
+            return new GBDeviceApp(json, configurable);
+        } catch (IOException | JSONException e) {
+            LOG.info("could not read json file for " + baseName);
+            return null;
+        }
+    }
+
+    private void readIndex() throws IOException, JSONException {
+        JSONObject index = readJSON(indexFile);
+        JSONArray appArray = index.getJSONArray("apps");
+        for (int i = 0; i < appArray.length(); i++) {
+            JSONObject json = appArray.getJSONObject(i);
+            GBDeviceApp app = new GBDeviceApp(json, json.optBoolean("configurable"));
+            apps.put(app.getUUID(), app);
+        }
+    }
+
+    private static JSONObject readJSON(File file) throws IOException, JSONException {
+        JSONObject json = new JSONObject(FileUtils.getStringFromFile(file));
+        if (json.getInt("version") != INDEX_VERSION) {
+            throw new IOException("unsupported version " + json.getInt("version") + " of " + file);
+        }
+        return json;
+    }
+
+    private void readOrders(JSONObject json) throws JSONException {
+        JSONObject orderObject = json.getJSONObject("orders");
+        Iterator<String> names = orderObject.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            JSONArray uuidArray = orderObject.getJSONArray(name);
+            List<UUID> uuids = new ArrayList<>(uuidArray.length());
+            for (int i = 0; i < uuidArray.length(); i++) {
+                uuids.add(UUID.fromString(uuidArray.getString(i)));
+            }
+            orders.put(name, uuids);
+        }
+    }
+
+    private void saveIndex() {
+        try {
+            JSONArray appArray = new JSONArray();
+            for (GBDeviceApp app : apps.values()) {
+                JSONObject json = app.getJSON();
+                json.put("configurable", app.isConfigurable());
+                appArray.put(json);
+            }
+            JSONObject index = new JSONObject();
+            index.put("version", INDEX_VERSION);
+            index.put("apps", appArray);
+            write(indexFile, index);
+        } catch (IOException | JSONException e) {
+            LOG.warn("unable to write pbw cache index", e);
+        }
+    }
+
+    private void saveOrders() {
+        try {
+            JSONObject orderObject = new JSONObject();
+            for (Map.Entry<String, List<UUID>> order : orders.entrySet()) {
+                JSONArray uuidArray = new JSONArray();
+                for (UUID uuid : order.getValue()) {
+                    uuidArray.put(uuid.toString());
+                }
+                orderObject.put(order.getKey(), uuidArray);
+            }
+            JSONObject json = new JSONObject();
+            json.put("version", INDEX_VERSION);
+            json.put("orders", orderObject);
+            write(ordersFile, json);
+        } catch (IOException | JSONException e) {
+            LOG.warn("unable to write app orders", e);
+        }
+    }
+
+    private void write(File file, JSONObject json) throws IOException {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("unable to create " + cacheDir);
+        }
+        File tmpFile = new File(cacheDir, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            writer.write(json.toString());
+            writer.flush();
+            out.getFD().sync();
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("unable to replace " + file);
+        }
+    }
+
+    /**
+     * @return the cached apps, in the order in which they were added
+     */
+    public synchronized List<GBDeviceApp> getApps() {
+        return new ArrayList<>(apps.values());
+    }
+
+    /**
+     * @return the cached app with the given uuid, or null
+     */
+    public synchronized GBDeviceApp getApp(UUID uuid) {
+        return apps.get(uuid);
+    }
+
+    /**
+     * @return the uuids of the apps in the cache whose metadata could not be read
+     */
+    public synchronized List<UUID> getAppsWithoutMetadata() {
+        return new ArrayList<>(appsWithoutMetadata);
+    }
+
+    /**
+     * Adds an app whose files have been stored in the cache, and appends it to the given order.
+     */
+    public synchronized void addApp(GBDeviceApp app, boolean configurable, String orderName) {
+        apps.put(app.getUUID(), new GBDeviceApp(app.getJSON(), configurable));
+        appsWithoutMetadata.remove(app.getUUID());
+        List<UUID> order = getOrCreateOrder(orderName);
+        if (!order.contains(app.getUUID())) {
+            order.add(app.getUUID());
+            saveOrders();
+        }
+        saveIndex();
+    }
+
+    /**
+     * Removes an app whose files have been deleted from the cache, and removes it from the
+     * given order.
+     */
+    public synchronized void removeApp(UUID uuid, String orderName) {
+        if (apps.remove(uuid) != null) {
+            saveIndex();
+        }
+        appsWithoutMetadata.remove(uuid);
+        if (getOrCreateOrder(orderName).remove(uuid)) {
+            saveOrders();
+        }
+    }
+
+    /**
+     * @param name the name of the order, e.g. CACHE_ORDER or the former order file of a device
+     * @return the uuids in the given order, or an empty list
+     */
+    public synchronized ArrayList<UUID> getOrder(String name) {
+        return new ArrayList<>(getOrCreateOrder(name));
+    }
+
+    public synchronized void setOrder(String name, List<UUID> uuids) {
+        orders.put(name, new ArrayList<>(uuids));
+        saveOrders();
+    }
+
+    public synchronized void addToOrder(String name, UUID uuid) {
+        List<UUID> order = getOrCreateOrder(name);
+        if (!order.contains(uuid)) {
+            order.add(uuid);
+            saveOrders();
+        }
+    }
+
+    public synchronized void removeFromOrder(String name, UUID uuid) {
+        if (getOrCreateOrder(name).remove(uuid)) {
+            saveOrders();
+        }
+    }
+
+    private List<UUID> getOrCreateOrder(String name) {
+        List<UUID> order = orders.get(name);
+        if (order == null) {
+            order = readOrderFile(name);
+            orders.put(name, order);
+        }
+        return order;
+    }
+
+    private List<UUID> readOrderFile(String name) {
+        List<UUID> uuids = new ArrayList<>();
+        File orderFile = new File(orderDir, name);
+        if (!orderFile.exists()) {
+            return uuids;
+        }
+        try (BufferedReader in = new BufferedReader(new FileReader(orderFile))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                uuids.add(UUID.fromString(line));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("could not read sort file " + orderFile);
+        }
+        return uuids;
+    }
+}
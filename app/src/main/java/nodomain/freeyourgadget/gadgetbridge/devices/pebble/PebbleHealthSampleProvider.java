@@ -23,10 +23,8 @@ import java.util.List;
 import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
 import de.greenrobot.dao.query.QueryBuilder;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivityOverlay;
 import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivityOverlayDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivitySample;
@@ -54,8 +52,8 @@ public class PebbleHealthSampleProvider extends AbstractSampleProvider<PebbleHea
     public List<PebbleHealthActivitySample> getAllActivitySamples(int timestamp_from, int timestamp_to) {
         List<PebbleHealthActivitySample> samples = super.getGBActivitySamples(timestamp_from, timestamp_to, ActivityKind.TYPE_ALL);
 
-        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        Long deviceId = getDeviceId();
+        if (deviceId == null) {
             // no device, no samples
             return Collections.emptyList();
         }
@@ -63,7 +61,7 @@ public class PebbleHealthSampleProvider extends AbstractSampleProvider<PebbleHea
         QueryBuilder<PebbleHealthActivityOverlay> qb = getSession().getPebbleHealthActivityOverlayDao().queryBuilder();
 
         // I assume it returns the records by id ascending ... (last overlay is dominant)
-        qb.where(PebbleHealthActivityOverlayDao.Properties.DeviceId.eq(dbDevice.getId()), PebbleHealthActivityOverlayDao.Properties.TimestampTo.ge(timestamp_from))
+        qb.where(PebbleHealthActivityOverlayDao.Properties.DeviceId.eq(deviceId), PebbleHealthActivityOverlayDao.Properties.TimestampTo.ge(timestamp_from))
                 .where(PebbleHealthActivityOverlayDao.Properties.TimestampFrom.le(timestamp_to));
         List<PebbleHealthActivityOverlay> overlayRecords = qb.build().list();
 
@@ -75,7 +73,6 @@ public class PebbleHealthSampleProvider extends AbstractSampleProvider<PebbleHea
                 }
             }
         }
-        detachFromSession();
         return samples;
     }
 
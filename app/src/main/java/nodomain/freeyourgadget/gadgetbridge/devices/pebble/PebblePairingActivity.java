@@ -208,7 +208,8 @@ public class PebblePairingActivity extends AbstractGBActivity {
         }
 
         GB.toast(this, getString(R.string.pairing_creating_bond_with, mBtDevice.getName(), macAddress), Toast.LENGTH_LONG, GB.INFO);
-        GBApplication.deviceService().disconnect(); // just to make sure...
+        GBDevice pairedDevice = gbDevice != null ? gbDevice : new GBDevice(mBtDevice.getAddress(), mBtDevice.getName(), DeviceType.PEBBLE);
+        GBApplication.deviceService().forDevice(pairedDevice).disconnect(); // just to make sure...
 
         if (isLEPebble) {
             performConnect(gbDevice);
@@ -18,6 +18,7 @@ package nodomain.freeyourgadget.gadgetbridge.devices.pebble;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.zip.Checksum;
 
 /*
  * This code was ported to java from the following cpp source file
@@ -27,7 +28,7 @@ import java.nio.ByteOrder;
  * Tail code was (hopefully) fixed by @ashimokawa on 7th October 2015
  */
 
-public class STM32CRC {
+public class STM32CRC implements Checksum {
     private int crc;
     private byte rem;
     private final byte[] buffer = {0, 0, 0, 0};
@@ -99,6 +100,7 @@ public class STM32CRC {
             0xbcb4666d, 0xb8757bda, 0xb5365d03, 0xb1f740b4,
     };
 
+    @Override
     public void reset() {
         crc = 0xffffffff;
         rem = 0;
@@ -122,7 +124,17 @@ public class STM32CRC {
     }
 
     public void addData(byte[] data, int length) {
-        ByteBuffer buf = ByteBuffer.wrap(data, 0, length);
+        update(data, 0, length);
+    }
+
+    @Override
+    public void update(int b) {
+        update(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int length) {
+        ByteBuffer buf = ByteBuffer.wrap(data, offset, length);
         buf.order(ByteOrder.LITTLE_ENDIAN);
 
         if (rem > 0) {
@@ -157,6 +169,7 @@ public class STM32CRC {
 
 
     public int getResult() {
+        int result = crc;
         if (rem > 0) {
             int word = 0;
             switch (rem) {
@@ -173,8 +186,14 @@ public class STM32CRC {
                     word = buffer[0] & 0xff;
                     break;
             }
-            crc = calc_crc(crc, word);
+            // the tail is only included in the result, so that more data can still be added
+            result = calc_crc(result, word);
         }
-        return crc;
+        return result;
+    }
+
+    @Override
+    public long getValue() {
+        return getResult() & 0xffffffffL;
     }
 }
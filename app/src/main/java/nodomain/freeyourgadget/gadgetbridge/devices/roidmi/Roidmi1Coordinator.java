@@ -17,24 +17,30 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.devices.roidmi;
 
-import android.bluetooth.BluetoothDevice;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.regex.Pattern;
+
 import androidx.annotation.NonNull;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCandidateMatcher;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceCandidate;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 
 public class Roidmi1Coordinator extends RoidmiCoordinator {
     private static final Logger LOG = LoggerFactory.getLogger(Roidmi1Coordinator.class);
 
+    @Override
+    public DeviceCandidateMatcher getCandidateMatcher() {
+        return new DeviceCandidateMatcher()
+                .addNamePattern(Pattern.compile(".*" + Pattern.quote("睿米车载蓝牙播放器") + ".*"));
+    }
+
     @NonNull
     @Override
     public DeviceType getSupportedType(GBDeviceCandidate candidate) {
         try {
-            BluetoothDevice device = candidate.getDevice();
-            String name = device.getName();
+            String name = candidate.getDeviceName();
 
             if (name != null && name.contains("睿米车载蓝牙播放器")) {
                 return DeviceType.ROIDMI;
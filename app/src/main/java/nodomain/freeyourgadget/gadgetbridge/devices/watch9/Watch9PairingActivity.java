@@ -109,9 +109,9 @@ public class Watch9PairingActivity extends AbstractGBActivity {
         IntentFilter filter = new IntentFilter(GBDevice.ACTION_DEVICE_CHANGED);
         LocalBroadcastManager.getInstance(this).registerReceiver(mPairingReceiver, filter);
 
-        GBApplication.deviceService().disconnect();
         GBDevice device = DeviceHelper.getInstance().toSupportedDevice(deviceCandidate);
         if (device != null) {
+            GBApplication.deviceService().forDevice(device).disconnect();
             GBApplication.deviceService().connect(device, true);
         } else {
             GB.toast(this, "Unable to connect, can't recognize the device type: " + deviceCandidate, Toast.LENGTH_LONG, GB.ERROR);
@@ -50,6 +50,21 @@ public class XWatchSampleProvider extends AbstractSampleProvider<XWatchActivityS
         return rawIntensity / 180.0f;
     }
 
+    @Override
+    protected Property getStepsSampleProperty() {
+        return XWatchActivitySampleDao.Properties.Steps;
+    }
+
+    @Override
+    protected Property getRawIntensitySampleProperty() {
+        return XWatchActivitySampleDao.Properties.RawIntensity;
+    }
+
+    @Override
+    protected Property getHeartRateSampleProperty() {
+        return XWatchActivitySampleDao.Properties.HeartRate;
+    }
+
     @Override
     public XWatchActivitySample createActivitySample() {
         return new XWatchActivitySample();
@@ -54,6 +54,21 @@ public class ZeTimeSampleProvider extends AbstractSampleProvider<ZeTimeActivityS
         return rawIntensity/movementDivisor;
     }
 
+    @Override
+    protected Property getStepsSampleProperty() {
+        return ZeTimeActivitySampleDao.Properties.Steps;
+    }
+
+    @Override
+    protected Property getRawIntensitySampleProperty() {
+        return ZeTimeActivitySampleDao.Properties.RawIntensity;
+    }
+
+    @Override
+    protected Property getHeartRateSampleProperty() {
+        return ZeTimeActivitySampleDao.Properties.HeartRate;
+    }
+
     @Override
     public ZeTimeActivitySample createActivitySample() {
         return new ZeTimeActivitySample();
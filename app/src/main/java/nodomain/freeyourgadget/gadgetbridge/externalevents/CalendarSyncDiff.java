@@ -0,0 +1,94 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.externalevents;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nodomain.freeyourgadget.gadgetbridge.model.CalendarEvents;
+
+/**
+ * The changes needed to bring the calendar events on a device in line with the calendar,
+ * computed in a single pass from the current events and the hashes of the events that have
+ * been synced to the device before, keyed by the event id.
+ */
+public class CalendarSyncDiff {
+    private final List<CalendarEvents.CalendarEvent> added = new ArrayList<>();
+    private final List<CalendarEvents.CalendarEvent> updated = new ArrayList<>();
+    private final List<Long> deleted = new ArrayList<>();
+
+    /**
+     * @param events       the current events of the calendar
+     * @param syncedHashes the hash of each event on the device at the time it was synced, by
+     *                     event id
+     */
+    public static CalendarSyncDiff compute(List<CalendarEvents.CalendarEvent> events, Map<Long, Integer> syncedHashes) {
+        CalendarSyncDiff diff = new CalendarSyncDiff();
+        // the same event must only be sent once, even if the provider returns it twice
+        Map<Long, CalendarEvents.CalendarEvent> eventsById = new LinkedHashMap<>();
+        for (CalendarEvents.CalendarEvent event : events) {
+            eventsById.put(event.getId(), event);
+        }
+
+        Map<Long, Integer> remaining = new HashMap<>(syncedHashes);
+        for (CalendarEvents.CalendarEvent event : eventsById.values()) {
+            Integer syncedHash = remaining.remove(event.getId());
+            if (syncedHash == null) {
+                diff.added.add(event);
+            } else if (syncedHash != event.hashCode()) {
+                diff.updated.add(event);
+            }
+        }
+        diff.deleted.addAll(remaining.keySet());
+        Collections.sort(diff.deleted);
+        return diff;
+    }
+
+    /**
+     * @return the events that are not on the device yet
+     */
+    public List<CalendarEvents.CalendarEvent> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the events that are on the device, but have been changed since
+     */
+    public List<CalendarEvents.CalendarEvent> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return the ids of the events that are on the device, but not in the calendar anymore
+     */
+    public List<Long> getDeleted() {
+        return deleted;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return added.size() + " added, " + updated.size() + " updated, " + deleted.size() + " deleted";
+    }
+}
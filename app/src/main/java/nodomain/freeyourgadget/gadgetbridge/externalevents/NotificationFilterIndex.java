@@ -0,0 +1,201 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.externalevents;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.NotificationFilter;
+import nodomain.freeyourgadget.gadgetbridge.entities.NotificationFilterEntry;
+import nodomain.freeyourgadget.gadgetbridge.util.MultiPatternMatcher;
+
+import static nodomain.freeyourgadget.gadgetbridge.activities.NotificationFilterActivity.NOTIFICATION_FILTER_MODE_BLACKLIST;
+import static nodomain.freeyourgadget.gadgetbridge.activities.NotificationFilterActivity.NOTIFICATION_FILTER_MODE_WHITELIST;
+import static nodomain.freeyourgadget.gadgetbridge.activities.NotificationFilterActivity.NOTIFICATION_FILTER_SUBMODE_ALL;
+
+/**
+ * In-memory index of all notification content filters, so that checking a notification
+ * does not need to access the database.
+ * <p/>
+ * All filters are loaded with a single database access on first use and compiled into one
+ * {@link MultiPatternMatcher} per app. The index must be invalidated with {@link #invalidate()}
+ * whenever filters are changed, it will then be reloaded lazily.
+ */
+public class NotificationFilterIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationFilterIndex.class);
+
+    private static final Object loadLock = new Object();
+    private static volatile Map<String, CompiledFilter> filtersByApp;
+    /** Incremented on every invalidation, so that a load racing with a change is not kept. */
+    private static volatile int generation;
+
+    /**
+     * @param packageName the (lower case) package name of the app that posted the notification
+     * @param body        the notification body
+     * @return false if the notification must be dropped because of a filter of the app
+     */
+    public static boolean shouldContinue(@NonNull String packageName, @Nullable String body) {
+        Map<String, CompiledFilter> filters = getFilters();
+        if (filters == null) {
+            return true;
+        }
+        CompiledFilter filter = filters.get(packageName);
+        if (filter == null) {
+            LOG.debug("No Notification Filter found");
+            return true;
+        }
+        return filter.shouldContinue(body);
+    }
+
+    /**
+     * Discards the loaded filters, must be called after filters have been changed in the database.
+     */
+    public static void invalidate() {
+        synchronized (loadLock) {
+            generation++;
+            filtersByApp = null;
+        }
+    }
+
+    @Nullable
+    private static Map<String, CompiledFilter> getFilters() {
+        Map<String, CompiledFilter> filters = filtersByApp;
+        if (filters != null) {
+            return filters;
+        }
+        int loadGeneration;
+        synchronized (loadLock) {
+            if (filtersByApp != null) {
+                return filtersByApp;
+            }
+            loadGeneration = generation;
+        }
+        // load outside of loadLock, acquiring the DB while holding it could deadlock with invalidate()
+        try (DBHandler db = GBApplication.acquireReadOnlyDB()) {
+            filters = load(db.getDaoSession());
+        } catch (Exception e) {
+            LOG.error("Could not load notification filters.", e);
+            return null;
+        }
+        synchronized (loadLock) {
+            if (generation == loadGeneration) {
+                filtersByApp = filters;
+            }
+        }
+        return filters;
+    }
+
+    private static Map<String, CompiledFilter> load(DaoSession session) {
+        long start = System.currentTimeMillis();
+        Map<Long, List<String>> wordsByFilterId = new HashMap<>();
+        for (NotificationFilterEntry entry : session.getNotificationFilterEntryDao().loadAll()) {
+            List<String> words = wordsByFilterId.get(entry.getNotificationFilterId());
+            if (words == null) {
+                words = new ArrayList<>();
+                wordsByFilterId.put(entry.getNotificationFilterId(), words);
+            }
+            words.add(entry.getNotificationFilterContent());
+        }
+
+        Map<String, CompiledFilter> filters = new HashMap<>();
+        for (NotificationFilter filter : session.getNotificationFilterDao().loadAll()) {
+            List<String> words = wordsByFilterId.get(filter.getId());
+            if (words == null) {
+                words = Collections.emptyList();
+            }
+            filters.put(filter.getAppIdentifier(), CompiledFilter.compile(filter, words));
+        }
+        LOG.info("Loaded {} notification filters in {} ms", filters.size(), System.currentTimeMillis() - start);
+        return filters;
+    }
+
+    /**
+     * The filter mode and words of a single app, compiled for matching.
+     */
+    public static class CompiledFilter {
+        private final int mode;
+        private final boolean allMode;
+        private final MultiPatternMatcher matcher;
+
+        private CompiledFilter(int mode, boolean allMode, MultiPatternMatcher matcher) {
+            this.mode = mode;
+            this.allMode = allMode;
+            this.matcher = matcher;
+        }
+
+        public static CompiledFilter compile(@NonNull NotificationFilter filter, @NonNull List<String> words) {
+            return new CompiledFilter(filter.getNotificationFilterMode(),
+                    filter.getNotificationFilterSubMode() == NOTIFICATION_FILTER_SUBMODE_ALL,
+                    new MultiPatternMatcher(words));
+        }
+
+        /**
+         * @return false if the given notification body must be dropped according to this filter
+         */
+        public boolean shouldContinue(@Nullable String body) {
+            switch (mode) {
+                case NOTIFICATION_FILTER_MODE_BLACKLIST:
+                    if (allMode) {
+                        if (matcher.containsAll(body)) {
+                            LOG.info("Every word was found, blacklist has effect, processing stops.");
+                            return false;
+                        }
+                        LOG.info("Not every word was found, blacklist has no effect, processing continues.");
+                        return true;
+                    } else {
+                        if (matcher.containsAny(body)) {
+                            LOG.info("At least one matching word was found, blacklist has effect, processing stops.");
+                            return false;
+                        }
+                        LOG.info("No matching word was found, blacklist has no effect, processing continues.");
+                        return true;
+                    }
+
+                case NOTIFICATION_FILTER_MODE_WHITELIST:
+                    if (allMode) {
+                        if (matcher.containsAll(body)) {
+                            LOG.info("Every word was found, whitelist has effect, processing continues.");
+                            return true;
+                        }
+                        LOG.info("Not every word was found, whitelist has no effect, processing stops.");
+                        return false;
+                    } else {
+                        if (matcher.containsAny(body)) {
+                            LOG.info("At least one matching word was found, whitelist has effect, processing continues.");
+                            return true;
+                        }
+                        LOG.info("No matching word was found, whitelist has no effect, processing stops.");
+                        return false;
+                    }
+
+                default:
+                    return true;
+            }
+        }
+    }
+}
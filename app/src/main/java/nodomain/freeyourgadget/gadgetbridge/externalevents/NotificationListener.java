@@ -44,7 +44,6 @@ import android.support.v4.media.session.MediaControllerCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,17 +57,11 @@ import androidx.core.app.NotificationCompat;
 import androidx.core.app.RemoteInput;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.palette.graphics.Palette;
-import de.greenrobot.dao.query.Query;
-import nodomain.freeyourgadget.gadgetbridge.BuildConfig;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.devices.pebble.PebbleColor;
 import nodomain.freeyourgadget.gadgetbridge.entities.NotificationFilter;
 import nodomain.freeyourgadget.gadgetbridge.model.CallSpec;
-import nodomain.freeyourgadget.gadgetbridge.entities.NotificationFilterDao;
-import nodomain.freeyourgadget.gadgetbridge.entities.NotificationFilterEntry;
-import nodomain.freeyourgadget.gadgetbridge.entities.NotificationFilterEntryDao;
 import nodomain.freeyourgadget.gadgetbridge.model.AppNotificationType;
 import nodomain.freeyourgadget.gadgetbridge.model.MusicSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.MusicStateSpec;
@@ -76,14 +69,11 @@ import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.service.DeviceCommunicationService;
 import nodomain.freeyourgadget.gadgetbridge.util.BitmapUtil;
-import nodomain.freeyourgadget.gadgetbridge.util.LimitedQueue;
+import nodomain.freeyourgadget.gadgetbridge.util.IntLruCache;
 import nodomain.freeyourgadget.gadgetbridge.util.PebbleUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 
 import static androidx.media.app.NotificationCompat.MediaStyle.getMediaSession;
-import static nodomain.freeyourgadget.gadgetbridge.activities.NotificationFilterActivity.NOTIFICATION_FILTER_MODE_BLACKLIST;
-import static nodomain.freeyourgadget.gadgetbridge.activities.NotificationFilterActivity.NOTIFICATION_FILTER_MODE_WHITELIST;
-import static nodomain.freeyourgadget.gadgetbridge.activities.NotificationFilterActivity.NOTIFICATION_FILTER_SUBMODE_ALL;
 
 public class NotificationListener extends NotificationListenerService {
 
@@ -100,9 +90,9 @@ public class NotificationListener extends NotificationListenerService {
     public static final String ACTION_REPLY
             = "nodomain.freeyourgadget.gadgetbridge.notificationlistener.action.reply";
 
-    private LimitedQueue mActionLookup = new LimitedQueue(32);
-    private LimitedQueue mPackageLookup = new LimitedQueue(64);
-    private LimitedQueue mNotificationHandleLookup = new LimitedQueue(128);
+    private final IntLruCache<NotificationCompat.Action> mActionLookup = new IntLruCache<>(32);
+    private final IntLruCache<String> mPackageLookup = new IntLruCache<>(64);
+    private final IntLruCache<Long> mNotificationHandleLookup = new IntLruCache<>(128);
 
     private HashMap<String, Long> notificationBurstPrevention = new HashMap<>();
     private HashMap<String, Long> notificationOldRepeatPrevention = new HashMap<>();
@@ -127,7 +117,7 @@ public class NotificationListener extends NotificationListenerService {
 
                 case ACTION_OPEN: {
                     StatusBarNotification[] sbns = NotificationListener.this.getActiveNotifications();
-                    Long ts = (Long) mNotificationHandleLookup.lookup(handle);
+                    Long ts = mNotificationHandleLookup.get(handle);
                     if (ts == null) {
                         LOG.info("could not lookup handle for open action");
                         break;
@@ -148,7 +138,7 @@ public class NotificationListener extends NotificationListenerService {
                     break;
                 }
                 case ACTION_MUTE:
-                    String packageName = (String) mPackageLookup.lookup(handle);
+                    String packageName = mPackageLookup.get(handle);
                     if (packageName == null) {
                         LOG.info("could not lookup handle for mute action");
                         break;
@@ -159,7 +149,7 @@ public class NotificationListener extends NotificationListenerService {
                     break;
                 case ACTION_DISMISS: {
                     StatusBarNotification[] sbns = NotificationListener.this.getActiveNotifications();
-                    Long ts = (Long) mNotificationHandleLookup.lookup(handle);
+                    Long ts = mNotificationHandleLookup.get(handle);
                     if (ts == null) {
                         LOG.info("could not lookup handle for dismiss action");
                         break;
@@ -183,7 +173,7 @@ public class NotificationListener extends NotificationListenerService {
                     NotificationListener.this.cancelAllNotifications();
                     break;
                 case ACTION_REPLY:
-                    NotificationCompat.Action wearableAction = (NotificationCompat.Action) mActionLookup.lookup(handle);
+                    NotificationCompat.Action wearableAction = mActionLookup.get(handle);
                     String reply = intent.getStringExtra("reply");
                     if (wearableAction != null) {
                         PendingIntent actionIntent = wearableAction.getActionIntent();
@@ -357,7 +347,7 @@ public class NotificationListener extends NotificationListenerService {
                 }
 
                 notificationSpec.attachedActions.add(wearableAction);
-                mActionLookup.add((notificationSpec.getId()<<4) + notificationSpec.attachedActions.size(), act);
+                mActionLookup.put((notificationSpec.getId()<<4) + notificationSpec.attachedActions.size(), act);
                 LOG.info("found wearable action: " + notificationSpec.attachedActions.size() + " - "+ act.getTitle() + "  " + sbn.getTag());
             }
         }
@@ -374,8 +364,8 @@ public class NotificationListener extends NotificationListenerService {
         muteAction.type = NotificationSpec.Action.TYPE_SYNTECTIC_MUTE;
         notificationSpec.attachedActions.add(muteAction);
 
-        mNotificationHandleLookup.add(notificationSpec.getId(), sbn.getPostTime()); // for both DISMISS and OPEN
-        mPackageLookup.add(notificationSpec.getId(), sbn.getPackageName()); // for MUTE
+        mNotificationHandleLookup.put(notificationSpec.getId(), sbn.getPostTime()); // for both DISMISS and OPEN
+        mPackageLookup.put(notificationSpec.getId(), sbn.getPackageName()); // for MUTE
 
         notificationBurstPrevention.put(source, cur_time);
         if(0 != notification.when) {
@@ -388,46 +378,7 @@ public class NotificationListener extends NotificationListenerService {
     }
 
     private boolean checkNotificationContentForWhiteAndBlackList(String packageName, String body) {
-        long start = System.currentTimeMillis();
-
-        List<String> wordsList = new ArrayList<>();
-        NotificationFilter notificationFilter;
-
-        try (DBHandler db = GBApplication.acquireDB()) {
-
-            NotificationFilterDao notificationFilterDao = db.getDaoSession().getNotificationFilterDao();
-            NotificationFilterEntryDao notificationFilterEntryDao = db.getDaoSession().getNotificationFilterEntryDao();
-
-            Query<NotificationFilter> query = notificationFilterDao.queryBuilder().where(NotificationFilterDao.Properties.AppIdentifier.eq(packageName.toLowerCase())).build();
-            notificationFilter = query.unique();
-
-            if (notificationFilter == null) {
-                LOG.debug("No Notification Filter found");
-                return true;
-            }
-
-            LOG.debug("Loaded notification filter for '{}'", packageName);
-            Query<NotificationFilterEntry> queryEntries = notificationFilterEntryDao.queryBuilder().where(NotificationFilterEntryDao.Properties.NotificationFilterId.eq(notificationFilter.getId())).build();
-
-            List<NotificationFilterEntry> filterEntries = queryEntries.list();
-
-            if (BuildConfig.DEBUG) {
-                LOG.info("Database lookup took '{}' ms", System.currentTimeMillis() - start);
-            }
-
-            if (!filterEntries.isEmpty()) {
-                for (NotificationFilterEntry temp : filterEntries) {
-                    wordsList.add(temp.getNotificationFilterContent());
-                    LOG.debug("Loaded filter word: " + temp.getNotificationFilterContent());
-                }
-            }
-
-        } catch (Exception e) {
-            LOG.error("Could not acquire DB.", e);
-            return true;
-        }
-
-        return shouldContinueAfterFilter(body, wordsList, notificationFilter);
+        return NotificationFilterIndex.shouldContinue(packageName, body);
     }
 
     private void handleCallNotification(StatusBarNotification sbn) {
@@ -472,52 +423,7 @@ public class NotificationListener extends NotificationListenerService {
 
         LOG.debug("Mode: '{}' Submode: '{}' WordsList: '{}'", notificationFilter.getNotificationFilterMode(), notificationFilter.getNotificationFilterSubMode(), wordsList);
 
-        boolean allMode = notificationFilter.getNotificationFilterSubMode() == NOTIFICATION_FILTER_SUBMODE_ALL;
-
-        switch (notificationFilter.getNotificationFilterMode()) {
-            case NOTIFICATION_FILTER_MODE_BLACKLIST:
-                if (allMode) {
-                    for (String word : wordsList) {
-                        if (!body.contains(word)) {
-                            LOG.info("Not every word was found, blacklist has no effect, processing continues.");
-                            return true;
-                        }
-                    }
-                    LOG.info("Every word was found, blacklist has effect, processing stops.");
-                    return false;
-                } else {
-                    boolean containsAny = StringUtils.containsAny(body, wordsList.toArray(new CharSequence[0]));
-                    if (!containsAny) {
-                        LOG.info("No matching word was found, blacklist has no effect, processing continues.");
-                    } else {
-                        LOG.info("At least one matching word was found, blacklist has effect, processing stops.");
-                    }
-                    return !containsAny;
-                }
-
-            case NOTIFICATION_FILTER_MODE_WHITELIST:
-                if (allMode) {
-                    for (String word : wordsList) {
-                        if (!body.contains(word)) {
-                            LOG.info("Not every word was found, whitelist has no effect, processing stops.");
-                            return false;
-                        }
-                    }
-                    LOG.info("Every word was found, whitelist has effect, processing continues.");
-                    return true;
-                } else {
-                    boolean containsAny = StringUtils.containsAny(body, wordsList.toArray(new CharSequence[0]));
-                    if (containsAny) {
-                        LOG.info("At least one matching word was found, whitelist has effect, processing continues.");
-                    } else {
-                        LOG.info("No matching word was found, whitelist has no effect, processing stops.");
-                    }
-                    return containsAny;
-                }
-
-            default:
-                return true;
-        }
+        return NotificationFilterIndex.CompiledFilter.compile(notificationFilter, wordsList).shouldContinue(body);
     }
 
     // Strip Unicode control sequences: some apps like Telegram add a lot of them for unknown reasons
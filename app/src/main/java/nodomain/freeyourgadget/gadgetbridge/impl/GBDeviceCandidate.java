@@ -33,6 +33,7 @@ import java.util.Set;
 import java.util.UUID;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
@@ -50,6 +51,11 @@ public class GBDeviceCandidate implements Parcelable {
     private final short rssi;
     private final ParcelUuid[] serviceUuids;
     private DeviceType deviceType = DeviceType.UNKNOWN;
+    // BluetoothDevice.getName() and getAliasName() ask the bluetooth service every time, so
+    // the names are only fetched once and then used for matching against all coordinators
+    private String deviceName;
+    private boolean deviceNameFetched;
+    private String name;
 
     public GBDeviceCandidate(BluetoothDevice device, short rssi, ParcelUuid[] serviceUuids) {
         this.device = device;
@@ -136,23 +142,40 @@ public class GBDeviceCandidate implements Parcelable {
         return false;
     }
 
+    /**
+     * Returns the name the device reports, as BluetoothDevice.getName(). In contrast to
+     * {@link #getName()}, this does not consider the alias and may return null.
+     */
+    @Nullable
+    public String getDeviceName() {
+        if (!deviceNameFetched) {
+            deviceName = device.getName();
+            deviceNameFetched = true;
+        }
+        return deviceName;
+    }
+
     public String getName() {
-        String deviceName = null;
+        if (name != null) {
+            return name;
+        }
+        String name = null;
         try {
             Method method = device.getClass().getMethod("getAliasName");
             if (method != null) {
-                deviceName = (String) method.invoke(device);
+                name = (String) method.invoke(device);
             }
         } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ignore) {
-            LOG.info("Could not get device alias for " + device.getName());
+            LOG.info("Could not get device alias for " + getDeviceName());
         }
-        if (deviceName == null || deviceName.length() == 0) {
-            deviceName = device.getName();
+        if (name == null || name.length() == 0) {
+            name = getDeviceName();
         }
-        if (deviceName == null || deviceName.length() == 0) {
-            deviceName = "(unknown)";
+        if (name == null || name.length() == 0) {
+            name = "(unknown)";
         }
-        return deviceName;
+        this.name = name;
+        return name;
     }
 
     public short getRssi() {
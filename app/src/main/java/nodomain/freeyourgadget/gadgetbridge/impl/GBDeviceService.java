@@ -19,11 +19,14 @@
 package nodomain.freeyourgadget.gadgetbridge.impl;
 
 import android.app.Service;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.IBinder;
 import android.provider.ContactsContract;
 
 import java.util.ArrayList;
@@ -66,6 +69,21 @@ public class GBDeviceService implements DeviceService {
             EXTRA_CALENDAREVENT_TITLE,
             EXTRA_CALENDAREVENT_DESCRIPTION
     };
+    private final ServiceConnection mConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            if (service instanceof DeviceCommunicationService.LocalBinder) {
+                mLocalBinder = (DeviceCommunicationService.LocalBinder) service;
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mLocalBinder = null;
+        }
+    };
+    private volatile DeviceCommunicationService.LocalBinder mLocalBinder;
+    private boolean mBound;
 
     public GBDeviceService(Context context) {
         mContext = context;
@@ -76,6 +94,81 @@ public class GBDeviceService implements DeviceService {
         return new Intent(mContext, mServiceClass);
     }
 
+    @Override
+    public DeviceService forDevice(final GBDevice device) {
+        final GBDeviceService parent = this;
+        return new GBDeviceService(mContext) {
+            @Override
+            protected Intent createIntent() {
+                return parent.createIntent().putExtra(GBDevice.EXTRA_DEVICE, device);
+            }
+
+            @Override
+            protected void invokeService(Intent intent) {
+                parent.invokeService(intent);
+            }
+
+            @Override
+            protected void bindLocal() {
+                parent.bindLocal();
+            }
+
+            @Override
+            protected DeviceCommunicationService.LocalBinder getLocalBinder() {
+                return parent.getLocalBinder();
+            }
+
+            @Override
+            protected GBDevice getTargetDevice() {
+                return device;
+            }
+        };
+    }
+
+    /**
+     * Binds to the service, so that notifications, call and music events can be passed to it
+     * directly once it is running. The binding does not keep the service alive.
+     */
+    protected synchronized void bindLocal() {
+        if (!mBound) {
+            mBound = mContext.bindService(createIntent(), mConnection, 0);
+        }
+    }
+
+    protected synchronized void unbindLocal() {
+        if (mBound) {
+            mBound = false;
+            mLocalBinder = null;
+            mContext.unbindService(mConnection);
+        }
+    }
+
+    /**
+     * Returns the binder of the running service, or null if events have to be sent as intents.
+     */
+    @Nullable
+    protected DeviceCommunicationService.LocalBinder getLocalBinder() {
+        return mLocalBinder;
+    }
+
+    /**
+     * Returns the device the events are meant for, or null for the default device(s).
+     */
+    @Nullable
+    protected GBDevice getTargetDevice() {
+        return null;
+    }
+
+    private String fixText(String text) {
+        if (LanguageUtils.transliterate()) {
+            text = LanguageUtils.transliterate(text);
+        }
+        if (RtlUtils.rtlSupport()) {
+            text = RtlUtils.fixRtl(text);
+        }
+        return text;
+    }
+
     protected void invokeService(Intent intent) {
         if (LanguageUtils.transliterate()) {
             for (String extra : transliterationExtras) {
@@ -104,6 +197,7 @@ public class GBDeviceService implements DeviceService {
     public void start() {
         Intent intent = createIntent().setAction(ACTION_START);
         invokeService(intent);
+        bindLocal();
     }
 
     @Override
@@ -122,6 +216,7 @@ public class GBDeviceService implements DeviceService {
                 .putExtra(GBDevice.EXTRA_DEVICE, device)
                 .putExtra(EXTRA_CONNECT_FIRST_TIME, firstTime);
         invokeService(intent);
+        bindLocal();
     }
 
     @Override
@@ -132,6 +227,7 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void quit() {
+        unbindLocal();
         Intent intent = createIntent();
         stopService(intent);
     }
@@ -144,6 +240,20 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void onNotification(NotificationSpec notificationSpec) {
+        DeviceCommunicationService.LocalBinder binder = getLocalBinder();
+        if (binder != null) {
+            NotificationSpec spec = new NotificationSpec(notificationSpec);
+            spec.sender = fixText(coalesce(spec.sender, getContactDisplayNameByNumber(spec.phoneNumber)));
+            spec.phoneNumber = fixText(spec.phoneNumber);
+            spec.subject = fixText(spec.subject);
+            spec.title = fixText(spec.title);
+            spec.body = fixText(spec.body);
+            spec.sourceName = fixText(spec.sourceName);
+            if (binder.onNotification(getTargetDevice(), spec)) {
+                return;
+            }
+        }
+
         Intent intent = createIntent().setAction(ACTION_NOTIFICATION)
                 .putExtra(EXTRA_NOTIFICATION_FLAGS, notificationSpec.flags)
                 .putExtra(EXTRA_NOTIFICATION_PHONENUMBER, notificationSpec.phoneNumber)
@@ -162,6 +272,11 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void onDeleteNotification(int id) {
+        DeviceCommunicationService.LocalBinder binder = getLocalBinder();
+        if (binder != null && binder.onDeleteNotification(getTargetDevice(), id)) {
+            return;
+        }
+
         Intent intent = createIntent().setAction(ACTION_DELETE_NOTIFICATION)
                 .putExtra(EXTRA_NOTIFICATION_ID, id);
         invokeService(intent);
@@ -199,6 +314,16 @@ public class GBDeviceService implements DeviceService {
             callSpec.name = coalesce(callSpec.name, getContactDisplayNameByNumber(callSpec.number));
         }
 
+        DeviceCommunicationService.LocalBinder binder = getLocalBinder();
+        if (binder != null) {
+            CallSpec spec = new CallSpec(callSpec);
+            spec.number = fixText(spec.number);
+            spec.name = fixText(spec.name);
+            if (binder.onSetCallState(getTargetDevice(), spec)) {
+                return;
+            }
+        }
+
         Intent intent = createIntent().setAction(ACTION_CALLSTATE)
                 .putExtra(EXTRA_CALL_PHONENUMBER, callSpec.number)
                 .putExtra(EXTRA_CALL_DISPLAYNAME, callSpec.name)
@@ -216,6 +341,11 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void onSetMusicState(MusicStateSpec stateSpec) {
+        DeviceCommunicationService.LocalBinder binder = getLocalBinder();
+        if (binder != null && binder.onSetMusicState(getTargetDevice(), new MusicStateSpec(stateSpec))) {
+            return;
+        }
+
         Intent intent = createIntent().setAction(ACTION_SETMUSICSTATE)
                 .putExtra(EXTRA_MUSIC_REPEAT, stateSpec.repeat)
                 .putExtra(EXTRA_MUSIC_RATE, stateSpec.playRate)
@@ -227,6 +357,17 @@ public class GBDeviceService implements DeviceService {
 
     @Override
     public void onSetMusicInfo(MusicSpec musicSpec) {
+        DeviceCommunicationService.LocalBinder binder = getLocalBinder();
+        if (binder != null) {
+            MusicSpec spec = new MusicSpec(musicSpec);
+            spec.artist = fixText(spec.artist);
+            spec.album = fixText(spec.album);
+            spec.track = fixText(spec.track);
+            if (binder.onSetMusicInfo(getTargetDevice(), spec)) {
+                return;
+            }
+        }
+
         Intent intent = createIntent().setAction(ACTION_SETMUSICINFO)
                 .putExtra(EXTRA_MUSIC_ARTIST, musicSpec.artist)
                 .putExtra(EXTRA_MUSIC_ALBUM, musicSpec.album)
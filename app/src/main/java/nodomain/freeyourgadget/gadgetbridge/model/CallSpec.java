@@ -28,4 +28,14 @@ public class CallSpec {
     public String number;
     public String name;
     public int command;
+
+    public CallSpec() {
+
+    }
+
+    public CallSpec(CallSpec old) {
+        this.number = old.number;
+        this.name = old.name;
+        this.command = old.command;
+    }
 }
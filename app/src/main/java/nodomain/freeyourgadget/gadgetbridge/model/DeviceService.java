@@ -54,6 +54,10 @@ public interface DeviceService extends EventHandler {
     String ACTION_SET_CONSTANT_VIBRATION = PREFIX + ".action.set_constant_vibration";
     String ACTION_SET_ALARMS = PREFIX + ".action.set_alarms";
     String ACTION_ENABLE_REALTIME_STEPS = PREFIX + ".action.enable_realtime_steps";
+    /**
+     * No longer sent, use {@link nodomain.freeyourgadget.gadgetbridge.service.RealtimeSampleStream} instead
+     */
+    @Deprecated
     String ACTION_REALTIME_SAMPLES = PREFIX + ".action.realtime_samples";
     String ACTION_ENABLE_REALTIME_HEARTRATE_MEASUREMENT = PREFIX + ".action.realtime_hr_measurement";
     String ACTION_ENABLE_HEARTRATE_SLEEP_SUPPORT = PREFIX + ".action.enable_heartrate_sleep_support";
@@ -117,6 +121,10 @@ public interface DeviceService extends EventHandler {
      */
     @Deprecated
     String EXTRA_REALTIME_STEPS = "realtime_steps";
+    /**
+     * No longer sent, use {@link nodomain.freeyourgadget.gadgetbridge.service.RealtimeSampleStream} instead
+     */
+    @Deprecated
     String EXTRA_REALTIME_SAMPLE = "realtime_sample";
     String EXTRA_TIMESTAMP = "timestamp";
     /**
@@ -152,4 +160,11 @@ public interface DeviceService extends EventHandler {
      * from the service will be reported.
      */
     void requestDeviceInfo();
+
+    /**
+     * Returns a device service whose requests are only handled by the given device. Requests
+     * of this device service without a device are handled by all connected devices for events
+     * like notifications, calls and music, or else by the most recently connected device.
+     */
+    DeviceService forDevice(GBDevice device);
 }
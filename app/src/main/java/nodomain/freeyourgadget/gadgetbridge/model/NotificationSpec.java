@@ -57,6 +57,25 @@ public class NotificationSpec {
             this.id = c.incrementAndGet();
     }
 
+    /**
+     * Creates a copy with the same id. The arrays and lists are shared.
+     */
+    public NotificationSpec(NotificationSpec old) {
+        this.id = old.id;
+        this.flags = old.flags;
+        this.sender = old.sender;
+        this.phoneNumber = old.phoneNumber;
+        this.title = old.title;
+        this.subject = old.subject;
+        this.body = old.body;
+        this.type = old.type;
+        this.sourceName = old.sourceName;
+        this.cannedReplies = old.cannedReplies;
+        this.attachedActions = old.attachedActions;
+        this.sourceAppId = old.sourceAppId;
+        this.pebbleColor = old.pebbleColor;
+    }
+
     public int getId() {
         return id;
     }
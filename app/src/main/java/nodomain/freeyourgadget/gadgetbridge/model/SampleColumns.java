@@ -0,0 +1,274 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+
+/**
+ * A read-mostly, column oriented container of activity samples, ordered by timestamp.
+ * <p/>
+ * Instead of one object per sample, the values are kept in parallel primitive arrays.
+ * This avoids allocating (and later collecting) tens of thousands of sample objects when
+ * rendering a chart over a long time span, and lets the consumers iterate over plain
+ * arrays. Values that were not measured are {@link ActivitySample#NOT_MEASURED}, like in
+ * {@link ActivitySample}.
+ * <p/>
+ * The kinds and intensities are normalized through the {@link SampleProvider} of the samples.
+ * The raw values are kept as well, because changes of the raw kind are significant for the
+ * activity analysis, and because some providers post-process the raw kinds.
+ */
+public class SampleColumns {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int size;
+    private int[] timestamps;
+    private int[] rawKinds;
+    private int[] kinds;
+    private int[] rawIntensities;
+    private float[] intensities;
+    private int[] steps;
+    private int[] heartRates;
+
+    public SampleColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SampleColumns(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        timestamps = new int[capacity];
+        rawKinds = new int[capacity];
+        kinds = new int[capacity];
+        rawIntensities = new int[capacity];
+        intensities = new float[capacity];
+        steps = new int[capacity];
+        heartRates = new int[capacity];
+    }
+
+    /**
+     * Copies the values of the given samples, which must be ordered by timestamp.
+     */
+    public static SampleColumns of(List<? extends ActivitySample> samples) {
+        if (samples == null) {
+            return new SampleColumns(0);
+        }
+        int count = samples.size();
+        SampleColumns columns = new SampleColumns(count);
+        for (int i = 0; i < count; i++) {
+            columns.add(samples.get(i));
+        }
+        return columns;
+    }
+
+    public void add(ActivitySample sample) {
+        add(sample.getTimestamp(), sample.getRawKind(), sample.getKind(), sample.getRawIntensity(), sample.getIntensity(),
+                sample.getSteps(), sample.getHeartRate());
+    }
+
+    public void add(int timestamp, int rawKind, int kind, int rawIntensity, float intensity, int steps, int heartRate) {
+        insert(size, timestamp, rawKind, kind, rawIntensity, intensity, steps, heartRate);
+    }
+
+    /**
+     * Inserts the given values at the given position, moving the following samples back.
+     */
+    public void insert(int index, int timestamp, int rawKind, int kind, int rawIntensity, float intensity, int steps, int heartRate) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        ensureCapacity(size + 1);
+        int moved = size - index;
+        if (moved > 0) {
+            System.arraycopy(timestamps, index, timestamps, index + 1, moved);
+            System.arraycopy(rawKinds, index, rawKinds, index + 1, moved);
+            System.arraycopy(kinds, index, kinds, index + 1, moved);
+            System.arraycopy(rawIntensities, index, rawIntensities, index + 1, moved);
+            System.arraycopy(intensities, index, intensities, index + 1, moved);
+            System.arraycopy(steps, index, steps, index + 1, moved);
+            System.arraycopy(heartRates, index, heartRates, index + 1, moved);
+        }
+        timestamps[index] = timestamp;
+        rawKinds[index] = rawKind;
+        kinds[index] = kind;
+        rawIntensities[index] = rawIntensity;
+        intensities[index] = intensity;
+        this.steps[index] = steps;
+        heartRates[index] = heartRate;
+        size++;
+    }
+
+    /**
+     * Appends the values of the sample at the given position of the given columns.
+     */
+    public void add(SampleColumns source, int index) {
+        source.checkIndex(index);
+        add(source.timestamps[index], source.rawKinds[index], source.kinds[index], source.rawIntensities[index],
+                source.intensities[index], source.steps[index], source.heartRates[index]);
+    }
+
+    /**
+     * Replaces the raw kind of the sample at the given position. The normalized kind is
+     * not changed, see {@link #normalize(SampleProvider)}.
+     */
+    public void setRawKind(int index, int rawKind) {
+        checkIndex(index);
+        rawKinds[index] = rawKind;
+    }
+
+    public void setIntensity(int index, int rawIntensity, float intensity) {
+        checkIndex(index);
+        rawIntensities[index] = rawIntensity;
+        intensities[index] = intensity;
+    }
+
+    public void setSteps(int index, int steps) {
+        checkIndex(index);
+        this.steps[index] = steps;
+    }
+
+    public void setHeartRate(int index, int heartRate) {
+        checkIndex(index);
+        heartRates[index] = heartRate;
+    }
+
+    /**
+     * Calculates the normalized kinds and intensities of all samples from their raw values.
+     *
+     * @param provider the provider that created the raw values
+     */
+    public void normalize(SampleProvider<?> provider) {
+        for (int i = 0; i < size; i++) {
+            kinds[i] = provider.normalizeType(rawKinds[i]);
+            intensities[i] = provider.normalizeIntensity(rawIntensities[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public int getRawKind(int index) {
+        checkIndex(index);
+        return rawKinds[index];
+    }
+
+    public int getKind(int index) {
+        checkIndex(index);
+        return kinds[index];
+    }
+
+    public int getRawIntensity(int index) {
+        checkIndex(index);
+        return rawIntensities[index];
+    }
+
+    public float getIntensity(int index) {
+        checkIndex(index);
+        return intensities[index];
+    }
+
+    public int getSteps(int index) {
+        checkIndex(index);
+        return steps[index];
+    }
+
+    public int getHeartRate(int index) {
+        checkIndex(index);
+        return heartRates[index];
+    }
+
+    /**
+     * Direct access to the timestamps, for tight loops. Only the first {@link #size()}
+     * elements are valid and the array must not be modified.
+     */
+    public int[] timestamps() {
+        return timestamps;
+    }
+
+    /**
+     * @see #timestamps()
+     */
+    public int[] rawKinds() {
+        return rawKinds;
+    }
+
+    /**
+     * @see #timestamps()
+     */
+    public int[] kinds() {
+        return kinds;
+    }
+
+    /**
+     * @see #timestamps()
+     */
+    public int[] rawIntensities() {
+        return rawIntensities;
+    }
+
+    /**
+     * @see #timestamps()
+     */
+    public float[] intensities() {
+        return intensities;
+    }
+
+    /**
+     * @see #timestamps()
+     */
+    public int[] steps() {
+        return steps;
+    }
+
+    /**
+     * @see #timestamps()
+     */
+    public int[] heartRates() {
+        return heartRates;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= timestamps.length) {
+            return;
+        }
+        int capacity = Math.max(minCapacity, timestamps.length + (timestamps.length >> 1));
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        rawKinds = Arrays.copyOf(rawKinds, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        rawIntensities = Arrays.copyOf(rawIntensities, capacity);
+        intensities = Arrays.copyOf(intensities, capacity);
+        steps = Arrays.copyOf(steps, capacity);
+        heartRates = Arrays.copyOf(heartRates, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+}
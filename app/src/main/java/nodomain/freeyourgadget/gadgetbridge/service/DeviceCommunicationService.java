@@ -32,6 +32,7 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.net.Uri;
+import android.os.Binder;
 import android.os.Handler;
 import android.os.IBinder;
 import android.widget.Toast;
@@ -44,8 +45,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
@@ -176,13 +186,15 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
     private static final Logger LOG = LoggerFactory.getLogger(DeviceCommunicationService.class);
     @SuppressLint("StaticFieldLeak") // only used for test cases
     private static DeviceSupportFactory DEVICE_SUPPORT_FACTORY = null;
+    private static Executor DISPATCH_EXECUTOR = null; // only used for test cases
 
     private boolean mStarted = false;
 
     private DeviceSupportFactory mFactory;
-    private GBDevice mGBDevice = null;
-    private DeviceSupport mDeviceSupport;
-    private DeviceCoordinator mCoordinator = null;
+    // the connected devices by address, the most recently connected one last
+    private final Map<String, DeviceStruct> mDevices = new LinkedHashMap<>();
+    private final LocalBinder mBinder = new LocalBinder();
+    private volatile boolean mDestroyed;
 
     private PhoneCallReceiver mPhoneCallReceiver = null;
     private SMSReceiver mSMSReceiver = null;
@@ -195,7 +207,7 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
     private GBAutoFetchReceiver mGBAutoFetchReceiver = null;
 
     private AlarmReceiver mAlarmReceiver = null;
-    private CalendarReceiver mCalendarReceiver = null;
+    private final Map<String, CalendarReceiver> mCalendarReceivers = new HashMap<>();
     private CMWeatherReceiver mCMWeatherReceiver = null;
     private LineageOsWeatherReceiver mLineageOsWeatherReceiver = null;
     private OmniJawsObserver mOmniJawsObserver = null;
@@ -223,6 +235,16 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         DEVICE_SUPPORT_FACTORY = factory;
     }
 
+    /**
+     * For testing! Calls the device support instances using the given executor, instead of
+     * a thread per device.
+     *
+     * @param executor
+     */
+    public static void setDispatchExecutor(@Nullable Executor executor) {
+        DISPATCH_EXECUTOR = executor;
+    }
+
     public DeviceCommunicationService() {
 
     }
@@ -233,13 +255,15 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
             String action = intent.getAction();
             if (GBDevice.ACTION_DEVICE_CHANGED.equals(action)) {
                 GBDevice device = intent.getParcelableExtra(GBDevice.EXTRA_DEVICE);
-                if (mGBDevice != null && mGBDevice.equals(device)) {
-                    mGBDevice = device;
-                    mCoordinator = DeviceHelper.getInstance().getCoordinator(device);
-                    boolean enableReceivers = mDeviceSupport != null && (mDeviceSupport.useAutoConnect() || mGBDevice.isInitialized());
-                    setReceiversEnableState(enableReceivers, mGBDevice.isInitialized(), mCoordinator);
-                } else {
-                    LOG.error("Got ACTION_DEVICE_CHANGED from unexpected device: " + device);
+                synchronized (DeviceCommunicationService.this) {
+                    DeviceStruct deviceStruct = device != null ? mDevices.get(device.getAddress()) : null;
+                    if (deviceStruct != null) {
+                        deviceStruct.device = device;
+                        deviceStruct.coordinator = DeviceHelper.getInstance().getCoordinator(device);
+                        updateReceiversState();
+                    } else {
+                        LOG.error("Got ACTION_DEVICE_CHANGED from unexpected device: " + device);
+                    }
                 }
             }
         }
@@ -265,14 +289,14 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
     }
 
     @Override
-    public synchronized int onStartCommand(Intent intent, int flags, int startId) {
+    public synchronized int onStartCommand(final Intent intent, int flags, int startId) {
 
         if (intent == null) {
             LOG.info("no intent");
             return START_NOT_STICKY;
         }
 
-        String action = intent.getAction();
+        final String action = intent.getAction();
         boolean firstTime = intent.getBooleanExtra(EXTRA_CONNECT_FIRST_TIME, false);
 
         if (action == null) {
@@ -282,25 +306,12 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
 
         LOG.debug("Service startcommand: " + action);
 
-        if (!action.equals(ACTION_START) && !action.equals(ACTION_CONNECT)) {
-            if (!mStarted) {
-                // using the service before issuing ACTION_START
-                LOG.info("Must start service with " + ACTION_START + " or " + ACTION_CONNECT + " before using it: " + action);
-                return START_NOT_STICKY;
-            }
-
-            if (mDeviceSupport == null || (!isInitialized() && !mDeviceSupport.useAutoConnect())) {
-                // trying to send notification without valid Bluetooth connection
-                if (mGBDevice != null) {
-                    // at least send back the current device state
-                    mGBDevice.sendDeviceUpdateIntent(this);
-                }
-                return START_STICKY;
-            }
+        if (!action.equals(ACTION_START) && !action.equals(ACTION_CONNECT) && !mStarted) {
+            // using the service before issuing ACTION_START
+            LOG.info("Must start service with " + ACTION_START + " or " + ACTION_CONNECT + " before using it: " + action);
+            return START_NOT_STICKY;
         }
 
-        // when we get past this, we should have valid mDeviceSupport and mGBDevice instances
-
         Prefs prefs = getPrefs();
         switch (action) {
             case ACTION_START:
@@ -327,56 +338,341 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                     autoReconnect = getGBPrefs().getAutoReconnect();
                 }
 
-                if (gbDevice != null && !isConnecting() && !isConnected()) {
-                    setDeviceSupport(null);
-                    try {
-                        DeviceSupport deviceSupport = mFactory.createDeviceSupport(gbDevice);
-                        if (deviceSupport != null) {
-                            setDeviceSupport(deviceSupport);
-                            if (firstTime) {
-                                deviceSupport.connectFirstTime();
-                            } else {
-                                deviceSupport.setAutoReconnect(autoReconnect);
-                                deviceSupport.connect();
-                            }
-                        } else {
-                            GB.toast(this, getString(R.string.cannot_connect, "Can't create device support"), Toast.LENGTH_SHORT, GB.ERROR);
-                        }
-                    } catch (Exception e) {
-                        GB.toast(this, getString(R.string.cannot_connect, e.getMessage()), Toast.LENGTH_SHORT, GB.ERROR, e);
-                        setDeviceSupport(null);
-                    }
-                } else if (mGBDevice != null) {
-                    // send an update at least
-                    mGBDevice.sendDeviceUpdateIntent(this);
+                if (gbDevice != null) {
+                    connect(gbDevice, firstTime, autoReconnect);
+                }
+                break;
+            case ACTION_REQUEST_DEVICEINFO:
+                // at least send back the current device states
+                sendDeviceUpdateIntents();
+                break;
+            case ACTION_DISCONNECT:
+                for (DeviceStruct deviceStruct : getRequestedDevices(getRequestedDevice(intent))) {
+                    removeDevice(deviceStruct, true);
                 }
                 break;
+            case ACTION_NOTIFICATION:
+                onNotification(getRequestedDevice(intent), createNotificationSpec(intent));
+                break;
+            case ACTION_DELETE_NOTIFICATION:
+                onDeleteNotification(getRequestedDevice(intent), intent.getIntExtra(EXTRA_NOTIFICATION_ID, -1));
+                break;
+            case ACTION_CALLSTATE:
+                CallSpec callSpec = new CallSpec();
+                callSpec.command = intent.getIntExtra(EXTRA_CALL_COMMAND, CallSpec.CALL_UNDEFINED);
+                callSpec.number = intent.getStringExtra(EXTRA_CALL_PHONENUMBER);
+                callSpec.name = intent.getStringExtra(EXTRA_CALL_DISPLAYNAME);
+                onSetCallState(getRequestedDevice(intent), callSpec);
+                break;
+            case ACTION_SETMUSICINFO:
+                MusicSpec musicSpec = new MusicSpec();
+                musicSpec.artist = intent.getStringExtra(EXTRA_MUSIC_ARTIST);
+                musicSpec.album = intent.getStringExtra(EXTRA_MUSIC_ALBUM);
+                musicSpec.track = intent.getStringExtra(EXTRA_MUSIC_TRACK);
+                musicSpec.duration = intent.getIntExtra(EXTRA_MUSIC_DURATION, 0);
+                musicSpec.trackCount = intent.getIntExtra(EXTRA_MUSIC_TRACKCOUNT, 0);
+                musicSpec.trackNr = intent.getIntExtra(EXTRA_MUSIC_TRACKNR, 0);
+                onSetMusicInfo(getRequestedDevice(intent), musicSpec);
+                break;
+            case ACTION_SETMUSICSTATE:
+                MusicStateSpec stateSpec = new MusicStateSpec();
+                stateSpec.shuffle = intent.getByteExtra(EXTRA_MUSIC_SHUFFLE, (byte) 0);
+                stateSpec.repeat = intent.getByteExtra(EXTRA_MUSIC_REPEAT, (byte) 0);
+                stateSpec.position = intent.getIntExtra(EXTRA_MUSIC_POSITION, 0);
+                stateSpec.playRate = intent.getIntExtra(EXTRA_MUSIC_RATE, 0);
+                stateSpec.state = intent.getByteExtra(EXTRA_MUSIC_STATE, (byte) 0);
+                onSetMusicState(getRequestedDevice(intent), stateSpec);
+                break;
             default:
-                if (mDeviceSupport == null || mGBDevice == null) {
-                    LOG.warn("device support:" + mDeviceSupport + ", device: " + mGBDevice + ", aborting");
-                } else {
-                    handleAction(intent, action, prefs);
+                for (final DeviceStruct deviceStruct : getTargetDevices(getRequestedDevice(intent), action)) {
+                    deviceStruct.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            handleAction(intent, action, deviceStruct);
+                        }
+                    });
                 }
                 break;
         }
         return START_STICKY;
     }
 
+    private void connect(GBDevice gbDevice, final boolean firstTime, final boolean autoReconnect) {
+        String address = gbDevice.getAddress();
+        DeviceStruct existing = mDevices.get(address);
+        if (existing != null && (existing.device.isConnecting() || existing.device.isConnected())) {
+            // send an update at least
+            existing.device.sendDeviceUpdateIntent(this);
+            return;
+        }
+
+        DeviceSupport deviceSupport = null;
+        try {
+            deviceSupport = mFactory.createDeviceSupport(gbDevice);
+            if (deviceSupport == null) {
+                GB.toast(this, getString(R.string.cannot_connect, "Can't create device support"), Toast.LENGTH_SHORT, GB.ERROR);
+            }
+        } catch (Exception e) {
+            GB.toast(this, getString(R.string.cannot_connect, e.getMessage()), Toast.LENGTH_SHORT, GB.ERROR, e);
+        }
+
+        if (existing != null) {
+            mDevices.remove(address);
+            // the new device support uses the same thread, so it only connects after the old one is disposed
+            existing.dispose(false, deviceSupport == null);
+        }
+        if (deviceSupport == null) {
+            updateReceiversState();
+            return;
+        }
+
+        final DeviceStruct deviceStruct = new DeviceStruct(deviceSupport, existing);
+        mDevices.put(address, deviceStruct);
+        deviceStruct.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (firstTime) {
+                        deviceStruct.support.connectFirstTime();
+                    } else {
+                        deviceStruct.support.setAutoReconnect(autoReconnect);
+                        deviceStruct.support.connect();
+                    }
+                } catch (Exception e) {
+                    GB.toast(DeviceCommunicationService.this, getString(R.string.cannot_connect, e.getMessage()), Toast.LENGTH_SHORT, GB.ERROR, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Disposes the device support of the given device (in the device's thread) and stops managing it.
+     *
+     * @param notify whether to report the device as not connected afterwards
+     */
+    private void removeDevice(DeviceStruct deviceStruct, boolean notify) {
+        mDevices.remove(deviceStruct.device.getAddress());
+        deviceStruct.dispose(notify, true);
+        updateReceiversState();
+    }
+
+    private void sendDeviceUpdateIntents() {
+        for (DeviceStruct deviceStruct : mDevices.values()) {
+            deviceStruct.device.sendDeviceUpdateIntent(this);
+        }
+    }
+
+    @Nullable
+    private GBDevice getRequestedDevice(Intent intent) {
+        return intent.getParcelableExtra(GBDevice.EXTRA_DEVICE);
+    }
+
+    /**
+     * Returns the given device, or all devices if none is given.
+     */
+    private List<DeviceStruct> getRequestedDevices(@Nullable GBDevice requested) {
+        if (requested == null) {
+            return new ArrayList<>(mDevices.values());
+        }
+        List<DeviceStruct> result = new ArrayList<>(1);
+        DeviceStruct deviceStruct = mDevices.get(requested.getAddress());
+        if (deviceStruct != null) {
+            result.add(deviceStruct);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the devices that should handle the given action: the requested device,
+     * every device that supports it for actions like notifications that concern all devices,
+     * or else the most recently connected device. Only devices that are ready are included.
+     */
+    private List<DeviceStruct> getTargetDevices(@Nullable GBDevice requested, String action) {
+        if (!mStarted) {
+            // using the service before issuing ACTION_START, e.g. through the binder
+            LOG.info("Must start service with " + ACTION_START + " or " + ACTION_CONNECT + " before using it: " + action);
+            return new ArrayList<>();
+        }
+
+        List<DeviceStruct> candidates;
+        if (requested != null || isForAllDevices(action)) {
+            candidates = getRequestedDevices(requested);
+        } else {
+            candidates = new ArrayList<>(1);
+            DeviceStruct last = null;
+            for (DeviceStruct deviceStruct : mDevices.values()) {
+                last = deviceStruct;
+            }
+            if (last != null) {
+                candidates.add(last);
+            }
+        }
+
+        List<DeviceStruct> targets = new ArrayList<>(candidates.size());
+        for (DeviceStruct deviceStruct : candidates) {
+            if (deviceStruct.isReady() && deviceStruct.supports(action)) {
+                targets.add(deviceStruct);
+            }
+        }
+        if (targets.isEmpty()) {
+            // trying to send notification without valid Bluetooth connection
+            LOG.info("No connected device for " + action);
+            sendDeviceUpdateIntents();
+        }
+        return targets;
+    }
+
+    private boolean isForAllDevices(String action) {
+        switch (action) {
+            case ACTION_NOTIFICATION:
+            case ACTION_DELETE_NOTIFICATION:
+            case ACTION_CALLSTATE:
+            case ACTION_SETCANNEDMESSAGES:
+            case ACTION_SETMUSICINFO:
+            case ACTION_SETMUSICSTATE:
+            case ACTION_SETTIME:
+            case ACTION_SEND_WEATHER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private NotificationSpec createNotificationSpec(Intent intent) {
+        int desiredId = intent.getIntExtra(EXTRA_NOTIFICATION_ID, -1);
+        NotificationSpec notificationSpec = new NotificationSpec(desiredId);
+        notificationSpec.phoneNumber = intent.getStringExtra(EXTRA_NOTIFICATION_PHONENUMBER);
+        notificationSpec.sender = intent.getStringExtra(EXTRA_NOTIFICATION_SENDER);
+        notificationSpec.subject = intent.getStringExtra(EXTRA_NOTIFICATION_SUBJECT);
+        notificationSpec.title = intent.getStringExtra(EXTRA_NOTIFICATION_TITLE);
+        notificationSpec.body = intent.getStringExtra(EXTRA_NOTIFICATION_BODY);
+        notificationSpec.sourceName = intent.getStringExtra(EXTRA_NOTIFICATION_SOURCENAME);
+        notificationSpec.type = (NotificationType) intent.getSerializableExtra(EXTRA_NOTIFICATION_TYPE);
+        notificationSpec.attachedActions = (ArrayList<NotificationSpec.Action>) intent.getSerializableExtra(EXTRA_NOTIFICATION_ACTIONS);
+        notificationSpec.pebbleColor = (byte) intent.getSerializableExtra(EXTRA_NOTIFICATION_PEBBLE_COLOR);
+        notificationSpec.flags = intent.getIntExtra(EXTRA_NOTIFICATION_FLAGS, 0);
+        notificationSpec.sourceAppId = intent.getStringExtra(EXTRA_NOTIFICATION_SOURCEAPPID);
+        return notificationSpec;
+    }
+
+    /**
+     * Sends the notification to the given device, or to all devices. The spec is owned by the
+     * service afterwards, each device gets its own copy.
+     */
+    private synchronized void onNotification(@Nullable GBDevice device, final NotificationSpec notificationSpec) {
+        List<DeviceStruct> targets = getTargetDevices(device, ACTION_NOTIFICATION);
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        if (notificationSpec.type == NotificationType.GENERIC_SMS && notificationSpec.phoneNumber != null) {
+            GBApplication.getIDSenderLookup().put(notificationSpec.getId(), notificationSpec.phoneNumber);
+        }
+
+        //TODO: check if at least one of the attached actions is a reply action instead?
+        if ((notificationSpec.attachedActions != null && notificationSpec.attachedActions.size() > 0)
+                || (notificationSpec.type == NotificationType.GENERIC_SMS && notificationSpec.phoneNumber != null)) {
+            // NOTE: maybe not where it belongs
+            // I would rather like to save that as an array in SharedPreferences
+            // this would work but I dont know how to do the same in the Settings Activity's xml
+            ArrayList<String> replies = new ArrayList<>();
+            for (int i = 1; i <= 16; i++) {
+                String reply = getPrefs().getString("canned_reply_" + i, null);
+                if (reply != null && !reply.equals("")) {
+                    replies.add(reply);
+                }
+            }
+            notificationSpec.cannedReplies = replies.toArray(new String[replies.size()]);
+        }
+
+        for (final DeviceStruct deviceStruct : targets) {
+            deviceStruct.execute(new Runnable() {
+                @Override
+                public void run() {
+                    NotificationSpec spec = new NotificationSpec(notificationSpec);
+                    spec.sender = sanitizeNotifText(spec.sender, deviceStruct);
+                    spec.subject = sanitizeNotifText(spec.subject, deviceStruct);
+                    spec.title = sanitizeNotifText(spec.title, deviceStruct);
+                    spec.body = sanitizeNotifText(spec.body, deviceStruct);
+                    deviceStruct.support.onNotification(spec);
+                }
+            });
+        }
+    }
+
+    private synchronized void onDeleteNotification(@Nullable GBDevice device, final int id) {
+        for (final DeviceStruct deviceStruct : getTargetDevices(device, ACTION_DELETE_NOTIFICATION)) {
+            deviceStruct.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deviceStruct.support.onDeleteNotification(id);
+                }
+            });
+        }
+    }
+
+    private synchronized void onSetCallState(@Nullable GBDevice device, final CallSpec callSpec) {
+        for (final DeviceStruct deviceStruct : getTargetDevices(device, ACTION_CALLSTATE)) {
+            deviceStruct.execute(new Runnable() {
+                @Override
+                public void run() {
+                    CallSpec spec = new CallSpec(callSpec);
+                    spec.name = sanitizeNotifText(spec.name, deviceStruct);
+                    deviceStruct.support.onSetCallState(spec);
+                }
+            });
+        }
+    }
+
+    /**
+     * Sends the music info, replacing a previous one that is still waiting to be sent.
+     */
+    private synchronized void onSetMusicInfo(@Nullable GBDevice device, final MusicSpec musicSpec) {
+        for (final DeviceStruct deviceStruct : getTargetDevices(device, ACTION_SETMUSICINFO)) {
+            deviceStruct.executeLatest(ACTION_SETMUSICINFO, new Runnable() {
+                @Override
+                public void run() {
+                    MusicSpec spec = new MusicSpec(musicSpec);
+                    spec.artist = sanitizeNotifText(spec.artist, deviceStruct);
+                    spec.album = sanitizeNotifText(spec.album, deviceStruct);
+                    spec.track = sanitizeNotifText(spec.track, deviceStruct);
+                    deviceStruct.support.onSetMusicInfo(spec);
+                }
+            });
+        }
+    }
+
+    /**
+     * Sends the music state, replacing a previous one that is still waiting to be sent.
+     */
+    private synchronized void onSetMusicState(@Nullable GBDevice device, final MusicStateSpec stateSpec) {
+        for (final DeviceStruct deviceStruct : getTargetDevices(device, ACTION_SETMUSICSTATE)) {
+            deviceStruct.executeLatest(ACTION_SETMUSICSTATE, new Runnable() {
+                @Override
+                public void run() {
+                    deviceStruct.support.onSetMusicState(stateSpec);
+                }
+            });
+        }
+    }
+
     /**
      * @param text original text
+     * @param deviceStruct the device the text will be sent to
      * @return 'text' or a new String without non supported chars like emoticons, etc.
      */
-    private String sanitizeNotifText(String text) {
+    private String sanitizeNotifText(String text, DeviceStruct deviceStruct) {
         if (text == null || text.length() == 0)
             return text;
 
-        if (!mCoordinator.supportsUnicodeEmojis()) {
+        DeviceCoordinator coordinator = deviceStruct.coordinator;
+        if (!coordinator.supportsUnicodeEmojis()) {
 
             // use custom font for emoji, if it is supported and enabled
-            if (mCoordinator.supportsCustomFont()) {
-                switch (mCoordinator.getDeviceType()) {
+            if (coordinator.supportsCustomFont()) {
+                switch (coordinator.getDeviceType()) {
                     case AMAZFITBIP:
-                        if (((HuamiCoordinator)mCoordinator).getUseCustomFont(mGBDevice.getAddress()))
+                        if (((HuamiCoordinator) coordinator).getUseCustomFont(deviceStruct.device.getAddress()))
                             return StringUtils.toCustomFont(text);
                         break;
                     // TODO: implement for Amazfit Cor
@@ -391,114 +687,54 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         return text;
     }
 
-    private void handleAction(Intent intent, String action, Prefs prefs) {
+    /**
+     * Called in the thread of the given device.
+     */
+    private void handleAction(Intent intent, String action, DeviceStruct deviceStruct) {
+        DeviceSupport deviceSupport = deviceStruct.support;
         switch (action) {
-            case ACTION_REQUEST_DEVICEINFO:
-                mGBDevice.sendDeviceUpdateIntent(this);
-                break;
-            case ACTION_NOTIFICATION: {
-                int desiredId = intent.getIntExtra(EXTRA_NOTIFICATION_ID, -1);
-                NotificationSpec notificationSpec = new NotificationSpec(desiredId);
-                notificationSpec.phoneNumber = intent.getStringExtra(EXTRA_NOTIFICATION_PHONENUMBER);
-                notificationSpec.sender = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_SENDER));
-                notificationSpec.subject = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_SUBJECT));
-                notificationSpec.title = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_TITLE));
-                notificationSpec.body = sanitizeNotifText(intent.getStringExtra(EXTRA_NOTIFICATION_BODY));
-                notificationSpec.sourceName = intent.getStringExtra(EXTRA_NOTIFICATION_SOURCENAME);
-                notificationSpec.type = (NotificationType) intent.getSerializableExtra(EXTRA_NOTIFICATION_TYPE);
-                notificationSpec.attachedActions = (ArrayList<NotificationSpec.Action>) intent.getSerializableExtra(EXTRA_NOTIFICATION_ACTIONS);
-                notificationSpec.pebbleColor = (byte) intent.getSerializableExtra(EXTRA_NOTIFICATION_PEBBLE_COLOR);
-                notificationSpec.flags = intent.getIntExtra(EXTRA_NOTIFICATION_FLAGS, 0);
-                notificationSpec.sourceAppId = intent.getStringExtra(EXTRA_NOTIFICATION_SOURCEAPPID);
-
-                if (notificationSpec.type == NotificationType.GENERIC_SMS && notificationSpec.phoneNumber != null) {
-                    GBApplication.getIDSenderLookup().add(notificationSpec.getId(), notificationSpec.phoneNumber);
-                }
-
-                //TODO: check if at least one of the attached actions is a reply action instead?
-                if ((notificationSpec.attachedActions != null && notificationSpec.attachedActions.size() > 0)
-                        || (notificationSpec.type == NotificationType.GENERIC_SMS && notificationSpec.phoneNumber != null)) {
-                    // NOTE: maybe not where it belongs
-                    // I would rather like to save that as an array in SharedPreferences
-                    // this would work but I dont know how to do the same in the Settings Activity's xml
-                    ArrayList<String> replies = new ArrayList<>();
-                    for (int i = 1; i <= 16; i++) {
-                        String reply = prefs.getString("canned_reply_" + i, null);
-                        if (reply != null && !reply.equals("")) {
-                            replies.add(reply);
-                        }
-                    }
-                    notificationSpec.cannedReplies = replies.toArray(new String[replies.size()]);
-                }
-
-                mDeviceSupport.onNotification(notificationSpec);
-                break;
-            }
-            case ACTION_DELETE_NOTIFICATION: {
-                mDeviceSupport.onDeleteNotification(intent.getIntExtra(EXTRA_NOTIFICATION_ID, -1));
-                break;
-            }
             case ACTION_ADD_CALENDAREVENT: {
                 CalendarEventSpec calendarEventSpec = new CalendarEventSpec();
                 calendarEventSpec.id = intent.getLongExtra(EXTRA_CALENDAREVENT_ID, -1);
                 calendarEventSpec.type = intent.getByteExtra(EXTRA_CALENDAREVENT_TYPE, (byte) -1);
                 calendarEventSpec.timestamp = intent.getIntExtra(EXTRA_CALENDAREVENT_TIMESTAMP, -1);
                 calendarEventSpec.durationInSeconds = intent.getIntExtra(EXTRA_CALENDAREVENT_DURATION, -1);
-                calendarEventSpec.title = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_TITLE));
-                calendarEventSpec.description = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_DESCRIPTION));
-                calendarEventSpec.location = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_LOCATION));
-                mDeviceSupport.onAddCalendarEvent(calendarEventSpec);
+                calendarEventSpec.title = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_TITLE), deviceStruct);
+                calendarEventSpec.description = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_DESCRIPTION), deviceStruct);
+                calendarEventSpec.location = sanitizeNotifText(intent.getStringExtra(EXTRA_CALENDAREVENT_LOCATION), deviceStruct);
+                deviceSupport.onAddCalendarEvent(calendarEventSpec);
                 break;
             }
             case ACTION_DELETE_CALENDAREVENT: {
                 long id = intent.getLongExtra(EXTRA_CALENDAREVENT_ID, -1);
                 byte type = intent.getByteExtra(EXTRA_CALENDAREVENT_TYPE, (byte) -1);
-                mDeviceSupport.onDeleteCalendarEvent(type, id);
+                deviceSupport.onDeleteCalendarEvent(type, id);
                 break;
             }
             case ACTION_RESET: {
                 int flags = intent.getIntExtra(EXTRA_RESET_FLAGS, 0);
-                mDeviceSupport.onReset(flags);
+                deviceSupport.onReset(flags);
                 break;
             }
             case ACTION_HEARTRATE_TEST: {
-                mDeviceSupport.onHeartRateTest();
+                deviceSupport.onHeartRateTest();
                 break;
             }
             case ACTION_FETCH_RECORDED_DATA: {
                 int dataTypes = intent.getIntExtra(EXTRA_RECORDED_DATA_TYPES, 0);
-                mDeviceSupport.onFetchRecordedData(dataTypes);
-                break;
-            }
-            case ACTION_DISCONNECT: {
-                mDeviceSupport.dispose();
-                if (mGBDevice != null) {
-                    mGBDevice.setState(GBDevice.State.NOT_CONNECTED);
-                    mGBDevice.sendDeviceUpdateIntent(this);
-                }
-                setReceiversEnableState(false, false, null);
-                mGBDevice = null;
-                mDeviceSupport = null;
-                mCoordinator = null;
+                deviceSupport.onFetchRecordedData(dataTypes);
                 break;
             }
             case ACTION_FIND_DEVICE: {
                 boolean start = intent.getBooleanExtra(EXTRA_FIND_START, false);
-                mDeviceSupport.onFindDevice(start);
+                deviceSupport.onFindDevice(start);
                 break;
             }
             case ACTION_SET_CONSTANT_VIBRATION: {
                 int intensity = intent.getIntExtra(EXTRA_VIBRATION_INTENSITY, 0);
-                mDeviceSupport.onSetConstantVibration(intensity);
+                deviceSupport.onSetConstantVibration(intensity);
                 break;
             }
-            case ACTION_CALLSTATE:
-                CallSpec callSpec = new CallSpec();
-                callSpec.command = intent.getIntExtra(EXTRA_CALL_COMMAND, CallSpec.CALL_UNDEFINED);
-                callSpec.number = intent.getStringExtra(EXTRA_CALL_PHONENUMBER);
-                callSpec.name = sanitizeNotifText(intent.getStringExtra(EXTRA_CALL_DISPLAYNAME));
-                mDeviceSupport.onSetCallState(callSpec);
-                break;
             case ACTION_SETCANNEDMESSAGES:
                 int type = intent.getIntExtra(EXTRA_CANNEDMESSAGES_TYPE, -1);
                 String[] cannedMessages = intent.getStringArrayExtra(EXTRA_CANNEDMESSAGES);
@@ -506,45 +742,26 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 CannedMessagesSpec cannedMessagesSpec = new CannedMessagesSpec();
                 cannedMessagesSpec.type = type;
                 cannedMessagesSpec.cannedMessages = cannedMessages;
-                mDeviceSupport.onSetCannedMessages(cannedMessagesSpec);
+                deviceSupport.onSetCannedMessages(cannedMessagesSpec);
                 break;
             case ACTION_SETTIME:
-                mDeviceSupport.onSetTime();
-                break;
-            case ACTION_SETMUSICINFO:
-                MusicSpec musicSpec = new MusicSpec();
-                musicSpec.artist = sanitizeNotifText(intent.getStringExtra(EXTRA_MUSIC_ARTIST));
-                musicSpec.album = sanitizeNotifText(intent.getStringExtra(EXTRA_MUSIC_ALBUM));
-                musicSpec.track = sanitizeNotifText(intent.getStringExtra(EXTRA_MUSIC_TRACK));
-                musicSpec.duration = intent.getIntExtra(EXTRA_MUSIC_DURATION, 0);
-                musicSpec.trackCount = intent.getIntExtra(EXTRA_MUSIC_TRACKCOUNT, 0);
-                musicSpec.trackNr = intent.getIntExtra(EXTRA_MUSIC_TRACKNR, 0);
-                mDeviceSupport.onSetMusicInfo(musicSpec);
-                break;
-            case ACTION_SETMUSICSTATE:
-                MusicStateSpec stateSpec = new MusicStateSpec();
-                stateSpec.shuffle = intent.getByteExtra(EXTRA_MUSIC_SHUFFLE, (byte) 0);
-                stateSpec.repeat = intent.getByteExtra(EXTRA_MUSIC_REPEAT, (byte) 0);
-                stateSpec.position = intent.getIntExtra(EXTRA_MUSIC_POSITION, 0);
-                stateSpec.playRate = intent.getIntExtra(EXTRA_MUSIC_RATE, 0);
-                stateSpec.state = intent.getByteExtra(EXTRA_MUSIC_STATE, (byte) 0);
-                mDeviceSupport.onSetMusicState(stateSpec);
+                deviceSupport.onSetTime();
                 break;
             case ACTION_REQUEST_APPINFO:
-                mDeviceSupport.onAppInfoReq();
+                deviceSupport.onAppInfoReq();
                 break;
             case ACTION_REQUEST_SCREENSHOT:
-                mDeviceSupport.onScreenshotReq();
+                deviceSupport.onScreenshotReq();
                 break;
             case ACTION_STARTAPP: {
                 UUID uuid = (UUID) intent.getSerializableExtra(EXTRA_APP_UUID);
                 boolean start = intent.getBooleanExtra(EXTRA_APP_START, true);
-                mDeviceSupport.onAppStart(uuid, start);
+                deviceSupport.onAppStart(uuid, start);
                 break;
             }
             case ACTION_DELETEAPP: {
                 UUID uuid = (UUID) intent.getSerializableExtra(EXTRA_APP_UUID);
-                mDeviceSupport.onAppDelete(uuid);
+                deviceSupport.onAppDelete(uuid);
                 break;
             }
             case ACTION_APP_CONFIGURE: {
@@ -554,99 +771,81 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 if (intent.hasExtra(EXTRA_APP_CONFIG_ID)) {
                     id = intent.getIntExtra(EXTRA_APP_CONFIG_ID, 0);
                 }
-                mDeviceSupport.onAppConfiguration(uuid, config, id);
+                deviceSupport.onAppConfiguration(uuid, config, id);
                 break;
             }
             case ACTION_APP_REORDER: {
                 UUID[] uuids = (UUID[]) intent.getSerializableExtra(EXTRA_APP_UUID);
-                mDeviceSupport.onAppReorder(uuids);
+                deviceSupport.onAppReorder(uuids);
                 break;
             }
             case ACTION_INSTALL:
                 Uri uri = intent.getParcelableExtra(EXTRA_URI);
                 if (uri != null) {
                     LOG.info("will try to install app/fw");
-                    mDeviceSupport.onInstallApp(uri);
+                    deviceSupport.onInstallApp(uri);
                 }
                 break;
             case ACTION_SET_ALARMS:
                 ArrayList<? extends Alarm> alarms = (ArrayList<? extends Alarm>) intent.getSerializableExtra(EXTRA_ALARMS);
-                mDeviceSupport.onSetAlarms(alarms);
+                deviceSupport.onSetAlarms(alarms);
                 break;
             case ACTION_ENABLE_REALTIME_STEPS: {
                 boolean enable = intent.getBooleanExtra(EXTRA_BOOLEAN_ENABLE, false);
-                mDeviceSupport.onEnableRealtimeSteps(enable);
+                deviceSupport.onEnableRealtimeSteps(enable);
                 break;
             }
             case ACTION_ENABLE_HEARTRATE_SLEEP_SUPPORT: {
                 boolean enable = intent.getBooleanExtra(EXTRA_BOOLEAN_ENABLE, false);
-                mDeviceSupport.onEnableHeartRateSleepSupport(enable);
+                deviceSupport.onEnableHeartRateSleepSupport(enable);
                 break;
             }
             case ACTION_SET_HEARTRATE_MEASUREMENT_INTERVAL: {
                 int seconds = intent.getIntExtra(EXTRA_INTERVAL_SECONDS, 0);
-                mDeviceSupport.onSetHeartRateMeasurementInterval(seconds);
+                deviceSupport.onSetHeartRateMeasurementInterval(seconds);
                 break;
             }
             case ACTION_ENABLE_REALTIME_HEARTRATE_MEASUREMENT: {
                 boolean enable = intent.getBooleanExtra(EXTRA_BOOLEAN_ENABLE, false);
-                mDeviceSupport.onEnableRealtimeHeartRateMeasurement(enable);
+                deviceSupport.onEnableRealtimeHeartRateMeasurement(enable);
                 break;
             }
             case ACTION_SEND_CONFIGURATION: {
                 String config = intent.getStringExtra(EXTRA_CONFIG);
-                mDeviceSupport.onSendConfiguration(config);
+                deviceSupport.onSendConfiguration(config);
                 break;
             }
             case ACTION_READ_CONFIGURATION: {
                 String config = intent.getStringExtra(EXTRA_CONFIG);
-                mDeviceSupport.onReadConfiguration(config);
+                deviceSupport.onReadConfiguration(config);
                 break;
             }
             case ACTION_TEST_NEW_FUNCTION: {
-                mDeviceSupport.onTestNewFunction();
+                deviceSupport.onTestNewFunction();
                 break;
             }
             case ACTION_SEND_WEATHER: {
                 WeatherSpec weatherSpec = intent.getParcelableExtra(EXTRA_WEATHER);
                 if (weatherSpec != null) {
-                    mDeviceSupport.onSendWeather(weatherSpec);
+                    deviceSupport.onSendWeather(weatherSpec);
                 }
                 break;
             }
             case ACTION_SET_LED_COLOR:
                 int color = intent.getIntExtra(EXTRA_LED_COLOR, 0);
                 if (color != 0) {
-                    mDeviceSupport.onSetLedColor(color);
+                    deviceSupport.onSetLedColor(color);
                 }
                 break;
             case ACTION_SET_FM_FREQUENCY:
                 float frequency = intent.getFloatExtra(EXTRA_FM_FREQUENCY, -1);
                 if (frequency != -1) {
-                    mDeviceSupport.onSetFmFrequency(frequency);
+                    deviceSupport.onSetFmFrequency(frequency);
                 }
                 break;
         }
     }
 
-    /**
-     * Disposes the current DeviceSupport instance (if any) and sets a new device support instance
-     * (if not null).
-     *
-     * @param deviceSupport
-     */
-    private void setDeviceSupport(@Nullable DeviceSupport deviceSupport) {
-        if (deviceSupport != mDeviceSupport && mDeviceSupport != null) {
-            mDeviceSupport.dispose();
-            mDeviceSupport = null;
-            mGBDevice = null;
-            mCoordinator = null;
-        }
-        mDeviceSupport = deviceSupport;
-        mGBDevice = mDeviceSupport != null ? mDeviceSupport.getDevice() : null;
-        mCoordinator = mGBDevice != null ? DeviceHelper.getInstance().getCoordinator(mGBDevice) : null;
-    }
-
     private void start() {
         if (!mStarted) {
             startForeground(GB.NOTIFICATION_ID, GB.createNotification(getString(R.string.gadgetbridge_running), this));
@@ -658,42 +857,77 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         return mStarted;
     }
 
-    private boolean isConnected() {
-        return mGBDevice != null && mGBDevice.isConnected();
-    }
-
-    private boolean isConnecting() {
-        return mGBDevice != null && mGBDevice.isConnecting();
-    }
 
-    private boolean isInitialized() {
-        return mGBDevice != null && mGBDevice.isInitialized();
+    /**
+     * Enables the broadcast receivers needed by the connected devices, and disables the others.
+     */
+    private void updateReceiversState() {
+        boolean enable = false;
+        boolean calendarEvents = false;
+        boolean musicInfo = false;
+        boolean weather = false;
+        boolean activityDataFetching = false;
+        List<GBDevice> calendarDevices = new ArrayList<>();
+        for (DeviceStruct deviceStruct : mDevices.values()) {
+            GBDevice device = deviceStruct.device;
+            DeviceCoordinator coordinator = deviceStruct.coordinator;
+            if (!deviceStruct.isReady()) {
+                continue;
+            }
+            enable = true;
+            if (coordinator == null) {
+                continue;
+            }
+            if (device.isInitialized() && coordinator.supportsCalendarEvents()) {
+                calendarEvents = true;
+                calendarDevices.add(device);
+            }
+            musicInfo |= coordinator.supportsMusicInfo();
+            weather |= coordinator.supportsWeather();
+            activityDataFetching |= coordinator.supportsActivityDataFetching();
+        }
+        setCalendarReceiversDevices(calendarDevices);
+        setReceiversEnableState(enable, calendarEvents, musicInfo, weather, activityDataFetching);
     }
 
-
-    private void setReceiversEnableState(boolean enable, boolean initialized, DeviceCoordinator coordinator) {
-        LOG.info("Setting broadcast receivers to: " + enable);
-
-        if (enable && initialized && coordinator != null && coordinator.supportsCalendarEvents()) {
-            if (mCalendarReceiver == null && getPrefs().getBoolean("enable_calendar_sync", true)) {
+    /**
+     * Registers a calendar receiver for each of the given devices, since the calendar is synced
+     * to each device separately, and unregisters the receivers of all other devices.
+     */
+    private void setCalendarReceiversDevices(List<GBDevice> devices) {
+        Map<String, CalendarReceiver> previous = new HashMap<>(mCalendarReceivers);
+        mCalendarReceivers.clear();
+        for (GBDevice device : devices) {
+            CalendarReceiver calendarReceiver = previous.remove(device.getAddress());
+            if (calendarReceiver == null && getPrefs().getBoolean("enable_calendar_sync", true)) {
                 if (!(GBApplication.isRunningMarshmallowOrLater() && ContextCompat.checkSelfPermission(this, Manifest.permission.READ_CALENDAR) == PackageManager.PERMISSION_DENIED)) {
                     IntentFilter calendarIntentFilter = new IntentFilter();
                     calendarIntentFilter.addAction("android.intent.action.PROVIDER_CHANGED");
                     calendarIntentFilter.addDataScheme("content");
                     calendarIntentFilter.addDataAuthority("com.android.calendar", null);
-                    mCalendarReceiver = new CalendarReceiver(mGBDevice);
-                    registerReceiver(mCalendarReceiver, calendarIntentFilter);
+                    calendarReceiver = new CalendarReceiver(device);
+                    registerReceiver(calendarReceiver, calendarIntentFilter);
                 }
             }
+            if (calendarReceiver != null) {
+                mCalendarReceivers.put(device.getAddress(), calendarReceiver);
+            }
+        }
+        for (CalendarReceiver calendarReceiver : previous.values()) {
+            unregisterReceiver(calendarReceiver);
+            calendarReceiver.cancelPendingSync();
+        }
+    }
+
+    private void setReceiversEnableState(boolean enable, boolean calendarEvents, boolean musicInfo, boolean weather, boolean activityDataFetching) {
+        LOG.info("Setting broadcast receivers to: " + enable);
+
+        if (enable && calendarEvents) {
             if (mAlarmReceiver == null) {
                 mAlarmReceiver = new AlarmReceiver();
                 registerReceiver(mAlarmReceiver, new IntentFilter("DAILY_ALARM"));
             }
         } else {
-            if (mCalendarReceiver != null) {
-                unregisterReceiver(mCalendarReceiver);
-                mCalendarReceiver = null;
-            }
             if (mAlarmReceiver != null) {
                 unregisterReceiver(mAlarmReceiver);
                 mAlarmReceiver = null;
@@ -717,7 +951,7 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 mPebbleReceiver = new PebbleReceiver();
                 registerReceiver(mPebbleReceiver, new IntentFilter("com.getpebble.action.SEND_NOTIFICATION"));
             }
-            if (mMusicPlaybackReceiver == null && coordinator != null && coordinator.supportsMusicInfo()) {
+            if (mMusicPlaybackReceiver == null && musicInfo) {
                 mMusicPlaybackReceiver = new MusicPlaybackReceiver();
                 IntentFilter filter = new IntentFilter();
                 for (String action : mMusicActions) {
@@ -749,18 +983,18 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 filter.addAction(AlarmClockReceiver.GOOGLE_CLOCK_ALARM_DONE_ACTION);
                 registerReceiver(mAlarmClockReceiver, filter);
             }
-            if (mCMWeatherReceiver == null && coordinator != null && coordinator.supportsWeather()) {
+            if (mCMWeatherReceiver == null && weather) {
                 mCMWeatherReceiver = new CMWeatherReceiver();
                 registerReceiver(mCMWeatherReceiver, new IntentFilter("GB_UPDATE_WEATHER"));
             }
             if (GBApplication.isRunningOreoOrLater()) {
-                if (mLineageOsWeatherReceiver == null && coordinator != null && coordinator.supportsWeather()) {
+                if (mLineageOsWeatherReceiver == null && weather) {
 
                     mLineageOsWeatherReceiver = new LineageOsWeatherReceiver();
                     registerReceiver(mLineageOsWeatherReceiver, new IntentFilter("GB_UPDATE_WEATHER"));
                 }
             }
-            if (mOmniJawsObserver == null && coordinator != null && coordinator.supportsWeather()) {
+            if (mOmniJawsObserver == null && weather) {
                 try {
                     mOmniJawsObserver = new OmniJawsObserver(new Handler());
                     getContentResolver().registerContentObserver(mOmniJawsObserver.WEATHER_URI, true, mOmniJawsObserver);
@@ -769,7 +1003,7 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
                 }
             }
             if (GBApplication.getPrefs().getBoolean("auto_fetch_enabled", false) &&
-                    coordinator != null && coordinator.supportsActivityDataFetching() && mGBAutoFetchReceiver == null) {
+                    activityDataFetching && mGBAutoFetchReceiver == null) {
                 mGBAutoFetchReceiver = new GBAutoFetchReceiver();
                 registerReceiver(mGBAutoFetchReceiver, new IntentFilter("android.intent.action.USER_PRESENT"));
             }
@@ -832,12 +1066,20 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         }
 
         LOG.debug("DeviceCommunicationService is being destroyed");
+        mDestroyed = true;
         super.onDestroy();
 
         LocalBroadcastManager.getInstance(this).unregisterReceiver(mReceiver);
-        setReceiversEnableState(false, false, null); // disable BroadcastReceivers
+        // disable BroadcastReceivers
+        setCalendarReceiversDevices(new ArrayList<GBDevice>());
+        setReceiversEnableState(false, false, false, false, false);
 
-        setDeviceSupport(null);
+        synchronized (this) {
+            for (DeviceStruct deviceStruct : mDevices.values()) {
+                deviceStruct.dispose(false, true);
+            }
+            mDevices.clear();
+        }
         NotificationManager nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         if (nm != null) {
             nm.cancel(GB.NOTIFICATION_ID); // need to do this because the updated notification won't be cancelled when service stops
@@ -846,15 +1088,17 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
 
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return mBinder;
     }
 
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (GBPrefs.AUTO_RECONNECT.equals(key)) {
             boolean autoReconnect = getGBPrefs().getAutoReconnect();
-            if (mDeviceSupport != null) {
-                mDeviceSupport.setAutoReconnect(autoReconnect);
+            synchronized (this) {
+                for (DeviceStruct deviceStruct : mDevices.values()) {
+                    deviceStruct.support.setAutoReconnect(autoReconnect);
+                }
             }
         }
         if (GBPrefs.CHART_MAX_HEART_RATE.equals(key) || GBPrefs.CHART_MIN_HEART_RATE.equals(key)) {
@@ -874,7 +1118,187 @@ public class DeviceCommunicationService extends Service implements SharedPrefere
         return GBApplication.getGBPrefs();
     }
 
-    public GBDevice getGBDevice() {
-        return mGBDevice;
+    /**
+     * Returns the connected (or connecting) device with the given address, or null.
+     */
+    @Nullable
+    public synchronized GBDevice getGBDevice(String address) {
+        DeviceStruct deviceStruct = mDevices.get(address);
+        return deviceStruct != null ? deviceStruct.device : null;
+    }
+
+    /**
+     * Lets clients in the same process pass the most frequent events to the service directly,
+     * instead of an intent for each of them, which has to go through the system and has to be
+     * unpacked again. Events without a device are handled like the corresponding intents.
+     * <p/>
+     * Each method returns false if the service has already been destroyed, in which case the
+     * caller has to fall back to sending an intent.
+     */
+    public class LocalBinder extends Binder {
+        public boolean onNotification(@Nullable GBDevice device, NotificationSpec notificationSpec) {
+            if (mDestroyed) {
+                return false;
+            }
+            DeviceCommunicationService.this.onNotification(device, notificationSpec);
+            return true;
+        }
+
+        public boolean onDeleteNotification(@Nullable GBDevice device, int id) {
+            if (mDestroyed) {
+                return false;
+            }
+            DeviceCommunicationService.this.onDeleteNotification(device, id);
+            return true;
+        }
+
+        public boolean onSetCallState(@Nullable GBDevice device, CallSpec callSpec) {
+            if (mDestroyed) {
+                return false;
+            }
+            DeviceCommunicationService.this.onSetCallState(device, callSpec);
+            return true;
+        }
+
+        public boolean onSetMusicInfo(@Nullable GBDevice device, MusicSpec musicSpec) {
+            if (mDestroyed) {
+                return false;
+            }
+            DeviceCommunicationService.this.onSetMusicInfo(device, musicSpec);
+            return true;
+        }
+
+        public boolean onSetMusicState(@Nullable GBDevice device, MusicStateSpec stateSpec) {
+            if (mDestroyed) {
+                return false;
+            }
+            DeviceCommunicationService.this.onSetMusicState(device, stateSpec);
+            return true;
+        }
+    }
+
+    /**
+     * A device managed by the service. Its device support is only called in the device's own
+     * thread, so that a slow operation on one device, like installing firmware, does not delay
+     * the events for the other devices.
+     */
+    private class DeviceStruct {
+        private final DeviceSupport support;
+        private final Executor executor;
+        private final boolean ownsExecutor;
+        private volatile GBDevice device;
+        private volatile DeviceCoordinator coordinator;
+        // the latest pending runnable by key, see executeLatest()
+        private final Map<String, Runnable> latest = new HashMap<>();
+
+        /**
+         * @param previous the disposed previous instance for the same device, whose thread is reused
+         */
+        DeviceStruct(DeviceSupport support, @Nullable DeviceStruct previous) {
+            this.support = support;
+            device = support.getDevice();
+            coordinator = DeviceHelper.getInstance().getCoordinator(device);
+            if (previous != null) {
+                executor = previous.executor;
+                ownsExecutor = previous.ownsExecutor;
+                return;
+            }
+            ownsExecutor = DISPATCH_EXECUTOR == null;
+            if (ownsExecutor) {
+                final String threadName = "DeviceSupport " + device.getAddress();
+                executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, threadName);
+                    }
+                });
+            } else {
+                executor = DISPATCH_EXECUTOR;
+            }
+        }
+
+        boolean isReady() {
+            return device.isInitialized() || support.useAutoConnect();
+        }
+
+        boolean supports(String action) {
+            if (coordinator == null) {
+                return true;
+            }
+            switch (action) {
+                case ACTION_SETMUSICINFO:
+                case ACTION_SETMUSICSTATE:
+                    return coordinator.supportsMusicInfo();
+                case ACTION_SEND_WEATHER:
+                    return coordinator.supportsWeather();
+                default:
+                    return true;
+            }
+        }
+
+        void execute(final Runnable runnable) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            runnable.run();
+                        } catch (Exception ex) {
+                            LOG.error("Error in device support of " + device.getAddress(), ex);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                LOG.warn("Device " + device.getAddress() + " was already disposed, ignoring");
+            }
+        }
+
+        /**
+         * Like {@link #execute(Runnable)}, but if a runnable with the same key is still waiting,
+         * it is replaced instead, e.g. a music state that is superseded by a newer one.
+         */
+        void executeLatest(final String key, Runnable runnable) {
+            synchronized (latest) {
+                boolean waiting = latest.containsKey(key);
+                latest.put(key, runnable);
+                if (waiting) {
+                    return;
+                }
+            }
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    Runnable current;
+                    synchronized (latest) {
+                        current = latest.remove(key);
+                    }
+                    if (current != null) {
+                        current.run();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Disposes the device support after all pending actions.
+         *
+         * @param notify     whether to report the device as not connected afterwards
+         * @param stopThread whether to stop the thread afterwards, unless it is reused
+         */
+        void dispose(final boolean notify, boolean stopThread) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    support.dispose();
+                    if (notify) {
+                        device.setState(GBDevice.State.NOT_CONNECTED);
+                        device.sendDeviceUpdateIntent(DeviceCommunicationService.this);
+                    }
+                }
+            });
+            if (stopThread && ownsExecutor) {
+                ((ExecutorService) executor).shutdown();
+            }
+        }
     }
 }
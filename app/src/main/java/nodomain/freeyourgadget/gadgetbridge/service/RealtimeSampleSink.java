@@ -0,0 +1,199 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+
+/**
+ * Collects realtime samples, e.g. the heart rate measured every second during live activity,
+ * and stores them in groups instead of one transaction per sample.
+ * <p/>
+ * Pending samples are stored in a single transaction when {@link #getMaxPendingSamples()} have
+ * been collected, at the latest {@link #getMaxDelayMillis()} after the first one was added, and
+ * when {@link #flush()} or {@link #close()} is called, e.g. when live activity is stopped or
+ * the device is disconnected. Samples that are due are stored by a background thread, so
+ * that adding a sample never waits for the database.
+ * <p/>
+ * The user and device ids are looked up once and then reused. The samples can therefore be
+ * created with a dummy id of 0, which is replaced when they are stored. Since the samples
+ * are only stored later, they must not be modified after they have been added, use a copy
+ * for broadcasting them instead.
+ */
+public abstract class RealtimeSampleSink<T extends AbstractActivitySample> {
+    private static final Logger LOG = LoggerFactory.getLogger(RealtimeSampleSink.class);
+
+    public static final int DEFAULT_MAX_PENDING_SAMPLES = 60;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 30000;
+
+    private final GBDevice mDevice;
+    private final int mMaxPendingSamples;
+    private final long mMaxDelayMillis;
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    // held while storing, so that adding samples is not blocked by the database
+    private final Object mStoreLock = new Object();
+    private List<T> mPendingSamples = new ArrayList<>();
+    private ScheduledExecutorService mFlushScheduler;
+    private ScheduledFuture<?> mScheduledFlush;
+    private Long mUserId; // guarded by mStoreLock
+    private Long mDeviceId; // guarded by mStoreLock
+
+    public RealtimeSampleSink(GBDevice device) {
+        this(device, DEFAULT_MAX_PENDING_SAMPLES, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    public RealtimeSampleSink(GBDevice device, int maxPendingSamples, long maxDelayMillis) {
+        mDevice = device;
+        mMaxPendingSamples = maxPendingSamples;
+        mMaxDelayMillis = maxDelayMillis;
+    }
+
+    public GBDevice getDevice() {
+        return mDevice;
+    }
+
+    public int getMaxPendingSamples() {
+        return mMaxPendingSamples;
+    }
+
+    public long getMaxDelayMillis() {
+        return mMaxDelayMillis;
+    }
+
+    /**
+     * Creates the provider to store the samples with.
+     */
+    protected abstract AbstractSampleProvider<T> createSampleProvider(GBDevice device, DaoSession session);
+
+    /**
+     * Adds a sample to be stored later. The sample must not be modified afterwards.
+     */
+    public synchronized void add(T sample) {
+        mPendingSamples.add(sample);
+        if (mPendingSamples.size() >= mMaxPendingSamples) {
+            cancelScheduledFlush();
+            getFlushScheduler().execute(mFlushRunnable);
+        } else if (mScheduledFlush == null) {
+            mScheduledFlush = getFlushScheduler().schedule(mFlushRunnable, mMaxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized int getPendingSampleCount() {
+        return mPendingSamples.size();
+    }
+
+    /**
+     * Stores all pending samples now, in the calling thread.
+     */
+    public void flush() {
+        List<T> samples;
+        synchronized (this) {
+            cancelScheduledFlush();
+            if (mPendingSamples.isEmpty()) {
+                return;
+            }
+            samples = mPendingSamples;
+            mPendingSamples = new ArrayList<>();
+        }
+        store(samples);
+    }
+
+    /**
+     * Stores all pending samples and stops the flush timer. Must be called when the
+     * device is disconnected. Samples added afterwards start a new timer.
+     */
+    public void close() {
+        flush();
+        synchronized (this) {
+            if (mFlushScheduler != null) {
+                mFlushScheduler.shutdown();
+                mFlushScheduler = null;
+            }
+        }
+    }
+
+    private void store(List<T> samples) {
+        long start = System.currentTimeMillis();
+        synchronized (mStoreLock) {
+            storeLocked(samples);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Stored " + samples.size() + " realtime samples in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private void storeLocked(List<T> samples) {
+        try (DBHandler dbHandler = GBApplication.acquireDB()) {
+            DaoSession session = dbHandler.getDaoSession();
+            if (mUserId == null || mDeviceId == null) {
+                mUserId = DBHelper.getUser(session).getId();
+                mDeviceId = DBHelper.getDevice(mDevice, session).getId();
+            }
+
+            AbstractSampleProvider<T> provider = createSampleProvider(mDevice, session);
+            for (T sample : samples) {
+                sample.setUserId(mUserId);
+                sample.setDeviceId(mDeviceId);
+                sample.setProvider(provider);
+            }
+            provider.addGBActivitySamples(toArray(samples));
+        } catch (Exception ex) {
+            LOG.error("Error storing realtime samples", ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T[] toArray(List<T> samples) {
+        T[] array = (T[]) Array.newInstance(samples.get(0).getClass(), samples.size());
+        return samples.toArray(array);
+    }
+
+    private void cancelScheduledFlush() {
+        if (mScheduledFlush != null) {
+            mScheduledFlush.cancel(false);
+            mScheduledFlush = null;
+        }
+    }
+
+    private ScheduledExecutorService getFlushScheduler() {
+        if (mFlushScheduler == null) {
+            mFlushScheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        return mFlushScheduler;
+    }
+}
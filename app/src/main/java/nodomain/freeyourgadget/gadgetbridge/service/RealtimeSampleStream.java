@@ -0,0 +1,246 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers realtime samples, e.g. the live steps and heart rate, from the device support
+ * classes to the UI within the process, without wrapping them in intents.
+ * <p/>
+ * Published samples are kept in a ring buffer of primitive values, so neither publishing nor
+ * delivering a sample allocates anything. Each subscriber has its own position in the buffer
+ * and is notified through its executor (the main thread by default). While a notification is
+ * pending, no further ones are posted: the subscriber receives all samples published in the
+ * meantime at once. A subscriber that falls behind by more than the capacity of the buffer
+ * skips the oldest samples instead of slowing down the publishers.
+ * <p/>
+ * When subscribing, the samples of the last seconds can be replayed, so that e.g. the live
+ * activity chart does not start empty after a configuration change.
+ */
+public class RealtimeSampleStream {
+    private static final Logger LOG = LoggerFactory.getLogger(RealtimeSampleStream.class);
+
+    public static final int DEFAULT_CAPACITY = 600; // 10 minutes at one sample per second
+
+    private static RealtimeSampleStream sInstance;
+    private static Executor sMainThreadExecutor;
+
+    /**
+     * Receives the samples of a {@link RealtimeSampleStream}, in the order they were published.
+     */
+    public interface Subscriber {
+        /**
+         * Called for each sample, using the executor of the subscription.
+         *
+         * @param timestamp the time of the sample in seconds
+         * @param heartRate the heart rate, or a value that is not a valid heart rate if unknown
+         * @param steps     the steps since the previous sample
+         */
+        void onRealtimeSample(String deviceAddress, int timestamp, int heartRate, int steps);
+    }
+
+    private final int mCapacity;
+    private final String[] mDeviceAddresses;
+    private final int[] mTimestamps;
+    private final int[] mHeartRates;
+    private final int[] mSteps;
+    private long mNextSequence; // guarded by this
+    private final List<Subscription> mSubscriptions = new CopyOnWriteArrayList<>();
+
+    public static synchronized RealtimeSampleStream getInstance() {
+        if (sInstance == null) {
+            sInstance = new RealtimeSampleStream(DEFAULT_CAPACITY);
+        }
+        return sInstance;
+    }
+
+    public RealtimeSampleStream(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        mCapacity = capacity;
+        mDeviceAddresses = new String[capacity];
+        mTimestamps = new int[capacity];
+        mHeartRates = new int[capacity];
+        mSteps = new int[capacity];
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Publishes a sample to all subscribers. May be called from any thread.
+     */
+    public void publish(String deviceAddress, int timestamp, int heartRate, int steps) {
+        synchronized (this) {
+            int index = index(mNextSequence);
+            mDeviceAddresses[index] = deviceAddress;
+            mTimestamps[index] = timestamp;
+            mHeartRates[index] = heartRate;
+            mSteps[index] = steps;
+            mNextSequence++;
+        }
+        for (Subscription subscription : mSubscriptions) {
+            subscription.schedule();
+        }
+    }
+
+    /**
+     * Subscribes to the samples, which are delivered in the main thread.
+     *
+     * @param replaySeconds the samples of this many seconds before now are delivered first
+     */
+    public void subscribe(Subscriber subscriber, int replaySeconds) {
+        subscribe(subscriber, replaySeconds, getMainThreadExecutor());
+    }
+
+    /**
+     * Subscribes to the samples, which are delivered using the given executor.
+     *
+     * @param replaySeconds the samples of this many seconds before now are delivered first
+     */
+    public void subscribe(Subscriber subscriber, int replaySeconds, Executor executor) {
+        Subscription subscription;
+        boolean replay;
+        synchronized (this) {
+            long start = findReplayStart(replaySeconds);
+            replay = start < mNextSequence;
+            subscription = new Subscription(subscriber, executor, start);
+            mSubscriptions.add(subscription);
+        }
+        if (replay) {
+            subscription.schedule();
+        }
+    }
+
+    /**
+     * Stops delivering samples to the subscriber, including those already scheduled.
+     */
+    public void unsubscribe(Subscriber subscriber) {
+        for (Subscription subscription : mSubscriptions) {
+            if (subscription.mSubscriber == subscriber) {
+                subscription.mCancelled = true;
+                mSubscriptions.remove(subscription);
+            }
+        }
+    }
+
+    private long findReplayStart(int replaySeconds) {
+        long sequence = mNextSequence;
+        if (replaySeconds <= 0) {
+            return sequence;
+        }
+        int since = (int) (System.currentTimeMillis() / 1000) - replaySeconds;
+        long oldest = Math.max(0, mNextSequence - mCapacity);
+        while (sequence > oldest && mTimestamps[index(sequence - 1)] >= since) {
+            sequence--;
+        }
+        return sequence;
+    }
+
+    /**
+     * Copies the samples the subscription has not yet received into its buffer.
+     *
+     * @return the number of samples copied
+     */
+    private synchronized int read(Subscription subscription) {
+        long oldest = Math.max(0, mNextSequence - mCapacity);
+        if (subscription.mNextSequence < oldest) {
+            LOG.warn("Realtime sample subscriber too slow, skipping " + (oldest - subscription.mNextSequence) + " samples");
+            subscription.mNextSequence = oldest;
+        }
+        int count = (int) (mNextSequence - subscription.mNextSequence);
+        for (int i = 0; i < count; i++) {
+            int index = index(subscription.mNextSequence + i);
+            subscription.mDeviceAddresses[i] = mDeviceAddresses[index];
+            subscription.mTimestamps[i] = mTimestamps[index];
+            subscription.mHeartRates[i] = mHeartRates[index];
+            subscription.mSteps[i] = mSteps[index];
+        }
+        subscription.mNextSequence = mNextSequence;
+        return count;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % mCapacity);
+    }
+
+    private static synchronized Executor getMainThreadExecutor() {
+        if (sMainThreadExecutor == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            sMainThreadExecutor = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return sMainThreadExecutor;
+    }
+
+    private class Subscription implements Runnable {
+        private final Subscriber mSubscriber;
+        private final Executor mExecutor;
+        private final AtomicBoolean mScheduled = new AtomicBoolean();
+        private volatile boolean mCancelled;
+        // the following are only accessed while holding the stream's lock, or in run()
+        private long mNextSequence;
+        private final String[] mDeviceAddresses = new String[mCapacity];
+        private final int[] mTimestamps = new int[mCapacity];
+        private final int[] mHeartRates = new int[mCapacity];
+        private final int[] mSteps = new int[mCapacity];
+
+        Subscription(Subscriber subscriber, Executor executor, long nextSequence) {
+            mSubscriber = subscriber;
+            mExecutor = executor;
+            mNextSequence = nextSequence;
+        }
+
+        void schedule() {
+            if (!mCancelled && mScheduled.compareAndSet(false, true)) {
+                mExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            // samples published from now on schedule another run
+            mScheduled.set(false);
+            if (mCancelled) {
+                return;
+            }
+            // only one run at a time may use the buffer, in case the executor has several threads
+            synchronized (this) {
+                int count = read(this);
+                for (int i = 0; i < count && !mCancelled; i++) {
+                    mSubscriber.onRealtimeSample(mDeviceAddresses[i], mTimestamps[i], mHeartRates[i], mSteps[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the periodic and one-shot tasks of device supports that have to poll their devices,
+ * e.g. for keep-alive messages or to fetch activity data, in a single thread shared by all
+ * devices.
+ * <p/>
+ * Every task has a window after it becomes due within which it may be run. The scheduler only
+ * wakes up at the end of the earliest window, and then runs every task whose window has
+ * already started, so that the polls of several devices are sent together instead of each
+ * one waking up the CPU and the radio on its own.
+ * <p/>
+ * The tasks are run in the scheduler thread, so they should only queue requests to the
+ * device instead of waiting for the answers.
+ */
+public class SyncScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(SyncScheduler.class);
+
+    private static SyncScheduler sInstance;
+
+    private final List<Task> mTasks = new ArrayList<>(); // guarded by this
+    private ScheduledExecutorService mExecutor; // guarded by this
+    private ScheduledFuture<?> mWakeup; // guarded by this
+    private long mWakeupTime; // guarded by this
+    private final Runnable mRunDueTasks = new Runnable() {
+        @Override
+        public void run() {
+            runDueTasks();
+        }
+    };
+
+    /**
+     * A task that has been scheduled. All methods may be called from any thread, including the
+     * task itself.
+     */
+    public final class Task {
+        private final String mName;
+        private final Runnable mRunnable;
+        private final long mPeriodMillis;
+        private final long mWindowMillis;
+        // guarded by the scheduler
+        private long mEarliest;
+        private long mCurrentWindowMillis;
+        private boolean mPending;
+
+        private Task(String name, Runnable runnable, long periodMillis, long windowMillis) {
+            mName = name;
+            mRunnable = runnable;
+            mPeriodMillis = periodMillis;
+            mWindowMillis = windowMillis;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Runs the task after the given delay instead of the previously planned time. A one-shot
+         * task that has already been run or cancelled is scheduled again.
+         */
+        public void reschedule(long delayMillis) {
+            SyncScheduler.this.reschedule(this, delayMillis, mWindowMillis);
+        }
+
+        /**
+         * Like {@link #reschedule(long)}, but with a different window for this run only, e.g. a
+         * longer one for a run that is not urgent.
+         */
+        public void reschedule(long delayMillis, long windowMillis) {
+            SyncScheduler.this.reschedule(this, delayMillis, windowMillis);
+        }
+
+        /**
+         * Stops running the task. A run that has already been started is not interrupted.
+         */
+        public void cancel() {
+            SyncScheduler.this.cancel(this);
+        }
+
+        /**
+         * @return the time in milliseconds when the task becomes due, or -1 if not scheduled
+         */
+        public long getNextRunTime() {
+            synchronized (SyncScheduler.this) {
+                return mPending ? mEarliest : -1;
+            }
+        }
+
+        private long getLatest() {
+            return mEarliest + mCurrentWindowMillis;
+        }
+    }
+
+    public static synchronized SyncScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new SyncScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Runs the task once.
+     *
+     * @param delayMillis  the time after which the task is due
+     * @param windowMillis how much later than due the task may be run, to share a wakeup with
+     *                     other tasks
+     */
+    public Task schedule(String name, long delayMillis, long windowMillis, Runnable runnable) {
+        return add(new Task(name, runnable, 0, windowMillis), delayMillis);
+    }
+
+    /**
+     * Runs the task repeatedly, until it is cancelled. The next run is due one period after the
+     * previous one has started, unless the task reschedules itself while running.
+     *
+     * @param initialDelayMillis the time after which the task is due for the first time
+     * @param windowMillis       how much later than due the task may be run, to share a wakeup
+     *                           with other tasks
+     */
+    public Task schedulePeriodic(String name, long initialDelayMillis, long periodMillis, long windowMillis, Runnable runnable) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("period must be positive: " + periodMillis);
+        }
+        return add(new Task(name, runnable, periodMillis, windowMillis), initialDelayMillis);
+    }
+
+    /**
+     * Returns the scheduled tasks and when they are due, one per line, for debugging.
+     */
+    public synchronized String getDebugInfo() {
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss", Locale.US);
+        StringBuilder builder = new StringBuilder();
+        if (mWakeup != null) {
+            builder.append("next wakeup: ").append(format.format(new Date(mWakeupTime))).append('\n');
+        }
+        List<Task> tasks = new ArrayList<>(mTasks);
+        Collections.sort(tasks, new Comparator<Task>() {
+            @Override
+            public int compare(Task one, Task other) {
+                return Long.compare(one.mEarliest, other.mEarliest);
+            }
+        });
+        for (Task task : tasks) {
+            builder.append(task.mName)
+                    .append(": ").append(format.format(new Date(task.mEarliest)))
+                    .append(" - ").append(format.format(new Date(task.getLatest())));
+            if (task.mPeriodMillis > 0) {
+                builder.append(", every ").append(task.mPeriodMillis / 1000).append("s");
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the current time in milliseconds
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Makes sure that {@link #runDueTasks()} is called after the given delay. Must be called
+     * while holding the lock.
+     */
+    protected void wakeUpAfter(long delayMillis) {
+        if (mExecutor == null) {
+            mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "SyncScheduler");
+                }
+            });
+        }
+        mWakeup = mExecutor.schedule(mRunDueTasks, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized Task add(Task task, long delayMillis) {
+        mTasks.add(task);
+        task.mEarliest = now() + Math.max(0, delayMillis);
+        task.mCurrentWindowMillis = task.mWindowMillis;
+        task.mPending = true;
+        updateWakeup();
+        return task;
+    }
+
+    private synchronized void reschedule(Task task, long delayMillis, long windowMillis) {
+        if (!task.mPending) {
+            mTasks.add(task);
+            task.mPending = true;
+        }
+        task.mEarliest = now() + Math.max(0, delayMillis);
+        task.mCurrentWindowMillis = windowMillis;
+        updateWakeup();
+    }
+
+    private synchronized void cancel(Task task) {
+        if (task.mPending) {
+            task.mPending = false;
+            mTasks.remove(task);
+            updateWakeup();
+        }
+    }
+
+    /**
+     * Runs all tasks whose window has started, and plans the next wakeup.
+     */
+    void runDueTasks() {
+        List<Task> due = new ArrayList<>();
+        synchronized (this) {
+            mWakeup = null;
+            long now = now();
+            for (Task task : new ArrayList<>(mTasks)) {
+                if (task.mEarliest > now) {
+                    continue;
+                }
+                due.add(task);
+                if (task.mPeriodMillis > 0) {
+                    task.mEarliest = now + task.mPeriodMillis;
+                    task.mCurrentWindowMillis = task.mWindowMillis;
+                } else {
+                    task.mPending = false;
+                    mTasks.remove(task);
+                }
+            }
+        }
+        if (due.size() > 1 && LOG.isDebugEnabled()) {
+            LOG.debug("Running " + due.size() + " sync tasks together");
+        }
+        for (Task task : due) {
+            try {
+                task.mRunnable.run();
+            } catch (Exception ex) {
+                LOG.error("Error running sync task " + task.mName, ex);
+            }
+        }
+        synchronized (this) {
+            updateWakeup();
+        }
+    }
+
+    private void updateWakeup() {
+        if (mTasks.isEmpty()) {
+            cancelWakeup();
+            return;
+        }
+        long wakeupTime = Long.MAX_VALUE;
+        for (Task task : mTasks) {
+            wakeupTime = Math.min(wakeupTime, task.getLatest());
+        }
+        if (mWakeup != null && mWakeupTime == wakeupTime) {
+            return;
+        }
+        cancelWakeup();
+        mWakeupTime = wakeupTime;
+        wakeUpAfter(Math.max(0, wakeupTime - now()));
+    }
+
+    private void cancelWakeup() {
+        if (mWakeup != null) {
+            mWakeup.cancel(false);
+            mWakeup = null;
+        }
+    }
+}
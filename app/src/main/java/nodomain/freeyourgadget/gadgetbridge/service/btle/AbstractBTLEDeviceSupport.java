@@ -59,6 +59,9 @@ public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport im
     private Logger logger;
 
     private final List<AbstractBleProfile<?>> mSupportedProfiles = new ArrayList<>();
+    // the profiles that did not register their characteristic handlers with mCharacteristicRouter
+    private final List<AbstractBleProfile<?>> mUnroutedProfiles = new ArrayList<>();
+    private final CharacteristicRouter mCharacteristicRouter = new CharacteristicRouter();
     public static final String BASE_UUID = "0000%s-0000-1000-8000-00805f9b34fb"; //this is common for all BTLE devices. see http://stackoverflow.com/questions/18699251/finding-out-android-bluetooth-le-gatt-profiles
     private final Object characteristicsMonitor = new Object();
 
@@ -98,6 +101,12 @@ public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport im
 
     @Override
     public void dispose() {
+        if (logger.isDebugEnabled()) {
+            String statistics = mCharacteristicRouter.getStatistics();
+            if (!statistics.isEmpty()) {
+                logger.debug("Characteristic callbacks:\n" + statistics);
+            }
+        }
         if (mQueue != null) {
             mQueue.dispose();
             mQueue = null;
@@ -200,6 +209,18 @@ public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport im
 
     protected void addSupportedProfile(AbstractBleProfile<?> profile) {
         mSupportedProfiles.add(profile);
+        if (!profile.registerCharacteristicHandlers(mCharacteristicRouter)) {
+            mUnroutedProfiles.add(profile);
+        }
+    }
+
+    /**
+     * Returns the router for the characteristic callbacks. Subclasses should register their
+     * handlers in the constructor, instead of overriding e.g.
+     * {@link #onCharacteristicChanged(BluetoothGatt, BluetoothGattCharacteristic)}.
+     */
+    protected CharacteristicRouter getCharacteristicRouter() {
+        return mCharacteristicRouter;
     }
 
     /**
@@ -294,7 +315,10 @@ public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport im
     @Override
     public boolean onCharacteristicRead(BluetoothGatt gatt,
                                         BluetoothGattCharacteristic characteristic, int status) {
-        for (AbstractBleProfile profile : mSupportedProfiles) {
+        if (mCharacteristicRouter.dispatchRead(gatt, characteristic, status)) {
+            return true;
+        }
+        for (AbstractBleProfile profile : mUnroutedProfiles) {
             if (profile.onCharacteristicRead(gatt, characteristic, status)) {
                 return true;
             }
@@ -305,7 +329,10 @@ public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport im
     @Override
     public boolean onCharacteristicWrite(BluetoothGatt gatt,
                                          BluetoothGattCharacteristic characteristic, int status) {
-        for (AbstractBleProfile profile : mSupportedProfiles) {
+        if (mCharacteristicRouter.dispatchWrite(gatt, characteristic, status)) {
+            return true;
+        }
+        for (AbstractBleProfile profile : mUnroutedProfiles) {
             if (profile.onCharacteristicWrite(gatt, characteristic, status)) {
                 return true;
             }
@@ -336,7 +363,10 @@ public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport im
     @Override
     public boolean onCharacteristicChanged(BluetoothGatt gatt,
                                            BluetoothGattCharacteristic characteristic) {
-        for (AbstractBleProfile profile : mSupportedProfiles) {
+        if (mCharacteristicRouter.dispatchChanged(gatt, characteristic)) {
+            return true;
+        }
+        for (AbstractBleProfile profile : mUnroutedProfiles) {
             if (profile.onCharacteristicChanged(gatt, characteristic)) {
                 return true;
             }
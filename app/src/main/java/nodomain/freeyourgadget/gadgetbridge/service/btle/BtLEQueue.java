@@ -49,6 +49,7 @@ import nodomain.freeyourgadget.gadgetbridge.Logging;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice.State;
 import nodomain.freeyourgadget.gadgetbridge.service.DeviceSupport;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WriteWithoutResponseAction;
 
 /**
  * One queue/thread per connectable device.
@@ -56,6 +57,16 @@ import nodomain.freeyourgadget.gadgetbridge.service.DeviceSupport;
 public final class BtLEQueue {
     private static final Logger LOG = LoggerFactory.getLogger(BtLEQueue.class);
 
+    /**
+     * The default number of {@link WriteWithoutResponseAction write-without-response actions}
+     * that may be issued before waiting for their completion.
+     */
+    public static final int DEFAULT_MAX_WRITES_IN_FLIGHT = 8;
+    /**
+     * The ATT MTU that every connection starts with, until a larger one has been negotiated.
+     */
+    public static final int DEFAULT_MTU = 23;
+
     private final Object mGattMonitor = new Object();
     private final GBDevice mGbDevice;
     private final BluetoothAdapter mBluetoothAdapter;
@@ -78,6 +89,11 @@ public final class BtLEQueue {
     private final InternalGattServerCallback internalGattServerCallback;
     private boolean mAutoReconnect;
 
+    private final Object mWritesInFlightMonitor = new Object();
+    private int mWritesInFlight; // guarded by mWritesInFlightMonitor
+    private volatile int mMaxWritesInFlight = DEFAULT_MAX_WRITES_IN_FLIGHT;
+    private volatile int mMtu = DEFAULT_MTU;
+
     private Thread dispatchThread = new Thread("Gadgetbridge GATT Dispatcher") {
 
         @Override
@@ -143,6 +159,22 @@ public final class BtLEQueue {
                                 LOG.info("Aborting running transaction");
                                 break;
                             }
+                            if (action instanceof WriteWithoutResponseAction) {
+                                mWaitCharacteristic = null;
+                                if (LOG.isDebugEnabled()) {
+                                    LOG.debug("About to run pipelined action: " + action);
+                                }
+                                if (!runPipelined(action)) {
+                                    LOG.error("Action returned false: " + action);
+                                    break; // abort the transaction
+                                }
+                                continue;
+                            }
+                            // any other action must only run after all pipelined writes completed
+                            awaitWritesInFlight();
+                            if (mAbortTransaction) {
+                                break;
+                            }
                             mWaitCharacteristic = action.getCharacteristic();
                             mWaitForActionResultLatch = new CountDownLatch(1);
                             if (LOG.isDebugEnabled()) {
@@ -168,6 +200,7 @@ public final class BtLEQueue {
                                 break; // abort the transaction
                             }
                         }
+                        awaitWritesInFlight();
                     }
                 } catch (InterruptedException ignored) {
                     mConnectionLatch = null;
@@ -179,6 +212,7 @@ public final class BtLEQueue {
                 } finally {
                     mWaitForActionResultLatch = null;
                     mWaitCharacteristic = null;
+                    resetWritesInFlight();
                 }
             }
             LOG.info("Queue Dispatch Thread terminated.");
@@ -200,6 +234,141 @@ public final class BtLEQueue {
         mAutoReconnect = enable;
     }
 
+    /**
+     * Sets the maximum number of consecutive {@link WriteWithoutResponseAction write-without-response actions}
+     * that are issued before waiting for the completion of the earlier ones.
+     * Actions expecting a result are never pipelined.
+     *
+     * @param maxWritesInFlight the window size, at least 1
+     */
+    public void setMaxWritesInFlight(int maxWritesInFlight) {
+        if (maxWritesInFlight < 1) {
+            throw new IllegalArgumentException("maxWritesInFlight must be at least 1: " + maxWritesInFlight);
+        }
+        mMaxWritesInFlight = maxWritesInFlight;
+    }
+
+    public int getMaxWritesInFlight() {
+        return mMaxWritesInFlight;
+    }
+
+    /**
+     * Returns the ATT MTU of the current connection. A characteristic value written
+     * in one packet may be up to 3 bytes shorter than that.
+     */
+    public int getMtu() {
+        return mMtu;
+    }
+
+    /**
+     * Runs the given action without waiting for its result, once a slot in the
+     * in-flight window is available. A write rejected by the stack while earlier ones
+     * are still in flight is retried after one of them has completed.
+     *
+     * @return true if the action was successfully issued, false otherwise
+     */
+    private boolean runPipelined(BtLEAction action) throws InterruptedException {
+        while (true) {
+            int previouslyInFlight = acquireWriteSlot();
+            if (previouslyInFlight < 0) {
+                return false;
+            }
+            if (action.run(mBluetoothGatt)) {
+                return true;
+            }
+            releaseWriteSlot();
+            if (previouslyInFlight == 0) {
+                return false;
+            }
+            // the stack rejects a write while it is still busy with an earlier one,
+            // so retry as soon as one of those has completed
+            if (!awaitWriteCompletion(previouslyInFlight)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Blocks until a slot in the in-flight window is available and occupies it.
+     *
+     * @return the number of writes in flight before this one, or -1 if the transaction was aborted
+     */
+    private int acquireWriteSlot() throws InterruptedException {
+        synchronized (mWritesInFlightMonitor) {
+            while (mWritesInFlight >= mMaxWritesInFlight && !mAbortTransaction) {
+                mWritesInFlightMonitor.wait();
+            }
+            if (mAbortTransaction) {
+                return -1;
+            }
+            return mWritesInFlight++;
+        }
+    }
+
+    private void releaseWriteSlot() {
+        synchronized (mWritesInFlightMonitor) {
+            if (mWritesInFlight > 0) {
+                mWritesInFlight--;
+                mWritesInFlightMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Blocks until fewer than the given number of pipelined writes are in flight.
+     *
+     * @return false if the transaction was aborted meanwhile
+     */
+    private boolean awaitWriteCompletion(int writesInFlight) throws InterruptedException {
+        synchronized (mWritesInFlightMonitor) {
+            while (mWritesInFlight >= writesInFlight && !mAbortTransaction) {
+                mWritesInFlightMonitor.wait();
+            }
+            return !mAbortTransaction;
+        }
+    }
+
+    /**
+     * Accounts for a completed write, if it belongs to a pipelined write. Actions expecting
+     * a result only run once no pipelined write is in flight anymore, so any write completed
+     * while there are writes in flight is one of those.
+     *
+     * @param success whether the write succeeded; a failed write aborts the transaction
+     * @return true if a pipelined write was completed, false otherwise
+     */
+    private boolean completePipelinedWrite(boolean success) {
+        synchronized (mWritesInFlightMonitor) {
+            if (mWritesInFlight == 0) {
+                return false;
+            }
+            if (!success) {
+                // abort before the slot is released, so that no further pipelined write is issued
+                mAbortTransaction = true;
+            }
+            mWritesInFlight--;
+            mWritesInFlightMonitor.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Blocks until all pipelined writes have completed or the transaction was aborted.
+     */
+    private void awaitWritesInFlight() throws InterruptedException {
+        synchronized (mWritesInFlightMonitor) {
+            while (mWritesInFlight > 0 && !mAbortTransaction) {
+                mWritesInFlightMonitor.wait();
+            }
+        }
+    }
+
+    private void resetWritesInFlight() {
+        synchronized (mWritesInFlightMonitor) {
+            mWritesInFlight = 0;
+            mWritesInFlightMonitor.notifyAll();
+        }
+    }
+
     protected boolean isConnected() {
         return mGbDevice.isConnected();
     }
@@ -290,6 +459,7 @@ public final class BtLEQueue {
         LOG.debug("handleDisconnected: " + status);
         internalGattCallback.reset();
         mTransactions.clear();
+        mMtu = DEFAULT_MTU;
         mAbortTransaction = true;
         mAbortServerTransaction = true;
         if (mWaitForActionResultLatch != null) {
@@ -298,6 +468,7 @@ public final class BtLEQueue {
         if (mWaitForServerActionResultLatch != null) {
             mWaitForServerActionResultLatch.countDown();
         }
+        resetWritesInFlight();
 
         boolean wasInitialized = mGbDevice.isInitialized();
 
@@ -528,6 +699,12 @@ public final class BtLEQueue {
             if (getCallbackToUse() != null) {
                 getCallbackToUse().onCharacteristicWrite(gatt, characteristic, status);
             }
+            if (completePipelinedWrite(status == BluetoothGatt.GATT_SUCCESS)) {
+                if (status != BluetoothGatt.GATT_SUCCESS) {
+                    LOG.debug("failed pipelined write, aborting transaction: " + characteristic.getUuid() + getStatusString(status));
+                }
+                return;
+            }
             checkWaitingCharacteristic(characteristic, status);
         }
 
@@ -617,6 +794,17 @@ public final class BtLEQueue {
             }
         }
 
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            LOG.debug("mtu changed: " + mtu + getStatusString(status));
+            if (!checkCorrectGattInstance(gatt, "mtu changed")) {
+                return;
+            }
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                mMtu = mtu;
+            }
+        }
+
         private void checkWaitingCharacteristic(BluetoothGattCharacteristic characteristic, int status) {
             if (status != BluetoothGatt.GATT_SUCCESS) {
                 if (characteristic != null) {
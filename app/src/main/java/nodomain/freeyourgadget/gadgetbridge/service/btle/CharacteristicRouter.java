@@ -0,0 +1,190 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Routes the characteristic callbacks of a device to the handlers that have been registered
+ * for the respective characteristic, with a single lookup instead of comparing the UUID with
+ * every characteristic a device support or profile knows about.
+ * <p/>
+ * Several handlers may be registered for the same characteristic, they are called in the
+ * order of registration until one of them returns true. All handlers have to be registered
+ * before the device is connected, i.e. usually in the constructor of the device support.
+ * <p/>
+ * For each characteristic, the number of callbacks and the time spent in the handlers is
+ * recorded, see {@link #getStatistics()}.
+ */
+public class CharacteristicRouter {
+    /**
+     * Handles a callback for a characteristic.
+     */
+    public interface Handler {
+        /**
+         * @param status the status of a read or write, always {@link BluetoothGatt#GATT_SUCCESS}
+         *               for a changed characteristic
+         * @return true if the callback has been handled
+         */
+        boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status);
+    }
+
+    private final Map<UUID, Route> mChangedRoutes = new HashMap<>();
+    private final Map<UUID, Route> mReadRoutes = new HashMap<>();
+    private final Map<UUID, Route> mWriteRoutes = new HashMap<>();
+
+    public CharacteristicRouter addChangedHandler(UUID characteristic, Handler handler) {
+        addHandler(mChangedRoutes, characteristic, handler);
+        return this;
+    }
+
+    public CharacteristicRouter addReadHandler(UUID characteristic, Handler handler) {
+        addHandler(mReadRoutes, characteristic, handler);
+        return this;
+    }
+
+    public CharacteristicRouter addWriteHandler(UUID characteristic, Handler handler) {
+        addHandler(mWriteRoutes, characteristic, handler);
+        return this;
+    }
+
+    /**
+     * @return true if a handler has handled the change
+     */
+    public boolean dispatchChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+        return dispatch(mChangedRoutes, gatt, characteristic, BluetoothGatt.GATT_SUCCESS);
+    }
+
+    /**
+     * @return true if a handler has handled the read
+     */
+    public boolean dispatchRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+        return dispatch(mReadRoutes, gatt, characteristic, status);
+    }
+
+    /**
+     * @return true if a handler has handled the write
+     */
+    public boolean dispatchWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+        return dispatch(mWriteRoutes, gatt, characteristic, status);
+    }
+
+    /**
+     * Returns the number of callbacks and the time spent in the handlers per characteristic
+     * and callback type, one characteristic per line, for debugging.
+     */
+    public String getStatistics() {
+        StringBuilder builder = new StringBuilder();
+        appendStatistics(builder, "changed", mChangedRoutes);
+        appendStatistics(builder, "read", mReadRoutes);
+        appendStatistics(builder, "write", mWriteRoutes);
+        return builder.toString();
+    }
+
+    public void resetStatistics() {
+        resetStatistics(mChangedRoutes);
+        resetStatistics(mReadRoutes);
+        resetStatistics(mWriteRoutes);
+    }
+
+    private static void addHandler(Map<UUID, Route> routes, UUID characteristic, Handler handler) {
+        Route route = routes.get(characteristic);
+        if (route == null) {
+            route = new Route();
+            routes.put(characteristic, route);
+        }
+        route.add(handler);
+    }
+
+    private static boolean dispatch(Map<UUID, Route> routes, BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+        Route route = routes.get(characteristic.getUuid());
+        if (route == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            for (Handler handler : route.mHandlers) {
+                if (handler.onCharacteristic(gatt, characteristic, status)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            route.record(System.nanoTime() - start);
+        }
+    }
+
+    private static void appendStatistics(StringBuilder builder, String type, Map<UUID, Route> routes) {
+        for (Map.Entry<UUID, Route> entry : routes.entrySet()) {
+            Route route = entry.getValue();
+            long count;
+            long totalNanos;
+            long maxNanos;
+            synchronized (route) {
+                count = route.mCount;
+                totalNanos = route.mTotalNanos;
+                maxNanos = route.mMaxNanos;
+            }
+            if (count == 0) {
+                continue;
+            }
+            builder.append(String.format(Locale.US, "%s %s: %d callbacks, avg %.3f ms, max %.3f ms%n",
+                    type, entry.getKey(), count, totalNanos / (count * 1e6), maxNanos / 1e6));
+        }
+    }
+
+    private static void resetStatistics(Map<UUID, Route> routes) {
+        for (Route route : routes.values()) {
+            route.reset();
+        }
+    }
+
+    private static class Route {
+        private Handler[] mHandlers = new Handler[0];
+        // guarded by this
+        private long mCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        void add(Handler handler) {
+            Handler[] handlers = Arrays.copyOf(mHandlers, mHandlers.length + 1);
+            handlers[mHandlers.length] = handler;
+            mHandlers = handlers;
+        }
+
+        synchronized void record(long nanos) {
+            mCount++;
+            mTotalNanos += nanos;
+            if (nanos > mMaxNanos) {
+                mMaxNanos = nanos;
+            }
+        }
+
+        synchronized void reset() {
+            mCount = 0;
+            mTotalNanos = 0;
+            mMaxNanos = 0;
+        }
+    }
+}
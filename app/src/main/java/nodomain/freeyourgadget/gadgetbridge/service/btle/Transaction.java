@@ -19,18 +19,28 @@ package nodomain.freeyourgadget.gadgetbridge.service.btle;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import androidx.annotation.Nullable;
 
 /**
  * Groups a bunch of {@link BtLEAction actions} together, making sure
  * that upon failure of one action, all subsequent actions are discarded.
+ * <p/>
+ * Besides single actions, a transaction may contain lazy sequences of actions, which are
+ * only created while the transaction is being executed, see {@link #add(Iterable, int)}.
  *
  * @author TREND
  */
 public class Transaction extends AbstractTransaction {
-    private final List<BtLEAction> mActions = new ArrayList<>(4);
+    // consecutive single actions are collected in one list, lazy sequences are kept as they are
+    private final List<Iterable<? extends BtLEAction>> mParts = new ArrayList<>(2);
+    private
+    @Nullable
+    List<BtLEAction> mCurrentActions;
+    private int mActionCount;
     private
     @Nullable
     GattCallback gattCallback;
@@ -40,15 +50,43 @@ public class Transaction extends AbstractTransaction {
     }
 
     public void add(BtLEAction action) {
-        mActions.add(action);
+        if (mCurrentActions == null) {
+            mCurrentActions = new ArrayList<>(4);
+            mParts.add(Collections.unmodifiableList(mCurrentActions));
+        }
+        mCurrentActions.add(action);
+        mActionCount++;
     }
 
-    public List<BtLEAction> getActions() {
-        return Collections.unmodifiableList(mActions);
+    /**
+     * Adds a sequence of actions that is only iterated when the transaction is executed,
+     * so that e.g. large transfers do not need to create all their actions up front.
+     * The sequence must only be iterated once.
+     *
+     * @param actions the actions to add
+     * @param count   the number of actions in the sequence
+     */
+    public void add(Iterable<? extends BtLEAction> actions, int count) {
+        mParts.add(actions);
+        mCurrentActions = null;
+        mActionCount += count;
+    }
+
+    /**
+     * Returns all actions of this transaction, in order. Lazy sequences are only
+     * iterated on demand.
+     */
+    public Iterable<BtLEAction> getActions() {
+        return new Iterable<BtLEAction>() {
+            @Override
+            public Iterator<BtLEAction> iterator() {
+                return new ActionIterator(mParts.iterator());
+            }
+        };
     }
 
     public boolean isEmpty() {
-        return mActions.isEmpty();
+        return mActionCount == 0;
     }
 
     public void setGattCallback(@Nullable GattCallback callback) {
@@ -66,6 +104,39 @@ public class Transaction extends AbstractTransaction {
 
     @Override
     public int getActionCount() {
-        return mActions.size();
+        return mActionCount;
+    }
+
+    private static class ActionIterator implements Iterator<BtLEAction> {
+        private final Iterator<Iterable<? extends BtLEAction>> parts;
+        private Iterator<? extends BtLEAction> current = Collections.<BtLEAction>emptyList().iterator();
+
+        ActionIterator(Iterator<Iterable<? extends BtLEAction>> parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (!parts.hasNext()) {
+                    return false;
+                }
+                current = parts.next().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public BtLEAction next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 }
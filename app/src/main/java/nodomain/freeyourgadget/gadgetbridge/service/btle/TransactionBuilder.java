@@ -27,6 +27,7 @@ import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.NotifyAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.ReadAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WaitAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WriteAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WriteWithoutResponseAction;
 
 public class TransactionBuilder {
     private static final Logger LOG = LoggerFactory.getLogger(TransactionBuilder.class);
@@ -56,6 +57,19 @@ public class TransactionBuilder {
         return add(action);
     }
 
+    /**
+     * Writes the given data without waiting for a response. Consecutive calls
+     * form a run of writes that the queue may pipeline, see {@link BtLEQueue#setMaxWritesInFlight(int)}.
+     */
+    public TransactionBuilder writeWithoutResponse(BluetoothGattCharacteristic characteristic, byte[] data) {
+        if (characteristic == null) {
+            LOG.warn("Unable to write characteristic: null");
+            return this;
+        }
+        WriteWithoutResponseAction action = new WriteWithoutResponseAction(characteristic, data);
+        return add(action);
+    }
+
     public TransactionBuilder notify(BluetoothGattCharacteristic characteristic, boolean enable) {
         if (characteristic == null) {
             LOG.warn("Unable to notify characteristic: null");
@@ -85,6 +99,16 @@ public class TransactionBuilder {
         return this;
     }
 
+    /**
+     * Adds a sequence of actions that is only created while the transaction is executed.
+     *
+     * @see Transaction#add(Iterable, int)
+     */
+    public TransactionBuilder add(Iterable<? extends BtLEAction> actions, int count) {
+        mTransaction.add(actions, count);
+        return this;
+    }
+
     /**
      * Sets a GattCallback instance that will be called when the transaction is executed,
      * resulting in GattCallback events.
@@ -0,0 +1,65 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle.actions;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEQueue;
+
+/**
+ * Invokes a write-without-response operation on a given GATT characteristic.
+ * <p/>
+ * Consecutive actions of this type within a transaction are pipelined by the
+ * {@link BtLEQueue}: they are issued back-to-back without waiting for the
+ * result of each single write, limited only by the queue's in-flight window.
+ * The queue will wait for all pending writes to complete before running the
+ * next action that expects a result.
+ */
+public class WriteWithoutResponseAction extends WriteAction {
+
+    public WriteWithoutResponseAction(BluetoothGattCharacteristic characteristic, byte[] value) {
+        super(characteristic, value);
+    }
+
+    @Override
+    public boolean run(BluetoothGatt gatt) {
+        BluetoothGattCharacteristic characteristic = getCharacteristic();
+        int properties = characteristic.getProperties();
+        if ((properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) > 0) {
+            // the write type is read synchronously by writeCharacteristic(), so restore it
+            // afterwards for plain WriteActions on the same characteristic
+            int previousWriteType = characteristic.getWriteType();
+            characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+            try {
+                return writeValue(gatt, characteristic, getValue());
+            } finally {
+                characteristic.setWriteType(previousWriteType);
+            }
+        }
+        if ((properties & BluetoothGattCharacteristic.PROPERTY_WRITE) > 0) {
+            // still completes through onCharacteristicWrite(), so it can be pipelined all the same
+            return writeValue(gatt, characteristic, getValue());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean expectsResult() {
+        return false;
+    }
+}
@@ -16,6 +16,7 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.service.btle.profiles;
 
+import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.content.Context;
 import android.content.Intent;
@@ -30,6 +31,7 @@ import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.AbstractBTLEDeviceSupport;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.AbstractGattCallback;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEQueue;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.CharacteristicRouter;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 
 /**
@@ -108,4 +110,39 @@ public abstract class AbstractBleProfile<T extends AbstractBTLEDeviceSupport> ex
         return mSupport.getQueue();
     }
 
+    /**
+     * Registers handlers for the characteristics this profile is interested in. Profiles that
+     * do so are only called for those characteristics, the others are called for the callbacks
+     * of all characteristics.
+     *
+     * @return true if the handlers have been registered
+     */
+    public boolean registerCharacteristicHandlers(CharacteristicRouter router) {
+        return false;
+    }
+
+    /**
+     * Returns a handler that passes characteristic reads to {@link #onCharacteristicRead}.
+     */
+    protected CharacteristicRouter.Handler createReadHandler() {
+        return new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                return onCharacteristicRead(gatt, characteristic, status);
+            }
+        };
+    }
+
+    /**
+     * Returns a handler that passes characteristic changes to {@link #onCharacteristicChanged}.
+     */
+    protected CharacteristicRouter.Handler createChangedHandler() {
+        return new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                return onCharacteristicChanged(gatt, characteristic);
+            }
+        };
+    }
+
 }
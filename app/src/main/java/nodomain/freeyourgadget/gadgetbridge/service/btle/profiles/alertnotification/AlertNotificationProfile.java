@@ -25,6 +25,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import nodomain.freeyourgadget.gadgetbridge.service.btle.AbstractBTLEDeviceSupport;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.CharacteristicRouter;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattCharacteristic;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
@@ -39,6 +40,12 @@ public class AlertNotificationProfile<T extends AbstractBTLEDeviceSupport> exten
         super(support);
     }
 
+    @Override
+    public boolean registerCharacteristicHandlers(CharacteristicRouter router) {
+        // only writes to the device, without handling any callbacks
+        return true;
+    }
+
     public void setMaxLength(int maxLength) {
         this.maxLength = maxLength;
     }
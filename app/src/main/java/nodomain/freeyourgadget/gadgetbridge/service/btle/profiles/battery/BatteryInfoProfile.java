@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import java.util.UUID;
 
 import nodomain.freeyourgadget.gadgetbridge.service.btle.AbstractBTLEDeviceSupport;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.CharacteristicRouter;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattCharacteristic;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattService;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
@@ -49,6 +50,12 @@ public class BatteryInfoProfile<T extends AbstractBTLEDeviceSupport> extends Abs
         super(support);
     }
 
+    @Override
+    public boolean registerCharacteristicHandlers(CharacteristicRouter router) {
+        router.addReadHandler(UUID_CHARACTERISTIC_BATTERY_LEVEL, createReadHandler());
+        return true;
+    }
+
     public void requestBatteryInfo(TransactionBuilder builder) {
         builder.read(getCharacteristic(UUID_CHARACTERISTIC_BATTERY_LEVEL));
     }
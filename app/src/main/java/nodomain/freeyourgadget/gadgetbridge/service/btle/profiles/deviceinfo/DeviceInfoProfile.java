@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import java.util.UUID;
 
 import nodomain.freeyourgadget.gadgetbridge.service.btle.AbstractBTLEDeviceSupport;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.CharacteristicRouter;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattCharacteristic;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattService;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
@@ -56,6 +57,21 @@ public class DeviceInfoProfile<T extends AbstractBTLEDeviceSupport> extends Abst
         super(support);
     }
 
+    @Override
+    public boolean registerCharacteristicHandlers(CharacteristicRouter router) {
+        CharacteristicRouter.Handler handler = createReadHandler();
+        router.addReadHandler(UUID_CHARACTERISTIC_MANUFACTURER_NAME_STRING, handler)
+                .addReadHandler(UUID_CHARACTERISTIC_MODEL_NUMBER_STRING, handler)
+                .addReadHandler(UUID_CHARACTERISTIC_SERIAL_NUMBER_STRING, handler)
+                .addReadHandler(UUID_CHARACTERISTIC_HARDWARE_REVISION_STRING, handler)
+                .addReadHandler(UUID_CHARACTERISTIC_FIRMWARE_REVISION_STRING, handler)
+                .addReadHandler(UUID_CHARACTERISTIC_SOFTWARE_REVISION_STRING, handler)
+                .addReadHandler(UUID_CHARACTERISTIC_SYSTEM_ID, handler)
+                .addReadHandler(UUID_CHARACTERISTIC_IEEE_11073_20601_REGULATORY_CERTIFICATION_DATA_LIST, handler)
+                .addReadHandler(UUID_CHARACTERISTIC_PNP_ID, handler);
+        return true;
+    }
+
     public void requestDeviceInfo(TransactionBuilder builder) {
         builder.read(getCharacteristic(UUID_CHARACTERISTIC_MANUFACTURER_NAME_STRING))
                 .read(getCharacteristic(UUID_CHARACTERISTIC_MODEL_NUMBER_STRING))
@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nodomain.freeyourgadget.gadgetbridge.service.btle.AbstractBTLEDeviceSupport;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.CharacteristicRouter;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattCharacteristic;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.profiles.AbstractBleProfile;
@@ -43,6 +44,12 @@ public class HeartRateProfile<T extends AbstractBTLEDeviceSupport> extends Abstr
         super(support);
     }
 
+    @Override
+    public boolean registerCharacteristicHandlers(CharacteristicRouter router) {
+        router.addChangedHandler(GattCharacteristic.UUID_CHARACTERISTIC_HEART_RATE_MEASUREMENT, createChangedHandler());
+        return true;
+    }
+
     public void resetEnergyExpended(TransactionBuilder builder) {
         writeToControlPoint((byte) 0x01, builder);
     }
@@ -121,7 +121,6 @@ public class CasioGB6900DeviceSupport extends AbstractBTLEDeviceSupport {
     private void close() {
         if (mHandlerThread != null) {
             mHandlerThread.quit();
-            mHandlerThread.interrupt();
             mHandlerThread = null;
         }
     }
@@ -291,12 +290,9 @@ public class CasioGB6900DeviceSupport extends AbstractBTLEDeviceSupport {
             case (byte) 1:
                 LOG.info("Initialization done, setting state to INITIALIZED");
                 if(mHandlerThread != null) {
-                    if(mHandlerThread.isAlive()) {
-                        mHandlerThread.quit();
-                        mHandlerThread.interrupt();
-                    }
+                    mHandlerThread.quit();
                 }
-                mHandlerThread = new CasioHandlerThread(getDevice(), getContext(), this);
+                mHandlerThread = new CasioHandlerThread(getDevice(), this);
                 mHandlerThread.start();
                 gbDevice.setState(GBDevice.State.INITIALIZED);
                 gbDevice.sendDeviceUpdateIntent(getContext());
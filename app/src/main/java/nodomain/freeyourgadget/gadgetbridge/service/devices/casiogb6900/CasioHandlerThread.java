@@ -17,72 +17,49 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.service.devices.casiogb6900;
 
-import android.content.Context;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Calendar;
-import java.util.GregorianCalendar;
-
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
-import nodomain.freeyourgadget.gadgetbridge.service.serial.GBDeviceIoThread;
+import nodomain.freeyourgadget.gadgetbridge.service.SyncScheduler;
 
-public class CasioHandlerThread extends GBDeviceIoThread {
+/**
+ * Periodically reads the TX power level to keep the connection alive. The reads are run by
+ * the {@link SyncScheduler}, together with the requests of other devices.
+ */
+public class CasioHandlerThread {
     private static final Logger LOG = LoggerFactory.getLogger(CasioHandlerThread.class);
-    private boolean mQuit = false;
+    private final GBDevice gbDevice;
     private CasioGB6900DeviceSupport mDeviceSupport;
-    private final Object waitObject = new Object();
+    private SyncScheduler.Task mTxTask;
 
     private int TX_PERIOD = 60;
+    // how much later than planned the read may be done, to share a wakeup with other devices
+    private int TX_WINDOW = 15;
 
-    private Calendar mTxTime = GregorianCalendar.getInstance();
-
-    public CasioHandlerThread(GBDevice gbDevice, Context context, CasioGB6900DeviceSupport deviceSupport) {
-        super(gbDevice, context);
+    public CasioHandlerThread(GBDevice gbDevice, CasioGB6900DeviceSupport deviceSupport) {
         LOG.info("Initializing Casio Handler Thread");
-        mQuit = false;
+        this.gbDevice = gbDevice;
         mDeviceSupport = deviceSupport;
     }
 
-    @Override
-    public void run() {
-        mQuit = false;
-
-        long waitTime = TX_PERIOD * 1000;
-        while (!mQuit) {
-
-            if (waitTime > 0) {
-                synchronized (waitObject) {
-                    try {
-                        waitObject.wait(waitTime);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-
-            if (mQuit) {
-                break;
-            }
-
-            GBDevice.State state = gbDevice.getState();
-            if (state == GBDevice.State.NOT_CONNECTED || state == GBDevice.State.WAITING_FOR_RECONNECT) {
-                LOG.debug("Closing handler thread, state not connected or waiting for reconnect.");
-                quit();
-                continue;
-            }
-
-            Calendar now = GregorianCalendar.getInstance();
-
-            if (now.compareTo(mTxTime) > 0) {
-                requestTxPowerLevel();
-            }
-
-            now = GregorianCalendar.getInstance();
-            waitTime = mTxTime.getTimeInMillis() - now.getTimeInMillis();
+    public synchronized void start() {
+        if (mTxTask != null) {
+            return;
         }
-
+        mTxTask = SyncScheduler.getInstance().schedulePeriodic("Casio TX power " + gbDevice.getAddress(),
+                TX_PERIOD * 1000L, TX_PERIOD * 1000L, TX_WINDOW * 1000L, new Runnable() {
+                    @Override
+                    public void run() {
+                        GBDevice.State state = gbDevice.getState();
+                        if (state == GBDevice.State.NOT_CONNECTED || state == GBDevice.State.WAITING_FOR_RECONNECT) {
+                            LOG.debug("Closing handler thread, state not connected or waiting for reconnect.");
+                            quit();
+                            return;
+                        }
+                        requestTxPowerLevel();
+                    }
+                });
     }
 
     public void requestTxPowerLevel() {
@@ -92,20 +69,13 @@ public class CasioHandlerThread extends GBDeviceIoThread {
         } catch(Exception e) {
 
         }
-
-        mTxTime = GregorianCalendar.getInstance();
-        mTxTime.add(Calendar.SECOND, TX_PERIOD);
-        synchronized (waitObject) {
-            waitObject.notify();
-        }
     }
 
-    @Override
-    public void quit() {
+    public synchronized void quit() {
         LOG.info("CasioHandlerThread: Quit Handler Thread");
-        mQuit = true;
-        synchronized (waitObject) {
-            waitObject.notify();
+        if (mTxTask != null) {
+            mTxTask.cancel();
+            mTxTask = null;
         }
     }
 
@@ -22,7 +22,6 @@ package nodomain.freeyourgadget.gadgetbridge.service.devices.hplus;
 
 
 import android.content.Context;
-import android.content.Intent;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,9 +33,9 @@ import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.List;
 
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.GBException;
+import nodomain.freeyourgadget.gadgetbridge.database.ActivityRollups;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.hplus.HPlusConstants;
@@ -49,15 +48,19 @@ import nodomain.freeyourgadget.gadgetbridge.entities.HPlusHealthActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
-import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
+import nodomain.freeyourgadget.gadgetbridge.service.RealtimeSampleSink;
+import nodomain.freeyourgadget.gadgetbridge.service.RealtimeSampleStream;
+import nodomain.freeyourgadget.gadgetbridge.service.SyncScheduler;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
-import nodomain.freeyourgadget.gadgetbridge.service.serial.GBDeviceIoThread;
 
 
-class HPlusHandlerThread extends GBDeviceIoThread {
+/**
+ * Synchronizes the activity data of the device. The periodic requests are run by the
+ * {@link SyncScheduler}, together with those of other devices.
+ */
+class HPlusHandlerThread {
     private static final Logger LOG = LoggerFactory.getLogger(HPlusHandlerThread.class);
 
-    private int CURRENT_DAY_SYNC_PERIOD = 24 * 60 * 60 * 365; //Never
     private int CURRENT_DAY_SYNC_RETRY_PERIOD = 10;
 
     private int SLEEP_SYNC_PERIOD = 12 * 60 * 60;
@@ -68,95 +71,133 @@ class HPlusHandlerThread extends GBDeviceIoThread {
 
     private int HELLO_PERIOD = 60 * 2;
 
-    private boolean mQuit = false;
+    // how much later than planned the requests may be sent, to share a wakeup with other devices
+    private int RETRY_WINDOW = 5;
+    private int HELLO_WINDOW = 30;
+    private int SYNC_WINDOW = 15 * 60;
+
+    private final GBDevice gbDevice;
+    private final Context context;
     private HPlusSupport mHPlusSupport;
 
     private int mLastSlotReceived = -1;
     private int mLastSlotRequested = 0;
 
     private Calendar mLastSleepDayReceived = GregorianCalendar.getInstance();
-    private Calendar mGetDaySlotsTime = GregorianCalendar.getInstance();
-    private Calendar mGetSleepTime = GregorianCalendar.getInstance();
-    private Calendar mGetDaySummaryTime = GregorianCalendar.getInstance();
-
-    private Calendar mHelloTime = GregorianCalendar.getInstance();
+    // guarded by this
+    private SyncScheduler.Task mDaySlotsTask;
+    private SyncScheduler.Task mSleepTask;
+    private SyncScheduler.Task mDaySummaryTask;
+    private SyncScheduler.Task mHelloTask;
 
     private boolean mSlotsInitialSync = true;
 
     private HPlusDataRecordRealtime prevRealTimeRecord = null;
-
-    private final Object waitObject = new Object();
+    private RealtimeSampleSink<HPlusHealthActivitySample> mRealtimeSampleSink;
 
     List<HPlusDataRecordDaySlot> mDaySlotRecords = new ArrayList<>();
 
     private HPlusDataRecordDaySlot mCurrentDaySlot = null;
 
     public HPlusHandlerThread(GBDevice gbDevice, Context context, HPlusSupport hplusSupport) {
-        super(gbDevice, context);
         LOG.info("Initializing HPlus Handler Thread");
-        mQuit = false;
+        this.gbDevice = gbDevice;
+        this.context = context;
 
         mHPlusSupport = hplusSupport;
     }
 
+    public GBDevice getDevice() {
+        return gbDevice;
+    }
 
-    @Override
-    public void run() {
-        mQuit = false;
-
-        sync();
-
-        long waitTime = 0;
-        while (!mQuit) {
+    public Context getContext() {
+        return context;
+    }
 
-            if (waitTime > 0) {
-                synchronized (waitObject) {
-                    try {
-                        waitObject.wait(waitTime);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+    /**
+     * Wraps a request into a check whether the device is still connected, quitting instead
+     * of sending the request if not.
+     */
+    private Runnable whenConnected(final Runnable request) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (gbDevice.getState() == GBDevice.State.NOT_CONNECTED) {
+                    quit();
+                    return;
                 }
+                request.run();
             }
+        };
+    }
 
-            if (mQuit) {
-                break;
-            }
-
-            if (gbDevice.getState() == GBDevice.State.NOT_CONNECTED) {
-                quit();
-            }
-
-            Calendar now = GregorianCalendar.getInstance();
-
-            if (now.compareTo(mGetDaySlotsTime) > 0) {
-                requestNextDaySlots();
-            }
-
-            if (now.compareTo(mGetSleepTime) > 0) {
-                requestNextSleepData();
-            }
-
-            if (now.compareTo(mGetDaySummaryTime) > 0) {
-                requestDaySummaryData();
-            }
-
-            if (now.compareTo(mHelloTime) > 0) {
-                sendHello();
-            }
+    private void scheduleTasks() {
+        SyncScheduler scheduler = SyncScheduler.getInstance();
+        String address = gbDevice.getAddress();
+        mDaySlotsTask = scheduler.schedule("HPlus day slots " + address, 0, RETRY_WINDOW * 1000L,
+                whenConnected(new Runnable() {
+                    @Override
+                    public void run() {
+                        requestNextDaySlots();
+                    }
+                }));
+        mSleepTask = scheduler.schedule("HPlus sleep " + address, 0, RETRY_WINDOW * 1000L,
+                whenConnected(new Runnable() {
+                    @Override
+                    public void run() {
+                        requestNextSleepData();
+                    }
+                }));
+        mDaySummaryTask = scheduler.schedule("HPlus day summary " + address, 0, RETRY_WINDOW * 1000L,
+                whenConnected(new Runnable() {
+                    @Override
+                    public void run() {
+                        requestDaySummaryData();
+                    }
+                }));
+        mHelloTask = scheduler.schedulePeriodic("HPlus hello " + address, HELLO_PERIOD * 1000L,
+                HELLO_PERIOD * 1000L, HELLO_WINDOW * 1000L, whenConnected(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendHello();
+                    }
+                }));
+    }
 
-            now = GregorianCalendar.getInstance();
-            waitTime = Math.min(mGetDaySummaryTime.getTimeInMillis(), Math.min(mGetDaySlotsTime.getTimeInMillis(), Math.min(mHelloTime.getTimeInMillis(), mGetSleepTime.getTimeInMillis()))) - now.getTimeInMillis();
+    public synchronized void quit() {
+        LOG.info("HPlus: Quit Handler Thread");
+        if (mHelloTask != null) {
+            mDaySlotsTask.cancel();
+            mSleepTask.cancel();
+            mDaySummaryTask.cancel();
+            mHelloTask.cancel();
+            mDaySlotsTask = null;
+            mSleepTask = null;
+            mDaySummaryTask = null;
+            mHelloTask = null;
         }
+        if (mRealtimeSampleSink != null) {
+            mRealtimeSampleSink.close();
+        }
+    }
 
+    /**
+     * Runs the given task again after the given number of seconds, unless the tasks have
+     * been cancelled in the meantime.
+     */
+    private synchronized void reschedule(SyncScheduler.Task task, int delaySeconds) {
+        if (task != null && mHelloTask != null) {
+            task.reschedule(delaySeconds * 1000L);
+        }
     }
 
-    @Override
-    public void quit() {
-        LOG.info("HPlus: Quit Handler Thread");
-        mQuit = true;
-        synchronized (waitObject) {
-            waitObject.notify();
+    /**
+     * Like #reschedule(SyncScheduler.Task, int), with the given window for this run.
+     */
+    private synchronized void reschedule(SyncScheduler.Task task, int delaySeconds, int windowSeconds) {
+        if (task != null && mHelloTask != null) {
+            task.reschedule(delaySeconds * 1000L, windowSeconds * 1000L);
         }
     }
 
@@ -164,12 +205,7 @@ class HPlusHandlerThread extends GBDeviceIoThread {
     public void sync() {
         LOG.info("HPlus: Starting data synchronization");
 
-        mGetSleepTime.setTimeInMillis(0);
-        mGetDaySlotsTime.setTimeInMillis(0);
-        mGetDaySummaryTime.setTimeInMillis(0);
         mLastSleepDayReceived.setTimeInMillis(0);
-        mHelloTime = GregorianCalendar.getInstance();
-        mHelloTime.add(Calendar.SECOND, HELLO_PERIOD);
 
         mSlotsInitialSync = true;
         mLastSlotReceived = -1;
@@ -192,8 +228,15 @@ class HPlusHandlerThread extends GBDeviceIoThread {
             LOG.warn("HPlus: Synchronization exception: " + e);
         }
 
-        synchronized (waitObject) {
-            waitObject.notify();
+        synchronized (this) {
+            if (mHelloTask == null) {
+                scheduleTasks();
+            } else {
+                reschedule(mDaySlotsTask, 0);
+                reschedule(mSleepTask, 0);
+                reschedule(mDaySummaryTask, 0);
+                reschedule(mHelloTask, HELLO_PERIOD);
+            }
         }
     }
 
@@ -206,12 +249,6 @@ class HPlusHandlerThread extends GBDeviceIoThread {
         } catch(Exception e) {
 
         }
-        mHelloTime = GregorianCalendar.getInstance();
-        mHelloTime.add(Calendar.SECOND, HELLO_PERIOD);
-
-        synchronized (waitObject) {
-            waitObject.notify();
-        }
     }
     /**
      * Process a message containing information regarding a day slot
@@ -263,18 +300,14 @@ class HPlusHandlerThread extends GBDeviceIoThread {
 
             //Still fetching ring buffer. Request the next slots
             if (record.slot == mLastSlotRequested) {
-                mGetDaySlotsTime.clear();
-                synchronized (waitObject) {
-                    waitObject.notify();
-                }
+                reschedule(mDaySlotsTask, 0);
             }
 
             //Keep buffering
             if (record.slot != 143)
                 return true;
         }  else {
-            mGetDaySlotsTime = GregorianCalendar.getInstance();
-            mGetDaySlotsTime.add(Calendar.DAY_OF_MONTH, 1);
+            reschedule(mDaySlotsTask, 24 * 60 * 60, SYNC_WINDOW);
         }
 
         if (mDaySlotRecords.size() > 0) {
@@ -315,7 +348,6 @@ class HPlusHandlerThread extends GBDeviceIoThread {
                     }
                 }
 
-                provider.getSampleDao().insertOrReplaceInTx(samples);
                 mDaySlotRecords.clear();
 
                 //Create an overlay with unused slots
@@ -348,8 +380,11 @@ class HPlusHandlerThread extends GBDeviceIoThread {
                         overlayList.add(new HPlusHealthActivityOverlay(firstSlotTimestamp, lastSlotTimestamp, ActivityKind.TYPE_NOT_WORN, deviceId, userId, null));
 
                     overlayDao.insertOrReplaceInTx(overlayList);
+                    invalidateRollups(overlayList, session);
                 }
 
+                // stored after the overlays, so that the activity rollups see the final kinds
+                provider.addGBActivitySamples(samples.toArray(new HPlusHealthActivitySample[0]));
             } catch (GBException ex) {
                 LOG.info((ex.getMessage()));
             } catch (Exception ex) {
@@ -361,6 +396,23 @@ class HPlusHandlerThread extends GBDeviceIoThread {
     }
 
 
+    /**
+     * Discards the activity rollups covered by the given overlays, since these change
+     * the activity kinds of the stored samples.
+     */
+    private void invalidateRollups(List<HPlusHealthActivityOverlay> overlays, DaoSession session) {
+        if (overlays.isEmpty()) {
+            return;
+        }
+        int tsFrom = Integer.MAX_VALUE;
+        int tsTo = Integer.MIN_VALUE;
+        for (HPlusHealthActivityOverlay overlay : overlays) {
+            tsFrom = Math.min(tsFrom, overlay.getTimestampFrom());
+            tsTo = Math.max(tsTo, overlay.getTimestampTo());
+        }
+        ActivityRollups.invalidate(DBHelper.getDevice(getDevice(), session), tsFrom, tsTo, session);
+    }
+
     /**
      * Process sleep data from the device
      * Devices send a single sleep message for each sleep period
@@ -398,6 +450,7 @@ class HPlusHandlerThread extends GBDeviceIoThread {
             }
 
             overlayDao.insertOrReplaceInTx(overlayList);
+            invalidateRollups(overlayList, session);
 
             //Store the data
             HPlusHealthActivitySample sample = createSample(dbHandler, record.timestamp);
@@ -411,8 +464,7 @@ class HPlusHandlerThread extends GBDeviceIoThread {
             LOG.info(ex.getMessage());
         }
 
-        mGetSleepTime = GregorianCalendar.getInstance();
-        mGetSleepTime.add(GregorianCalendar.SECOND, SLEEP_SYNC_PERIOD);
+        reschedule(mSleepTask, SLEEP_SYNC_PERIOD, SYNC_WINDOW);
 
         return true;
     }
@@ -442,37 +494,42 @@ class HPlusHandlerThread extends GBDeviceIoThread {
 
         getDevice().setBatteryLevel(record.battery);
 
-        try (DBHandler dbHandler = GBApplication.acquireDB()) {
-            HPlusHealthSampleProvider provider = new HPlusHealthSampleProvider(getDevice(), dbHandler.getDaoSession());
+        // stored in groups, user and device are set when storing
+        HPlusHealthActivitySample sample = createRealtimeSample(record);
+        getRealtimeSampleSink().add(sample);
 
-            HPlusHealthActivitySample sample = createSample(dbHandler, record.timestamp);
-            sample.setRawKind(record.type);
-            sample.setRawIntensity(record.intensity);
-            sample.setHeartRate(record.heartRate);
-            sample.setDistance(record.distance);
-            sample.setCalories(record.calories);
-            sample.setSteps(record.steps);
+        RealtimeSampleStream.getInstance().publish(getDevice().getAddress(), sample.getTimestamp(),
+                sample.getHeartRate(), sample.getSteps() - prevRealTimeRecord.steps);
 
-            sample.setRawHPlusHealthData(record.getRawData());
-            sample.setProvider(provider);
-
-            provider.addGBActivitySample(sample);
-
-            sample.setSteps(sample.getSteps() - prevRealTimeRecord.steps);
-
-            Intent intent = new Intent(DeviceService.ACTION_REALTIME_SAMPLES)
-                    .putExtra(DeviceService.EXTRA_REALTIME_SAMPLE, sample)
-                    .putExtra(DeviceService.EXTRA_TIMESTAMP, System.currentTimeMillis());
-            LocalBroadcastManager.getInstance(getContext()).sendBroadcast(intent);
+        //TODO: Handle Active Time. With Overlay?
+        return true;
+    }
 
+    private HPlusHealthActivitySample createRealtimeSample(HPlusDataRecordRealtime record) {
+        HPlusHealthActivitySample sample = new HPlusHealthActivitySample(
+                record.timestamp,               // ts
+                0, 0,                           // device and user id, set when storing
+                record.getRawData(),            // Raw Data
+                record.type,
+                record.intensity,               // Intensity
+                record.steps,                   // Steps
+                record.heartRate,               // HR
+                record.distance,                // Distance
+                record.calories                 // Calories
+        );
+        return sample;
+    }
 
-            //TODO: Handle Active Time. With Overlay?
-        } catch (GBException ex) {
-            LOG.info((ex.getMessage()));
-        } catch (Exception ex) {
-            LOG.info(ex.getMessage());
+    private RealtimeSampleSink<HPlusHealthActivitySample> getRealtimeSampleSink() {
+        if (mRealtimeSampleSink == null) {
+            mRealtimeSampleSink = new RealtimeSampleSink<HPlusHealthActivitySample>(getDevice()) {
+                @Override
+                protected HPlusHealthSampleProvider createSampleProvider(GBDevice device, DaoSession session) {
+                    return new HPlusHealthSampleProvider(device, session);
+                }
+            };
         }
-        return true;
+        return mRealtimeSampleSink;
     }
 
     /**
@@ -513,8 +570,7 @@ class HPlusHandlerThread extends GBDeviceIoThread {
             LOG.info(ex.getMessage());
         }
 
-        mGetDaySummaryTime = GregorianCalendar.getInstance();
-        mGetDaySummaryTime.add(Calendar.SECOND, DAY_SUMMARY_SYNC_PERIOD);
+        reschedule(mDaySummaryTask, DAY_SUMMARY_SYNC_PERIOD, SYNC_WINDOW);
         return true;
     }
 
@@ -559,8 +615,7 @@ class HPlusHandlerThread extends GBDeviceIoThread {
 
         }
 
-        mGetSleepTime = GregorianCalendar.getInstance();
-        mGetSleepTime.add(GregorianCalendar.SECOND, SLEEP_SYNC_RETRY_PERIOD);
+        reschedule(mSleepTask, SLEEP_SYNC_RETRY_PERIOD);
     }
 
     /**
@@ -575,21 +630,18 @@ class HPlusHandlerThread extends GBDeviceIoThread {
 
         //Finished dumping the entire ring buffer
         //Sync to current time
-        mGetDaySlotsTime = now;
-
         if (mSlotsInitialSync) {
             if (mLastSlotReceived == 143) {
                 mSlotsInitialSync = false;
-                mGetDaySlotsTime.set(Calendar.SECOND, CURRENT_DAY_SYNC_PERIOD); //Sync complete. Delay timer forever
+                //Sync complete. Not rescheduled until new slots are received
                 mLastSlotReceived = -1;
                 mLastSlotRequested = mLastSlotReceived + 1;
                 return;
             } else {
-                mGetDaySlotsTime.add(Calendar.SECOND, CURRENT_DAY_SYNC_RETRY_PERIOD);
+                reschedule(mDaySlotsTask, CURRENT_DAY_SYNC_RETRY_PERIOD);
             }
         } else {
-            //Sync complete. Delay timer forever
-            mGetDaySlotsTime.set(Calendar.SECOND, CURRENT_DAY_SYNC_PERIOD);
+            //Sync complete. Not rescheduled until new slots are received
             return;
         }
 
@@ -625,8 +677,7 @@ class HPlusHandlerThread extends GBDeviceIoThread {
         } catch(Exception e) {
 
         }
-        mGetDaySummaryTime = GregorianCalendar.getInstance();
-        mGetDaySummaryTime.add(Calendar.SECOND, DAY_SUMMARY_SYNC_RETRY_PERIOD);
+        reschedule(mDaySummaryTask, DAY_SUMMARY_SYNC_RETRY_PERIOD);
     }
 
     /**
@@ -112,7 +112,6 @@ public class HPlusSupport extends AbstractBTLEDeviceSupport {
 
         if(syncHelper == null) {
             syncHelper = new HPlusHandlerThread(getDevice(), getContext(), this);
-            syncHelper.start();
         }
         syncHelper.sync();
 
@@ -520,7 +519,6 @@ public class HPlusSupport extends AbstractBTLEDeviceSupport {
 
         if (syncHelper == null){
             syncHelper = new HPlusHandlerThread(gbDevice, getContext(), this);
-            syncHelper.start();
         }
 
         syncHelper.sync();
@@ -790,7 +788,6 @@ public class HPlusSupport extends AbstractBTLEDeviceSupport {
     private void close() {
         if (syncHelper != null) {
             syncHelper.quit();
-            syncHelper.interrupt();
             syncHelper = null;
         }
     }
@@ -17,16 +17,45 @@
 
 package nodomain.freeyourgadget.gadgetbridge.service.devices.huami;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.zip.CRC32;
 
+import androidx.annotation.Nullable;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.util.ArrayUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.CheckSums;
-
-
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
+
+/**
+ * Information about a file to be installed on a Huami device.
+ * <p/>
+ * When created from a {@link UriHelper}, the file is examined while streaming it, so that
+ * large resource or GPS files do not have to be kept in memory just to validate them. Only
+ * the header is kept, see {@link #HEADER_LENGTH}, and the whole file is only read into memory
+ * when calling {@link #getBytes()} in order to send it.
+ */
 public abstract class HuamiFirmwareInfo {
+    private static final Logger LOG = LoggerFactory.getLogger(HuamiFirmwareInfo.class);
+
+    /**
+     * The number of bytes at the start of the file that {@link #determineFirmwareType(byte[])}
+     * may examine.
+     */
+    protected static final int HEADER_LENGTH = 0x200;
+    private static final int MAX_SIZE = 1024 * 2048; // 2.0 MB
 
     protected static final byte[] RES_HEADER = new byte[]{ // HMRES resources file (*.res)
             0x48, 0x4d, 0x52, 0x45, 0x53
@@ -59,19 +88,19 @@ public abstract class HuamiFirmwareInfo {
         if (version == null) {
             switch (firmwareType) {
                 case FIRMWARE:
-                    version = searchFirmwareVersion(bytes);
+                    version = searchFirmwareVersion();
                     break;
                 case RES:
-                    version = "RES " + bytes[5];
+                    version = "RES " + header[5];
                     break;
                 case RES_COMPRESSED:
-                    version = "RES " + bytes[14];
+                    version = "RES " + header[14];
                     break;
                 case FONT:
-                    version = "FONT " + bytes[4];
+                    version = "FONT " + header[4];
                     break;
                 case FONT_LATIN:
-                    version = "FONT LATIN " + bytes[4];
+                    version = "FONT LATIN " + header[4];
                     break;
             }
         }
@@ -107,14 +136,47 @@ public abstract class HuamiFirmwareInfo {
 
     private final int crc16;
     private final int crc32;
+    private final int size;
+    private final byte[] header;
+    @Nullable
+    private final UriHelper uriHelper;
 
     private byte[] bytes;
 
     public HuamiFirmwareInfo(byte[] bytes) {
         this.bytes = bytes;
+        uriHelper = null;
+        size = bytes.length;
+        header = bytes;
         crc16 = CheckSums.getCRC16(bytes);
         crc32 = CheckSums.getCRC32(bytes);
-        firmwareType = determineFirmwareType(bytes);
+        firmwareType = determineFirmwareType(header);
+    }
+
+    /**
+     * Examines the given file while reading it, without keeping it in memory.
+     */
+    public HuamiFirmwareInfo(UriHelper uriHelper) throws IOException {
+        this.uriHelper = uriHelper;
+        CheckSums.CRC16 crc16 = new CheckSums.CRC16();
+        CRC32 crc32 = new CRC32();
+        byte[] header = new byte[HEADER_LENGTH];
+        int headerLength;
+        long size;
+        try (InputStream in = uriHelper.openInputStream()) {
+            headerLength = readFully(in, header);
+            crc16.update(header, 0, headerLength);
+            crc32.update(header, 0, headerLength);
+            size = headerLength + CheckSums.update(in, crc16, crc32);
+        }
+        if (size > MAX_SIZE) {
+            throw new IOException("File too large: " + size);
+        }
+        this.size = (int) size;
+        this.header = headerLength < header.length ? Arrays.copyOf(header, headerLength) : header;
+        this.crc16 = (int) crc16.getValue();
+        this.crc32 = (int) crc32.getValue();
+        firmwareType = determineFirmwareType(this.header);
     }
 
     public abstract boolean isGenerallyCompatibleWith(GBDevice device);
@@ -132,10 +194,22 @@ public abstract class HuamiFirmwareInfo {
      * @return
      */
     public int getSize() {
-        return bytes.length;
+        return size;
     }
 
-    public byte[] getBytes() {
+    /**
+     * Returns the whole file, reading it into memory if necessary.
+     */
+    public byte[] getBytes() throws IOException {
+        if (bytes == null) {
+            try (InputStream in = openContent()) {
+                byte[] content = FileUtils.readAll(in, MAX_SIZE);
+                if (content.length != size || CheckSums.getCRC32(content) != crc32) {
+                    throw new IOException("File has changed since it was examined");
+                }
+                bytes = content;
+            }
+        }
         return bytes;
     }
 
@@ -156,32 +230,52 @@ public abstract class HuamiFirmwareInfo {
 
     protected abstract Map<Integer, String> getCrcMap();
 
-    protected abstract HuamiFirmwareType determineFirmwareType(byte[] bytes);
-
-    protected String searchFirmwareVersion(byte[] fwbytes) {
-        ByteBuffer buf = ByteBuffer.wrap(fwbytes);
-        buf.order(ByteOrder.BIG_ENDIAN);
-        while (buf.remaining() > 3) {
-            int word = buf.getInt();
-            if (word == 0x5625642e) {
-                word = buf.getInt();
-                if (word == 0x25642e25) {
-                    word = buf.getInt();
-                    if (word == 0x642e2564) {
-                        word = buf.getInt();
-                        if (word == 0x00000000) {
-                            byte[] version = new byte[8];
-                            buf.get(version);
-                            return new String(version);
+    /**
+     * Determines the type of the file from its header, which contains at least the first
+     * {@link #HEADER_LENGTH} bytes, or the whole file if it is shorter. Use {@link #getSize()}
+     * for the size of the file, and {@link #searchString32BitAligned(String)} to search
+     * the whole file.
+     */
+    protected abstract HuamiFirmwareType determineFirmwareType(byte[] header);
+
+    /**
+     * Opens the whole file for reading, without reading it into memory.
+     */
+    protected InputStream openContent() throws IOException {
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+        return new BufferedInputStream(uriHelper.openInputStream());
+    }
+
+    protected String searchFirmwareVersion() {
+        try (DataInputStream in = new DataInputStream(openContent())) {
+            while (true) {
+                int word = in.readInt();
+                if (word == 0x5625642e) {
+                    word = in.readInt();
+                    if (word == 0x25642e25) {
+                        word = in.readInt();
+                        if (word == 0x642e2564) {
+                            word = in.readInt();
+                            if (word == 0x00000000) {
+                                byte[] version = new byte[8];
+                                in.readFully(version);
+                                return new String(version);
+                            }
                         }
                     }
                 }
             }
+        } catch (EOFException ex) {
+            return null;
+        } catch (IOException ex) {
+            LOG.warn("Unable to search for the firmware version", ex);
+            return null;
         }
-        return null;
     }
 
-    protected boolean searchString32BitAligned(byte[] fwbytes, String findString) {
+    protected boolean searchString32BitAligned(String findString) {
         ByteBuffer stringBuf = ByteBuffer.wrap((findString + "\0").getBytes());
         stringBuf.order(ByteOrder.BIG_ENDIAN);
         int[] findArray = new int[stringBuf.remaining() / 4];
@@ -189,17 +283,30 @@ public abstract class HuamiFirmwareInfo {
             findArray[i] = stringBuf.getInt();
         }
 
-        ByteBuffer buf = ByteBuffer.wrap(fwbytes);
-        buf.order(ByteOrder.BIG_ENDIAN);
-        while (buf.remaining() > 3) {
-            int arrayPos = 0;
-            while (arrayPos < findArray.length && buf.remaining() > 3 && (buf.getInt() == findArray[arrayPos])) {
-                arrayPos++;
-            }
-            if (arrayPos == findArray.length) {
-                return true;
+        try (DataInputStream in = new DataInputStream(openContent())) {
+            while (true) {
+                int arrayPos = 0;
+                while (arrayPos < findArray.length && (in.readInt() == findArray[arrayPos])) {
+                    arrayPos++;
+                }
+                if (arrayPos == findArray.length) {
+                    return true;
+                }
             }
+        } catch (EOFException ex) {
+            return false;
+        } catch (IOException ex) {
+            LOG.warn("Unable to search for " + findString, ex);
+            return false;
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) != -1) {
+            total += read;
         }
-        return false;
+        return total;
     }
 }
@@ -26,7 +26,6 @@ import android.net.Uri;
 import android.text.format.DateFormat;
 import android.widget.Toast;
 
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
@@ -53,8 +52,6 @@ import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.Logging;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.SettingsActivity;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventBatteryInfo;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventCallControl;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventFindPhone;
@@ -84,6 +81,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.User;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice.State;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
@@ -92,7 +90,6 @@ import nodomain.freeyourgadget.gadgetbridge.model.CalendarEventSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.CalendarEvents;
 import nodomain.freeyourgadget.gadgetbridge.model.CallSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.CannedMessagesSpec;
-import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 import nodomain.freeyourgadget.gadgetbridge.model.MusicSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.MusicStateSpec;
@@ -100,9 +97,12 @@ import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.model.Weather;
 import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
+import nodomain.freeyourgadget.gadgetbridge.service.RealtimeSampleSink;
+import nodomain.freeyourgadget.gadgetbridge.service.RealtimeSampleStream;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.AbstractBTLEDeviceSupport;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.CharacteristicRouter;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattCharacteristic;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattService;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
@@ -168,6 +168,7 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
     private final GBDeviceEventFindPhone findPhoneEvent = new GBDeviceEventFindPhone();
 
     private RealtimeSamplesSupport realtimeSamplesSupport;
+    private RealtimeSampleSink<MiBandActivitySample> realtimeSampleSink;
     private boolean alarmClockRinging;
 
     private boolean isMusicAppStarted = false;
@@ -195,6 +196,79 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
         deviceInfoProfile = new DeviceInfoProfile<>(this);
         deviceInfoProfile.addListener(mListener);
         addSupportedProfile(deviceInfoProfile);
+
+        registerCharacteristicHandlers(getCharacteristicRouter());
+    }
+
+    private void registerCharacteristicHandlers(CharacteristicRouter router) {
+        CharacteristicRouter.Handler batteryInfoHandler = new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                handleBatteryInfo(characteristic.getValue(), status);
+                return true;
+            }
+        };
+        CharacteristicRouter.Handler realtimeStepsHandler = new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                handleRealtimeSteps(characteristic.getValue());
+                return true;
+            }
+        };
+        CharacteristicRouter.Handler deviceEventHandler = new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                handleDeviceEvent(characteristic.getValue());
+                return true;
+            }
+        };
+
+        router.addChangedHandler(HuamiService.UUID_CHARACTERISTIC_6_BATTERY_INFO, batteryInfoHandler)
+                .addChangedHandler(MiBandService.UUID_CHARACTERISTIC_REALTIME_STEPS, realtimeStepsHandler)
+                .addChangedHandler(HuamiService.UUID_CHARACTERISTIC_7_REALTIME_STEPS, realtimeStepsHandler)
+                .addChangedHandler(HuamiService.UUID_CHARACTERISTIC_DEVICEEVENT, deviceEventHandler)
+                .addChangedHandler(GattCharacteristic.UUID_CHARACTERISTIC_HEART_RATE_MEASUREMENT, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        handleHeartrate(characteristic.getValue());
+                        return true;
+                    }
+                })
+                .addChangedHandler(HuamiService.UUID_CHARACTERISTIC_AUTH, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        LOG.info("AUTHENTICATION?? " + characteristic.getUuid());
+                        logMessageContent(characteristic.getValue());
+                        return true;
+                    }
+                });
+
+        router.addReadHandler(HuamiService.UUID_CHARACTERISTIC_6_BATTERY_INFO, batteryInfoHandler)
+                .addReadHandler(HuamiService.UUID_CHARACTERISTIC_7_REALTIME_STEPS, realtimeStepsHandler)
+                .addReadHandler(HuamiService.UUID_CHARACTERISTIC_DEVICEEVENT, deviceEventHandler)
+                .addReadHandler(GattCharacteristic.UUID_CHARACTERISTIC_GAP_DEVICE_NAME, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        handleDeviceName(characteristic.getValue(), status);
+                        return true;
+                    }
+                })
+                .addReadHandler(GattCharacteristic.UUID_CHARACTERISTIC_HEART_RATE_MEASUREMENT, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        logHeartrate(characteristic.getValue(), status);
+                        return true;
+                    }
+                });
+
+        router.addWriteHandler(HuamiService.UUID_CHARACTERISTIC_AUTH, new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                LOG.info("KEY AES SEND");
+                logMessageContent(characteristic.getValue());
+                return true;
+            }
+        });
     }
 
     @Override
@@ -299,6 +373,17 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
         return this;
     }
 
+    @Override
+    public void dispose() {
+        if (realtimeSamplesSupport != null) {
+            realtimeSamplesSupport.stop();
+        }
+        if (realtimeSampleSink != null) {
+            realtimeSampleSink.close();
+        }
+        super.dispose();
+    }
+
     @Override
     public boolean useAutoConnect() {
         return true;
@@ -1162,74 +1247,24 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
     @Override
     public boolean onCharacteristicChanged(BluetoothGatt gatt,
                                            BluetoothGattCharacteristic characteristic) {
-        super.onCharacteristicChanged(gatt, characteristic);
-
-        UUID characteristicUUID = characteristic.getUuid();
-        if (HuamiService.UUID_CHARACTERISTIC_6_BATTERY_INFO.equals(characteristicUUID)) {
-            handleBatteryInfo(characteristic.getValue(), BluetoothGatt.GATT_SUCCESS);
-            return true;
-        } else if (MiBandService.UUID_CHARACTERISTIC_REALTIME_STEPS.equals(characteristicUUID)) {
-            handleRealtimeSteps(characteristic.getValue());
-            return true;
-        } else if (GattCharacteristic.UUID_CHARACTERISTIC_HEART_RATE_MEASUREMENT.equals(characteristicUUID)) {
-            handleHeartrate(characteristic.getValue());
-            return true;
-        } else if (HuamiService.UUID_CHARACTERISTIC_AUTH.equals(characteristicUUID)) {
-            LOG.info("AUTHENTICATION?? " + characteristicUUID);
-            logMessageContent(characteristic.getValue());
-            return true;
-        } else if (HuamiService.UUID_CHARACTERISTIC_DEVICEEVENT.equals(characteristicUUID)) {
-            handleDeviceEvent(characteristic.getValue());
+        if (super.onCharacteristicChanged(gatt, characteristic)) {
             return true;
-        } else if (HuamiService.UUID_CHARACTERISTIC_7_REALTIME_STEPS.equals(characteristicUUID)) {
-            handleRealtimeSteps(characteristic.getValue());
-            return true;
-        } else {
-            LOG.info("Unhandled characteristic changed: " + characteristicUUID);
-            logMessageContent(characteristic.getValue());
         }
 
+        LOG.info("Unhandled characteristic changed: " + characteristic.getUuid());
+        logMessageContent(characteristic.getValue());
         return false;
     }
 
     @Override
     public boolean onCharacteristicRead(BluetoothGatt gatt,
                                         BluetoothGattCharacteristic characteristic, int status) {
-        super.onCharacteristicRead(gatt, characteristic, status);
-
-        UUID characteristicUUID = characteristic.getUuid();
-        if (GattCharacteristic.UUID_CHARACTERISTIC_GAP_DEVICE_NAME.equals(characteristicUUID)) {
-            handleDeviceName(characteristic.getValue(), status);
-            return true;
-        } else if (HuamiService.UUID_CHARACTERISTIC_6_BATTERY_INFO.equals(characteristicUUID)) {
-            handleBatteryInfo(characteristic.getValue(), status);
+        if (super.onCharacteristicRead(gatt, characteristic, status)) {
             return true;
-        } else if (GattCharacteristic.UUID_CHARACTERISTIC_HEART_RATE_MEASUREMENT.equals(characteristicUUID)) {
-            logHeartrate(characteristic.getValue(), status);
-            return true;
-        } else if (HuamiService.UUID_CHARACTERISTIC_7_REALTIME_STEPS.equals(characteristicUUID)) {
-            handleRealtimeSteps(characteristic.getValue());
-            return true;
-        } else if (HuamiService.UUID_CHARACTERISTIC_DEVICEEVENT.equals(characteristicUUID)) {
-            handleDeviceEvent(characteristic.getValue());
-            return true;
-        } else {
-            LOG.info("Unhandled characteristic read: " + characteristicUUID);
-            logMessageContent(characteristic.getValue());
         }
 
-        return false;
-    }
-
-    @Override
-    public boolean onCharacteristicWrite(BluetoothGatt gatt,
-                                         BluetoothGattCharacteristic characteristic, int status) {
-        UUID characteristicUUID = characteristic.getUuid();
-        if (HuamiService.UUID_CHARACTERISTIC_AUTH.equals(characteristicUUID)) {
-            LOG.info("KEY AES SEND");
-            logMessageContent(characteristic.getValue());
-            return true;
-        }
+        LOG.info("Unhandled characteristic read: " + characteristic.getUuid());
+        logMessageContent(characteristic.getValue());
         return false;
     }
 
@@ -1285,6 +1320,9 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
             if (realtimeSamplesSupport != null) {
                 realtimeSamplesSupport.stop();
             }
+            if (realtimeSampleSink != null) {
+                realtimeSampleSink.flush();
+            }
         }
     }
 
@@ -1303,45 +1341,45 @@ public class HuamiSupport extends AbstractBTLEDeviceSupport {
             realtimeSamplesSupport = new RealtimeSamplesSupport(1000, 1000) {
                 @Override
                 public void doCurrentSample() {
-
-                    try (DBHandler handler = GBApplication.acquireDB()) {
-                        DaoSession session = handler.getDaoSession();
-
-                        Device device = DBHelper.getDevice(gbDevice, session);
-                        User user = DBHelper.getUser(session);
-                        int ts = (int) (System.currentTimeMillis() / 1000);
-                        MiBand2SampleProvider provider = new MiBand2SampleProvider(gbDevice, session);
-                        MiBandActivitySample sample = createActivitySample(device, user, ts, provider);
-                        sample.setHeartRate(getHeartrateBpm());
-//                        sample.setSteps(getSteps());
-                        sample.setRawIntensity(ActivitySample.NOT_MEASURED);
-                        sample.setRawKind(HuamiConst.TYPE_ACTIVITY); // to make it visible in the charts TODO: add a MANUAL kind for that?
-
-                        provider.addGBActivitySample(sample);
-
-                        // set the steps only afterwards, since realtime steps are also recorded
-                        // in the regular samples and we must not count them twice
-                        // Note: we know that the DAO sample is never committed again, so we simply
-                        // change the value here in memory.
-                        sample.setSteps(getSteps());
-
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("realtime sample: " + sample);
-                        }
-
-                        Intent intent = new Intent(DeviceService.ACTION_REALTIME_SAMPLES)
-                                .putExtra(DeviceService.EXTRA_REALTIME_SAMPLE, sample);
-                        LocalBroadcastManager.getInstance(getContext()).sendBroadcast(intent);
-
-                    } catch (Exception e) {
-                        LOG.warn("Unable to acquire db for saving realtime samples", e);
+                    int ts = (int) (System.currentTimeMillis() / 1000);
+                    MiBandActivitySample sample = createRealtimeSample(ts, getHeartrateBpm());
+                    // stored in groups, user and device are set when storing
+                    getRealtimeSampleSink().add(sample);
+
+                    // publish the steps only for the live view, since realtime steps are also
+                    // recorded in the regular samples and we must not count them twice
+                    int steps = getSteps();
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("realtime sample: heart rate: " + sample.getHeartRate() + ", steps: " + steps);
                     }
+                    RealtimeSampleStream.getInstance().publish(getDevice().getAddress(), ts, sample.getHeartRate(), steps);
                 }
             };
         }
         return realtimeSamplesSupport;
     }
 
+    private MiBandActivitySample createRealtimeSample(int timestampInSeconds, int heartRate) {
+        MiBandActivitySample sample = new MiBandActivitySample();
+        sample.setTimestamp(timestampInSeconds);
+        sample.setHeartRate(heartRate);
+        sample.setRawIntensity(ActivitySample.NOT_MEASURED);
+        sample.setRawKind(HuamiConst.TYPE_ACTIVITY); // to make it visible in the charts TODO: add a MANUAL kind for that?
+        return sample;
+    }
+
+    private RealtimeSampleSink<MiBandActivitySample> getRealtimeSampleSink() {
+        if (realtimeSampleSink == null) {
+            realtimeSampleSink = new RealtimeSampleSink<MiBandActivitySample>(getDevice()) {
+                @Override
+                protected MiBand2SampleProvider createSampleProvider(GBDevice device, DaoSession session) {
+                    return new MiBand2SampleProvider(device, session);
+                }
+            };
+        }
+        return realtimeSampleSink;
+    }
+
     private void handleDeviceName(byte[] value, int status) {
 //        if (status == BluetoothGatt.GATT_SUCCESS) {
 //            versionCmd.hwVersion = new String(value);
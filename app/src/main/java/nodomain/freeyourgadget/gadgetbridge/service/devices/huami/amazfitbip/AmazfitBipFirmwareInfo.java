@@ -16,6 +16,7 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.service.devices.huami.amazfitbip;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -24,6 +25,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiFirmwareInfo;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiFirmwareType;
 import nodomain.freeyourgadget.gadgetbridge.util.ArrayUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 
 public class AmazfitBipFirmwareInfo extends HuamiFirmwareInfo {
     // gps detection is totally bogus, just the first 16 bytes
@@ -156,10 +158,14 @@ public class AmazfitBipFirmwareInfo extends HuamiFirmwareInfo {
         super(bytes);
     }
 
+    public AmazfitBipFirmwareInfo(UriHelper uriHelper) throws IOException {
+        super(uriHelper);
+    }
+
     @Override
     protected HuamiFirmwareType determineFirmwareType(byte[] bytes) {
         if (ArrayUtils.startsWith(bytes, RES_HEADER) || ArrayUtils.startsWith(bytes, NEWRES_HEADER)) {
-            if ((bytes.length <= 100000) || (bytes.length > 700000)) { // dont know how to distinguish from Cor/Mi Band 3 .res
+            if ((getSize() <= 100000) || (getSize() > 700000)) { // dont know how to distinguish from Cor/Mi Band 3 .res
                 return HuamiFirmwareType.INVALID;
             }
             return HuamiFirmwareType.RES;
@@ -171,7 +177,7 @@ public class AmazfitBipFirmwareInfo extends HuamiFirmwareInfo {
             return HuamiFirmwareType.GPS_CEP;
         }
         if (ArrayUtils.startsWith(bytes, FW_HEADER)) {
-            if (searchString32BitAligned(bytes, "Amazfit Bip Watch")) {
+            if (searchString32BitAligned("Amazfit Bip Watch")) {
                 return HuamiFirmwareType.FIRMWARE;
             }
             return HuamiFirmwareType.INVALID;
@@ -29,7 +29,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Set;
-import java.util.UUID;
 
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiCoordinator;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiFWHelper;
@@ -41,6 +40,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.model.RecordedDataTypes;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.CharacteristicRouter;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.profiles.alertnotification.AlertCategory;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.profiles.alertnotification.AlertNotificationProfile;
@@ -59,6 +59,12 @@ public class AmazfitBipSupport extends HuamiSupport {
 
     public AmazfitBipSupport() {
         super(LOG);
+        getCharacteristicRouter().addChangedHandler(HuamiService.UUID_CHARACTERISTIC_3_CONFIGURATION, new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                return handleConfigurationInfo(characteristic.getValue());
+            }
+        });
     }
 
     @Override
@@ -257,19 +263,6 @@ public class AmazfitBipSupport extends HuamiSupport {
         }
     }
 
-    @Override
-    public boolean onCharacteristicChanged(BluetoothGatt gatt,
-                                           BluetoothGattCharacteristic characteristic) {
-        boolean handled = super.onCharacteristicChanged(gatt, characteristic);
-        if (!handled) {
-            UUID characteristicUUID = characteristic.getUuid();
-            if (HuamiService.UUID_CHARACTERISTIC_3_CONFIGURATION.equals(characteristicUUID)) {
-                return handleConfigurationInfo(characteristic.getValue());
-            }
-        }
-        return false;
-    }
-
     private boolean handleConfigurationInfo(byte[] value) {
         if (value == null || value.length < 4) {
             return false;
@@ -16,6 +16,7 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.service.devices.huami.amazfitcor;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -24,6 +25,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiFirmwareInfo;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiFirmwareType;
 import nodomain.freeyourgadget.gadgetbridge.util.ArrayUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 
 public class AmazfitCorFirmwareInfo extends HuamiFirmwareInfo {
     // this is the same as Bip
@@ -63,13 +65,17 @@ public class AmazfitCorFirmwareInfo extends HuamiFirmwareInfo {
         super(bytes);
     }
 
+    public AmazfitCorFirmwareInfo(UriHelper uriHelper) throws IOException {
+        super(uriHelper);
+    }
+
     @Override
     protected HuamiFirmwareType determineFirmwareType(byte[] bytes) {
         if (ArrayUtils.equals(bytes, RES_HEADER, COMPRESSED_RES_HEADER_OFFSET) || ArrayUtils.equals(bytes, NEWRES_HEADER, COMPRESSED_RES_HEADER_OFFSET)) {
             return HuamiFirmwareType.RES_COMPRESSED;
         }
         if (ArrayUtils.startsWith(bytes, FW_HEADER)) {
-            if (searchString32BitAligned(bytes, "Amazfit Cor")) {
+            if (searchString32BitAligned("Amazfit Cor")) {
                 return HuamiFirmwareType.FIRMWARE;
             }
             return HuamiFirmwareType.INVALID;
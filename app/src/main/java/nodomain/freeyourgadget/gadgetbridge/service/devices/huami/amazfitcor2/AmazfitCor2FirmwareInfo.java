@@ -16,6 +16,7 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.service.devices.huami.amazfitcor2;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -24,6 +25,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiFirmwareInfo;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiFirmwareType;
 import nodomain.freeyourgadget.gadgetbridge.util.ArrayUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 
 public class AmazfitCor2FirmwareInfo extends HuamiFirmwareInfo {
     // this is the same as Bip
@@ -43,6 +45,10 @@ public class AmazfitCor2FirmwareInfo extends HuamiFirmwareInfo {
         super(bytes);
     }
 
+    public AmazfitCor2FirmwareInfo(UriHelper uriHelper) throws IOException {
+        super(uriHelper);
+    }
+
     @Override
     protected HuamiFirmwareType determineFirmwareType(byte[] bytes) {
         if (ArrayUtils.equals(bytes, RES_HEADER, COMPRESSED_RES_HEADER_OFFSET) || ArrayUtils.equals(bytes, NEWRES_HEADER, COMPRESSED_RES_HEADER_OFFSET_NEW) || ArrayUtils.equals(bytes, NEWRES_HEADER, COMPRESSED_RES_HEADER_OFFSET)) {
@@ -50,10 +56,10 @@ public class AmazfitCor2FirmwareInfo extends HuamiFirmwareInfo {
         }
         if (ArrayUtils.startsWith(bytes, FW_HEADER)) {
             // FIXME: It would certainly better if we could check for "Cor 2" when the device name is "Cor 2" and for "Band 2" when it is "Band 2"
-            if (searchString32BitAligned(bytes, "Amazfit Cor 2")) {
+            if (searchString32BitAligned("Amazfit Cor 2")) {
                 return HuamiFirmwareType.FIRMWARE;
             }
-            if (searchString32BitAligned(bytes, "Amazfit Band 2")) {
+            if (searchString32BitAligned("Amazfit Band 2")) {
                 return HuamiFirmwareType.FIRMWARE;
             }
             return HuamiFirmwareType.INVALID;
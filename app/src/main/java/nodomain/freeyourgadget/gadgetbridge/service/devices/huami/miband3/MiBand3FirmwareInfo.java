@@ -17,6 +17,7 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.service.devices.huami.miband3;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -25,6 +26,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiFirmwareInfo;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiFirmwareType;
 import nodomain.freeyourgadget.gadgetbridge.util.ArrayUtils;
+import nodomain.freeyourgadget.gadgetbridge.util.UriHelper;
 
 public class MiBand3FirmwareInfo extends HuamiFirmwareInfo {
     // this is the same as Mi Band 2
@@ -86,6 +88,10 @@ public class MiBand3FirmwareInfo extends HuamiFirmwareInfo {
         super(bytes);
     }
 
+    public MiBand3FirmwareInfo(UriHelper uriHelper) throws IOException {
+        super(uriHelper);
+    }
+
     @Override
     protected HuamiFirmwareType determineFirmwareType(byte[] bytes) {
         if (ArrayUtils.startsWith(bytes, FT_HEADER)) {
@@ -95,7 +101,7 @@ public class MiBand3FirmwareInfo extends HuamiFirmwareInfo {
             return HuamiFirmwareType.INVALID;
         }
         if (ArrayUtils.startsWith(bytes, RES_HEADER)) {
-            if (bytes.length > 150000) { // don't know how to distinguish from Bip/Cor .res
+            if (getSize() > 150000) { // don't know how to distinguish from Bip/Cor .res
                 return HuamiFirmwareType.INVALID;
             }
             return HuamiFirmwareType.RES;
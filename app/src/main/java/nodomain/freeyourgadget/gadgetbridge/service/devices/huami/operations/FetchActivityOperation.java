@@ -24,10 +24,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
-import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
@@ -48,21 +50,55 @@ import nodomain.freeyourgadget.gadgetbridge.util.StringUtils;
 /**
  * An operation that fetches activity data. For every fetch, a new operation must
  * be created, i.e. an operation may not be reused for multiple fetches.
+ * <p/>
+ * The received data is not kept until the end of a fetch round, but stored in chunks
+ * of {@link #CHUNK_SAMPLES} samples by a background thread while the transfer continues.
+ * The last sync timestamp is updated after every stored chunk, so that an aborted fetch
+ * continues after the last stored chunk. The end of a round is handled on that thread as
+ * well, after the last chunk has been stored, so the Bluetooth callback thread never waits
+ * for the database.
  */
 public class FetchActivityOperation extends AbstractFetchOperation {
     private static final Logger LOG = LoggerFactory.getLogger(FetchActivityOperation.class);
 
-    private List<MiBandActivitySample> samples = new ArrayList<>(60*24); // 1day per default
+    /**
+     * The number of samples (minutes) that are stored in a single transaction.
+     */
+    static final int CHUNK_SAMPLES = 6 * 60;
+    private static final int BYTES_PER_SAMPLE = 4;
+
+    /**
+     * Stores the chunks of all fetches one after the other. It is shared, so that a fetch that
+     * is abandoned, e.g. because of a disconnect, does not leave a thread behind, and its
+     * thread ends when there is nothing to store.
+     */
+    static final ThreadPoolExecutor SAVE_EXECUTOR = createSaveExecutor();
+
+    // the raw data of the current chunk, 4 bytes per sample
+    private byte[] chunkData = new byte[CHUNK_SAMPLES * BYTES_PER_SAMPLE];
+    private int chunkProgress;
+    // timestamp of the first sample of the current chunk, null until the first sample of a round
+    private GregorianCalendar chunkTimestamp;
+    // set while the end of a round is handled on the save thread
+    private volatile boolean roundFinishing;
+    // written by the save thread
+    private volatile GregorianCalendar lastSavedTimestamp;
+    private volatile boolean saveFailed;
 
     public FetchActivityOperation(HuamiSupport support) {
         super(support);
         setName("fetching activity data");
     }
 
-    @Override
-    protected void startFetching() throws IOException {
-        samples.clear();
-        super.startFetching();
+    private static ThreadPoolExecutor createSaveExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "Huami activity data storage");
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     @Override
@@ -72,9 +108,30 @@ public class FetchActivityOperation extends AbstractFetchOperation {
         startFetching(builder, HuamiService.COMMAND_ACTIVITY_DATA_TYPE_ACTIVTY, sinceWhen);
     }
 
-    protected void handleActivityFetchFinish(boolean success) {
+    protected void handleActivityFetchFinish(final boolean success) {
+        if (roundFinishing) {
+            LOG.warn(getName() + " has already finished round " + fetchCount);
+            return;
+        }
         LOG.info(getName() + " has finished round " + fetchCount);
-        GregorianCalendar lastSyncTimestamp = saveSamples();
+        roundFinishing = true;
+        flushChunk();
+        chunkTimestamp = null;
+        // queued after the chunks of this round, so it runs once all of them have been stored
+        SAVE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                finishRound(success);
+            }
+        });
+    }
+
+    /**
+     * Starts another round if needed, or finishes the operation. Runs on the save thread.
+     */
+    private void finishRound(boolean success) {
+        GregorianCalendar lastSyncTimestamp = finishSaving();
+        roundFinishing = false;
         if (lastSyncTimestamp != null && needsAnotherFetch(lastSyncTimestamp)) {
             try {
                 startFetching();
@@ -83,7 +140,6 @@ public class FetchActivityOperation extends AbstractFetchOperation {
                 LOG.error("Error starting another round of " + getName(), ex);
             }
         }
-
         super.handleActivityFetchFinish(success);
     }
 
@@ -105,41 +161,83 @@ public class FetchActivityOperation extends AbstractFetchOperation {
         return true;
     }
 
-    private GregorianCalendar saveSamples() {
-        if (samples.size() > 0) {
-            // save all the samples that we got
-            try (DBHandler handler = GBApplication.acquireDB()) {
-                DaoSession session = handler.getDaoSession();
-                SampleProvider<MiBandActivitySample> sampleProvider = new MiBandSampleProvider(getDevice(), session);
-                Device device = DBHelper.getDevice(getDevice(), session);
-                User user = DBHelper.getUser(session);
-
-                GregorianCalendar timestamp = (GregorianCalendar) startTimestamp.clone();
-                for (MiBandActivitySample sample : samples) {
-                    sample.setDevice(device);
-                    sample.setUser(user);
-                    sample.setTimestamp((int) (timestamp.getTimeInMillis() / 1000));
-                    sample.setProvider(sampleProvider);
-
-                    if (LOG.isDebugEnabled()) {
-//                        LOG.debug("sample: " + sample);
-                    }
-
-                    timestamp.add(Calendar.MINUTE, 1);
-                }
-                sampleProvider.addGBActivitySamples(samples.toArray(new MiBandActivitySample[0]));
-
-                saveLastSyncTimestamp(timestamp);
-                LOG.info("Mi2 activity data: last sample timestamp: " + DateTimeUtils.formatDateTime(timestamp.getTime()));
-                return timestamp;
-
-            } catch (Exception ex) {
-                GB.toast(getContext(), "Error saving activity samples", Toast.LENGTH_LONG, GB.ERROR);
-            } finally {
-                samples.clear();
+    /**
+     * Returns the result of storing the chunks of this round. Runs on the save thread after
+     * all of them.
+     *
+     * @return the timestamp after the last stored sample, or null if nothing was stored in this round
+     * or storing failed
+     */
+    private GregorianCalendar finishSaving() {
+        if (saveFailed) {
+            return null;
+        }
+        GregorianCalendar timestamp = lastSavedTimestamp;
+        lastSavedTimestamp = null;
+        if (timestamp != null) {
+            LOG.info("Mi2 activity data: last sample timestamp: " + DateTimeUtils.formatDateTime(timestamp.getTime()));
+        }
+        return timestamp;
+    }
+
+    /**
+     * Hands the buffered samples over to the save thread and starts a new chunk.
+     */
+    private void flushChunk() {
+        if (chunkProgress == 0) {
+            return;
+        }
+        final byte[] data = chunkData;
+        final int length = chunkProgress;
+        final GregorianCalendar timestamp = chunkTimestamp;
+        chunkTimestamp = (GregorianCalendar) timestamp.clone();
+        chunkTimestamp.add(Calendar.MINUTE, length / BYTES_PER_SAMPLE);
+        chunkData = new byte[CHUNK_SAMPLES * BYTES_PER_SAMPLE];
+        chunkProgress = 0;
+
+        SAVE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                saveSamples(data, length, timestamp);
+            }
+        });
+    }
+
+    /**
+     * Stores a single chunk, runs on the save thread.
+     */
+    void saveSamples(byte[] data, int length, GregorianCalendar timestamp) {
+        if (saveFailed) {
+            // never store samples after a gap, the next fetch will start at the gap
+            return;
+        }
+        try (DBHandler handler = GBApplication.acquireDB()) {
+            DaoSession session = handler.getDaoSession();
+            SampleProvider<MiBandActivitySample> sampleProvider = new MiBandSampleProvider(getDevice(), session);
+            Device device = DBHelper.getDevice(getDevice(), session);
+            User user = DBHelper.getUser(session);
+
+            MiBandActivitySample[] samples = new MiBandActivitySample[length / BYTES_PER_SAMPLE];
+            for (int i = 0; i < samples.length; i++) {
+                int offset = i * BYTES_PER_SAMPLE;
+                MiBandActivitySample sample = createSample(data[offset], data[offset + 1], data[offset + 2], data[offset + 3]);
+                sample.setDevice(device);
+                sample.setUser(user);
+                sample.setTimestamp((int) (timestamp.getTimeInMillis() / 1000));
+                sample.setProvider(sampleProvider);
+                samples[i] = sample;
+
+                timestamp.add(Calendar.MINUTE, 1);
             }
+            sampleProvider.addGBActivitySamples(samples);
+
+            saveLastSyncTimestamp(timestamp);
+            lastSavedTimestamp = timestamp;
+            LOG.debug("Saved chunk of " + samples.length + " activity samples, until " + DateTimeUtils.formatDateTime(timestamp.getTime()));
+        } catch (Exception ex) {
+            saveFailed = true;
+            GB.toast(getContext(), "Error saving activity samples", Toast.LENGTH_LONG, GB.ERROR, ex);
         }
-        return null;
     }
 
     /**
@@ -153,7 +251,7 @@ public class FetchActivityOperation extends AbstractFetchOperation {
      * @param value
      */
     protected void handleActivityNotif(byte[] value) {
-        if (!isOperationRunning()) {
+        if (!isOperationRunning() || roundFinishing) {
             LOG.error("ignoring activity data notification because operation is not running. Data length: " + value.length);
             getSupport().logMessageContent(value);
             return;
@@ -175,7 +273,7 @@ public class FetchActivityOperation extends AbstractFetchOperation {
     }
 
     /**
-     * Creates samples from the given 17-length array
+     * Buffers the samples from the given 17-length array and stores them in chunks
      * @param value
      */
     protected void bufferActivityData(byte[] value) {
@@ -185,9 +283,15 @@ public class FetchActivityOperation extends AbstractFetchOperation {
             throw new AssertionError("Unexpected activity array size: " + len);
         }
 
+        if (chunkTimestamp == null) {
+            chunkTimestamp = (GregorianCalendar) getLastStartTimestamp().clone();
+        }
         for (int i = 1; i < len; i+=4) {
-            MiBandActivitySample sample = createSample(value[i], value[i + 1], value[i + 2], value[i + 3]); // lgtm [java/index-out-of-bounds]
-            samples.add(sample);
+            System.arraycopy(value, i, chunkData, chunkProgress, BYTES_PER_SAMPLE);
+            chunkProgress += BYTES_PER_SAMPLE;
+            if (chunkProgress == chunkData.length) {
+                flushChunk();
+            }
         }
     }
 
@@ -0,0 +1,128 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.devices.huami.operations;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.content.Context;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiService;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.SetProgressAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WriteAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WriteWithoutResponseAction;
+
+/**
+ * The actions to transfer firmware data to a Huami device, created one by one while the
+ * transaction is executed: a write of each chunk of the data, and after every
+ * {@link #SYNC_INTERVAL} chunks, a sync command and a progress update.
+ * <p/>
+ * Only the chunk that is currently being written is copied, so the memory needed does not
+ * depend on the size of the firmware. Can only be iterated once.
+ */
+public class FirmwareChunkActions implements Iterable<BtLEAction> {
+    public static final int SYNC_INTERVAL = 100;
+
+    private final byte[] data;
+    private final int chunkSize;
+    private final BluetoothGattCharacteristic dataCharacteristic;
+    private final BluetoothGattCharacteristic controlCharacteristic;
+    private final String progressText;
+    private final Context context;
+    private boolean iterated;
+
+    public FirmwareChunkActions(byte[] data, int chunkSize, BluetoothGattCharacteristic dataCharacteristic,
+                                BluetoothGattCharacteristic controlCharacteristic, String progressText, Context context) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1: " + chunkSize);
+        }
+        this.data = data;
+        this.chunkSize = chunkSize;
+        this.dataCharacteristic = dataCharacteristic;
+        this.controlCharacteristic = controlCharacteristic;
+        this.progressText = progressText;
+        this.context = context;
+    }
+
+    public int getChunkCount() {
+        return (data.length + chunkSize - 1) / chunkSize;
+    }
+
+    /**
+     * Returns the number of actions, chunk writes plus the intermediate syncs and progress updates.
+     */
+    public int getActionCount() {
+        int fullChunks = data.length / chunkSize;
+        int syncs = fullChunks > 1 ? (fullChunks - 1) / SYNC_INTERVAL : 0;
+        return getChunkCount() + 2 * syncs;
+    }
+
+    @Override
+    public Iterator<BtLEAction> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("Firmware chunks can only be iterated once");
+        }
+        iterated = true;
+        return new ChunkIterator();
+    }
+
+    private class ChunkIterator implements Iterator<BtLEAction> {
+        private int offset;
+        private int chunk;
+        // 0: next is a chunk, 1: next is the sync command, 2: next is the progress update
+        private int step;
+
+        @Override
+        public boolean hasNext() {
+            return step != 0 || offset < data.length;
+        }
+
+        @Override
+        public BtLEAction next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            switch (step) {
+                case 1:
+                    step = 2;
+                    return new WriteAction(controlCharacteristic, new byte[]{HuamiService.COMMAND_FIRMWARE_UPDATE_SYNC});
+                case 2:
+                    step = 0;
+                    int progressPercent = (int) ((((float) offset) / data.length) * 100);
+                    return new SetProgressAction(progressText, true, progressPercent, context);
+                default:
+                    int length = Math.min(chunkSize, data.length - offset);
+                    byte[] bytes = new byte[length];
+                    System.arraycopy(data, offset, bytes, 0, length);
+                    offset += length;
+                    // only full chunks are followed by a sync, the last one is synced by the caller
+                    if (chunk > 0 && chunk % SYNC_INTERVAL == 0 && length == chunkSize) {
+                        step = 1;
+                    }
+                    chunk++;
+                    return new WriteWithoutResponseAction(dataCharacteristic, bytes);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
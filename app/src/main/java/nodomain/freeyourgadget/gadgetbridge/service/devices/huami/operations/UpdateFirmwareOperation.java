@@ -27,7 +27,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.UUID;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
@@ -230,35 +229,20 @@ public class UpdateFirmwareOperation extends AbstractHuamiOperation {
      * @see #handleNotificationNotif
      */
     private boolean sendFirmwareData(HuamiFirmwareInfo info) {
-        byte[] fwbytes = info.getBytes();
-        int len = fwbytes.length;
-        final int packetLength = 20;
-        int packets = len / packetLength;
+        // a chunk fills one packet, minus the 3 bytes of the ATT write header
+        final int packetLength = getQueue().getMtu() - 3;
 
         try {
-            // going from 0 to len
-            int firmwareProgress = 0;
-
+            // the file has only been examined so far, now it needs to be read
+            byte[] fwbytes = info.getBytes();
             TransactionBuilder builder = performInitialized("send firmware packet");
             builder.write(fwCControlChar, getFirmwareStartCommand());
 
-            for (int i = 0; i < packets; i++) {
-                byte[] fwChunk = Arrays.copyOfRange(fwbytes, i * packetLength, i * packetLength + packetLength);
-
-                builder.write(fwCDataChar, fwChunk);
-                firmwareProgress += packetLength;
-
-                int progressPercent = (int) ((((float) firmwareProgress) / len) * 100);
-                if ((i > 0) && (i % 100 == 0)) {
-                    builder.write(fwCControlChar, new byte[]{HuamiService.COMMAND_FIRMWARE_UPDATE_SYNC});
-                    builder.add(new SetProgressAction(getContext().getString(R.string.updatefirmwareoperation_update_in_progress), true, progressPercent, getContext()));
-                }
-            }
-
-            if (firmwareProgress < len) {
-                byte[] lastChunk = Arrays.copyOfRange(fwbytes, packets * packetLength, len);
-                builder.write(fwCDataChar, lastChunk);
-            }
+            // the chunks are only created while the transaction runs, instead of all up front
+            FirmwareChunkActions chunks = new FirmwareChunkActions(fwbytes, packetLength, fwCDataChar, fwCControlChar,
+                    getContext().getString(R.string.updatefirmwareoperation_update_in_progress), getContext());
+            LOG.info("Sending " + fwbytes.length + " bytes of firmware in " + chunks.getChunkCount() + " chunks of " + packetLength + " bytes");
+            builder.add(chunks, chunks.getActionCount());
 
             builder.write(fwCControlChar, new byte[]{HuamiService.COMMAND_FIRMWARE_UPDATE_SYNC});
             builder.queue(getQueue());
@@ -38,7 +38,7 @@ public class DeviceInfo extends AbstractInfo {
 
 
     private boolean isChecksumCorrect(byte[] data) {
-        int crc8 = CheckSums.getCRC8(new byte[]{data[0], data[1], data[2], data[3], data[4], data[5], data[6]});
+        int crc8 = CheckSums.getCRC8(data, 0, 7);
         return (data[7] & 255) == (crc8 ^ data[3] & 255);
     }
 
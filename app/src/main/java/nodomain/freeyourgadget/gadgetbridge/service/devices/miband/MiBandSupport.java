@@ -20,7 +20,6 @@ package nodomain.freeyourgadget.gadgetbridge.service.devices.miband;
 
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
-import android.content.Intent;
 import android.net.Uri;
 import android.widget.Toast;
 
@@ -37,11 +36,8 @@ import java.util.List;
 import java.util.UUID;
 
 import androidx.annotation.Nullable;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventBatteryInfo;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventVersionInfo;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
@@ -65,15 +61,17 @@ import nodomain.freeyourgadget.gadgetbridge.model.CalendarEventSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.CalendarEvents;
 import nodomain.freeyourgadget.gadgetbridge.model.CallSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.CannedMessagesSpec;
-import nodomain.freeyourgadget.gadgetbridge.model.DeviceService;
 import nodomain.freeyourgadget.gadgetbridge.model.MusicSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.MusicStateSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
+import nodomain.freeyourgadget.gadgetbridge.service.RealtimeSampleSink;
+import nodomain.freeyourgadget.gadgetbridge.service.RealtimeSampleStream;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.AbstractBTLEDeviceSupport;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.CharacteristicRouter;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattCharacteristic;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattService;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
@@ -128,6 +126,7 @@ public class MiBandSupport extends AbstractBTLEDeviceSupport {
     private final GBDeviceEventVersionInfo versionCmd = new GBDeviceEventVersionInfo();
     private final GBDeviceEventBatteryInfo batteryCmd = new GBDeviceEventBatteryInfo();
     private RealtimeSamplesSupport realtimeSamplesSupport;
+    private RealtimeSampleSink<MiBandActivitySample> realtimeSampleSink;
     private boolean alarmClockRining;
     private boolean alarmClockRinging;
 
@@ -138,6 +137,100 @@ public class MiBandSupport extends AbstractBTLEDeviceSupport {
         addSupportedService(MiBandService.UUID_SERVICE_MIBAND_SERVICE);
         addSupportedService(MiBandService.UUID_SERVICE_HEART_RATE);
         addSupportedService(GattService.UUID_SERVICE_IMMEDIATE_ALERT);
+
+        registerCharacteristicHandlers(getCharacteristicRouter());
+    }
+
+    private void registerCharacteristicHandlers(CharacteristicRouter router) {
+        CharacteristicRouter.Handler batteryInfoHandler = new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                handleBatteryInfo(characteristic.getValue(), status);
+                return true;
+            }
+        };
+
+        router.addChangedHandler(MiBandService.UUID_CHARACTERISTIC_BATTERY, batteryInfoHandler)
+                .addChangedHandler(MiBandService.UUID_CHARACTERISTIC_NOTIFICATION, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        handleNotificationNotif(characteristic.getValue());
+                        return true;
+                    }
+                })
+                .addChangedHandler(MiBandService.UUID_CHARACTERISTIC_REALTIME_STEPS, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        handleRealtimeSteps(characteristic.getValue());
+                        return true;
+                    }
+                })
+                .addChangedHandler(MiBandService.UUID_CHARACTERISTIC_HEART_RATE_MEASUREMENT, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        handleHeartrate(characteristic.getValue());
+                        return true;
+                    }
+                })
+                .addChangedHandler(MiBandService.UUID_CHARACTERISTIC_SENSOR_DATA, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        handleSensorData(characteristic.getValue());
+                        return true;
+                    }
+                });
+
+        router.addReadHandler(MiBandService.UUID_CHARACTERISTIC_BATTERY, batteryInfoHandler)
+                .addReadHandler(MiBandService.UUID_CHARACTERISTIC_DEVICE_INFO, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        handleDeviceInfo(characteristic.getValue(), status);
+                        return true;
+                    }
+                })
+                .addReadHandler(GattCharacteristic.UUID_CHARACTERISTIC_GAP_DEVICE_NAME, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        handleDeviceName(characteristic.getValue(), status);
+                        return true;
+                    }
+                })
+                .addReadHandler(MiBandService.UUID_CHARACTERISTIC_HEART_RATE_MEASUREMENT, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        logHeartrate(characteristic.getValue(), status);
+                        return true;
+                    }
+                })
+                .addReadHandler(MiBandService.UUID_CHARACTERISTIC_DATE_TIME, new CharacteristicRouter.Handler() {
+                    @Override
+                    public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                        logDate(characteristic.getValue(), status);
+                        return true;
+                    }
+                });
+
+        router.addWriteHandler(MiBandService.UUID_CHARACTERISTIC_PAIR, new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                handlePairResult(characteristic.getValue(), status);
+                return true;
+            }
+        });
+        router.addWriteHandler(MiBandService.UUID_CHARACTERISTIC_USER_INFO, new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                handleUserInfoResult(characteristic.getValue(), status);
+                return true;
+            }
+        });
+        router.addWriteHandler(MiBandService.UUID_CHARACTERISTIC_CONTROL_POINT, new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                handleControlPointResult(characteristic.getValue(), status);
+                return true;
+            }
+        });
     }
 
     @Override
@@ -212,6 +305,17 @@ public class MiBandSupport extends AbstractBTLEDeviceSupport {
         return this;
     }
 
+    @Override
+    public void dispose() {
+        if (realtimeSamplesSupport != null) {
+            realtimeSamplesSupport.stop();
+        }
+        if (realtimeSampleSink != null) {
+            realtimeSampleSink.close();
+        }
+        super.dispose();
+    }
+
     @Override
     public boolean useAutoConnect() {
         return true;
@@ -872,72 +976,24 @@ public class MiBandSupport extends AbstractBTLEDeviceSupport {
     @Override
     public boolean onCharacteristicChanged(BluetoothGatt gatt,
                                            BluetoothGattCharacteristic characteristic) {
-        super.onCharacteristicChanged(gatt, characteristic);
-
-        UUID characteristicUUID = characteristic.getUuid();
-        if (MiBandService.UUID_CHARACTERISTIC_BATTERY.equals(characteristicUUID)) {
-            handleBatteryInfo(characteristic.getValue(), BluetoothGatt.GATT_SUCCESS);
-            return true;
-        } else if (MiBandService.UUID_CHARACTERISTIC_NOTIFICATION.equals(characteristicUUID)) {
-            handleNotificationNotif(characteristic.getValue());
+        if (super.onCharacteristicChanged(gatt, characteristic)) {
             return true;
-        } else if (MiBandService.UUID_CHARACTERISTIC_REALTIME_STEPS.equals(characteristicUUID)) {
-            handleRealtimeSteps(characteristic.getValue());
-            return true;
-        } else if (MiBandService.UUID_CHARACTERISTIC_HEART_RATE_MEASUREMENT.equals(characteristicUUID)) {
-            handleHeartrate(characteristic.getValue());
-            return true;
-        } else if (MiBandService.UUID_CHARACTERISTIC_SENSOR_DATA.equals(characteristicUUID)) {
-            handleSensorData(characteristic.getValue());
-        } else {
-            LOG.info("Unhandled characteristic changed: " + characteristicUUID);
-            logMessageContent(characteristic.getValue());
         }
+
+        LOG.info("Unhandled characteristic changed: " + characteristic.getUuid());
+        logMessageContent(characteristic.getValue());
         return false;
     }
 
     @Override
     public boolean onCharacteristicRead(BluetoothGatt gatt,
                                         BluetoothGattCharacteristic characteristic, int status) {
-        super.onCharacteristicRead(gatt, characteristic, status);
-
-        UUID characteristicUUID = characteristic.getUuid();
-        if (MiBandService.UUID_CHARACTERISTIC_DEVICE_INFO.equals(characteristicUUID)) {
-            handleDeviceInfo(characteristic.getValue(), status);
-            return true;
-        } else if (GattCharacteristic.UUID_CHARACTERISTIC_GAP_DEVICE_NAME.equals(characteristicUUID)) {
-            handleDeviceName(characteristic.getValue(), status);
-            return true;
-        } else if (MiBandService.UUID_CHARACTERISTIC_BATTERY.equals(characteristicUUID)) {
-            handleBatteryInfo(characteristic.getValue(), status);
-            return true;
-        } else if (MiBandService.UUID_CHARACTERISTIC_HEART_RATE_MEASUREMENT.equals(characteristicUUID)) {
-            logHeartrate(characteristic.getValue(), status);
-            return true;
-        } else if (MiBandService.UUID_CHARACTERISTIC_DATE_TIME.equals(characteristicUUID)) {
-            logDate(characteristic.getValue(), status);
+        if (super.onCharacteristicRead(gatt, characteristic, status)) {
             return true;
-        } else {
-            LOG.info("Unhandled characteristic read: " + characteristicUUID);
-            logMessageContent(characteristic.getValue());
         }
-        return false;
-    }
 
-    @Override
-    public boolean onCharacteristicWrite(BluetoothGatt gatt,
-                                         BluetoothGattCharacteristic characteristic, int status) {
-        UUID characteristicUUID = characteristic.getUuid();
-        if (MiBandService.UUID_CHARACTERISTIC_PAIR.equals(characteristicUUID)) {
-            handlePairResult(characteristic.getValue(), status);
-            return true;
-        } else if (MiBandService.UUID_CHARACTERISTIC_USER_INFO.equals(characteristicUUID)) {
-            handleUserInfoResult(characteristic.getValue(), status);
-            return true;
-        } else if (MiBandService.UUID_CHARACTERISTIC_CONTROL_POINT.equals(characteristicUUID)) {
-            handleControlPointResult(characteristic.getValue(), status);
-            return true;
-        }
+        LOG.info("Unhandled characteristic read: " + characteristic.getUuid());
+        logMessageContent(characteristic.getValue());
         return false;
     }
 
@@ -992,6 +1048,9 @@ public class MiBandSupport extends AbstractBTLEDeviceSupport {
             if (realtimeSamplesSupport != null) {
                 realtimeSamplesSupport.stop();
             }
+            if (realtimeSampleSink != null) {
+                realtimeSampleSink.flush();
+            }
         }
     }
 
@@ -1010,44 +1069,45 @@ public class MiBandSupport extends AbstractBTLEDeviceSupport {
             realtimeSamplesSupport = new RealtimeSamplesSupport(1000, 1000) {
                 @Override
                 public void doCurrentSample() {
-
-                    try (DBHandler handler = GBApplication.acquireDB()) {
-                        DaoSession session = handler.getDaoSession();
-
-                        Device device = DBHelper.getDevice(getDevice(), session);
-                        User user = DBHelper.getUser(session);
-                        int ts = (int) (System.currentTimeMillis() / 1000);
-                        MiBandSampleProvider provider = new MiBandSampleProvider(gbDevice, session);
-                        MiBandActivitySample sample = createActivitySample(device, user, ts, provider);
-                        sample.setHeartRate(getHeartrateBpm());
-                        sample.setRawIntensity(ActivitySample.NOT_MEASURED);
-                        sample.setRawKind(MiBandSampleProvider.TYPE_ACTIVITY); // to make it visible in the charts TODO: add a MANUAL kind for that?
-
-                        provider.addGBActivitySample(sample);
-
-                        // set the steps only afterwards, since realtime steps are also recorded
-                        // in the regular samples and we must not count them twice
-                        // Note: we know that the DAO sample is never committed again, so we simply
-                        // change the value here in memory.
-                        sample.setSteps(getSteps());
-
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("realtime sample: " + sample);
-                        }
-
-                        Intent intent = new Intent(DeviceService.ACTION_REALTIME_SAMPLES)
-                                .putExtra(DeviceService.EXTRA_REALTIME_SAMPLE, sample);
-                        LocalBroadcastManager.getInstance(getContext()).sendBroadcast(intent);
-
-                    } catch (Exception e) {
-                        LOG.warn("Unable to acquire db for saving realtime samples", e);
+                    int ts = (int) (System.currentTimeMillis() / 1000);
+                    MiBandActivitySample sample = createRealtimeSample(ts, getHeartrateBpm());
+                    // stored in groups, user and device are set when storing
+                    getRealtimeSampleSink().add(sample);
+
+                    // publish the steps only for the live view, since realtime steps are also
+                    // recorded in the regular samples and we must not count them twice
+                    int steps = getSteps();
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("realtime sample: heart rate: " + sample.getHeartRate() + ", steps: " + steps);
                     }
+                    RealtimeSampleStream.getInstance().publish(getDevice().getAddress(), ts, sample.getHeartRate(), steps);
                 }
             };
         }
         return realtimeSamplesSupport;
     }
 
+    private MiBandActivitySample createRealtimeSample(int timestampInSeconds, int heartRate) {
+        MiBandActivitySample sample = new MiBandActivitySample();
+        sample.setTimestamp(timestampInSeconds);
+        sample.setHeartRate(heartRate);
+        sample.setRawIntensity(ActivitySample.NOT_MEASURED);
+        sample.setRawKind(MiBandSampleProvider.TYPE_ACTIVITY); // to make it visible in the charts TODO: add a MANUAL kind for that?
+        return sample;
+    }
+
+    private RealtimeSampleSink<MiBandActivitySample> getRealtimeSampleSink() {
+        if (realtimeSampleSink == null) {
+            realtimeSampleSink = new RealtimeSampleSink<MiBandActivitySample>(getDevice()) {
+                @Override
+                protected MiBandSampleProvider createSampleProvider(GBDevice device, DaoSession session) {
+                    return new MiBandSampleProvider(device, session);
+                }
+            };
+        }
+        return realtimeSampleSink;
+    }
+
     /**
      * React to unsolicited messages sent by the Mi Band to the MiBandService.UUID_CHARACTERISTIC_NOTIFICATION
      * characteristic,
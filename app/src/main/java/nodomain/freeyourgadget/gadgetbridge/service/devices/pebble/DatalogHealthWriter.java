@@ -0,0 +1,194 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.database.ActivityRollups;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.devices.pebble.PebbleHealthSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivityOverlay;
+import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+
+/**
+ * Collects the decoded Pebble Health records of all datalog sessions of a connection and
+ * stores them in batches, so that a large datalog backlog is not written packet by packet.
+ * <p/>
+ * Pending records are stored in a single transaction when {@link #MAX_PENDING_RECORDS} have
+ * been collected, at the latest {@link #MAX_DELAY_MILLIS} after the first one was added, and
+ * when a session is closed or the connection ends.
+ * <p/>
+ * Note that the watch deletes the records as soon as their datalog message has been ACKed,
+ * which happens before they are stored. If the app is killed in between, up to
+ * {@link #MAX_PENDING_RECORDS} records of the last {@link #MAX_DELAY_MILLIS} are lost. To keep
+ * this window to a running transfer, the protocol {@link #flush() flushes} before ACKing the
+ * last message of a session's backlog.
+ * <p/>
+ * The user and device ids are looked up once and then reused for the whole connection. The
+ * records are therefore created with a dummy id of 0, which is replaced when they are stored.
+ */
+class DatalogHealthWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(DatalogHealthWriter.class);
+
+    static final int MAX_PENDING_RECORDS = 1000;
+    static final long MAX_DELAY_MILLIS = 3000;
+
+    /**
+     * Runs the delayed flushes of all writers; its thread ends when there is nothing to flush.
+     */
+    private static final ScheduledThreadPoolExecutor FLUSH_SCHEDULER = createFlushScheduler();
+
+    private final GBDevice mDevice;
+    private final List<PebbleHealthActivitySample> mPendingSamples = new ArrayList<>();
+    private final List<PebbleHealthActivityOverlay> mPendingOverlays = new ArrayList<>();
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    private ScheduledFuture<?> mScheduledFlush;
+    private Long mUserId;
+    private Device mDbDevice;
+
+    DatalogHealthWriter(GBDevice device) {
+        mDevice = device;
+    }
+
+    private static ScheduledThreadPoolExecutor createFlushScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "Pebble Health writer");
+            }
+        });
+        scheduler.setKeepAliveTime(30, TimeUnit.SECONDS);
+        scheduler.allowCoreThreadTimeOut(true);
+        return scheduler;
+    }
+
+    GBDevice getDevice() {
+        return mDevice;
+    }
+
+    synchronized void addSample(PebbleHealthActivitySample sample) {
+        mPendingSamples.add(sample);
+        recordAdded();
+    }
+
+    synchronized void addOverlay(PebbleHealthActivityOverlay overlay) {
+        mPendingOverlays.add(overlay);
+        recordAdded();
+    }
+
+    /**
+     * Stores all pending records now.
+     */
+    synchronized void flush() {
+        if (mScheduledFlush != null) {
+            mScheduledFlush.cancel(false);
+            mScheduledFlush = null;
+        }
+        if (mPendingSamples.isEmpty() && mPendingOverlays.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try (DBHandler dbHandler = GBApplication.acquireDB()) {
+            final DaoSession session = dbHandler.getDaoSession();
+            if (mUserId == null || mDbDevice == null) {
+                mUserId = DBHelper.getUser(session).getId();
+                mDbDevice = DBHelper.getDevice(mDevice, session);
+            }
+            final Device dbDevice = mDbDevice;
+
+            final PebbleHealthSampleProvider sampleProvider = new PebbleHealthSampleProvider(mDevice, session);
+            final PebbleHealthActivitySample[] samples = mPendingSamples.toArray(new PebbleHealthActivitySample[0]);
+            for (PebbleHealthActivitySample sample : samples) {
+                sample.setUserId(mUserId);
+                sample.setDeviceId(dbDevice.getId());
+                sample.setProvider(sampleProvider);
+            }
+            for (PebbleHealthActivityOverlay overlay : mPendingOverlays) {
+                overlay.setUserId(mUserId);
+                overlay.setDeviceId(dbDevice.getId());
+            }
+
+            session.runInTx(new Runnable() {
+                @Override
+                public void run() {
+                    // overlays first, the provider applies them to the samples the rollups are calculated from
+                    if (!mPendingOverlays.isEmpty()) {
+                        session.getPebbleHealthActivityOverlayDao().insertOrReplaceInTx(mPendingOverlays);
+                        invalidateRollups(dbDevice, session);
+                    }
+                    if (samples.length > 0) {
+                        sampleProvider.addGBActivitySamples(samples);
+                    }
+                }
+            });
+            LOG.info("Stored " + samples.length + " Pebble Health samples and " + mPendingOverlays.size() + " overlays in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception ex) {
+            LOG.error("Error storing Pebble Health data", ex);
+        } finally {
+            mPendingSamples.clear();
+            mPendingOverlays.clear();
+        }
+    }
+
+    /**
+     * Discards the activity rollups covered by the pending overlays, as these change the kinds
+     * of already stored samples.
+     */
+    private void invalidateRollups(Device dbDevice, DaoSession session) {
+        int tsFrom = Integer.MAX_VALUE;
+        int tsTo = Integer.MIN_VALUE;
+        for (PebbleHealthActivityOverlay overlay : mPendingOverlays) {
+            tsFrom = Math.min(tsFrom, overlay.getTimestampFrom());
+            tsTo = Math.max(tsTo, overlay.getTimestampTo());
+        }
+        ActivityRollups.invalidate(dbDevice, tsFrom, tsTo, session);
+    }
+
+    /**
+     * Stores all pending records, must be called when the connection ends.
+     */
+    synchronized void close() {
+        flush();
+    }
+
+    private void recordAdded() {
+        if (mPendingSamples.size() + mPendingOverlays.size() >= MAX_PENDING_RECORDS) {
+            flush();
+        } else if (mScheduledFlush == null) {
+            mScheduledFlush = FLUSH_SCHEDULER.schedule(mFlushRunnable, MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -49,6 +49,12 @@ class DatalogSession {
         return new GBDeviceEvent[]{null};
     }
 
+    /**
+     * Called when the watch closes the session, before it is discarded.
+     */
+    void close() {
+    }
+
     String getTaginfo() {
         return taginfo;
     }
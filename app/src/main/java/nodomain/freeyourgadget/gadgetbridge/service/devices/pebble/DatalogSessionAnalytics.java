@@ -43,7 +43,7 @@ class DatalogSessionAnalytics extends DatalogSession {
 
     @Override
     GBDeviceEvent[] handleMessage(ByteBuffer datalogMessage, int length) {
-        LOG.info("DATALOG " + taginfo + GB.hexdump(datalogMessage.array(), datalogMessage.position(), length));
+        LOG.info("DATALOG " + taginfo + GB.hexdump(datalogMessage.array(), datalogMessage.arrayOffset() + datalogMessage.position(), length));
 
         datalogMessage.position(datalogMessage.position() + 3);
         int messageTS = datalogMessage.getInt();
@@ -23,21 +23,20 @@ import java.nio.ByteBuffer;
 import java.util.UUID;
 
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEvent;
-import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
 class DatalogSessionHealthHR extends DatalogSessionPebbleHealth {
 
     private static final Logger LOG = LoggerFactory.getLogger(DatalogSessionHealthHR.class);
 
-    DatalogSessionHealthHR(byte id, UUID uuid, int timestamp, int tag, byte item_type, short item_size, GBDevice device) {
-        super(id, uuid, timestamp, tag, item_type, item_size, device);
+    DatalogSessionHealthHR(byte id, UUID uuid, int timestamp, int tag, byte item_type, short item_size, DatalogHealthWriter writer) {
+        super(id, uuid, timestamp, tag, item_type, item_size, writer);
         taginfo = "(Health - HR " + tag + " )";
     }
 
     @Override
     public GBDeviceEvent[] handleMessage(ByteBuffer datalogMessage, int length) {
-        LOG.info("DATALOG " + taginfo + GB.hexdump(datalogMessage.array(), datalogMessage.position(), length));
+        LOG.info("DATALOG " + taginfo + GB.hexdump(datalogMessage.array(), datalogMessage.arrayOffset() + datalogMessage.position(), length));
 
         return isPebbleHealthEnabled() ? new GBDeviceEvent[]{null} : null;
     }
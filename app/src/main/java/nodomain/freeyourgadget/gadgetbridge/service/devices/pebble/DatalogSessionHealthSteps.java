@@ -25,34 +25,29 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.UUID;
 
-import nodomain.freeyourgadget.gadgetbridge.GBApplication;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
-import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEvent;
-import nodomain.freeyourgadget.gadgetbridge.devices.pebble.PebbleHealthSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivitySample;
-import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
 class DatalogSessionHealthSteps extends DatalogSessionPebbleHealth {
 
     private static final Logger LOG = LoggerFactory.getLogger(DatalogSessionHealthSteps.class);
 
-    DatalogSessionHealthSteps(byte id, UUID uuid, int timestamp, int tag, byte item_type, short item_size, GBDevice device) {
-        super(id, uuid, timestamp, tag, item_type, item_size, device);
+    DatalogSessionHealthSteps(byte id, UUID uuid, int timestamp, int tag, byte item_type, short item_size, DatalogHealthWriter writer) {
+        super(id, uuid, timestamp, tag, item_type, item_size, writer);
         taginfo = "(Health - steps)";
     }
 
     @Override
     public GBDeviceEvent[] handleMessage(ByteBuffer datalogMessage, int length) {
-        LOG.info("DATALOG " + taginfo + GB.hexdump(datalogMessage.array(), datalogMessage.position(), length));
+        LOG.info("DATALOG " + taginfo + GB.hexdump(datalogMessage.array(), datalogMessage.arrayOffset() + datalogMessage.position(), length));
 
         if (!isPebbleHealthEnabled()) {
             return null;
         }
 
         int timestamp;
-        byte recordLength, recordNum;
+        int recordLength, recordNum;
         short recordVersion; //probably
         int beginOfPacketPosition, beginOfRecordPosition;
 
@@ -60,105 +55,52 @@ class DatalogSessionHealthSteps extends DatalogSessionPebbleHealth {
         if (0 != (length % itemSize))
             return null;//malformed message?
 
+        boolean storeRaw = storePebbleHealthRawRecord();
+        datalogMessage.order(ByteOrder.LITTLE_ENDIAN);
         int packetCount = length / itemSize;
 
         for (int packetIdx = 0; packetIdx < packetCount; packetIdx++) {
             beginOfPacketPosition = initialPosition + packetIdx * itemSize;
-            datalogMessage.position(beginOfPacketPosition);//we may not consume all the records of a packet
 
-            recordVersion = datalogMessage.getShort();
+            recordVersion = datalogMessage.getShort(beginOfPacketPosition);
 
             if ((recordVersion != 5) && (recordVersion != 6) && (recordVersion != 7) && (recordVersion != 12) && (recordVersion != 13))
                 return null; //we don't know how to deal with the data TODO: this is not ideal because we will get the same message again and again since we NACK it
 
-            timestamp = datalogMessage.getInt();
-            datalogMessage.get(); //unknown, throw away
-            recordLength = datalogMessage.get();
-            recordNum = datalogMessage.get();
+            timestamp = datalogMessage.getInt(beginOfPacketPosition + 2);
+            // 1 byte unknown, throw away
+            recordLength = datalogMessage.get(beginOfPacketPosition + 7) & 0xff;
+            recordNum = datalogMessage.get(beginOfPacketPosition + 8) & 0xff;
 
-            beginOfRecordPosition = datalogMessage.position();
-            StepsRecord[] stepsRecords = new StepsRecord[recordNum];
-            byte[] tempRecord = new byte[recordLength];
+            beginOfRecordPosition = beginOfPacketPosition + 9;
+            if (beginOfRecordPosition + recordNum * recordLength > datalogMessage.limit()) {
+                LOG.warn("Steps records exceed the message, ignoring them");
+                return null;
+            }
 
+            // decode the records in place, we may not consume all the bytes of a record
             for (int recordIdx = 0; recordIdx < recordNum; recordIdx++) {
-                datalogMessage.position(beginOfRecordPosition + recordIdx * recordLength); //we may not consume all the bytes of a record
-                datalogMessage.get(tempRecord);
-                stepsRecords[recordIdx] = new StepsRecord(timestamp, recordVersion, tempRecord);
+                int offset = beginOfRecordPosition + recordIdx * recordLength;
+                int steps = datalogMessage.get(offset) & 0xff;
+                // offset + 1: orientation
+                int intensity = datalogMessage.getShort(offset + 2) & 0xffff;
+                // offset + 4: light intensity
+                int heartRate = 0;
+                if (recordVersion >= 7) {
+                    // 7 unknown bytes before the heart rate
+                    heartRate = datalogMessage.get(offset + 12) & 0xff;
+                }
+                getWriter().addSample(new PebbleHealthActivitySample(
+                        timestamp,
+                        0, 0, // set by the writer
+                        getRawRecord(datalogMessage, offset, recordLength, storeRaw),
+                        intensity,
+                        steps,
+                        heartRate
+                ));
                 timestamp += 60;
             }
-
-            store(stepsRecords);
         }
         return new GBDeviceEvent[]{null};//ACK by default
     }
-
-    private void store(StepsRecord[] stepsRecords) {
-
-        try (DBHandler dbHandler = GBApplication.acquireDB()) {
-            PebbleHealthSampleProvider sampleProvider = new PebbleHealthSampleProvider(getDevice(), dbHandler.getDaoSession());
-            PebbleHealthActivitySample[] samples = new PebbleHealthActivitySample[stepsRecords.length];
-            // TODO: user and device
-            Long userId = DBHelper.getUser(dbHandler.getDaoSession()).getId();
-            Long deviceId = DBHelper.getDevice(getDevice(), dbHandler.getDaoSession()).getId();
-            for (int j = 0; j < stepsRecords.length; j++) {
-                StepsRecord stepsRecord = stepsRecords[j];
-                samples[j] = new PebbleHealthActivitySample(
-                        stepsRecord.timestamp,
-                        deviceId, userId,
-                        stepsRecord.getRawData(),
-                        stepsRecord.intensity,
-                        stepsRecord.steps,
-                        stepsRecord.heart_rate
-                );
-                samples[j].setProvider(sampleProvider);
-            }
-
-            sampleProvider.addGBActivitySamples(samples);
-        } catch (Exception ex) {
-            LOG.debug(ex.getMessage());
-        }
-    }
-
-    private class StepsRecord {
-        byte[] knownVersions = {5, 6, 7, 12, 13};
-        short version;
-        int timestamp;
-        int steps;
-        int orientation;
-        int intensity;
-        int light_intensity;
-        int heart_rate;
-
-        byte[] rawData;
-
-        StepsRecord(int timestamp, short version, byte[] rawData) {
-            this.timestamp = timestamp;
-            this.rawData = rawData;
-            ByteBuffer record = ByteBuffer.wrap(rawData);
-            record.order(ByteOrder.LITTLE_ENDIAN);
-
-            this.version = version;
-            //TODO: check supported versions?
-
-            this.steps = record.get() & 0xff;
-            this.orientation = record.get() & 0xff;
-            this.intensity = record.getShort() & 0xffff;
-            this.light_intensity = record.get() & 0xff;
-            if (version >= 7) {
-                // skip 7 bytes
-                record.getInt();
-                record.getShort();
-                record.get();
-                this.heart_rate = record.get() & 0xff;
-            }
-        }
-
-        byte[] getRawData() {
-            if (storePebbleHealthRawRecord()) {
-                return rawData;
-            }
-            return null;
-        }
-    }
-
-}
\ No newline at end of file
+}
@@ -17,6 +17,7 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble;
 
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
@@ -25,15 +26,37 @@ import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 
 abstract class DatalogSessionPebbleHealth extends DatalogSession {
 
-    private final GBDevice mDevice;
+    private final DatalogHealthWriter mWriter;
 
-    DatalogSessionPebbleHealth(byte id, UUID uuid, int timestamp, int tag, byte itemType, short itemSize, GBDevice device) {
+    DatalogSessionPebbleHealth(byte id, UUID uuid, int timestamp, int tag, byte itemType, short itemSize, DatalogHealthWriter writer) {
         super(id, uuid, timestamp, tag, itemType, itemSize);
-        mDevice = device;
+        mWriter = writer;
     }
 
     public GBDevice getDevice() {
-        return mDevice;
+        return mWriter.getDevice();
+    }
+
+    DatalogHealthWriter getWriter() {
+        return mWriter;
+    }
+
+    @Override
+    void close() {
+        mWriter.flush();
+    }
+
+    /**
+     * Returns a copy of the given record for storing it as raw data, or null if raw
+     * records shall not be stored.
+     */
+    byte[] getRawRecord(ByteBuffer buf, int offset, int length, boolean storeRaw) {
+        if (!storeRaw) {
+            return null;
+        }
+        byte[] rawData = new byte[length];
+        System.arraycopy(buf.array(), buf.arrayOffset() + offset, rawData, 0, length);
+        return rawData;
     }
 
     boolean isPebbleHealthEnabled() {
@@ -0,0 +1,143 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Splits the stream received from a Pebble into protocol frames, each consisting of the 4 byte
+ * header (payload length and endpoint) and the payload.
+ * <p/>
+ * The stream is read in large chunks into a buffer that is reused for the whole connection, so
+ * that a burst of small messages, like datalog or app messages, only needs a few reads. The
+ * frames are returned as slices of that buffer without copying them. A frame is therefore only
+ * valid until the next call of {@link #nextFrame()}.
+ * <p/>
+ * When connected via TCP (e.g. to the emulator), each frame is additionally wrapped into a 6 byte
+ * header and a 2 byte footer, which are skipped.
+ */
+class PebbleFrameReader {
+    private static final Logger LOG = LoggerFactory.getLogger(PebbleFrameReader.class);
+
+    static final int MAX_PAYLOAD_LENGTH = 8192;
+    private static final int HEADER_LENGTH = 4;
+    private static final int TCP_HEADER_LENGTH = 6;
+    private static final int TCP_FOOTER_LENGTH = 2;
+    private static final int BUFFER_SIZE = 16384;
+
+    private final InputStream mInStream;
+    private final boolean mIsTCP;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer mHeader = ByteBuffer.wrap(mBuffer).order(ByteOrder.BIG_ENDIAN);
+    private int mStart; // first byte not yet returned
+    private int mEnd; // end of the received bytes
+
+    PebbleFrameReader(InputStream inStream, boolean isTCP) {
+        mInStream = inStream;
+        mIsTCP = isTCP;
+    }
+
+    /**
+     * Returns the next frame, blocking until it has been received completely. The returned
+     * buffer starts with the header, is big endian, and may be modified by the caller.
+     *
+     * @return the frame, or null if the frame had an invalid length and has been dropped
+     * @throws IOException if the stream is closed or could not be read
+     */
+    ByteBuffer nextFrame() throws IOException {
+        if (mIsTCP) {
+            fill(TCP_HEADER_LENGTH);
+            mStart += TCP_HEADER_LENGTH;
+        }
+
+        fill(HEADER_LENGTH);
+        int length = mHeader.getShort(mStart);
+        if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+            LOG.info("invalid length " + length);
+            discardAvailable();
+            return null;
+        }
+
+        int frameLength = HEADER_LENGTH + length;
+        fill(frameLength + (mIsTCP ? TCP_FOOTER_LENGTH : 0));
+        ByteBuffer frame = ByteBuffer.wrap(mBuffer, mStart, frameLength).slice();
+        frame.order(ByteOrder.BIG_ENDIAN);
+        mStart += frameLength;
+        if (mIsTCP) {
+            mStart += TCP_FOOTER_LENGTH;
+        }
+        return frame;
+    }
+
+    /**
+     * Returns whether a complete frame has already been received, so that {@link #nextFrame()}
+     * will not block.
+     */
+    boolean hasBufferedFrame() {
+        int prefix = mIsTCP ? TCP_HEADER_LENGTH : 0;
+        int buffered = mEnd - mStart;
+        if (buffered < prefix + HEADER_LENGTH) {
+            return false;
+        }
+        int length = mHeader.getShort(mStart + prefix);
+        if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+            return true; // will be dropped without blocking
+        }
+        return buffered >= prefix + HEADER_LENGTH + length + (mIsTCP ? TCP_FOOTER_LENGTH : 0);
+    }
+
+    /**
+     * Reads until at least the given number of bytes after the current position is buffered.
+     */
+    private void fill(int count) throws IOException {
+        if (mEnd - mStart >= count) {
+            return;
+        }
+        if (mStart + count > mBuffer.length) {
+            // move the pending bytes to the beginning, to make room for the rest of the frame
+            System.arraycopy(mBuffer, mStart, mBuffer, 0, mEnd - mStart);
+            mEnd -= mStart;
+            mStart = 0;
+        }
+        while (mEnd - mStart < count) {
+            int read = mInStream.read(mBuffer, mEnd, mBuffer.length - mEnd);
+            if (read == -1) {
+                throw new IOException("broken pipe");
+            }
+            mEnd += read;
+        }
+    }
+
+    /**
+     * Drops everything that has been received so far, to get back in sync after a bad frame.
+     */
+    private void discardAvailable() throws IOException {
+        mStart = 0;
+        mEnd = 0;
+        while (mInStream.available() > 0) {
+            if (mInStream.read(mBuffer, 0, mBuffer.length) == -1) {
+                throw new IOException("broken pipe");
+            }
+        }
+    }
+}
@@ -40,6 +40,7 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.UUID;
@@ -85,6 +86,7 @@ class PebbleIoThread extends GBDeviceIoThread {
     private Socket mTCPSocket = null; // for emulator
     private InputStream mInStream = null;
     private OutputStream mOutStream = null;
+    private PebbleFrameReader mFrameReader = null;
     private PebbleLESupport mPebbleLESupport;
 
     private boolean mQuit = false;
@@ -155,14 +157,6 @@ class PebbleIoThread extends GBDeviceIoThread {
         mPebbleActiveAppTracker = new PebbleActiveAppTracker();
     }
 
-    private int readWithException(InputStream inputStream, byte[] buffer, int byteOffset, int byteCount) throws IOException {
-        int ret = inputStream.read(buffer, byteOffset, byteCount);
-        if (ret == -1) {
-            throw new IOException("broken pipe");
-        }
-        return ret;
-    }
-
     @Override
     protected boolean connect() {
         String deviceAddress = gbDevice.getAddress();
@@ -228,6 +222,7 @@ class PebbleIoThread extends GBDeviceIoThread {
 
         mPebbleProtocol.setForceProtocol(prefs.getBoolean("pebble_force_protocol", false));
 
+        mFrameReader = new PebbleFrameReader(mInStream, mIsTCP);
         mIsConnected = true;
         write(mPebbleProtocol.encodeFirmwareVersionReq());
         gbDevice.setState(GBDevice.State.CONNECTED);
@@ -247,7 +242,7 @@ class PebbleIoThread extends GBDeviceIoThread {
             return;
         }
 
-        byte[] buffer = new byte[8192];
+        byte[] buffer = new byte[2000];
         enablePebbleKitSupport(true);
         mQuit = false;
         while (!mQuit) {
@@ -265,6 +260,13 @@ class PebbleIoThread extends GBDeviceIoThread {
                         case START_INSTALL:
                             LOG.info("start installing app binary");
                             PebbleInstallable pi = mPebbleInstallables[mCurrentInstallableIndex];
+                            if (mFis != null) {
+                                try {
+                                    mFis.close();
+                                } catch (IOException e) {
+                                    // ignore
+                                }
+                            }
                             mFis = mPBWReader.getInputStreamFile(pi.getFileName());
                             mCRC = pi.getCRC();
                             mBinarySize = pi.getFileSize();
@@ -334,37 +336,20 @@ class PebbleIoThread extends GBDeviceIoThread {
                             break;
                     }
                 }
-                if (mIsTCP) {
-                    mInStream.skip(6);
-                }
-                int bytes = readWithException(mInStream, buffer, 0, 4);
-
-                while (bytes < 4) {
-                    bytes += readWithException(mInStream, buffer, bytes, 4 - bytes);
-                }
-
-                ByteBuffer buf = ByteBuffer.wrap(buffer);
-                buf.order(ByteOrder.BIG_ENDIAN);
-                short length = buf.getShort();
-                short endpoint = buf.getShort();
-                if (length < 0 || length > 8192) {
-                    LOG.info("invalid length " + length);
-                    while (mInStream.available() > 0) {
-                        readWithException(mInStream, buffer, 0, buffer.length); // read all
-                    }
+                ByteBuffer frame = mFrameReader.nextFrame();
+                if (frame == null) {
                     continue;
                 }
+                short length = frame.getShort(0);
+                short endpoint = frame.getShort(2);
 
-                bytes = readWithException(mInStream, buffer, 4, length);
-                while (bytes < length) {
-                    bytes += readWithException(mInStream, buffer, bytes + 4, length - bytes);
-                }
-
-                if (mIsTCP) {
-                    mInStream.skip(2);
+                GBDeviceEvent deviceEvents[];
+                try {
+                    deviceEvents = mPebbleProtocol.decodeResponse(frame);
+                } catch (BufferUnderflowException e) {
+                    LOG.warn("truncated message to endpoint " + endpoint + " (" + length + " bytes)");
+                    continue;
                 }
-
-                GBDeviceEvent deviceEvents[] = mPebbleProtocol.decodeResponse(buffer);
                 if (deviceEvents == null) {
                     LOG.info("unhandled message to endpoint " + endpoint + " (" + length + " bytes)");
                 } else {
@@ -377,6 +362,10 @@ class PebbleIoThread extends GBDeviceIoThread {
                         }
                     }
                 }
+                if (mFrameReader.hasBufferedFrame()) {
+                    // handle bursts, e.g. of datalog or app messages, without pausing
+                    continue;
+                }
                 try {
                     Thread.sleep(100);
                 } catch (InterruptedException e) {
@@ -425,6 +414,7 @@ class PebbleIoThread extends GBDeviceIoThread {
         }
 
         enablePebbleKitSupport(false);
+        mPebbleProtocol.closeDatalog();
 
         if (mQuit) {
             gbDevice.setState(GBDevice.State.NOT_CONNECTED);
@@ -629,6 +619,11 @@ class PebbleIoThread extends GBDeviceIoThread {
 
         String platformName = PebbleUtils.getPlatformName(gbDevice.getModel());
 
+        if (mPBWReader != null) {
+            // left over from a metadata only install
+            mPBWReader.close();
+            mPBWReader = null;
+        }
         try {
             mPBWReader = new PBWReader(uri, getContext(), platformName);
         } catch (FileNotFoundException e) {
@@ -729,7 +724,6 @@ class PebbleIoThread extends GBDeviceIoThread {
             writeInstallApp(mPebbleProtocol.encodeUploadCancel(mAppInstallToken));
         }
 
-        mPBWReader = null;
         mIsInstalling = false;
         mCurrentlyInstallingApp = null;
 
@@ -741,6 +735,10 @@ class PebbleIoThread extends GBDeviceIoThread {
             }
         }
         mFis = null;
+        if (mPBWReader != null) {
+            mPBWReader.close();
+            mPBWReader = null;
+        }
         mAppInstallToken = -1;
         mInstallSlot = -2;
     }
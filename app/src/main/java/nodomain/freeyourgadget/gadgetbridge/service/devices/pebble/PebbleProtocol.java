@@ -432,6 +432,7 @@ public class PebbleProtocol extends GBDeviceProtocol {
     }
 
     private final HashMap<Byte, DatalogSession> mDatalogSessions = new HashMap<>();
+    private DatalogHealthWriter mDatalogHealthWriter;
 
     private Integer[] idLookup = new Integer[256];
 
@@ -2210,6 +2211,22 @@ public class PebbleProtocol extends GBDeviceProtocol {
         return null;
     }
 
+    private DatalogHealthWriter getDatalogHealthWriter() {
+        if (mDatalogHealthWriter == null) {
+            mDatalogHealthWriter = new DatalogHealthWriter(getDevice());
+        }
+        return mDatalogHealthWriter;
+    }
+
+    /**
+     * Stores all datalog records that have not been stored yet, must be called when the connection ends.
+     */
+    void closeDatalog() {
+        if (mDatalogHealthWriter != null) {
+            mDatalogHealthWriter.close();
+        }
+    }
+
     private GBDeviceEvent[] decodeDatalog(ByteBuffer buf, short length) {
         byte command = buf.get();
         byte id = buf.get();
@@ -2231,6 +2248,10 @@ public class PebbleProtocol extends GBDeviceProtocol {
                     } else {
                         devEvtsDataLogging = datalogSession.handleMessage(buf, length - 10);
                     }
+                    if (devEvtsDataLogging != null && mDatalogHealthWriter != null && items_left * datalogSession.itemSize <= length - 10) {
+                        // the watch drops the records once they are ACKed, so store the end of its backlog right away
+                        mDatalogHealthWriter.flush();
+                    }
                 }
                 break;
             case DATALOG_OPENSESSION:
@@ -2245,13 +2266,13 @@ public class PebbleProtocol extends GBDeviceProtocol {
                     if (uuid.equals(UUID_ZERO) && log_tag == 78) {
                         mDatalogSessions.put(id, new DatalogSessionAnalytics(id, uuid, timestamp, log_tag, item_type, item_size, getDevice()));
                     } else if (uuid.equals(UUID_ZERO) && log_tag == 81) {
-                        mDatalogSessions.put(id, new DatalogSessionHealthSteps(id, uuid, timestamp, log_tag, item_type, item_size, getDevice()));
+                        mDatalogSessions.put(id, new DatalogSessionHealthSteps(id, uuid, timestamp, log_tag, item_type, item_size, getDatalogHealthWriter()));
                     } else if (uuid.equals(UUID_ZERO) && log_tag == 83) {
-                        mDatalogSessions.put(id, new DatalogSessionHealthSleep(id, uuid, timestamp, log_tag, item_type, item_size, getDevice()));
+                        mDatalogSessions.put(id, new DatalogSessionHealthSleep(id, uuid, timestamp, log_tag, item_type, item_size, getDatalogHealthWriter()));
                     } else if (uuid.equals(UUID_ZERO) && log_tag == 84) {
-                        mDatalogSessions.put(id, new DatalogSessionHealthOverlayData(id, uuid, timestamp, log_tag, item_type, item_size, getDevice()));
+                        mDatalogSessions.put(id, new DatalogSessionHealthOverlayData(id, uuid, timestamp, log_tag, item_type, item_size, getDatalogHealthWriter()));
                     } else if (uuid.equals(UUID_ZERO) && log_tag == 85) {
-                        mDatalogSessions.put(id, new DatalogSessionHealthHR(id, uuid, timestamp, log_tag, item_type, item_size, getDevice()));
+                        mDatalogSessions.put(id, new DatalogSessionHealthHR(id, uuid, timestamp, log_tag, item_type, item_size, getDatalogHealthWriter()));
                     } else {
                         mDatalogSessions.put(id, new DatalogSession(id, uuid, timestamp, log_tag, item_type, item_size));
                     }
@@ -2269,6 +2290,7 @@ public class PebbleProtocol extends GBDeviceProtocol {
                         dataLogging.tag = datalogSession.tag;
                         devEvtsDataLogging = new GBDeviceEvent[]{dataLogging, null};
                     }
+                    datalogSession.close();
                     mDatalogSessions.remove(id);
                 }
                 break;
@@ -2346,7 +2368,14 @@ public class PebbleProtocol extends GBDeviceProtocol {
 
     @Override
     public GBDeviceEvent[] decodeResponse(byte[] responseData) {
-        ByteBuffer buf = ByteBuffer.wrap(responseData);
+        return decodeResponse(ByteBuffer.wrap(responseData));
+    }
+
+    /**
+     * Decodes a frame starting with the header at the current position of the buffer. The
+     * buffer may be a slice of a larger one, its position is advanced while decoding.
+     */
+    public GBDeviceEvent[] decodeResponse(ByteBuffer buf) {
         buf.order(ByteOrder.BIG_ENDIAN);
         short length = buf.getShort();
         short endpoint = buf.getShort();
@@ -16,46 +16,33 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.zip.CRC32;
+import java.util.zip.Checksum;
 
+/**
+ * Checksums used by the devices. Besides computing them over a whole array, they can be
+ * computed incrementally with the {@link Checksum} implementations, e.g. while streaming a
+ * file with {@link #update(Checksum, InputStream)}. For CRC32, use {@link CRC32}.
+ */
 public class CheckSums {
     public static int getCRC8(byte[] seq) {
-        int len = seq.length;
-        int i = 0;
-        byte crc = 0x00;
-
-        while (len-- > 0) {
-            byte extract = seq[i++];
-            for (byte tempI = 8; tempI != 0; tempI--) {
-                byte sum = (byte) ((crc & 0xff) ^ (extract & 0xff));
-                sum = (byte) ((sum & 0xff) & 0x01);
-                crc = (byte) ((crc & 0xff) >>> 1);
-                if (sum != 0) {
-                    crc = (byte) ((crc & 0xff) ^ 0x8c);
-                }
-                extract = (byte) ((extract & 0xff) >>> 1);
-            }
-        }
-        return (crc & 0xff);
+        return getCRC8(seq, 0, seq.length);
+    }
+
+    public static int getCRC8(byte[] seq, int offset, int length) {
+        CRC8 crc = new CRC8();
+        crc.update(seq, offset, length);
+        return (int) crc.getValue();
     }
 
-    //thanks http://stackoverflow.com/questions/13209364/convert-c-crc16-to-java-crc16
     public static int getCRC16(byte[] seq) {
-        int crc = 0xFFFF;
-
-        for (byte b : seq) {
-            crc = ((crc >>> 8) | (crc << 8)) & 0xffff;
-            crc ^= (b & 0xff);//byte to int, trunc sign
-            crc ^= ((crc & 0xff) >> 4);
-            crc ^= (crc << 12) & 0xffff;
-            crc ^= ((crc & 0xFF) << 5) & 0xffff;
-        }
-        crc &= 0xffff;
-        return crc;
+        CRC16 crc = new CRC16();
+        crc.update(seq, 0, seq.length);
+        return (int) crc.getValue();
     }
 
     public static int getCRC32(byte[] seq) {
@@ -64,31 +51,138 @@ public class CheckSums {
         return (int) (crc.getValue());
     }
 
+    /**
+     * Feeds all remaining data of the given stream to the given checksums, without closing the stream.
+     *
+     * @return the number of bytes read
+     */
+    public static long update(InputStream in, Checksum... checksums) throws IOException {
+        byte[] buf = new byte[8192];
+        long totalRead = 0;
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            for (Checksum checksum : checksums) {
+                checksum.update(buf, 0, read);
+            }
+            totalRead += read;
+        }
+        return totalRead;
+    }
+
+    /**
+     * Feeds the remaining data of the given buffer to the given checksum, and consumes it.
+     */
+    public static void update(Checksum checksum, ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            checksum.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        } else {
+            byte[] buf = new byte[Math.min(8192, buffer.remaining())];
+            while (buffer.hasRemaining()) {
+                int length = Math.min(buf.length, buffer.remaining());
+                buffer.get(buf, 0, length);
+                checksum.update(buf, 0, length);
+            }
+        }
+    }
+
+    /**
+     * CRC-8 with the reflected polynomial 0x8c (Dallas/Maxim), as used by the Mi Band.
+     */
+    public static class CRC8 implements Checksum {
+        private static final int[] TABLE = new int[256];
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                int crc = i;
+                for (int bit = 0; bit < 8; bit++) {
+                    crc = (crc & 0x01) != 0 ? (crc >>> 1) ^ 0x8c : crc >>> 1;
+                }
+                TABLE[i] = crc;
+            }
+        }
+
+        private int crc;
+
+        @Override
+        public void update(int b) {
+            crc = TABLE[(crc ^ b) & 0xff];
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            int value = crc;
+            for (int i = off; i < off + len; i++) {
+                value = TABLE[(value ^ b[i]) & 0xff];
+            }
+            crc = value;
+        }
+
+        @Override
+        public long getValue() {
+            return crc;
+        }
+
+        @Override
+        public void reset() {
+            crc = 0;
+        }
+    }
+
+    /**
+     * CRC-16 with the polynomial 0x1021 and the initial value 0xffff (CCITT-FALSE),
+     * as used by the Huami devices.
+     */
+    public static class CRC16 implements Checksum {
+        private static final int[] TABLE = new int[256];
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                int crc = i << 8;
+                for (int bit = 0; bit < 8; bit++) {
+                    crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+                }
+                TABLE[i] = crc & 0xffff;
+            }
+        }
+
+        private int crc = 0xffff;
+
+        @Override
+        public void update(int b) {
+            crc = ((crc << 8) ^ TABLE[((crc >>> 8) ^ b) & 0xff]) & 0xffff;
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            int value = crc;
+            for (int i = off; i < off + len; i++) {
+                value = ((value << 8) ^ TABLE[((value >>> 8) ^ b[i]) & 0xff]) & 0xffff;
+            }
+            crc = value;
+        }
+
+        @Override
+        public long getValue() {
+            return crc;
+        }
+
+        @Override
+        public void reset() {
+            crc = 0xffff;
+        }
+    }
+
     public static void main(String[] args) throws IOException {
         if (args == null || args.length == 0) {
             throw new IllegalArgumentException("Pass the files to be checksummed as arguments");
         }
         for (String name : args) {
             try (FileInputStream in = new FileInputStream(name)) {
-                byte[] bytes = readAll(in, 1000 * 1000);
-                System.out.println(name + " : " + getCRC16(bytes));
-            }
-        }
-    }
-
-    // copy&paste of FileUtils.readAll() to have it free from Android dependencies
-    private static byte[] readAll(InputStream in, long maxLen) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(8192, in.available()));
-        byte[] buf = new byte[8192];
-        int read;
-        long totalRead = 0;
-        while ((read = in.read(buf)) > 0) {
-            out.write(buf, 0, read);
-            totalRead += read;
-            if (totalRead > maxLen) {
-                throw new IOException("Too much data to read into memory. Got already " + totalRead);
+                CRC16 crc = new CRC16();
+                update(in, crc);
+                System.out.println(name + " : " + crc.getValue());
             }
         }
-        return out.toByteArray();
     }
 }
@@ -40,6 +40,7 @@ import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinatorIndex;
 import nodomain.freeyourgadget.gadgetbridge.devices.UnknownDeviceCoordinator;
 import nodomain.freeyourgadget.gadgetbridge.devices.casiogb6900.CasioGB6900DeviceCoordinator;
 import nodomain.freeyourgadget.gadgetbridge.devices.hplus.EXRIZUK8Coordinator;
@@ -86,25 +87,14 @@ public class DeviceHelper {
     }
 
     // lazily created
-    private List<DeviceCoordinator> coordinators;
+    private volatile DeviceCoordinatorIndex coordinatorIndex;
 
     public DeviceType getSupportedType(GBDeviceCandidate candidate) {
-        for (DeviceCoordinator coordinator : getAllCoordinators()) {
-            DeviceType deviceType = coordinator.getSupportedType(candidate);
-            if (deviceType.isSupported()) {
-                return deviceType;
-            }
-        }
-        return DeviceType.UNKNOWN;
+        return getCoordinatorIndex().getSupportedType(candidate);
     }
 
     public boolean getSupportedType(GBDevice device) {
-        for (DeviceCoordinator coordinator : getAllCoordinators()) {
-            if (coordinator.supports(device)) {
-                return true;
-            }
-        }
-        return false;
+        return getCoordinatorIndex().findCoordinator(device) != null;
     }
 
     public GBDevice findAvailableDevice(String deviceAddress, Context context) {
@@ -162,41 +152,45 @@ public class DeviceHelper {
     }
 
     public GBDevice toSupportedDevice(GBDeviceCandidate candidate) {
-        for (DeviceCoordinator coordinator : getAllCoordinators()) {
-            if (coordinator.supports(candidate)) {
-                return coordinator.createDevice(candidate);
-            }
+        DeviceCoordinator coordinator = getCoordinatorIndex().findCoordinator(candidate);
+        if (coordinator != null) {
+            return coordinator.createDevice(candidate);
         }
         return null;
     }
 
     public DeviceCoordinator getCoordinator(GBDeviceCandidate device) {
-        synchronized (this) {
-            for (DeviceCoordinator coord : getAllCoordinators()) {
-                if (coord.supports(device)) {
-                    return coord;
-                }
-            }
+        DeviceCoordinator coordinator = getCoordinatorIndex().findCoordinator(device);
+        if (coordinator != null) {
+            return coordinator;
         }
         return new UnknownDeviceCoordinator();
     }
 
     public DeviceCoordinator getCoordinator(GBDevice device) {
-        synchronized (this) {
-            for (DeviceCoordinator coord : getAllCoordinators()) {
-                if (coord.supports(device)) {
-                    return coord;
-                }
-            }
+        DeviceCoordinator coordinator = getCoordinatorIndex().findCoordinator(device);
+        if (coordinator != null) {
+            return coordinator;
         }
         return new UnknownDeviceCoordinator();
     }
 
-    public synchronized List<DeviceCoordinator> getAllCoordinators() {
-        if (coordinators == null) {
-            coordinators = createCoordinators();
+    public List<DeviceCoordinator> getAllCoordinators() {
+        return getCoordinatorIndex().getAllCoordinators();
+    }
+
+    private DeviceCoordinatorIndex getCoordinatorIndex() {
+        DeviceCoordinatorIndex index = coordinatorIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = coordinatorIndex;
+                if (index == null) {
+                    index = new DeviceCoordinatorIndex(createCoordinators());
+                    coordinatorIndex = index;
+                }
+            }
         }
-        return coordinators;
+        return index;
     }
 
     private List<DeviceCoordinator> createCoordinators() {
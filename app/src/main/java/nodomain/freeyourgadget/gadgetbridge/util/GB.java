@@ -64,6 +64,7 @@ public class GB {
     public static final int NOTIFICATION_ID_LOW_BATTERY = 3;
     public static final int NOTIFICATION_ID_TRANSFER = 4;
     public static final int NOTIFICATION_ID_EXPORT_FAILED = 5;
+    public static final int NOTIFICATION_ID_EXPORT = 6;
 
     private static final Logger LOG = LoggerFactory.getLogger(GB.class);
     public static final int INFO = 1;
@@ -486,6 +487,25 @@ public class GB {
         removeNotification(NOTIFICATION_ID_EXPORT_FAILED, context);
     }
 
+    public static Notification createExportNotification(String text, Context context) {
+        NotificationCompat.Builder nb = new NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_ID)
+                .setContentTitle(context.getString(R.string.notif_export_finished_title))
+                .setContentText(text)
+                .setSmallIcon(R.drawable.ic_notification)
+                .setPriority(Notification.PRIORITY_LOW)
+                .setOngoing(false);
+
+        return nb.build();
+    }
+
+    public static void updateExportNotification(String text, Context context) {
+        if (GBEnvironment.env().isLocalTest()) {
+            return;
+        }
+        Notification notification = createExportNotification(text, context);
+        updateNotification(notification, NOTIFICATION_ID_EXPORT, context);
+    }
+
 
     public static void assertThat(boolean condition, String errorMessage) {
         if (!condition) {
@@ -0,0 +1,242 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import java.util.Locale;
+
+import androidx.annotation.Nullable;
+
+/**
+ * A thread-safe least-recently-used cache with primitive int keys.
+ * <p/>
+ * Lookups, insertions and removals are O(1). When the cache is full, the entry that has
+ * not been accessed for the longest time is evicted. Optionally, entries also expire a
+ * fixed time after they have been added.
+ * <p/>
+ * Hits, misses and evictions are counted for debugging purposes.
+ *
+ * @param <V> the type of the cached values
+ */
+public class IntLruCache<V> {
+    public static final long NO_EXPIRY = 0;
+
+    private final int maxSize;
+    private final long maxAgeMillis;
+    private final Entry<V>[] table;
+    private final int mask;
+    /**
+     * Sentinel of the circular access order list, head.after is the least recently used entry.
+     */
+    private final Entry<V> head = new Entry<>(0, null, 0);
+    private int size;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public IntLruCache(int maxSize) {
+        this(maxSize, NO_EXPIRY);
+    }
+
+    /**
+     * @param maxSize      the maximum number of entries
+     * @param maxAgeMillis the time after which entries expire, or {@link #NO_EXPIRY}
+     */
+    @SuppressWarnings("unchecked")
+    public IntLruCache(int maxSize, long maxAgeMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        if (maxAgeMillis < 0) {
+            throw new IllegalArgumentException("maxAgeMillis must not be negative: " + maxAgeMillis);
+        }
+        this.maxSize = maxSize;
+        this.maxAgeMillis = maxAgeMillis;
+        int capacity = Integer.highestOneBit(Math.max(maxSize, 2) * 2 - 1) * 2;
+        table = (Entry<V>[]) new Entry[capacity];
+        mask = capacity - 1;
+        head.before = head;
+        head.after = head;
+    }
+
+    /**
+     * Returns the value for the given key and marks it as recently used.
+     *
+     * @return the value, or null if there is none or it has expired
+     */
+    @Nullable
+    public synchronized V get(int key) {
+        Entry<V> entry = find(key);
+        if (entry != null && isExpired(entry)) {
+            removeEntry(entry);
+            evictionCount++;
+            entry = null;
+        }
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        unlink(entry);
+        linkLast(entry);
+        return entry.value;
+    }
+
+    /**
+     * Adds or replaces the value for the given key, evicting the least recently
+     * used entry if the cache is full.
+     */
+    public synchronized void put(int key, V value) {
+        Entry<V> entry = find(key);
+        if (entry != null) {
+            entry.value = value;
+            entry.created = now();
+            unlink(entry);
+            linkLast(entry);
+            return;
+        }
+        if (size >= maxSize) {
+            removeEntry(head.after);
+            evictionCount++;
+        }
+        entry = new Entry<>(key, value, now());
+        int index = indexFor(key);
+        entry.next = table[index];
+        table[index] = entry;
+        linkLast(entry);
+        size++;
+    }
+
+    /**
+     * Removes the value for the given key.
+     *
+     * @return the removed value, or null if there was none
+     */
+    @Nullable
+    public synchronized V remove(int key) {
+        Entry<V> entry = find(key);
+        if (entry == null) {
+            return null;
+        }
+        removeEntry(entry);
+        return entry.value;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = null;
+        }
+        head.before = head;
+        head.after = head;
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hitCount + missCount;
+        int hitPercent = lookups > 0 ? (int) (100 * hitCount / lookups) : 0;
+        return String.format(Locale.US, "IntLruCache[size=%d/%d, hits=%d, misses=%d, evictions=%d, hit rate=%d%%]",
+                size, maxSize, hitCount, missCount, evictionCount, hitPercent);
+    }
+
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return maxAgeMillis != NO_EXPIRY && now() - entry.created >= maxAgeMillis;
+    }
+
+    private int indexFor(int key) {
+        int h = key * 0x9E3779B9; // spread sequential ids over the table
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private Entry<V> find(int key) {
+        for (Entry<V> entry = table[indexFor(key)]; entry != null; entry = entry.next) {
+            if (entry.key == key) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void removeEntry(Entry<V> entry) {
+        int index = indexFor(entry.key);
+        Entry<V> previous = null;
+        for (Entry<V> current = table[index]; current != null; current = current.next) {
+            if (current == entry) {
+                if (previous == null) {
+                    table[index] = current.next;
+                } else {
+                    previous.next = current.next;
+                }
+                break;
+            }
+            previous = current;
+        }
+        unlink(entry);
+        size--;
+    }
+
+    private void linkLast(Entry<V> entry) {
+        entry.before = head.before;
+        entry.after = head;
+        head.before.after = entry;
+        head.before = entry;
+    }
+
+    private void unlink(Entry<V> entry) {
+        entry.before.after = entry.after;
+        entry.after.before = entry.before;
+    }
+
+    private static final class Entry<V> {
+        final int key;
+        V value;
+        long created;
+        Entry<V> next;
+        Entry<V> before;
+        Entry<V> after;
+
+        Entry(int key, V value, long created) {
+            this.key = key;
+            this.value = value;
+            this.created = created;
+        }
+    }
+}
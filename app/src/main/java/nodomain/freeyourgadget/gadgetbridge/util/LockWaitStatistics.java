@@ -0,0 +1,99 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import java.util.Locale;
+
+/**
+ * Collects how long threads had to wait for a lock, in order to see contention.
+ * Thread-safe.
+ */
+public class LockWaitStatistics {
+    private final String name;
+    private long acquisitions;
+    private long contended;
+    private long failures;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    public LockWaitStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records one successful acquisition of the lock.
+     *
+     * @param waitNanos how long the thread had to wait for the lock
+     */
+    public synchronized void recordAcquired(long waitNanos) {
+        acquisitions++;
+        // anything below a millisecond is just the overhead of locking
+        if (waitNanos >= 1000000) {
+            contended++;
+        }
+        totalWaitNanos += waitNanos;
+        maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+    }
+
+    /**
+     * Records that the lock could not be acquired in time.
+     */
+    public synchronized void recordFailed(long waitNanos) {
+        failures++;
+        totalWaitNanos += waitNanos;
+        maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+    }
+
+    public synchronized long getAcquisitions() {
+        return acquisitions;
+    }
+
+    /**
+     * Returns the number of acquisitions that had to wait for at least a millisecond.
+     */
+    public synchronized long getContended() {
+        return contended;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public synchronized long getTotalWaitMillis() {
+        return totalWaitNanos / 1000000;
+    }
+
+    public synchronized long getMaxWaitMillis() {
+        return maxWaitNanos / 1000000;
+    }
+
+    public synchronized void reset() {
+        acquisitions = 0;
+        contended = 0;
+        failures = 0;
+        totalWaitNanos = 0;
+        maxWaitNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long count = acquisitions + failures;
+        double averageMillis = count > 0 ? totalWaitNanos / 1e6 / count : 0;
+        return String.format(Locale.US, "%s lock: %d acquisitions, %d contended, %d failed, wait avg %.2f ms, max %d ms, total %d ms",
+                name, acquisitions, contended, failures, averageMillis, getMaxWaitMillis(), getTotalWaitMillis());
+    }
+}
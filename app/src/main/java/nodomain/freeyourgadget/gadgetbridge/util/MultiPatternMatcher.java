@@ -0,0 +1,205 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds several literal substrings in a text with a single pass over the text (Aho-Corasick).
+ * <p/>
+ * Matching is case sensitive and equivalent to calling {@link String#contains(CharSequence)}
+ * for every pattern, but the cost depends only on the length of the text, not on the number
+ * of patterns. Instances are immutable and can be shared between threads.
+ */
+public class MultiPatternMatcher {
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final int patternCount;
+    private final boolean hasEmptyPattern;
+    /** Per state: the sorted transition characters and their target states. */
+    private final char[][] transitionChars;
+    private final int[][] transitionTargets;
+    private final int[] failure;
+    /** Per state: the indices of all patterns that end in this state, including via failure links. */
+    private final int[][] output;
+
+    public MultiPatternMatcher(Collection<String> patterns) {
+        Set<String> distinct = new LinkedHashSet<>(patterns);
+        boolean emptyPattern = distinct.remove("");
+        hasEmptyPattern = emptyPattern;
+        patternCount = distinct.size() + (emptyPattern ? 1 : 0);
+
+        // build the trie
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        trie.add(new HashMap<Character, Integer>());
+        ends.add(new ArrayList<Integer>());
+        int patternIndex = 0;
+        for (String pattern : distinct) {
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Character c = pattern.charAt(i);
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new HashMap<Character, Integer>());
+                    ends.add(new ArrayList<Integer>());
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            ends.get(state).add(patternIndex++);
+        }
+
+        int stateCount = trie.size();
+        transitionChars = new char[stateCount][];
+        transitionTargets = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            Map<Character, Integer> children = trie.get(state);
+            char[] chars = new char[children.size()];
+            int i = 0;
+            for (Character c : children.keySet()) {
+                chars[i++] = c;
+            }
+            Arrays.sort(chars);
+            int[] targets = new int[chars.length];
+            for (i = 0; i < chars.length; i++) {
+                targets[i] = children.get(chars[i]);
+            }
+            transitionChars[state] = chars;
+            transitionTargets[state] = targets;
+        }
+
+        // compute failure links and outputs breadth first, so that the failure
+        // target of every state is complete before the state itself is visited
+        failure = new int[stateCount];
+        output = new int[stateCount][];
+        output[0] = NO_OUTPUT;
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int child : transitionTargets[0]) {
+            failure[child] = 0;
+            output[child] = toArray(ends.get(child), NO_OUTPUT);
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            char[] chars = transitionChars[state];
+            int[] targets = transitionTargets[state];
+            for (int i = 0; i < chars.length; i++) {
+                int child = targets[i];
+                int fail = failure[state];
+                int next;
+                while ((next = transition(fail, chars[i])) < 0 && fail != 0) {
+                    fail = failure[fail];
+                }
+                failure[child] = next < 0 ? 0 : next;
+                output[child] = toArray(ends.get(child), output[failure[child]]);
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct patterns
+     */
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * @return true if at least one of the patterns occurs in the given text
+     */
+    public boolean containsAny(CharSequence text) {
+        if (hasEmptyPattern) {
+            return true;
+        }
+        if (text == null) {
+            return false;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            if (output[state].length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if every one of the patterns occurs in the given text
+     */
+    public boolean containsAll(CharSequence text) {
+        int remaining = hasEmptyPattern ? patternCount - 1 : patternCount;
+        if (remaining == 0) {
+            return true;
+        }
+        if (text == null) {
+            return false;
+        }
+        boolean[] found = new boolean[remaining];
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            for (int pattern : output[state]) {
+                if (!found[pattern]) {
+                    found[pattern] = true;
+                    if (--remaining == 0) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private int step(int state, char c) {
+        int next;
+        while ((next = transition(state, c)) < 0) {
+            if (state == 0) {
+                return 0;
+            }
+            state = failure[state];
+        }
+        return next;
+    }
+
+    private int transition(int state, char c) {
+        int index = Arrays.binarySearch(transitionChars[state], c);
+        return index >= 0 ? transitionTargets[state][index] : -1;
+    }
+
+    private static int[] toArray(List<Integer> own, int[] inherited) {
+        if (own.isEmpty()) {
+            return inherited;
+        }
+        int[] result = Arrays.copyOf(inherited, inherited.length + own.size());
+        for (int i = 0; i < own.size(); i++) {
+            result[inherited.length + i] = own.get(i);
+        }
+        return result;
+    }
+}
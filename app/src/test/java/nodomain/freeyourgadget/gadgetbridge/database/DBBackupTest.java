@@ -0,0 +1,231 @@
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DBBackupTest extends TestBase {
+
+    private static SQLiteDatabase createDatabase(File file) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        db.execSQL("CREATE TABLE SAMPLE (TIMESTAMP INTEGER NOT NULL, DEVICE_ID INTEGER NOT NULL, STEPS INTEGER, PRIMARY KEY (TIMESTAMP, DEVICE_ID))");
+        db.execSQL("CREATE TABLE DEVICE (_id INTEGER PRIMARY KEY, NAME TEXT)");
+        db.execSQL("INSERT INTO DEVICE VALUES (1, 'first')");
+        return db;
+    }
+
+    private static void addSample(SQLiteDatabase db, int timestamp, int steps) {
+        db.execSQL("INSERT OR REPLACE INTO SAMPLE VALUES (?, 1, ?)", new Object[]{timestamp, steps});
+    }
+
+    private static int count(SQLiteDatabase db, String table) {
+        try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + table, null)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    private static String queryString(SQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            cursor.moveToFirst();
+            return cursor.getString(0);
+        }
+    }
+
+    @Test
+    public void testCompressedExport() throws Exception {
+        File dir = FileUtils.createTempDir("dbbackup");
+        SQLiteDatabase db = createDatabase(new File(dir, "test.db"));
+        addSample(db, 100, 1);
+        db.close();
+
+        DBBackup backup = new DBBackup(getContext(), new File(dir, "test.db"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DBBackup.Stats stats = backup.exportDB(out, true);
+        assertEquals(new File(dir, "test.db").length(), stats.getBytesRead());
+        assertEquals(out.size(), stats.getBytesWritten());
+
+        File restored = new File(dir, "restored.db");
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())); OutputStream restoredOut = new FileOutputStream(restored)) {
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                restoredOut.write(buffer, 0, count);
+            }
+        }
+        SQLiteDatabase restoredDb = SQLiteDatabase.openDatabase(restored.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        assertEquals(1, count(restoredDb, "SAMPLE"));
+        restoredDb.close();
+    }
+
+    @Test
+    public void testIncrementalExport() throws Exception {
+        File dir = FileUtils.createTempDir("dbbackup");
+        File exportDir = new File(dir, "export");
+        ExportDirectory export = ExportDirectory.of(exportDir);
+        File dbFile = new File(dir, "test.db");
+        SQLiteDatabase db = createDatabase(dbFile);
+        addSample(db, 100, 1);
+        addSample(db, 200, 2);
+
+        DBBackup backup = new DBBackup(getContext(), dbFile);
+        backup.exportIncremental(export, false);
+        assertTrue(new File(exportDir, "base.db.gz").exists());
+
+        addSample(db, 300, 3);
+        db.execSQL("UPDATE DEVICE SET NAME = 'renamed'");
+        db.execSQL("INSERT INTO DEVICE VALUES (2, 'second')");
+        backup.exportIncremental(export, false);
+
+        addSample(db, 400, 4);
+        backup.exportIncremental(export, false);
+        db.close();
+
+        File chunk = new File(exportDir, "chunk-000000.db.gz");
+        assertTrue(chunk.exists());
+        assertTrue(new File(exportDir, "chunk-000001.db.gz").exists());
+
+        File restored = backup.restoreIncremental(export);
+        SQLiteDatabase restoredDb = SQLiteDatabase.openDatabase(restored.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        assertEquals(4, count(restoredDb, "SAMPLE"));
+        assertEquals("4", queryString(restoredDb, "SELECT STEPS FROM SAMPLE WHERE TIMESTAMP = 400"));
+        assertEquals(2, count(restoredDb, "DEVICE"));
+        assertEquals("renamed", queryString(restoredDb, "SELECT NAME FROM DEVICE WHERE _id = 1"));
+        restoredDb.close();
+        assertTrue(restored.delete());
+
+        // a new base replaces the chunks
+        backup.exportIncremental(export, true);
+        assertFalse(chunk.exists());
+    }
+
+    @Test
+    public void testOlderSampleAfterExport() throws Exception {
+        File dir = FileUtils.createTempDir("dbbackup");
+        File exportDir = new File(dir, "export");
+        ExportDirectory export = ExportDirectory.of(exportDir);
+        File dbFile = new File(dir, "test.db");
+        SQLiteDatabase db = createDatabase(dbFile);
+        addSample(db, 100, 1);
+        addSample(db, 300, 3);
+
+        DBBackup backup = new DBBackup(getContext(), dbFile);
+        backup.exportIncremental(export, false);
+
+        // synced late from another device, older than the exported samples
+        addSample(db, 200, 2);
+        backup.exportIncremental(export, false);
+        db.close();
+        assertTrue(new File(exportDir, "chunk-000000.db.gz").exists());
+
+        File restored = backup.restoreIncremental(export);
+        SQLiteDatabase restoredDb = SQLiteDatabase.openDatabase(restored.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        assertEquals(3, count(restoredDb, "SAMPLE"));
+        assertEquals("2", queryString(restoredDb, "SELECT STEPS FROM SAMPLE WHERE TIMESTAMP = 200"));
+        restoredDb.close();
+        assertTrue(restored.delete());
+    }
+
+    @Test
+    public void testDeletedAndUpdatedRows() throws Exception {
+        File dir = FileUtils.createTempDir("dbbackup");
+        File exportDir = new File(dir, "export");
+        ExportDirectory export = ExportDirectory.of(exportDir);
+        File dbFile = new File(dir, "test.db");
+        SQLiteDatabase db = createDatabase(dbFile);
+        db.execSQL("INSERT INTO DEVICE VALUES (2, 'second')");
+        addSample(db, 100, 1);
+        addSample(db, 200, 2);
+        addSample(db, 300, 3);
+
+        DBBackup backup = new DBBackup(getContext(), dbFile);
+        backup.exportIncremental(export, false);
+
+        db.execSQL("DELETE FROM SAMPLE WHERE TIMESTAMP = 100");
+        db.execSQL("UPDATE SAMPLE SET STEPS = 20 WHERE TIMESTAMP = 200");
+        db.execSQL("DELETE FROM DEVICE WHERE _id = 2");
+        backup.exportIncremental(export, false);
+        assertTrue(new File(exportDir, "chunk-000000.db.gz").exists());
+
+        // deleted and added again
+        db.execSQL("DELETE FROM SAMPLE WHERE TIMESTAMP = 200");
+        addSample(db, 200, 200);
+        backup.exportIncremental(export, false);
+        assertTrue(new File(exportDir, "chunk-000001.db.gz").exists());
+
+        File restored = backup.restoreIncremental(export);
+        SQLiteDatabase restoredDb = SQLiteDatabase.openDatabase(restored.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        assertEquals(2, count(restoredDb, "SAMPLE"));
+        assertEquals(0, count(restoredDb, "SAMPLE WHERE TIMESTAMP = 100"));
+        assertEquals("200", queryString(restoredDb, "SELECT STEPS FROM SAMPLE WHERE TIMESTAMP = 200"));
+        assertEquals(1, count(restoredDb, "DEVICE"));
+        // the change log is not part of the export
+        assertEquals(0, count(restoredDb, "sqlite_master WHERE name LIKE 'EXPORT%'"));
+        restoredDb.close();
+        assertTrue(restored.delete());
+    }
+
+    @Test
+    public void testReusedRowid() throws Exception {
+        File dir = FileUtils.createTempDir("dbbackup");
+        File exportDir = new File(dir, "export");
+        ExportDirectory export = ExportDirectory.of(exportDir);
+        File dbFile = new File(dir, "test.db");
+        SQLiteDatabase db = createDatabase(dbFile);
+        addSample(db, 100, 1);
+        addSample(db, 300, 3);
+
+        DBBackup backup = new DBBackup(getContext(), dbFile);
+        backup.exportIncremental(export, false);
+
+        // the new sample gets the rowid of the deleted one
+        db.execSQL("DELETE FROM SAMPLE WHERE TIMESTAMP = 300");
+        addSample(db, 200, 2);
+        backup.exportIncremental(export, false);
+        db.close();
+        assertFalse(new File(exportDir, "chunk-000000.db.gz").exists());
+
+        File restored = backup.restoreIncremental(export);
+        SQLiteDatabase restoredDb = SQLiteDatabase.openDatabase(restored.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        assertEquals(2, count(restoredDb, "SAMPLE"));
+        assertEquals("2", queryString(restoredDb, "SELECT STEPS FROM SAMPLE WHERE TIMESTAMP = 200"));
+        restoredDb.close();
+        assertTrue(restored.delete());
+    }
+
+    @Test
+    public void testSnapshotKeepsSchema() throws Exception {
+        File dir = FileUtils.createTempDir("dbbackup");
+        File dbFile = new File(dir, "test.db");
+        SQLiteDatabase db = createDatabase(dbFile);
+        db.execSQL("CREATE INDEX IDX_SAMPLE_STEPS ON SAMPLE (STEPS)");
+        db.setVersion(42);
+        addSample(db, 100, 1);
+
+        File exported = new DBBackup(getContext(), dbFile).exportDB(new File(dir, "export"));
+        db.close();
+
+        SQLiteDatabase exportedDb = SQLiteDatabase.openDatabase(exported.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        assertEquals(42, exportedDb.getVersion());
+        assertEquals(1, count(exportedDb, "sqlite_master WHERE type = 'index' AND name = 'IDX_SAMPLE_STEPS'"));
+        assertEquals(1, count(exportedDb, "SAMPLE"));
+        assertEquals("first", queryString(exportedDb, "SELECT NAME FROM DEVICE WHERE _id = 1"));
+        exportedDb.close();
+    }
+}
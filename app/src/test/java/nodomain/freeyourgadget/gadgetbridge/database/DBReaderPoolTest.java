@@ -0,0 +1,77 @@
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DBReaderPoolTest extends TestBase {
+
+    @Test
+    public void testReadWhileWriteLockIsHeld() throws Exception {
+        // the test itself holds the exclusive lock, see TestBase
+        DBHelper.getUser(daoSession);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> userCount = executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    try (DBHandler reader = GBApplication.acquireReadOnlyDB()) {
+                        assertNotSame(daoSession, reader.getDaoSession());
+                        return reader.getDaoSession().getUserDao().count();
+                    }
+                }
+            });
+            assertEquals(Long.valueOf(1), userCount.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(GBApplication.getDBReaderStatistics().getAcquisitions() > 0);
+    }
+
+    @Test
+    public void testPoolSizeAndClose() throws Exception {
+        DBReaderPool pool = new DBReaderPool(2);
+        pool.open(dbHandler.getDaoMaster(), dbHandler.getHelper());
+
+        DBHandler first = pool.acquire(1, TimeUnit.SECONDS);
+        DBHandler second = pool.acquire(1, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertNotNull(second);
+        // all readers in use
+        assertNull(pool.acquire(10, TimeUnit.MILLISECONDS));
+
+        first.close();
+        DBHandler third = pool.acquire(1, TimeUnit.SECONDS);
+        assertNotNull(third);
+        second.close();
+        third.close();
+
+        pool.close(1, TimeUnit.SECONDS);
+        assertNull(pool.acquire(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadersCannotCloseTheDatabase() throws Exception {
+        DBReaderPool pool = new DBReaderPool(1);
+        DaoMaster daoMaster = dbHandler.getDaoMaster();
+        pool.open(daoMaster, dbHandler.getHelper());
+        try (DBHandler reader = pool.acquire(1, TimeUnit.SECONDS)) {
+            assertNotNull(reader);
+            reader.closeDb();
+        }
+    }
+}
@@ -5,17 +5,22 @@ import org.junit.Test;
 import java.util.List;
 
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBand2SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.ActivityRollup;
 import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.User;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmount;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
 import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
@@ -170,4 +175,179 @@ public class SampleProviderTest extends TestBase {
         sleepSamples = sampleProvider.getSleepSamples(1500, 2500);
         assertEquals(1, sleepSamples.size());
     }
+
+    @Test
+    public void testSampleRangeQuery() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+        Device otherDevice = DBHelper.getDevice(createDummyGDevice("00:00:00:00:11"), daoSession);
+
+        MiBandActivitySample[] samples = new MiBandActivitySample[4];
+        samples[0] = createSample(sampleProvider, MiBandSampleProvider.TYPE_LIGHT_SLEEP, 400, 10, 60, 0, user, device);
+        samples[1] = createSample(sampleProvider, MiBandSampleProvider.TYPE_DEEP_SLEEP, 300, 10, 60, 0, user, device);
+        samples[2] = createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, 200, 10, 60, 0, user, device);
+        samples[3] = createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, 300, 10, 60, 0, user, otherDevice);
+        sampleProvider.addGBActivitySamples(samples);
+
+        // ordered by timestamp, only the samples of the provider's device
+        List<MiBandActivitySample> allSamples = sampleProvider.getAllActivitySamples(0, 1000);
+        assertEquals(3, allSamples.size());
+        assertEquals(200, allSamples.get(0).getTimestamp());
+        assertEquals(300, allSamples.get(1).getTimestamp());
+        assertEquals(400, allSamples.get(2).getTimestamp());
+        assertSame(sampleProvider, allSamples.get(0).getProvider());
+
+        // both sleep kinds with one cached query
+        for (int i = 0; i < 2; i++) {
+            List<MiBandActivitySample> sleepSamples = sampleProvider.getSleepSamples(0, 1000);
+            assertEquals(2, sleepSamples.size());
+            assertEquals(MiBandSampleProvider.TYPE_DEEP_SLEEP, sleepSamples.get(0).getRawKind());
+            assertEquals(MiBandSampleProvider.TYPE_LIGHT_SLEEP, sleepSamples.get(1).getRawKind());
+        }
+
+        // the returned samples are detached, changing them must not affect later queries
+        allSamples.get(0).setSteps(1234);
+        assertEquals(0, sampleProvider.getAllActivitySamples(200, 200).get(0).getSteps());
+    }
+
+    @Test
+    public void testSampleColumns() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+
+        MiBandActivitySample[] samples = new MiBandActivitySample[3];
+        samples[0] = createSample(sampleProvider, MiBandSampleProvider.TYPE_LIGHT_SLEEP, 300, 20, 60, 0, user, device);
+        samples[1] = createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, 100, 10, 70, 1000, user, device);
+        samples[2] = createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, 200, 30, 80, 1030, user, device);
+        sampleProvider.addGBActivitySamples(samples);
+
+        SampleColumns columns = sampleProvider.getAllActivitySampleColumns(0, 1000);
+        assertSameValues(sampleProvider.getAllActivitySamples(0, 1000), columns);
+        assertEquals(3, columns.size());
+        assertEquals(100, columns.getTimestamp(0));
+        assertEquals(ActivityKind.TYPE_LIGHT_SLEEP, columns.getKind(2));
+        assertEquals(sampleProvider.normalizeIntensity(30), columns.getIntensity(1), 0.0001);
+        assertEquals(1030, columns.getSteps(1));
+        assertEquals(80, columns.getHeartRate(1));
+
+        // the raw kinds are post processed like the samples
+        MiBand2SampleProvider miBand2SampleProvider = new MiBand2SampleProvider(dummyGBDevice, daoSession);
+        assertSameValues(miBand2SampleProvider.getAllActivitySamples(0, 1000), miBand2SampleProvider.getAllActivitySampleColumns(0, 1000));
+        assertEquals(0, sampleProvider.getAllActivitySampleColumns(1001, 2000).size());
+    }
+
+    private void assertSameValues(List<? extends AbstractActivitySample> samples, SampleColumns columns) {
+        assertEquals(samples.size(), columns.size());
+        for (int i = 0; i < samples.size(); i++) {
+            AbstractActivitySample sample = samples.get(i);
+            assertEquals(sample.getTimestamp(), columns.getTimestamp(i));
+            assertEquals(sample.getRawKind(), columns.getRawKind(i));
+            assertEquals(sample.getKind(), columns.getKind(i));
+            assertEquals(sample.getRawIntensity(), columns.getRawIntensity(i));
+            assertEquals(sample.getIntensity(), columns.getIntensity(i), 0.0001);
+            assertEquals(sample.getSteps(), columns.getSteps(i));
+            assertEquals(sample.getHeartRate(), columns.getHeartRate(i));
+        }
+    }
+
+    @Test
+    public void testActivityRollups() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+
+        int dayStart = 100 * ActivityRollups.PERIOD_DAY;
+        MiBandActivitySample[] samples = new MiBandActivitySample[120];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, dayStart + i * 60, 10, 70 + i % 10, 10, user, device);
+        }
+        sampleProvider.addGBActivitySamples(samples);
+
+        ActivityRollup[] rollups = ActivityRollups.getDailyRollups(sampleProvider, device, new int[] { dayStart }, daoSession);
+        assertEquals(1, rollups.length);
+        assertNotNull(rollups[0]);
+        assertEquals(1200, rollups[0].getSteps());
+        assertEquals(119 * 60, rollups[0].getActivitySeconds());
+        assertEquals(0, rollups[0].getDeepSleepSeconds());
+        assertEquals(70, rollups[0].getHeartRateMin());
+        assertEquals(79, rollups[0].getHeartRateMax());
+        assertEquals(120, rollups[0].getHeartRateCount());
+
+        // adding samples to that day must be reflected in the daily rollup
+        MiBandActivitySample sleep = createSample(sampleProvider, MiBandSampleProvider.TYPE_DEEP_SLEEP, dayStart + 120 * 60, 10, 60, 0, user, device);
+        sampleProvider.addGBActivitySamples(new MiBandActivitySample[] { sleep });
+        rollups = ActivityRollups.getDailyRollups(sampleProvider, device, new int[] { dayStart }, daoSession);
+        assertEquals(1200, rollups[0].getSteps());
+        assertEquals(119 * 60 + 30, rollups[0].getActivitySeconds());
+        assertEquals(30, rollups[0].getDeepSleepSeconds());
+        assertEquals(60, rollups[0].getHeartRateMin());
+
+        // days that have not yet passed are not served from rollups
+        int today = (int) (System.currentTimeMillis() / 1000) / ActivityRollups.PERIOD_DAY * ActivityRollups.PERIOD_DAY;
+        rollups = ActivityRollups.getDailyRollups(sampleProvider, device, new int[] { today }, daoSession);
+        assertNull(rollups[0]);
+    }
+
+    @Test
+    public void testActivityRollupStepsPerKind() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+
+        int dayStart = 200 * ActivityRollups.PERIOD_DAY;
+        MiBandActivitySample[] sleepSamples = new MiBandActivitySample[60];
+        MiBandActivitySample[] activitySamples = new MiBandActivitySample[60];
+        for (int i = 0; i < 60; i++) {
+            sleepSamples[i] = createSample(sampleProvider, MiBandSampleProvider.TYPE_LIGHT_SLEEP, dayStart + i * 60, 10, 60, 1, user, device);
+            activitySamples[i] = createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, dayStart + (60 + i) * 60, 10, 70, 10, user, device);
+        }
+        sampleProvider.addGBActivitySamples(sleepSamples);
+        sampleProvider.addGBActivitySamples(activitySamples);
+
+        ActivityRollup[] rollups = ActivityRollups.getDailyRollups(sampleProvider, device, new int[] { dayStart }, daoSession);
+        assertEquals(660, rollups[0].getSteps());
+        assertEquals(60, rollups[0].getLightSleepSteps());
+        assertEquals(600, rollups[0].getActivitySteps());
+        List<ActivityAmount> amounts = ActivityRollups.toActivityAmounts(rollups[0]).getAmounts();
+        assertEquals(2, amounts.size());
+        assertEquals(ActivityKind.TYPE_LIGHT_SLEEP, amounts.get(0).getActivityKind());
+        assertEquals(60, amounts.get(0).getTotalSteps());
+        assertEquals(ActivityKind.TYPE_ACTIVITY, amounts.get(1).getActivityKind());
+        assertEquals(600, amounts.get(1).getTotalSteps());
+
+        // changing the kinds without adding samples, like overlays do, requires an invalidation
+        for (MiBandActivitySample sample : sleepSamples) {
+            sample.setRawKind(MiBandSampleProvider.TYPE_DEEP_SLEEP);
+        }
+        daoSession.getMiBandActivitySampleDao().insertOrReplaceInTx(sleepSamples);
+        ActivityRollups.invalidate(device, dayStart, dayStart + 59 * 60, daoSession);
+        rollups = ActivityRollups.getDailyRollups(sampleProvider, device, new int[] { dayStart }, daoSession);
+        assertEquals(60, rollups[0].getDeepSleepSteps());
+        assertEquals(0, rollups[0].getLightSleepSteps());
+        assertEquals(0, rollups[0].getLightSleepSeconds());
+        assertEquals(600, rollups[0].getActivitySteps());
+    }
+
+    @Test
+    public void testSingleSamplesAfterRecalculation() {
+        MiBandSampleProvider sampleProvider = new MiBandSampleProvider(dummyGBDevice, daoSession);
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(dummyGBDevice, daoSession);
+
+        int dayStart = 300 * ActivityRollups.PERIOD_DAY;
+        sampleProvider.addGBActivitySample(createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, dayStart, 10, 70, 10, user, device));
+        ActivityRollup[] rollups = ActivityRollups.getDailyRollups(sampleProvider, device, new int[] { dayStart }, daoSession);
+        assertEquals(10, rollups[0].getSteps());
+
+        // the rollups of the hour were stored again in between, so they have to be discarded again
+        sampleProvider.addGBActivitySample(createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, dayStart + 60, 10, 70, 20, user, device));
+        rollups = ActivityRollups.getDailyRollups(sampleProvider, device, new int[] { dayStart }, daoSession);
+        assertEquals(30, rollups[0].getSteps());
+
+        sampleProvider.addGBActivitySample(createSample(sampleProvider, MiBandSampleProvider.TYPE_ACTIVITY, dayStart + 120, 10, 70, 30, user, device));
+        rollups = ActivityRollups.getDailyRollups(sampleProvider, device, new int[] { dayStart }, daoSession);
+        assertEquals(60, rollups[0].getSteps());
+    }
 }
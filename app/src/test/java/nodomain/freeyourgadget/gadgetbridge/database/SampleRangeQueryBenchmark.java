@@ -0,0 +1,98 @@
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+import de.greenrobot.dao.query.QueryBuilder;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySampleDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.User;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the sample range queries of the sample providers with the previous way of querying
+ * samples (a new QueryBuilder for every query, device lookup, identity scope) on a synthetic
+ * table with one sample per minute for several years.
+ */
+// run with: ./gradlew test --tests '*SampleRangeQueryBenchmark' -DsampleBenchmarkYears=5
+@Ignore("Benchmark, takes several minutes -- run manually, optionally with -DsampleBenchmarkYears=n")
+public class SampleRangeQueryBenchmark extends TestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(SampleRangeQueryBenchmark.class);
+
+    private static final int DAY = 24 * 60 * 60;
+    private static final int START = 1420070400; // 2015-01-01
+    private static final int REPETITIONS = 10;
+
+    @Test
+    public void benchmarkRanges() {
+        int years = Integer.getInteger("sampleBenchmarkYears", 5);
+        GBDevice gbDevice = createDummyGDevice("00:00:00:00:20");
+        User user = DBHelper.getUser(daoSession);
+        Device device = DBHelper.getDevice(gbDevice, daoSession);
+        MiBandSampleProvider provider = new MiBandSampleProvider(gbDevice, daoSession);
+
+        int days = years * 365;
+        long start = System.currentTimeMillis();
+        MiBandActivitySample[] daySamples = new MiBandActivitySample[24 * 60];
+        for (int day = 0; day < days; day++) {
+            for (int minute = 0; minute < daySamples.length; minute++) {
+                MiBandActivitySample sample = new MiBandActivitySample();
+                sample.setTimestamp(START + day * DAY + minute * 60);
+                sample.setDeviceId(device.getId());
+                sample.setUserId(user.getId());
+                sample.setRawKind(minute < 6 * 60 ? MiBandSampleProvider.TYPE_LIGHT_SLEEP : MiBandSampleProvider.TYPE_ACTIVITY);
+                sample.setRawIntensity(minute % 100);
+                sample.setSteps(minute % 30);
+                sample.setHeartRate(60 + minute % 40);
+                daySamples[minute] = sample;
+            }
+            // plain inserts, rollups are not of interest here
+            provider.getSampleDao().insertOrReplaceInTx(daySamples);
+        }
+        LOG.info("Inserted " + days * daySamples.length + " samples in " + (System.currentTimeMillis() - start) + "ms");
+
+        int middle = START + days / 2 * DAY;
+        benchmark("day", provider, middle, middle + DAY - 1);
+        benchmark("week", provider, middle, middle + 7 * DAY - 1);
+        benchmark("year", provider, middle - 365 * DAY / 2, middle + 365 * DAY / 2 - 1);
+    }
+
+    private void benchmark(String name, MiBandSampleProvider provider, int from, int to) {
+        // warm up both paths
+        int expected = queryLikeBefore(provider, from, to).size();
+        assertEquals(expected, provider.getAllActivitySamples(from, to).size());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            queryLikeBefore(provider, from, to);
+        }
+        long before = (System.nanoTime() - start) / REPETITIONS / 1000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            new MiBandSampleProvider(provider.getDevice(), daoSession).getAllActivitySamples(from, to);
+        }
+        long now = (System.nanoTime() - start) / REPETITIONS / 1000;
+
+        LOG.info(String.format("%s (%d samples): query builder %dus, range query %dus", name, expected, before, now));
+    }
+
+    private List<MiBandActivitySample> queryLikeBefore(MiBandSampleProvider provider, int from, int to) {
+        QueryBuilder<MiBandActivitySample> qb = provider.getSampleDao().queryBuilder();
+        Device dbDevice = DBHelper.findDevice(provider.getDevice(), daoSession);
+        qb.where(MiBandActivitySampleDao.Properties.DeviceId.eq(dbDevice.getId()), MiBandActivitySampleDao.Properties.Timestamp.ge(from))
+                .where(MiBandActivitySampleDao.Properties.Timestamp.le(to));
+        List<MiBandActivitySample> samples = qb.build().list();
+        provider.getSampleDao().detachAll();
+        return samples;
+    }
+}
@@ -0,0 +1,98 @@
+package nodomain.freeyourgadget.gadgetbridge.devices;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.os.ParcelUuid;
+
+import org.junit.Test;
+import org.robolectric.Shadows;
+
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiService;
+import nodomain.freeyourgadget.gadgetbridge.devices.huami.miband2.MiBand2Coordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.huami.miband2.MiBand2HRXCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceCandidate;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+import nodomain.freeyourgadget.gadgetbridge.util.DeviceHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceCoordinatorIndexTest extends TestBase {
+    private static final String ADDRESS = "AA:BB:CC:DD:EE:FF";
+    private static final String[] NAMES = {
+            null, "", "(unknown)", "Pebble Time 1A2B", "pebble", "MI Band 2", "Mi Band HRX", "Mi Band 2i",
+            "Mi Band 3", "Xiaomi Band 3", "Mi Smart Band 4", "MIBCS", "Amazfit Bip Watch",
+            "Amazfit Cor", "Amazfit Band 2", "HPLUS-01", "SPORT", "SPORTAGE", "Q8", "iRun 1",
+            "ZeTime", "LYWSD02", "lywsd02", "CASIO GB-6900", "TECLAST_H10", "H1-AB12", "H2-AB12",
+            "BFH-16", "LiveView", "XWatch", "Vibratissimo", "X-RUN", "MH30",
+            "Roidmi Music Blue C", "My Roidmi Music Blue C2", "WATCH 9", "Some Headphones"
+    };
+
+    private GBDeviceCandidate createCandidate(String address, String name, ParcelUuid... uuids) {
+        BluetoothDevice device = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(address);
+        Shadows.shadowOf(device).setName(name);
+        return new GBDeviceCandidate(device, GBDevice.RSSI_UNKNOWN, uuids);
+    }
+
+    private static DeviceType getSupportedTypeOneByOne(List<DeviceCoordinator> coordinators, GBDeviceCandidate candidate) {
+        for (DeviceCoordinator coordinator : coordinators) {
+            DeviceType deviceType = coordinator.getSupportedType(candidate);
+            if (deviceType.isSupported()) {
+                return deviceType;
+            }
+        }
+        return DeviceType.UNKNOWN;
+    }
+
+    @Test
+    public void testSameResultAsAskingAllCoordinators() {
+        List<DeviceCoordinator> coordinators = DeviceHelper.getInstance().getAllCoordinators();
+        DeviceCoordinatorIndex index = new DeviceCoordinatorIndex(coordinators);
+        ParcelUuid miBand2Service = new ParcelUuid(HuamiService.UUID_SERVICE_MIBAND2_SERVICE);
+
+        for (String name : NAMES) {
+            GBDeviceCandidate candidate = createCandidate(ADDRESS, name);
+            assertEquals(name, getSupportedTypeOneByOne(coordinators, candidate), index.getSupportedType(candidate));
+
+            candidate = createCandidate("88:0F:10:00:00:01", name);
+            assertEquals(name, getSupportedTypeOneByOne(coordinators, candidate), index.getSupportedType(candidate));
+
+            candidate = createCandidate(ADDRESS, name, miBand2Service);
+            assertEquals(name, getSupportedTypeOneByOne(coordinators, candidate), index.getSupportedType(candidate));
+        }
+    }
+
+    @Test
+    public void testCandidates() {
+        DeviceCoordinatorIndex index = new DeviceCoordinatorIndex(DeviceHelper.getInstance().getAllCoordinators());
+
+        assertEquals(DeviceType.PEBBLE, index.getSupportedType(createCandidate(ADDRESS, "Pebble Time 1A2B")));
+        assertEquals(DeviceType.MIBAND3, index.getSupportedType(createCandidate(ADDRESS, "mi band 3")));
+        assertEquals(DeviceType.MISCALE2, index.getSupportedType(createCandidate(ADDRESS, "MIBCS")));
+        assertEquals(DeviceType.TECLASTH30, index.getSupportedType(createCandidate(ADDRESS, "H3-12AB")));
+        assertEquals(DeviceType.HPLUS, index.getSupportedType(createCandidate(ADDRESS, "HPLUS")));
+        assertEquals(DeviceType.UNKNOWN, index.getSupportedType(createCandidate(ADDRESS, "SPORTAGE")));
+        assertEquals(DeviceType.UNKNOWN, index.getSupportedType(createCandidate(ADDRESS, "Some Headphones")));
+        assertEquals(DeviceType.MIBAND, index.getSupportedType(createCandidate("88:0F:10:00:00:01", null)));
+        assertEquals(DeviceType.MIBAND2, index.getSupportedType(createCandidate(ADDRESS, null,
+                new ParcelUuid(HuamiService.UUID_SERVICE_MIBAND2_SERVICE))));
+
+        assertTrue(index.findCoordinator(createCandidate(ADDRESS, "Mi Band HRX")) instanceof MiBand2HRXCoordinator);
+        assertNull(index.findCoordinator(createCandidate(ADDRESS, "Some Headphones")));
+    }
+
+    @Test
+    public void testDevices() {
+        DeviceCoordinatorIndex index = new DeviceCoordinatorIndex(DeviceHelper.getInstance().getAllCoordinators());
+
+        assertTrue(index.findCoordinator(new GBDevice(ADDRESS, "Mi Band HRX", DeviceType.MIBAND2)) instanceof MiBand2HRXCoordinator);
+        assertTrue(index.findCoordinator(new GBDevice(ADDRESS, "MI Band 2", DeviceType.MIBAND2)) instanceof MiBand2Coordinator);
+        assertEquals(DeviceType.PEBBLE, index.findCoordinator(new GBDevice(ADDRESS, "Pebble", DeviceType.PEBBLE)).getDeviceType());
+        assertNull(index.findCoordinator(new GBDevice(ADDRESS, "Unknown", DeviceType.UNKNOWN)));
+    }
+}
@@ -0,0 +1,137 @@
+package nodomain.freeyourgadget.gadgetbridge.devices.pebble;
+
+import android.net.Uri;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceApp;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.pebble.PebbleProtocol;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PBWReaderTest extends TestBase {
+    private static final String UUID = "01234567-89ab-cdef-0123-456789abcdef";
+
+    private static byte[] createAppBinary(short sdkVersion, short appVersion, int iconId, int flags) {
+        ByteBuffer buf = ByteBuffer.allocate(200);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.put("PBLAPP\0\0".getBytes());
+        buf.putShort((short) 16); // struct version
+        buf.putShort(sdkVersion);
+        buf.putShort(appVersion);
+        buf.putShort((short) 200); // size
+        buf.putInt(0); // offset
+        buf.putInt(0); // crc
+        buf.put(new byte[32]); // app name
+        buf.put(new byte[32]); // author
+        buf.putInt(iconId);
+        buf.putInt(0); // symbol table addr
+        buf.putInt(flags);
+        return buf.array();
+    }
+
+    private static void addEntry(ZipOutputStream zos, String name, byte[] content) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(content);
+        zos.closeEntry();
+    }
+
+    private File createPbw(String platformDir, byte[] appBinary, byte[] resources) throws IOException {
+        File file = new File(FileUtils.createTempDir("pbw"), "test.pbw");
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file))) {
+            addEntry(zos, platformDir + "manifest.json", ("{\"application\": {\"name\": \"pebble-app.bin\", \"size\": " + appBinary.length + ", \"crc\": 1234}, "
+                    + "\"resources\": {\"name\": \"app_resources.pbpack\", \"size\": " + resources.length + ", \"crc\": 5678}}").getBytes());
+            addEntry(zos, platformDir + "pebble-app.bin", appBinary);
+            addEntry(zos, platformDir + "app_resources.pbpack", resources);
+            addEntry(zos, "appinfo.json", ("{\"shortName\": \"Test Face\", \"companyName\": \"Test Company\", \"versionLabel\": \"1.2\", "
+                    + "\"uuid\": \"" + UUID + "\", \"appKeys\": {\"KEY_TEMPERATURE\": 1}}").getBytes());
+            addEntry(zos, "pebble-js-app.js", "Pebble.addEventListener();".getBytes());
+        }
+        return file;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            return FileUtils.readAll(in, 1000000);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testReadApp() throws IOException {
+        byte[] appBinary = createAppBinary((short) 0x0510, (short) 0x0102, 7, 1);
+        byte[] resources = new byte[10000];
+        Arrays.fill(resources, (byte) 0x5a);
+        File pbw = createPbw("basalt/", appBinary, resources);
+
+        PBWReader reader = new PBWReader(Uri.fromFile(pbw), getContext(), "emery");
+        try {
+            assertTrue(reader.isValid());
+            assertFalse(reader.isFirmware());
+            assertFalse(reader.isLanguage());
+
+            GBDeviceApp app = reader.getGBDeviceApp();
+            assertEquals("Test Face", app.getName());
+            assertEquals(UUID, app.getUUID().toString());
+            assertEquals(GBDeviceApp.Type.WATCHFACE, app.getType());
+            assertEquals(0x0510, reader.getSdkVersion());
+            assertEquals(0x0102, reader.getAppVersion());
+            assertEquals(7, reader.getIconId());
+            assertTrue(reader.getAppKeysJSON().has("KEY_TEMPERATURE"));
+
+            PebbleInstallable[] installables = reader.getPebbleInstallables();
+            assertEquals(2, installables.length);
+            for (PebbleInstallable installable : installables) {
+                if (installable.getType() == PebbleProtocol.PUTBYTES_TYPE_BINARY) {
+                    assertEquals("basalt/pebble-app.bin", installable.getFileName());
+                    assertEquals(1234, installable.getCRC());
+                    assertArrayEquals(appBinary, read(reader.getInputStreamFile(installable.getFileName())));
+                } else {
+                    assertEquals(PebbleProtocol.PUTBYTES_TYPE_RESOURCES, installable.getType());
+                    assertEquals(resources.length, installable.getFileSize());
+                    assertArrayEquals(resources, read(reader.getInputStreamFile(installable.getFileName())));
+                }
+            }
+            // entries can be read more than once, in any order
+            assertArrayEquals(appBinary, read(reader.getInputStreamFile("basalt/pebble-app.bin")));
+            assertNotNull(reader.getInputStreamFile("pebble-js-app.js"));
+            assertNull(reader.getInputStreamFile("missing.js"));
+        } finally {
+            reader.close();
+        }
+        assertNull(reader.getInputStreamFile("pebble-js-app.js"));
+        // the install handler only keeps the metadata of a closed reader
+        assertEquals("Test Face", reader.getGBDeviceApp().getName());
+        assertTrue(reader.getAppKeysJSON().has("KEY_TEMPERATURE"));
+    }
+
+    @Test
+    public void testMissingPlatform() throws IOException {
+        File pbw = createPbw("basalt/", createAppBinary((short) 0x0510, (short) 1, 0, 0), new byte[10]);
+
+        PBWReader reader = new PBWReader(Uri.fromFile(pbw), getContext(), "chalk");
+        try {
+            assertFalse(reader.isValid());
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package nodomain.freeyourgadget.gadgetbridge.devices.pebble;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceApp;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+import nodomain.freeyourgadget.gadgetbridge.util.FileUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PebbleAppCacheTest extends TestBase {
+    private static final UUID UUID_1 = UUID.fromString("01234567-89ab-cdef-0123-456789abcdef");
+    private static final UUID UUID_2 = UUID.fromString("fedcba98-7654-3210-fedc-ba9876543210");
+    private static final String DEVICE_ORDER = "AA:BB:CC:DD:EE:FF.watchapps";
+
+    private File cacheDir;
+    private File orderDir;
+
+    @Before
+    public void setUp() throws Exception {
+        orderDir = FileUtils.createTempDir("pbworder");
+        cacheDir = new File(orderDir, "pbw-cache");
+        assertTrue(cacheDir.mkdirs());
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(content);
+        }
+    }
+
+    private PebbleAppCache loadCache() {
+        PebbleAppCache appCache = new PebbleAppCache(cacheDir, orderDir);
+        appCache.load();
+        return appCache;
+    }
+
+    private void addToCache(GBDeviceApp app, boolean configurable) throws IOException {
+        String baseName = app.getUUID().toString();
+        writeFile(new File(cacheDir, baseName + ".pbw"), "");
+        writeFile(new File(cacheDir, baseName + ".json"), app.getJSON().toString());
+        if (configurable) {
+            writeFile(new File(cacheDir, baseName + "_config.js"), "");
+        }
+    }
+
+    @Test
+    public void testAddAndRemove() throws Exception {
+        GBDeviceApp app = new GBDeviceApp(UUID_1, "Test App", "Tester", "1.0", GBDeviceApp.Type.APP_GENERIC);
+        addToCache(app, true);
+
+        PebbleAppCache appCache = loadCache();
+        appCache.addApp(app, true, PebbleAppCache.CACHE_ORDER);
+        assertEquals(Collections.singletonList(UUID_1), appCache.getOrder(PebbleAppCache.CACHE_ORDER));
+
+        // reloaded from the index
+        appCache = loadCache();
+        GBDeviceApp cachedApp = appCache.getApp(UUID_1);
+        assertNotNull(cachedApp);
+        assertEquals("Test App", cachedApp.getName());
+        assertEquals("1.0", cachedApp.getVersion());
+        assertEquals(GBDeviceApp.Type.APP_GENERIC, cachedApp.getType());
+        assertTrue(cachedApp.isConfigurable());
+        assertTrue(cachedApp.isInCache());
+        assertEquals(Collections.singletonList(UUID_1), appCache.getOrder(PebbleAppCache.CACHE_ORDER));
+
+        appCache.removeApp(UUID_1, PebbleAppCache.CACHE_ORDER);
+        appCache = loadCache();
+        assertNull(appCache.getApp(UUID_1));
+        assertTrue(appCache.getOrder(PebbleAppCache.CACHE_ORDER).isEmpty());
+    }
+
+    @Test
+    public void testReconcileWithCacheDir() throws Exception {
+        GBDeviceApp app1 = new GBDeviceApp(UUID_1, "App 1", "Tester", "1.0", GBDeviceApp.Type.APP_GENERIC);
+        GBDeviceApp app2 = new GBDeviceApp(UUID_2, "Face 2", "Tester", "2.0", GBDeviceApp.Type.WATCHFACE);
+        addToCache(app1, false);
+        addToCache(app2, false);
+
+        // apps cached without the index are read from their json files
+        PebbleAppCache appCache = loadCache();
+        assertEquals(2, appCache.getApps().size());
+        assertFalse(appCache.getApp(UUID_1).isConfigurable());
+
+        // files changed behind the back of the index
+        writeFile(new File(cacheDir, UUID_1 + "_config.js"), "");
+        assertTrue(new File(cacheDir, UUID_2 + ".pbw").delete());
+        UUID unknownUuid = UUID.randomUUID();
+        writeFile(new File(cacheDir, unknownUuid + ".pbw"), "");
+
+        appCache = loadCache();
+        List<GBDeviceApp> apps = appCache.getApps();
+        assertEquals(1, apps.size());
+        assertEquals(UUID_1, apps.get(0).getUUID());
+        assertTrue(apps.get(0).isConfigurable());
+        assertEquals(Collections.singletonList(unknownUuid), appCache.getAppsWithoutMetadata());
+    }
+
+    @Test
+    public void testOrders() throws Exception {
+        writeFile(new File(orderDir, DEVICE_ORDER), UUID_2 + "\n" + UUID_1 + "\n");
+
+        // migrated from the former order file
+        PebbleAppCache appCache = loadCache();
+        assertEquals(Arrays.asList(UUID_2, UUID_1), appCache.getOrder(DEVICE_ORDER));
+
+        appCache.setOrder(DEVICE_ORDER, Arrays.asList(UUID_1, UUID_2));
+        appCache.removeFromOrder(DEVICE_ORDER, UUID_2);
+        appCache.addToOrder(DEVICE_ORDER, UUID_1);
+        assertTrue(new File(orderDir, DEVICE_ORDER).delete());
+
+        appCache = loadCache();
+        assertEquals(Collections.singletonList(UUID_1), appCache.getOrder(DEVICE_ORDER));
+        assertTrue(appCache.getOrder("unknown").isEmpty());
+    }
+
+    @Test
+    public void testOrdersDoNotRewriteMetadata() throws Exception {
+        GBDeviceApp app = new GBDeviceApp(UUID_1, "Test App", "Tester", "1.0", GBDeviceApp.Type.APP_GENERIC);
+        addToCache(app, false);
+        PebbleAppCache appCache = loadCache();
+        File indexFile = new File(cacheDir, "pbwcacheindex.json");
+        assertTrue(indexFile.delete());
+
+        appCache.setOrder(DEVICE_ORDER, Arrays.asList(UUID_1, UUID_2));
+        appCache.removeFromOrder(DEVICE_ORDER, UUID_2);
+        assertFalse(indexFile.exists());
+        assertEquals(Collections.singletonList(UUID_1), loadCache().getOrder(DEVICE_ORDER));
+    }
+
+    @Test
+    public void testBrokenIndex() throws Exception {
+        GBDeviceApp app = new GBDeviceApp(UUID_1, "Test App", "Tester", "1.0", GBDeviceApp.Type.APP_GENERIC);
+        addToCache(app, false);
+        writeFile(new File(cacheDir, "pbwcacheindex.json"), "{\"version\": 1, \"apps\": [");
+
+        PebbleAppCache appCache = loadCache();
+        assertNotNull(appCache.getApp(UUID_1));
+        assertEquals("Test App", loadCache().getApp(UUID_1).getName());
+    }
+}
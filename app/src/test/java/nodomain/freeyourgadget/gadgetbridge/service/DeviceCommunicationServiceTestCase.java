@@ -9,10 +9,15 @@ import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 
+import java.util.concurrent.Executor;
+
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.GBException;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
+import nodomain.freeyourgadget.gadgetbridge.model.CallSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
 import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
 
@@ -22,9 +27,21 @@ import static org.junit.Assert.assertTrue;
 
 public class DeviceCommunicationServiceTestCase extends TestBase {
     private static final java.lang.String TEST_DEVICE_ADDRESS = TestDeviceSupport.class.getName();
+    private static final java.lang.String OTHER_DEVICE_ADDRESS = TEST_DEVICE_ADDRESS + ".other";
+
+    /**
+     * Calls the device support instances directly, so that the results can be verified
+     */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
 
     /**
-     * Factory that always returns the mockSupport instance
+     * Factory that returns the otherMockSupport instance for the other device, and the mockSupport
+     * instance for all other devices
      */
     private class TestDeviceSupportFactory extends DeviceSupportFactory {
         TestDeviceSupportFactory(Context context) {
@@ -33,6 +50,9 @@ public class DeviceCommunicationServiceTestCase extends TestBase {
 
         @Override
         public synchronized DeviceSupport createDeviceSupport(GBDevice device) throws GBException {
+            if (OTHER_DEVICE_ADDRESS.equals(device.getAddress())) {
+                return otherMockSupport;
+            }
             return mockSupport;
         }
     }
@@ -41,6 +61,7 @@ public class DeviceCommunicationServiceTestCase extends TestBase {
     @Mock
     private TestDeviceSupport realSupport;
     private TestDeviceSupport mockSupport;
+    private TestDeviceSupport otherMockSupport;
 
     public DeviceCommunicationServiceTestCase() {
         super();
@@ -53,7 +74,11 @@ public class DeviceCommunicationServiceTestCase extends TestBase {
         realSupport = new TestDeviceSupport();
         realSupport.setContext(new GBDevice(TEST_DEVICE_ADDRESS, "Test Device", DeviceType.TEST), null, getContext());
         mockSupport = Mockito.spy(realSupport);
+        TestDeviceSupport otherSupport = new TestDeviceSupport();
+        otherSupport.setContext(new GBDevice(OTHER_DEVICE_ADDRESS, "Other Test Device", DeviceType.TEST), null, getContext());
+        otherMockSupport = Mockito.spy(otherSupport);
         DeviceCommunicationService.setDeviceSupportFactory(new TestDeviceSupportFactory(getContext()));
+        DeviceCommunicationService.setDispatchExecutor(DIRECT_EXECUTOR);
 
         mDeviceService = new TestDeviceService(getContext());
     }
@@ -65,6 +90,7 @@ public class DeviceCommunicationServiceTestCase extends TestBase {
     @Override
     public void tearDown() throws Exception {
         mDeviceService.stopService(mDeviceService.createIntent());
+        DeviceCommunicationService.setDispatchExecutor(null);
         super.tearDown();
     }
 
@@ -102,6 +128,74 @@ public class DeviceCommunicationServiceTestCase extends TestBase {
         inOrder.verifyNoMoreInteractions();
     }
 
+    @Test
+    public void testMultipleDevices() {
+        ensureConnected();
+        GBDevice otherDevice = otherMockSupport.getDevice();
+        mDeviceService.connect(otherDevice);
+        Mockito.verify(otherMockSupport, Mockito.times(1)).connect();
+        Mockito.verify(mockSupport, Mockito.never()).dispose();
+        assertTrue(getDevice().isInitialized());
+        assertTrue(otherDevice.isInitialized());
+
+        // events for all devices
+        mDeviceService.onSetTime();
+        Mockito.verify(mockSupport, Mockito.times(1)).onSetTime();
+        Mockito.verify(otherMockSupport, Mockito.times(1)).onSetTime();
+
+        // device specific requests go to the given device, or the one connected last
+        mDeviceService.forDevice(getDevice()).onFindDevice(true);
+        mDeviceService.onFindDevice(false);
+        Mockito.verify(mockSupport, Mockito.times(1)).onFindDevice(true);
+        Mockito.verify(otherMockSupport, Mockito.times(1)).onFindDevice(false);
+        Mockito.verify(mockSupport, Mockito.never()).onFindDevice(false);
+
+        mDeviceService.forDevice(otherDevice).disconnect();
+        Mockito.verify(otherMockSupport, Mockito.times(1)).dispose();
+        assertEquals(GBDevice.State.NOT_CONNECTED, otherDevice.getState());
+        mDeviceService.onSetTime();
+        Mockito.verify(mockSupport, Mockito.times(2)).onSetTime();
+        Mockito.verify(otherMockSupport, Mockito.times(1)).onSetTime();
+    }
+
+    @Test
+    public void testDisconnectOneOfTwoDevices() {
+        ensureConnected();
+        GBDevice otherDevice = otherMockSupport.getDevice();
+        mDeviceService.connect(otherDevice);
+
+        // the device connected first, not the one connected last
+        mDeviceService.forDevice(getDevice()).disconnect();
+        Mockito.verify(mockSupport, Mockito.times(1)).dispose();
+        Mockito.verify(otherMockSupport, Mockito.never()).dispose();
+        assertEquals(GBDevice.State.NOT_CONNECTED, getDevice().getState());
+        assertTrue(otherDevice.isInitialized());
+
+        mDeviceService.forDevice(otherDevice).onScreenshotReq();
+        Mockito.verify(otherMockSupport, Mockito.times(1)).onScreenshotReq();
+    }
+
+    @Test
+    public void testLocalBinder() {
+        ensureConnected();
+        mDeviceService.setUseLocalBinder(true);
+
+        NotificationSpec notificationSpec = new NotificationSpec();
+        notificationSpec.type = NotificationType.UNKNOWN;
+        notificationSpec.body = "body";
+        mDeviceService.onNotification(notificationSpec);
+        Mockito.verify(mockSupport, Mockito.times(1)).onNotification(Mockito.any(NotificationSpec.class));
+
+        mDeviceService.onDeleteNotification(notificationSpec.getId());
+        Mockito.verify(mockSupport, Mockito.times(1)).onDeleteNotification(notificationSpec.getId());
+
+        CallSpec callSpec = new CallSpec();
+        callSpec.number = "0123456789";
+        callSpec.command = CallSpec.CALL_INCOMING;
+        mDeviceService.onSetCallState(callSpec);
+        Mockito.verify(mockSupport, Mockito.times(1)).onSetCallState(Mockito.any(CallSpec.class));
+    }
+
     @Test
     public void testTransliterationSupport() {
         SharedPreferences settings = GBApplication.getPrefs().getPreferences();
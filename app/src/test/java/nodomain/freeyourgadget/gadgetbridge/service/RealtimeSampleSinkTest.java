@@ -0,0 +1,55 @@
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+
+public class RealtimeSampleSinkTest extends TestBase {
+    private static final int START = 1500000000;
+
+    @Test
+    public void testSamplesAreStoredInGroups() {
+        GBDevice device = createDummyGDevice("00:00:00:00:00:04");
+        RealtimeSampleSink<MiBandActivitySample> sink = new RealtimeSampleSink<MiBandActivitySample>(device, 100, 60000) {
+            @Override
+            protected AbstractSampleProvider<MiBandActivitySample> createSampleProvider(GBDevice device, DaoSession session) {
+                return new MiBandSampleProvider(device, session);
+            }
+        };
+
+        for (int i = 0; i < 10; i++) {
+            MiBandActivitySample sample = new MiBandActivitySample();
+            sample.setTimestamp(START + i);
+            sample.setHeartRate(60 + i);
+            sink.add(sample);
+        }
+        assertEquals(10, sink.getPendingSampleCount());
+        MiBandSampleProvider provider = new MiBandSampleProvider(device, daoSession);
+        assertEquals(0, provider.getAllActivitySamples(START, START + 100).size());
+
+        sink.flush();
+        assertEquals(0, sink.getPendingSampleCount());
+        List<MiBandActivitySample> samples = provider.getAllActivitySamples(START, START + 100);
+        assertEquals(10, samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertEquals(START + i, samples.get(i).getTimestamp());
+            assertEquals(60 + i, samples.get(i).getHeartRate());
+        }
+
+        MiBandActivitySample last = new MiBandActivitySample();
+        last.setTimestamp(START + 10);
+        last.setHeartRate(100);
+        sink.add(last);
+        sink.close();
+        assertEquals(11, provider.getAllActivitySamples(START, START + 100).size());
+    }
+}
@@ -0,0 +1,112 @@
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+
+public class RealtimeSampleStreamTest extends TestBase {
+    private static final String ADDRESS = "AA:BB:CC:DD:EE:FF";
+
+    private final List<Runnable> pending = new ArrayList<>();
+    private final Executor queueingExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            pending.add(command);
+        }
+    };
+
+    private static class CollectingSubscriber implements RealtimeSampleStream.Subscriber {
+        private final List<Integer> timestamps = new ArrayList<>();
+        private final List<Integer> heartRates = new ArrayList<>();
+
+        @Override
+        public void onRealtimeSample(String deviceAddress, int timestamp, int heartRate, int steps) {
+            assertEquals(ADDRESS, deviceAddress);
+            timestamps.add(timestamp);
+            heartRates.add(heartRate);
+        }
+    }
+
+    private void runPending() {
+        List<Runnable> runnables = new ArrayList<>(pending);
+        pending.clear();
+        for (Runnable runnable : runnables) {
+            runnable.run();
+        }
+    }
+
+    @Test
+    public void testConflatedDelivery() {
+        RealtimeSampleStream stream = new RealtimeSampleStream(10);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        stream.subscribe(subscriber, 0, queueingExecutor);
+        assertEquals(0, pending.size());
+
+        for (int i = 0; i < 5; i++) {
+            stream.publish(ADDRESS, 1000 + i, 60 + i, 1);
+        }
+        // only one notification while the subscriber has not run
+        assertEquals(1, pending.size());
+        runPending();
+        assertEquals(5, subscriber.timestamps.size());
+        assertEquals(Integer.valueOf(64), subscriber.heartRates.get(4));
+
+        stream.publish(ADDRESS, 1005, 70, 0);
+        assertEquals(1, pending.size());
+        runPending();
+        assertEquals(Integer.valueOf(1005), subscriber.timestamps.get(5));
+    }
+
+    @Test
+    public void testSlowSubscriberSkipsOldestSamples() {
+        RealtimeSampleStream stream = new RealtimeSampleStream(4);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        stream.subscribe(subscriber, 0, queueingExecutor);
+
+        for (int i = 0; i < 10; i++) {
+            stream.publish(ADDRESS, i, 60, 0);
+        }
+        runPending();
+        assertEquals(4, subscriber.timestamps.size());
+        assertEquals(Integer.valueOf(6), subscriber.timestamps.get(0));
+        assertEquals(Integer.valueOf(9), subscriber.timestamps.get(3));
+    }
+
+    @Test
+    public void testReplay() {
+        RealtimeSampleStream stream = new RealtimeSampleStream(10);
+        int now = (int) (System.currentTimeMillis() / 1000);
+        stream.publish(ADDRESS, now - 100, 60, 0);
+        stream.publish(ADDRESS, now - 5, 61, 0);
+        stream.publish(ADDRESS, now - 1, 62, 0);
+
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        stream.subscribe(subscriber, 10, queueingExecutor);
+        runPending();
+        assertEquals(2, subscriber.timestamps.size());
+        assertEquals(Integer.valueOf(61), subscriber.heartRates.get(0));
+
+        CollectingSubscriber noReplay = new CollectingSubscriber();
+        stream.subscribe(noReplay, 0, queueingExecutor);
+        assertEquals(0, pending.size());
+    }
+
+    @Test
+    public void testUnsubscribeCancelsPendingDelivery() {
+        RealtimeSampleStream stream = new RealtimeSampleStream(10);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        stream.subscribe(subscriber, 0, queueingExecutor);
+        stream.publish(ADDRESS, 1000, 60, 0);
+        stream.unsubscribe(subscriber);
+        runPending();
+        stream.publish(ADDRESS, 1001, 60, 0);
+        assertEquals(0, pending.size());
+        assertEquals(0, subscriber.timestamps.size());
+    }
+}
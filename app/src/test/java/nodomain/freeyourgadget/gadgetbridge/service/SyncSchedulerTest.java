@@ -0,0 +1,149 @@
+package nodomain.freeyourgadget.gadgetbridge.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SyncSchedulerTest {
+
+    /**
+     * Uses a fake clock and only records the requested wakeups instead of running them
+     */
+    private static class TestSyncScheduler extends SyncScheduler {
+        private long now = 0;
+        private long wakeupTime = -1;
+
+        @Override
+        protected long now() {
+            return now;
+        }
+
+        @Override
+        protected void wakeUpAfter(long delayMillis) {
+            wakeupTime = now + delayMillis;
+        }
+
+        void wakeUp() {
+            now = wakeupTime;
+            wakeupTime = -1;
+            runDueTasks();
+        }
+    }
+
+    private final TestSyncScheduler scheduler = new TestSyncScheduler();
+    private final List<String> runs = new ArrayList<>();
+
+    private Runnable createRunnable(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                runs.add(name + "@" + scheduler.now());
+            }
+        };
+    }
+
+    @Test
+    public void testTasksShareWakeup() {
+        scheduler.schedule("a", 10000, 5000, createRunnable("a"));
+        scheduler.schedule("b", 12000, 20000, createRunnable("b"));
+        scheduler.schedule("c", 20000, 5000, createRunnable("c"));
+        // the end of the earliest window
+        assertEquals(15000, scheduler.wakeupTime);
+
+        scheduler.wakeUp();
+        // b is already due and runs together with a, c is not due yet
+        assertEquals("[a@15000, b@15000]", runs.toString());
+        assertEquals(25000, scheduler.wakeupTime);
+
+        scheduler.wakeUp();
+        assertEquals("[a@15000, b@15000, c@25000]", runs.toString());
+        assertEquals(-1, scheduler.wakeupTime);
+    }
+
+    @Test
+    public void testPeriodic() {
+        SyncScheduler.Task task = scheduler.schedulePeriodic("p", 60000, 60000, 10000, createRunnable("p"));
+        assertEquals(60000, task.getNextRunTime());
+        assertEquals(70000, scheduler.wakeupTime);
+
+        scheduler.wakeUp();
+        scheduler.wakeUp();
+        // the period starts when the task is run
+        assertEquals("[p@70000, p@140000]", runs.toString());
+        assertEquals(200000, task.getNextRunTime());
+
+        task.cancel();
+        assertEquals(-1, task.getNextRunTime());
+        scheduler.wakeUp();
+        assertEquals(2, runs.size());
+    }
+
+    @Test
+    public void testReschedule() {
+        final List<SyncScheduler.Task> tasks = new ArrayList<>();
+        tasks.add(scheduler.schedule("retry", 1000, 0, new Runnable() {
+            @Override
+            public void run() {
+                runs.add("retry@" + scheduler.now());
+                if (runs.size() < 3) {
+                    tasks.get(0).reschedule(30000);
+                }
+            }
+        }));
+
+        scheduler.wakeUp();
+        scheduler.wakeUp();
+        scheduler.wakeUp();
+        assertEquals("[retry@1000, retry@31000, retry@61000]", runs.toString());
+        assertEquals(-1, tasks.get(0).getNextRunTime());
+        assertEquals(-1, scheduler.wakeupTime);
+
+        // a finished one-shot task can be scheduled again
+        tasks.get(0).reschedule(0);
+        assertEquals(61000, scheduler.wakeupTime);
+    }
+
+    @Test
+    public void testRescheduleWithWindow() {
+        SyncScheduler.Task task = scheduler.schedule("sync", 0, 1000, createRunnable("sync"));
+        scheduler.wakeUp();
+
+        // a long window lets the run share the wakeup of a task that is due later
+        task.reschedule(10000, 60000);
+        scheduler.schedule("other", 49000, 1000, createRunnable("other"));
+        assertEquals(51000, scheduler.wakeupTime);
+        scheduler.wakeUp();
+        assertEquals("[sync@1000, sync@51000, other@51000]", runs.toString());
+
+        // the window only applies to that run
+        task.reschedule(10000);
+        assertEquals(62000, scheduler.wakeupTime);
+    }
+
+    @Test
+    public void testFailingTask() {
+        scheduler.schedule("failing", 0, 1000, new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("test");
+            }
+        });
+        scheduler.schedule("ok", 0, 1000, createRunnable("ok"));
+
+        scheduler.wakeUp();
+        assertEquals("[ok@1000]", runs.toString());
+    }
+
+    @Test
+    public void testDebugInfo() {
+        assertEquals("", scheduler.getDebugInfo());
+        scheduler.schedulePeriodic("hello AA:BB", 0, 120000, 30000, createRunnable("hello"));
+        String info = scheduler.getDebugInfo();
+        assertTrue(info, info.startsWith("hello AA:BB: "));
+        assertTrue(info, info.contains("every 120s"));
+    }
+}
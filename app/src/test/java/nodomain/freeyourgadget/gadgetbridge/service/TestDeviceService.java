@@ -16,6 +16,7 @@ import nodomain.freeyourgadget.gadgetbridge.impl.GBDeviceService;
 class TestDeviceService extends GBDeviceService {
     private final ServiceController<DeviceCommunicationService> serviceController;
     private final DeviceCommunicationService service;
+    private boolean useLocalBinder;
 
     TestDeviceService(Context context) throws Exception {
         super(context);
@@ -32,6 +33,21 @@ class TestDeviceService extends GBDeviceService {
         super.invokeService(intent);
     }
 
+    /**
+     * Robolectric does not deliver the binder of the service, so it is passed explicitly
+     */
+    void setUseLocalBinder(boolean useLocalBinder) {
+        this.useLocalBinder = useLocalBinder;
+    }
+
+    @Override
+    protected DeviceCommunicationService.LocalBinder getLocalBinder() {
+        if (useLocalBinder) {
+            return (DeviceCommunicationService.LocalBinder) service.onBind(createIntent());
+        }
+        return super.getLocalBinder();
+    }
+
     @Override
     public void start() {
         super.start();
@@ -1,18 +1,53 @@
 package nodomain.freeyourgadget.gadgetbridge.service.btle;
 
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+
 import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.PlainAction;
 import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+
 public class BtLEQueueTest extends TestBase {
+    private static final int WRITE_COUNT = 50;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private ExecutorService gattExecutor;
+    private BluetoothGattCharacteristic characteristic;
 
     @Override
     public void setUp() throws Exception {
         super.setUp();
+        gattExecutor = Executors.newSingleThreadExecutor();
+        characteristic = new BluetoothGattCharacteristic(UUID.randomUUID(),
+                BluetoothGattCharacteristic.PROPERTY_WRITE | BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE,
+                BluetoothGattCharacteristic.PERMISSION_WRITE);
     }
 
     @Override
     public void tearDown() throws Exception {
+        gattExecutor.shutdownNow();
         super.tearDown();
     }
 
@@ -20,4 +55,197 @@ public class BtLEQueueTest extends TestBase {
     public void testIsConnected() throws Exception {
         // TODO
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPipelinedWritesOnBusyGatt() throws Exception {
+        FakeGatt fakeGatt = new FakeGatt(true);
+        BtLEQueue queue = createQueue(fakeGatt, BtLEQueue.DEFAULT_MAX_WRITES_IN_FLIGHT);
+        try {
+            TransactionBuilder builder = new TransactionBuilder("busy");
+            for (int i = 0; i < WRITE_COUNT; i++) {
+                builder.writeWithoutResponse(characteristic, new byte[]{(byte) i});
+            }
+            builder.write(characteristic, new byte[]{(byte) WRITE_COUNT});
+            CountDownLatch done = addDoneAction(builder);
+            builder.queue(queue);
+
+            // the fake only completes a write when the next one was rejected, so the last
+            // pipelined write must be completed here before the plain write is issued
+            fakeGatt.awaitWritten(WRITE_COUNT);
+            fakeGatt.completeNext(BluetoothGatt.GATT_SUCCESS);
+            fakeGatt.awaitWritten(WRITE_COUNT + 1);
+            fakeGatt.completeNext(BluetoothGatt.GATT_SUCCESS);
+            assertTrue("transaction did not finish", done.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+            assertEquals(1, fakeGatt.maxInFlight);
+            assertEquals(WRITE_COUNT - 1, fakeGatt.rejectedWrites);
+            assertWrittenInOrder(fakeGatt, WRITE_COUNT + 1);
+        } finally {
+            queue.dispose();
+        }
+    }
+
+    @Test
+    public void testInFlightWindow() throws Exception {
+        int maxWritesInFlight = 4;
+        FakeGatt fakeGatt = new FakeGatt(false);
+        BtLEQueue queue = createQueue(fakeGatt, maxWritesInFlight);
+        try {
+            TransactionBuilder builder = new TransactionBuilder("window");
+            for (int i = 0; i < WRITE_COUNT; i++) {
+                builder.writeWithoutResponse(characteristic, new byte[]{(byte) i});
+            }
+            CountDownLatch done = addDoneAction(builder);
+            builder.queue(queue);
+
+            for (int completed = 0; completed < WRITE_COUNT; completed++) {
+                fakeGatt.awaitInFlight(Math.min(maxWritesInFlight, WRITE_COUNT - completed));
+                fakeGatt.completeNext(BluetoothGatt.GATT_SUCCESS);
+            }
+            assertTrue("transaction did not finish", done.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+            assertEquals(maxWritesInFlight, fakeGatt.maxInFlight);
+            assertEquals(0, fakeGatt.rejectedWrites);
+            assertWrittenInOrder(fakeGatt, WRITE_COUNT);
+        } finally {
+            queue.dispose();
+        }
+    }
+
+    @Test
+    public void testFailedPipelinedWriteAbortsTransaction() throws Exception {
+        FakeGatt fakeGatt = new FakeGatt(false);
+        BtLEQueue queue = createQueue(fakeGatt, BtLEQueue.DEFAULT_MAX_WRITES_IN_FLIGHT);
+        try {
+            TransactionBuilder builder = new TransactionBuilder("failing");
+            for (int i = 0; i < 3; i++) {
+                builder.writeWithoutResponse(characteristic, new byte[]{(byte) i});
+            }
+            CountDownLatch done = addDoneAction(builder);
+            builder.queue(queue);
+
+            fakeGatt.awaitInFlight(3);
+            fakeGatt.completeNext(BluetoothGatt.GATT_SUCCESS);
+            fakeGatt.completeNext(BluetoothGatt.GATT_FAILURE);
+            fakeGatt.completeNext(BluetoothGatt.GATT_SUCCESS);
+
+            // the queue keeps working with the next transaction
+            TransactionBuilder next = new TransactionBuilder("next");
+            CountDownLatch nextDone = addDoneAction(next);
+            next.queue(queue);
+            assertTrue("next transaction did not finish", nextDone.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            assertEquals(1, done.getCount());
+        } finally {
+            queue.dispose();
+        }
+    }
+
+    private BtLEQueue createQueue(FakeGatt fakeGatt, int maxWritesInFlight) throws Exception {
+        GBDevice device = createDummyGDevice("00:00:00:00:00:01");
+        device.setState(GBDevice.State.INITIALIZED);
+        BtLEQueue queue = new BtLEQueue(null, device, null, null, getContext(), Collections.<BluetoothGattService>emptySet());
+        queue.setMaxWritesInFlight(maxWritesInFlight);
+        fakeGatt.attach(queue);
+        return queue;
+    }
+
+    private static CountDownLatch addDoneAction(TransactionBuilder builder) {
+        final CountDownLatch done = new CountDownLatch(1);
+        builder.add(new PlainAction() {
+            @Override
+            public boolean run(BluetoothGatt gatt) {
+                done.countDown();
+                return true;
+            }
+        });
+        return done;
+    }
+
+    private static void assertWrittenInOrder(FakeGatt fakeGatt, int count) {
+        List<byte[]> written = fakeGatt.getWrittenValues();
+        assertEquals(count, written.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(1, written.get(i).length);
+            assertEquals((byte) i, written.get(i)[0]);
+        }
+    }
+
+    /**
+     * A BluetoothGatt stand-in whose writes only complete when the test says so. Like the
+     * Android stack, a busy instance rejects any write while an earlier one is outstanding;
+     * it then completes the outstanding write, so that a retry can succeed.
+     */
+    private class FakeGatt implements Answer<Boolean> {
+        final BluetoothGatt gatt = Mockito.mock(BluetoothGatt.class);
+        private final boolean busy;
+        private final LinkedList<BluetoothGattCharacteristic> inFlight = new LinkedList<>();
+        private final List<byte[]> writtenValues = new ArrayList<>();
+        int maxInFlight; // guarded by this
+        int rejectedWrites; // guarded by this
+        private BluetoothGattCallback callback;
+
+        FakeGatt(boolean busy) {
+            this.busy = busy;
+        }
+
+        void attach(BtLEQueue queue) throws Exception {
+            Field callbackField = BtLEQueue.class.getDeclaredField("internalGattCallback");
+            callbackField.setAccessible(true);
+            callback = (BluetoothGattCallback) callbackField.get(queue);
+            Field gattField = BtLEQueue.class.getDeclaredField("mBluetoothGatt");
+            gattField.setAccessible(true);
+            gattField.set(queue, gatt);
+            Mockito.when(gatt.writeCharacteristic(any(BluetoothGattCharacteristic.class))).thenAnswer(this);
+        }
+
+        @Override
+        public synchronized Boolean answer(InvocationOnMock invocation) {
+            BluetoothGattCharacteristic characteristic = (BluetoothGattCharacteristic) invocation.getArguments()[0];
+            if (busy && !inFlight.isEmpty()) {
+                rejectedWrites++;
+                gattExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        completeNext(BluetoothGatt.GATT_SUCCESS);
+                    }
+                });
+                return false;
+            }
+            writtenValues.add(characteristic.getValue().clone());
+            inFlight.add(characteristic);
+            maxInFlight = Math.max(maxInFlight, inFlight.size());
+            notifyAll();
+            return true;
+        }
+
+        void completeNext(int status) {
+            BluetoothGattCharacteristic characteristic;
+            synchronized (this) {
+                characteristic = inFlight.removeFirst();
+            }
+            callback.onCharacteristicWrite(gatt, characteristic, status);
+        }
+
+        synchronized List<byte[]> getWrittenValues() {
+            return new ArrayList<>(writtenValues);
+        }
+
+        synchronized void awaitWritten(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (writtenValues.size() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("timed out waiting for " + count + " writes", remaining > 0);
+                wait(remaining);
+            }
+        }
+
+        synchronized void awaitInFlight(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (inFlight.size() != count) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("timed out waiting for " + count + " writes in flight", remaining > 0);
+                wait(remaining);
+            }
+        }
+    }
+}
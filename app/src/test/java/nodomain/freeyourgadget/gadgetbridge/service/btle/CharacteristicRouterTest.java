@@ -0,0 +1,83 @@
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CharacteristicRouterTest extends TestBase {
+    private static final UUID UUID_A = UUID.fromString("00000001-0000-3512-2118-0009af100700");
+    private static final UUID UUID_B = UUID.fromString("00000002-0000-3512-2118-0009af100700");
+
+    private final List<String> calls = new ArrayList<>();
+
+    private CharacteristicRouter.Handler createHandler(final String name, final boolean result) {
+        return new CharacteristicRouter.Handler() {
+            @Override
+            public boolean onCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                calls.add(name + ":" + status);
+                return result;
+            }
+        };
+    }
+
+    private static BluetoothGattCharacteristic createCharacteristic(UUID uuid) {
+        return new BluetoothGattCharacteristic(uuid, BluetoothGattCharacteristic.PROPERTY_NOTIFY, 0);
+    }
+
+    @Test
+    public void testDispatch() {
+        CharacteristicRouter router = new CharacteristicRouter();
+        router.addChangedHandler(UUID_A, createHandler("changedA", true))
+                .addReadHandler(UUID_A, createHandler("readA", true))
+                .addWriteHandler(UUID_B, createHandler("writeB", false));
+
+        assertTrue(router.dispatchChanged(null, createCharacteristic(UUID_A)));
+        assertTrue(router.dispatchRead(null, createCharacteristic(UUID_A), 5));
+        assertFalse(router.dispatchWrite(null, createCharacteristic(UUID_B), 0));
+        // no handlers registered for these
+        assertFalse(router.dispatchChanged(null, createCharacteristic(UUID_B)));
+        assertFalse(router.dispatchWrite(null, createCharacteristic(UUID_A), 0));
+
+        assertEquals("[changedA:0, readA:5, writeB:0]", calls.toString());
+    }
+
+    @Test
+    public void testHandlerChain() {
+        CharacteristicRouter router = new CharacteristicRouter();
+        router.addChangedHandler(UUID_A, createHandler("first", false))
+                .addChangedHandler(UUID_A, createHandler("second", true))
+                .addChangedHandler(UUID_A, createHandler("third", true));
+
+        assertTrue(router.dispatchChanged(null, createCharacteristic(UUID_A)));
+        assertEquals("[first:0, second:0]", calls.toString());
+    }
+
+    @Test
+    public void testStatistics() {
+        CharacteristicRouter router = new CharacteristicRouter();
+        router.addChangedHandler(UUID_A, createHandler("changedA", true))
+                .addChangedHandler(UUID_B, createHandler("changedB", true));
+        assertEquals("", router.getStatistics());
+
+        for (int i = 0; i < 3; i++) {
+            router.dispatchChanged(null, createCharacteristic(UUID_A));
+        }
+        String statistics = router.getStatistics();
+        assertTrue(statistics, statistics.startsWith("changed " + UUID_A + ": 3 callbacks"));
+        assertFalse(statistics, statistics.contains(UUID_B.toString()));
+
+        router.resetStatistics();
+        assertEquals("", router.getStatistics());
+    }
+}
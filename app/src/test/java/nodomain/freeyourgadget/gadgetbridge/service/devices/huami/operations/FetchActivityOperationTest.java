@@ -0,0 +1,196 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.huami.operations;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.devices.miband.MiBandSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.MiBandActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiSupport;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.miband.operations.OperationStatus;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FetchActivityOperationTest extends TestBase {
+    private static final int SAMPLES_PER_PACKET = 4;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private GBDevice gbDevice;
+    private HuamiSupport support;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        gbDevice = createDummyGDevice("00:00:00:00:00:05");
+        support = new HuamiSupport();
+        support.setContext(gbDevice, null, getContext());
+        // the chunks are stored by the save thread, which has to acquire the database itself
+        GBApplication.releaseDB();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        GBApplication.acquireDB();
+        super.tearDown();
+    }
+
+    @Test
+    public void testChunksAndAnotherRound() throws Exception {
+        GregorianCalendar firstStart = minutesFromNow(-3 * 24 * 60);
+        // starts today and ends before now, so that no third round is needed
+        GregorianCalendar secondStart = new GregorianCalendar();
+        secondStart.set(Calendar.HOUR_OF_DAY, 0);
+        secondStart.set(Calendar.MINUTE, 0);
+        secondStart.set(Calendar.SECOND, 0);
+        secondStart.set(Calendar.MILLISECOND, 0);
+        TestFetchOperation operation = new TestFetchOperation(support, firstStart, secondStart);
+
+        // a full chunk and a partial one
+        int firstSamples = FetchActivityOperation.CHUNK_SAMPLES + FetchActivityOperation.CHUNK_SAMPLES / 2;
+        sendSamples(operation, firstSamples);
+        // the end of the round must not wait for the database on the Bluetooth thread
+        try (DBHandler ignored = GBApplication.acquireDB()) {
+            operation.handleActivityFetchFinish(true);
+            assertEquals(0, operation.roundsStarted.availablePermits());
+        }
+        assertTrue("no further round started", operation.roundsStarted.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, operation.saves.get());
+
+        // only a partial chunk
+        sendSamples(operation, 20);
+        operation.handleActivityFetchFinish(true);
+        assertTrue("operation did not finish", operation.finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, operation.roundsStarted.availablePermits());
+        assertEquals(3, operation.saves.get());
+
+        assertSamples(firstStart, firstSamples);
+        assertSamples(secondStart, 20);
+        assertEquals(minutesAfter(secondStart, 20).getTimeInMillis(), getLastSyncTimeMillis());
+    }
+
+    @Test
+    public void testFailedSave() throws Exception {
+        GregorianCalendar start = minutesFromNow(-3 * 24 * 60);
+        TestFetchOperation operation = new TestFetchOperation(support, start);
+        operation.failingSave = 1;
+
+        sendSamples(operation, 2 * FetchActivityOperation.CHUNK_SAMPLES + 10);
+        operation.handleActivityFetchFinish(true);
+        assertTrue("operation did not finish", operation.finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // nothing is stored after the failed chunk, and no other round is started
+        assertEquals(1, operation.saves.get());
+        assertEquals(0, operation.roundsStarted.availablePermits());
+        assertSamples(minutesAfter(start, FetchActivityOperation.CHUNK_SAMPLES), 0);
+        assertEquals(0, getLastSyncTimeMillis());
+    }
+
+    private static GregorianCalendar minutesFromNow(int minutes) {
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.MINUTE, minutes);
+        return calendar;
+    }
+
+    private static GregorianCalendar minutesAfter(GregorianCalendar start, int minutes) {
+        GregorianCalendar calendar = (GregorianCalendar) start.clone();
+        calendar.add(Calendar.MINUTE, minutes);
+        return calendar;
+    }
+
+    /**
+     * Sends the given number of samples, which must be a multiple of 4, in 17 byte packets.
+     * The steps of a sample are its index modulo 100.
+     */
+    private static void sendSamples(FetchActivityOperation operation, int count) {
+        for (int i = 0; i < count; i += SAMPLES_PER_PACKET) {
+            byte[] packet = new byte[1 + SAMPLES_PER_PACKET * 4];
+            packet[0] = (byte) (i / SAMPLES_PER_PACKET); // counter
+            for (int j = 0; j < SAMPLES_PER_PACKET; j++) {
+                packet[1 + j * 4] = 1; // category
+                packet[1 + j * 4 + 1] = 10; // intensity
+                packet[1 + j * 4 + 2] = (byte) ((i + j) % 100); // steps
+                packet[1 + j * 4 + 3] = 70; // heart rate
+            }
+            operation.bufferActivityData(packet);
+        }
+    }
+
+    /**
+     * Checks that exactly the given number of consecutive samples is stored from the given start on.
+     */
+    private void assertSamples(GregorianCalendar start, int count) throws Exception {
+        int from = (int) (start.getTimeInMillis() / 1000);
+        try (DBHandler handler = GBApplication.acquireDB()) {
+            MiBandSampleProvider provider = new MiBandSampleProvider(gbDevice, handler.getDaoSession());
+            List<MiBandActivitySample> samples = provider.getAllActivitySamples(from, from + 24 * 60 * 60);
+            assertEquals(count, samples.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(from + i * 60, samples.get(i).getTimestamp());
+                assertEquals(i % 100, samples.get(i).getSteps());
+            }
+        }
+    }
+
+    private long getLastSyncTimeMillis() {
+        return GBApplication.getDeviceSpecificSharedPrefs(gbDevice.getAddress()).getLong("lastSyncTimeMillis", 0);
+    }
+
+    /**
+     * Takes the data of its rounds from the test instead of the device.
+     */
+    private static class TestFetchOperation extends FetchActivityOperation {
+        final Semaphore roundsStarted = new Semaphore(0);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicInteger saves = new AtomicInteger();
+        volatile int failingSave;
+        private final GregorianCalendar[] roundStarts;
+        private volatile int round;
+
+        TestFetchOperation(HuamiSupport support, GregorianCalendar... roundStarts) {
+            super(support);
+            this.roundStarts = roundStarts;
+            operationStatus = OperationStatus.RUNNING;
+            fetchCount = 1;
+        }
+
+        @Override
+        Calendar getLastStartTimestamp() {
+            return roundStarts[round];
+        }
+
+        @Override
+        protected void startFetching() {
+            round++;
+            fetchCount++;
+            roundsStarted.release();
+        }
+
+        @Override
+        void saveLastSyncTimestamp(@NonNull GregorianCalendar timestamp) {
+            if (saves.incrementAndGet() == failingSave) {
+                throw new IllegalStateException("simulated failure");
+            }
+            super.saveLastSyncTimestamp(timestamp);
+        }
+
+        @Override
+        protected void operationFinished() {
+            super.operationFinished();
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.huami.operations;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.Transaction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.SetProgressAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WriteAction;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WriteWithoutResponseAction;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+
+public class FirmwareChunkActionsTest extends TestBase {
+
+    @Test
+    public void testChunksAndSyncs() throws Exception {
+        byte[] firmware = new byte[20 * 250 + 7];
+        for (int i = 0; i < firmware.length; i++) {
+            firmware[i] = (byte) i;
+        }
+        BluetoothGattCharacteristic dataChar = createCharacteristic();
+        BluetoothGattCharacteristic controlChar = createCharacteristic();
+        FirmwareChunkActions chunks = new FirmwareChunkActions(firmware, 20, dataChar, controlChar, "test", getContext());
+        assertEquals(251, chunks.getChunkCount());
+
+        Transaction transaction = new Transaction("test");
+        transaction.add(new WriteAction(controlChar, new byte[]{1}));
+        transaction.add(chunks, chunks.getActionCount());
+        transaction.add(new WriteAction(controlChar, new byte[]{2}));
+        assertEquals(chunks.getActionCount() + 2, transaction.getActionCount());
+
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        BluetoothGatt gatt = Mockito.mock(BluetoothGatt.class);
+        Mockito.when(gatt.writeCharacteristic(any(BluetoothGattCharacteristic.class))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                BluetoothGattCharacteristic characteristic = (BluetoothGattCharacteristic) invocation.getArguments()[0];
+                written.write(characteristic.getValue());
+                return true;
+            }
+        });
+
+        int actions = 0;
+        int dataWrites = 0;
+        int syncs = 0;
+        int progressUpdates = 0;
+        for (BtLEAction action : transaction.getActions()) {
+            actions++;
+            if (action instanceof WriteWithoutResponseAction) {
+                dataWrites++;
+                assertTrue(action.run(gatt));
+            } else if (action instanceof SetProgressAction) {
+                progressUpdates++;
+            } else if (action.getCharacteristic() == controlChar) {
+                syncs++;
+            }
+        }
+        assertEquals(transaction.getActionCount(), actions);
+        assertEquals(251, dataWrites);
+        // after chunk 100 and 200, plus the start and the final write
+        assertEquals(2 + 2, syncs);
+        assertEquals(2, progressUpdates);
+        assertArrayEquals(firmware, written.toByteArray());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOnlyOnce() {
+        FirmwareChunkActions chunks = new FirmwareChunkActions(new byte[100], 20, createCharacteristic(), createCharacteristic(), "test", getContext());
+        chunks.iterator();
+        chunks.iterator();
+    }
+
+    private BluetoothGattCharacteristic createCharacteristic() {
+        return new BluetoothGattCharacteristic(UUID.randomUUID(), BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE | BluetoothGattCharacteristic.PROPERTY_WRITE, 0);
+    }
+}
@@ -0,0 +1,133 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import nodomain.freeyourgadget.gadgetbridge.database.ActivityRollups;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.devices.pebble.PebbleHealthSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.ActivityRollup;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivityOverlay;
+import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class DatalogHealthWriterTest extends TestBase {
+    private static final UUID UUID_ZERO = new UUID(0, 0);
+    private static final int STEPS_RECORD_LENGTH = 13;
+
+    @Test
+    public void testStepsAreStoredOnClose() {
+        GBDevice device = createDummyGDevice("00:00:00:00:00:02");
+        DatalogHealthWriter writer = new DatalogHealthWriter(device);
+        short itemSize = 9 + 2 * STEPS_RECORD_LENGTH;
+        DatalogSessionHealthSteps session = new DatalogSessionHealthSteps((byte) 1, UUID_ZERO, 0, 81, (byte) 0, itemSize, writer);
+
+        ByteBuffer buf = ByteBuffer.allocate(10 + 2 * itemSize);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(new byte[10]); // datalog header, not part of the records
+        putStepsPacket(buf, 1000000020, 10, 20);
+        putStepsPacket(buf, 1000000140, 30, 40);
+        buf.position(10);
+
+        assertNotNull(session.handleMessage(buf, 2 * itemSize));
+        PebbleHealthSampleProvider provider = new PebbleHealthSampleProvider(device, daoSession);
+        assertEquals(0, provider.getAllActivitySamples(1000000000, 1000001000).size());
+
+        session.close();
+
+        List<PebbleHealthActivitySample> samples = provider.getAllActivitySamples(1000000000, 1000001000);
+        assertEquals(4, samples.size());
+        int[] expectedSteps = {10, 11, 30, 31};
+        for (int i = 0; i < samples.size(); i++) {
+            PebbleHealthActivitySample sample = samples.get(i);
+            assertEquals(1000000020 + 60 * i, sample.getTimestamp());
+            assertEquals(expectedSteps[i], sample.getSteps());
+            assertEquals(expectedSteps[i] * 100, sample.getRawIntensity());
+            assertEquals(i < 2 ? 20 : 40, sample.getHeartRate());
+            assertEquals(STEPS_RECORD_LENGTH, sample.getRawPebbleHealthData().length);
+            assertEquals((byte) expectedSteps[i], sample.getRawPebbleHealthData()[0]);
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testSleepOverlaysAreStoredOnFlush() {
+        GBDevice device = createDummyGDevice("00:00:00:00:00:03");
+        DatalogHealthWriter writer = new DatalogHealthWriter(device);
+        short itemSize = 18;
+        DatalogSessionHealthSleep session = new DatalogSessionHealthSleep((byte) 2, UUID_ZERO, 0, 83, (byte) 0, itemSize, writer);
+
+        ByteBuffer buf = ByteBuffer.allocate(itemSize);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putShort((short) 1); // version
+        buf.putInt(3600); // UTC offset
+        buf.putInt(1000000000); // bed time start
+        buf.putInt(1000028800); // bed time end
+        buf.putInt(7200); // deep sleep seconds
+        byte[] raw = Arrays.copyOf(buf.array(), itemSize);
+        buf.position(0);
+
+        assertNotNull(session.handleMessage(buf, itemSize));
+        writer.flush();
+
+        List<PebbleHealthActivityOverlay> overlays = daoSession.getPebbleHealthActivityOverlayDao().loadAll();
+        assertEquals(1, overlays.size());
+        assertEquals(1000000000, overlays.get(0).getTimestampFrom());
+        assertEquals(1000028800, overlays.get(0).getTimestampTo());
+        assertEquals(1, overlays.get(0).getRawKind());
+        assertArrayEquals(raw, overlays.get(0).getRawPebbleHealthData());
+        writer.close();
+    }
+
+    @Test
+    public void testOverlaysAreAppliedToRollups() {
+        GBDevice device = createDummyGDevice("00:00:00:00:00:04");
+        DatalogHealthWriter writer = new DatalogHealthWriter(device);
+        int dayStart = 11574 * ActivityRollups.PERIOD_DAY;
+        for (int i = 0; i < 60; i++) {
+            writer.addSample(new PebbleHealthActivitySample(dayStart + i * 60, 0, 0, null, 100, 10, 0));
+        }
+        writer.flush();
+
+        PebbleHealthSampleProvider provider = new PebbleHealthSampleProvider(device, daoSession);
+        Device dbDevice = DBHelper.getDevice(device, daoSession);
+        ActivityRollup rollup = ActivityRollups.getDailyRollups(provider, dbDevice, new int[] { dayStart }, daoSession)[0];
+        assertEquals(600, rollup.getActivitySteps());
+        assertEquals(0, rollup.getLightSleepSteps());
+
+        // a flush with nothing but an overlay must still update the stored rollups
+        writer.addOverlay(new PebbleHealthActivityOverlay(dayStart, dayStart + 30 * 60, PebbleHealthSampleProvider.TYPE_LIGHT_SLEEP, 0, 0, null));
+        writer.flush();
+        rollup = ActivityRollups.getDailyRollups(provider, dbDevice, new int[] { dayStart }, daoSession)[0];
+        assertEquals(300, rollup.getActivitySteps());
+        assertEquals(300, rollup.getLightSleepSteps());
+        writer.close();
+    }
+
+    private void putStepsPacket(ByteBuffer buf, int timestamp, int steps, int heartRate) {
+        buf.putShort((short) 13); // record version
+        buf.putInt(timestamp);
+        buf.put((byte) 0); // unknown
+        buf.put((byte) STEPS_RECORD_LENGTH);
+        buf.put((byte) 2); // record count
+        for (int i = 0; i < 2; i++) {
+            buf.put((byte) (steps + i));
+            buf.put((byte) 0); // orientation
+            buf.putShort((short) ((steps + i) * 100)); // intensity
+            buf.put((byte) 0); // light intensity
+            buf.put(new byte[7]);
+            buf.put((byte) heartRate);
+        }
+    }
+}
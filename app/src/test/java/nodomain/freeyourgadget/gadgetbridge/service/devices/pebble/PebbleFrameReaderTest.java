@@ -0,0 +1,131 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PebbleFrameReaderTest {
+
+    /**
+     * Returns at most the given number of bytes per read, like a slow connection
+     */
+    private static class ChunkedInputStream extends ByteArrayInputStream {
+        private final int chunkSize;
+
+        ChunkedInputStream(byte[] data, int chunkSize) {
+            super(data);
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunkSize));
+        }
+    }
+
+    private static byte[] frame(int endpoint, int payloadLength) {
+        ByteBuffer buf = ByteBuffer.allocate(4 + payloadLength);
+        buf.putShort((short) payloadLength);
+        buf.putShort((short) endpoint);
+        for (int i = 0; i < payloadLength; i++) {
+            buf.put((byte) (endpoint + i));
+        }
+        return buf.array();
+    }
+
+    private static byte[] tcpFrame(int endpoint, int payloadLength) {
+        byte[] frame = frame(endpoint, payloadLength);
+        ByteBuffer buf = ByteBuffer.allocate(frame.length + 8);
+        buf.putShort((short) 0xfeed);
+        buf.putShort((short) 1);
+        buf.putShort((short) frame.length);
+        buf.put(frame);
+        buf.putShort((short) 0xbeef);
+        return buf.array();
+    }
+
+    private static void assertFrame(ByteBuffer frame, int endpoint, int payloadLength) {
+        assertEquals(0, frame.position());
+        assertEquals(4 + payloadLength, frame.remaining());
+        assertEquals(payloadLength, frame.getShort());
+        assertEquals(endpoint, frame.getShort());
+        for (int i = 0; i < payloadLength; i++) {
+            assertEquals((byte) (endpoint + i), frame.get());
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testSeveralFramesPerRead() throws IOException {
+        byte[] data = concat(frame(1, 10), frame(2, 0), frame(3, 300));
+        PebbleFrameReader reader = new PebbleFrameReader(new ByteArrayInputStream(data), false);
+
+        assertFalse(reader.hasBufferedFrame());
+        assertFrame(reader.nextFrame(), 1, 10);
+        assertTrue(reader.hasBufferedFrame());
+        assertFrame(reader.nextFrame(), 2, 0);
+        assertTrue(reader.hasBufferedFrame());
+        assertFrame(reader.nextFrame(), 3, 300);
+        assertFalse(reader.hasBufferedFrame());
+    }
+
+    @Test
+    public void testFramesSplitAcrossReads() throws IOException {
+        int count = 50;
+        byte[][] frames = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            frames[i] = frame(i, i == 10 ? PebbleFrameReader.MAX_PAYLOAD_LENGTH : i * 37);
+        }
+        PebbleFrameReader reader = new PebbleFrameReader(new ChunkedInputStream(concat(frames), 1000), false);
+        for (int i = 0; i < count; i++) {
+            assertFrame(reader.nextFrame(), i, frames[i].length - 4);
+        }
+    }
+
+    @Test
+    public void testTCP() throws IOException {
+        byte[] data = concat(tcpFrame(1, 5), tcpFrame(2, 7));
+        PebbleFrameReader reader = new PebbleFrameReader(new ChunkedInputStream(data, 3), true);
+        assertFrame(reader.nextFrame(), 1, 5);
+        assertFrame(reader.nextFrame(), 2, 7);
+    }
+
+    @Test
+    public void testInvalidLength() throws IOException {
+        byte[] invalid = frame(1, 0);
+        invalid[0] = (byte) 0xff;
+        PebbleFrameReader reader = new PebbleFrameReader(new ByteArrayInputStream(concat(invalid, frame(2, 3))), false);
+        assertNull(reader.nextFrame());
+        // the rest of the received data is dropped as well
+        try {
+            reader.nextFrame();
+            fail("expected end of stream");
+        } catch (IOException expected) {
+            assertEquals("broken pipe", expected.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedFrame() throws IOException {
+        byte[] data = frame(1, 20);
+        InputStream in = new ByteArrayInputStream(data, 0, data.length - 1);
+        new PebbleFrameReader(in, false).nextFrame();
+    }
+}
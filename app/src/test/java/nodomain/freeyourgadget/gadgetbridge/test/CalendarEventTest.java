@@ -3,14 +3,20 @@ package nodomain.freeyourgadget.gadgetbridge.test;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import nodomain.freeyourgadget.gadgetbridge.entities.CalendarSyncState;
 import nodomain.freeyourgadget.gadgetbridge.entities.CalendarSyncStateDao;
 import nodomain.freeyourgadget.gadgetbridge.externalevents.CalendarReceiver;
+import nodomain.freeyourgadget.gadgetbridge.externalevents.CalendarSyncDiff;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.CalendarEvents;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 import static org.junit.Assert.assertNotEquals;
 
 public class CalendarEventTest extends TestBase {
@@ -18,6 +24,7 @@ public class CalendarEventTest extends TestBase {
     private static final long END = 2;
     private static final long ID_1 = 100;
     private static final long ID_2 = 101;
+    private static final long ID_3 = 102;
     private static final String CALNAME_1 = "cal1";
 
     @Test
@@ -51,4 +58,55 @@ public class CalendarEventTest extends TestBase {
         assertEquals(2, calendarSyncStateDao.count());
     }
 
+    @Test
+    public void testSyncDiff() {
+        CalendarEvents.CalendarEvent unchanged = new CalendarEvents.CalendarEvent(BEGIN, END, ID_1, "unchanged", null, null, CALNAME_1, false);
+        CalendarEvents.CalendarEvent changed = new CalendarEvents.CalendarEvent(BEGIN, END, ID_2, "changed", null, null, CALNAME_1, false);
+        CalendarEvents.CalendarEvent added = new CalendarEvents.CalendarEvent(BEGIN, END, ID_3, "added", null, null, CALNAME_1, false);
+        long deletedId = 200;
+
+        Map<Long, Integer> syncedHashes = new HashMap<>();
+        syncedHashes.put(ID_1, unchanged.hashCode());
+        syncedHashes.put(ID_2, changed.hashCode() + 1);
+        syncedHashes.put(deletedId, 42);
+
+        List<CalendarEvents.CalendarEvent> eventList = new ArrayList<>();
+        eventList.add(unchanged);
+        eventList.add(changed);
+        eventList.add(added);
+        eventList.add(added);
+
+        CalendarSyncDiff diff = CalendarSyncDiff.compute(eventList, syncedHashes);
+        assertEquals(Collections.singletonList(added), diff.getAdded());
+        assertEquals(Collections.singletonList(changed), diff.getUpdated());
+        assertEquals(Collections.singletonList(deletedId), diff.getDeleted());
+
+        syncedHashes.put(ID_2, changed.hashCode());
+        syncedHashes.put(ID_3, added.hashCode());
+        syncedHashes.remove(deletedId);
+        assertTrue(CalendarSyncDiff.compute(eventList, syncedHashes).isEmpty());
+    }
+
+    @Test
+    public void testSyncUpdateAndDelete() {
+        List<CalendarEvents.CalendarEvent> eventList = new ArrayList<>();
+        eventList.add(new CalendarEvents.CalendarEvent(BEGIN, END, ID_1, "something", null, null, CALNAME_1, false));
+        eventList.add(new CalendarEvents.CalendarEvent(BEGIN, END, ID_2, "something", null, null, CALNAME_1, false));
+
+        GBDevice dummyGBDevice = createDummyGDevice("00:00:01:00:04");
+        dummyGBDevice.setState(GBDevice.State.INITIALIZED);
+        CalendarReceiver testCR = new CalendarReceiver(dummyGBDevice);
+        testCR.syncCalendar(eventList);
+
+        CalendarEvents.CalendarEvent updated = new CalendarEvents.CalendarEvent(BEGIN, END, ID_1, "something else", null, null, CALNAME_1, false);
+        eventList.clear();
+        eventList.add(updated);
+        testCR.syncCalendar(eventList);
+
+        List<CalendarSyncState> syncStates = daoSession.getCalendarSyncStateDao().queryBuilder()
+                .where(CalendarSyncStateDao.Properties.CalendarEntryId.in(ID_1, ID_2)).build().list();
+        assertEquals(1, syncStates.size());
+        assertEquals(ID_1, syncStates.get(0).getCalendarEntryId());
+        assertEquals(updated.hashCode(), syncStates.get(0).getHash());
+    }
 }
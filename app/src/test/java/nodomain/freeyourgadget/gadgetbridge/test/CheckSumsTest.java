@@ -0,0 +1,69 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.pebble.STM32CRC;
+import nodomain.freeyourgadget.gadgetbridge.util.CheckSums;
+
+import static org.junit.Assert.assertEquals;
+
+public class CheckSumsTest extends TestBase {
+    private static final byte[] CHECK = "123456789".getBytes();
+
+    @Test
+    public void testKnownValues() {
+        assertEquals(0xa1, CheckSums.getCRC8(CHECK));
+        assertEquals(0x29b1, CheckSums.getCRC16(CHECK));
+        assertEquals(0xcbf43926, CheckSums.getCRC32(CHECK));
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+
+        CheckSums.CRC8 crc8 = new CheckSums.CRC8();
+        CheckSums.CRC16 crc16 = new CheckSums.CRC16();
+        CRC32 crc32 = new CRC32();
+        assertEquals(data.length, CheckSums.update(new ByteArrayInputStream(data), crc8, crc16, crc32));
+        assertEquals(CheckSums.getCRC8(data), (int) crc8.getValue());
+        assertEquals(CheckSums.getCRC16(data), (int) crc16.getValue());
+        assertEquals(CheckSums.getCRC32(data), (int) crc32.getValue());
+
+        crc16.reset();
+        for (byte b : data) {
+            crc16.update(b);
+        }
+        assertEquals(CheckSums.getCRC16(data), (int) crc16.getValue());
+
+        crc16.reset();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        CheckSums.update(crc16, buffer);
+        assertEquals(0, buffer.remaining());
+        assertEquals(CheckSums.getCRC16(data), (int) crc16.getValue());
+    }
+
+    @Test
+    public void testSTM32Chunks() {
+        byte[] data = new byte[1003];
+        new Random(42).nextBytes(data);
+
+        STM32CRC whole = new STM32CRC();
+        whole.addData(data, data.length);
+
+        STM32CRC chunked = new STM32CRC();
+        CheckSums.update(chunked, ByteBuffer.wrap(data, 0, 7));
+        // the result only includes the unaligned tail, so more data can still be added
+        chunked.getResult();
+        chunked.update(data, 7, data.length - 7);
+
+        assertEquals(whole.getResult(), chunked.getResult());
+        assertEquals(whole.getResult(), (int) whole.getValue());
+    }
+}
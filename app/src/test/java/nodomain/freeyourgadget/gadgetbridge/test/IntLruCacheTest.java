@@ -0,0 +1,92 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.util.IntLruCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class IntLruCacheTest extends TestBase {
+
+    @Test
+    public void testGetPutRemove() {
+        IntLruCache<String> cache = new IntLruCache<>(4);
+        assertNull(cache.get(1));
+        cache.put(1, "one");
+        cache.put(-2, "minus two");
+        assertEquals("one", cache.get(1));
+        assertEquals("minus two", cache.get(-2));
+        cache.put(1, "uno");
+        assertEquals("uno", cache.get(1));
+        assertEquals(2, cache.size());
+
+        assertEquals("uno", cache.remove(1));
+        assertNull(cache.remove(1));
+        assertNull(cache.get(1));
+        assertEquals(1, cache.size());
+
+        assertEquals(4, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        IntLruCache<Integer> cache = new IntLruCache<>(3);
+        cache.put(1, 1);
+        cache.put(2, 2);
+        cache.put(3, 3);
+        cache.get(1); // 2 is now the least recently used one
+        cache.put(4, 4);
+
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(2));
+        assertEquals(Integer.valueOf(1), cache.get(1));
+        assertEquals(Integer.valueOf(3), cache.get(3));
+        assertEquals(Integer.valueOf(4), cache.get(4));
+    }
+
+    @Test
+    public void testManyKeys() {
+        IntLruCache<Integer> cache = new IntLruCache<>(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i << 4, i);
+        }
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.getEvictionCount());
+        for (int i = 900; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), cache.get(i << 4));
+        }
+        assertNull(cache.get(899 << 4));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(999 << 4));
+    }
+
+    @Test
+    public void testExpiry() {
+        FakeClockCache<String> cache = new FakeClockCache<>(10, 1000);
+        cache.put(1, "one");
+        cache.time = 999;
+        assertEquals("one", cache.get(1));
+        cache.time = 1000;
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    private static class FakeClockCache<V> extends IntLruCache<V> {
+        long time;
+
+        FakeClockCache(int maxSize, long maxAgeMillis) {
+            super(maxSize, maxAgeMillis);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import nodomain.freeyourgadget.gadgetbridge.util.MultiPatternMatcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MultiPatternMatcherTest extends TestBase {
+
+    @Test
+    public void testContainsAny() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList("he", "she", "his", "hers"));
+        assertTrue(matcher.containsAny("ushers"));
+        assertTrue(matcher.containsAny("this"));
+        assertFalse(matcher.containsAny("oh, hi"));
+        assertFalse(matcher.containsAny("HE"));
+        assertFalse(matcher.containsAny(""));
+        assertFalse(matcher.containsAny(null));
+    }
+
+    @Test
+    public void testContainsAll() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList("Hello", "world", "test", "world"));
+        assertEquals(3, matcher.getPatternCount());
+        assertTrue(matcher.containsAll("Hello world this is a test"));
+        assertFalse(matcher.containsAll("Hello world this is a Versuch"));
+        // overlapping matches, found via failure links
+        MultiPatternMatcher overlapping = new MultiPatternMatcher(Arrays.asList("abcd", "bc", "c"));
+        assertTrue(overlapping.containsAll("xabcdx"));
+        assertFalse(overlapping.containsAll("xabcx"));
+        assertTrue(overlapping.containsAny("xabx c"));
+    }
+
+    @Test
+    public void testSameAsStringContains() {
+        String[] patterns = {"aa", "aab", "ab", "b", "bab", "abba"};
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList(patterns));
+        for (int i = 0; i < 1 << 8; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int bit = 0; bit < 8; bit++) {
+                text.append((i & (1 << bit)) != 0 ? 'a' : 'b');
+            }
+            boolean any = false;
+            boolean all = true;
+            for (String pattern : patterns) {
+                boolean contains = text.toString().contains(pattern);
+                any |= contains;
+                all &= contains;
+            }
+            assertEquals(text.toString(), any, matcher.containsAny(text));
+            assertEquals(text.toString(), all, matcher.containsAll(text));
+        }
+    }
+
+    @Test
+    public void testNoPatterns() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Collections.<String>emptyList());
+        assertFalse(matcher.containsAny("text"));
+        assertTrue(matcher.containsAll("text"));
+        MultiPatternMatcher empty = new MultiPatternMatcher(Collections.singletonList(""));
+        assertTrue(empty.containsAny("text"));
+        assertTrue(empty.containsAll("text"));
+    }
+}
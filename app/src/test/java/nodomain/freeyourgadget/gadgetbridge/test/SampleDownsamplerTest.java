@@ -0,0 +1,102 @@
+package nodomain.freeyourgadget.gadgetbridge.test;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.SampleDownsampler;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.SampleColumns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SampleDownsamplerTest extends TestBase {
+    private static final int START = 1500000000;
+    private static final int MINUTES_PER_MONTH = 30 * 24 * 60;
+
+    @Test
+    public void testNoReductionNeeded() {
+        SampleColumns samples = createSamples(100, 0);
+        assertSame(samples, SampleDownsampler.downsample(samples, 100));
+    }
+
+    @Test
+    public void testMonth() {
+        int peakMinute = 12345;
+        SampleColumns samples = createSamples(MINUTES_PER_MONTH, peakMinute);
+        SampleColumns reduced = SampleDownsampler.downsample(samples, 1000);
+
+        assertTrue(reduced.size() < 1100);
+        // the time span does not change
+        assertEquals(samples.getTimestamp(0), reduced.getTimestamp(0));
+        assertEquals(samples.getTimestamp(samples.size() - 1), reduced.getTimestamp(reduced.size() - 1));
+
+        int steps = 0;
+        int maxHeartRate = 0;
+        for (int i = 0; i < reduced.size(); i++) {
+            steps += reduced.getSteps(i);
+            maxHeartRate = Math.max(maxHeartRate, reduced.getHeartRate(i));
+            if (i > 0) {
+                assertTrue(reduced.getTimestamp(i) > reduced.getTimestamp(i - 1));
+            }
+        }
+        assertEquals(MINUTES_PER_MONTH * 10, steps);
+        // the heart rate peak is kept
+        assertEquals(180, maxHeartRate);
+        // as are the kind transitions, at their exact timestamps
+        assertEquals(getTransitions(samples), getTransitions(reduced));
+    }
+
+    @Test
+    public void testReplaceRange() {
+        SampleColumns samples = createSamples(MINUTES_PER_MONTH, 0);
+        SampleColumns reduced = SampleDownsampler.downsample(samples, 1000);
+        int tsFrom = START + 1000 * 60;
+        int tsTo = START + 1099 * 60;
+        SampleColumns details = createSamples(MINUTES_PER_MONTH, 0);
+
+        SampleColumns merged = SampleDownsampler.replaceRange(reduced, SampleDownsampler.downsample(slice(details, 1000, 1100), 1000), tsFrom, tsTo);
+        int detailed = 0;
+        for (int i = 0; i < merged.size(); i++) {
+            int timestamp = merged.getTimestamp(i);
+            if (timestamp >= tsFrom && timestamp <= tsTo) {
+                detailed++;
+            }
+            if (i > 0) {
+                assertTrue(timestamp > merged.getTimestamp(i - 1));
+            }
+        }
+        assertEquals(100, detailed);
+        assertEquals(reduced.getTimestamp(reduced.size() - 1), merged.getTimestamp(merged.size() - 1));
+    }
+
+    private SampleColumns createSamples(int count, int peakMinute) {
+        SampleColumns samples = new SampleColumns(count);
+        for (int i = 0; i < count; i++) {
+            // sleep from 23:00 to 07:00
+            int minuteOfDay = i % (24 * 60);
+            int kind = minuteOfDay >= 23 * 60 || minuteOfDay < 7 * 60 ? ActivityKind.TYPE_LIGHT_SLEEP : ActivityKind.TYPE_ACTIVITY;
+            int heartRate = i == peakMinute ? 180 : 60 + i % 20;
+            samples.add(START + i * 60, kind, kind, i % 100, (i % 100) / 100f, 10, heartRate);
+        }
+        return samples;
+    }
+
+    private SampleColumns slice(SampleColumns samples, int from, int to) {
+        SampleColumns slice = new SampleColumns(to - from);
+        for (int i = from; i < to; i++) {
+            slice.add(samples, i);
+        }
+        return slice;
+    }
+
+    private String getTransitions(SampleColumns samples) {
+        StringBuilder transitions = new StringBuilder();
+        for (int i = 1; i < samples.size(); i++) {
+            if (samples.getKind(i) != samples.getKind(i - 1)) {
+                transitions.append(samples.getTimestamp(i)).append(':').append(samples.getKind(i)).append(' ');
+            }
+        }
+        return transitions.toString();
+    }
+}
@@ -0,0 +1,75 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
+
+/**
+ * The conversions used for nearly every value received from or sent to a BLE device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BLETypeConversionsBenchmark {
+    private byte[] packet;
+    private byte[] timeBytes;
+    private GregorianCalendar calendar;
+    private int value = 0x12345678;
+
+    @Setup
+    public void setUp() {
+        packet = Captures.randomBytes(20);
+        calendar = new GregorianCalendar(2019, 7, 20, 14, 30, 15);
+        timeBytes = BLETypeConversions.calendarToRawBytes(calendar);
+    }
+
+    @Benchmark
+    public int toUint16() {
+        return BLETypeConversions.toUint16(packet[2], packet[3]);
+    }
+
+    @Benchmark
+    public int toUint32() {
+        return BLETypeConversions.toUint32(packet[4], packet[5], packet[6], packet[7]);
+    }
+
+    @Benchmark
+    public byte[] fromUint32() {
+        return BLETypeConversions.fromUint32(value);
+    }
+
+    @Benchmark
+    public byte[] calendarToRawBytes() {
+        return BLETypeConversions.calendarToRawBytes(calendar);
+    }
+
+    @Benchmark
+    public GregorianCalendar rawBytesToCalendar() {
+        return BLETypeConversions.rawBytesToCalendar(timeBytes);
+    }
+}
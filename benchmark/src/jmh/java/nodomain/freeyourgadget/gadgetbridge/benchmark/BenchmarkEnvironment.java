@@ -0,0 +1,117 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.benchmark;
+
+import android.content.SharedPreferences;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
+import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+
+/**
+ * Sets up the little application state the benchmarked code needs, without starting the
+ * application. All preferences have their default values.
+ */
+public final class BenchmarkEnvironment {
+    private static boolean sInitialized;
+
+    private BenchmarkEnvironment() {
+    }
+
+    public static synchronized void setUp() {
+        if (sInitialized) {
+            return;
+        }
+        Prefs prefs = new Prefs(new DefaultSharedPreferences());
+        setStaticField("prefs", prefs);
+        setStaticField("gbPrefs", new GBPrefs(prefs));
+        sInitialized = true;
+    }
+
+    private static void setStaticField(String name, Object value) {
+        try {
+            Field field = GBApplication.class.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(null, value);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Unable to set GBApplication." + name, ex);
+        }
+    }
+
+    /**
+     * Returns the default value for every preference, and cannot be edited.
+     */
+    private static class DefaultSharedPreferences implements SharedPreferences {
+        @Override
+        public Map<String, ?> getAll() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return defValue;
+        }
+
+        @Override
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return false;
+        }
+
+        @Override
+        public Editor edit() {
+            throw new UnsupportedOperationException("preferences cannot be changed in benchmarks");
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+    }
+}
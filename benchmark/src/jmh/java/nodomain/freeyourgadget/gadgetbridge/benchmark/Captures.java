@@ -0,0 +1,58 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Loads recorded captures and creates synthetic payloads for the benchmarks.
+ */
+public final class Captures {
+    private Captures() {
+    }
+
+    /**
+     * Reads a capture in the format of the unit test resources, i.e. whitespace separated
+     * bytes like "0x1f".
+     */
+    public static byte[] readHexDump(String resource) throws IOException {
+        try (InputStream in = Captures.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("capture not found: " + resource);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Scanner scanner = new Scanner(in, "US-ASCII");
+            while (scanner.hasNext()) {
+                out.write(Integer.decode(scanner.next()));
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Returns the given number of random bytes, always the same ones for the same length.
+     */
+    public static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,69 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import nodomain.freeyourgadget.gadgetbridge.GBException;
+import nodomain.freeyourgadget.gadgetbridge.devices.amazfitbip.BipActivitySummary;
+import nodomain.freeyourgadget.gadgetbridge.entities.Device;
+import nodomain.freeyourgadget.gadgetbridge.entities.User;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityTrack;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiActivityDetailsParser;
+
+/**
+ * Parses the recorded activity details of a workout, as used by the unit tests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HuamiActivityDetailsParserBenchmark {
+    private byte[] details;
+    private BipActivitySummary summary;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkEnvironment.setUp();
+        details = Captures.readHexDump("ActivityDetailsDump1.txt");
+
+        summary = new BipActivitySummary();
+        summary.setBaseLongitude(1);
+        summary.setBaseLatitude(1);
+        summary.setBaseAltitude(1);
+        summary.setStartTime(new Date(1484920800000L));
+        summary.setName("benchmark");
+        summary.setUser(new User(0L));
+        summary.setDevice(new Device(0L));
+    }
+
+    @Benchmark
+    public ActivityTrack parse() throws GBException {
+        HuamiActivityDetailsParser parser = new HuamiActivityDetailsParser(summary);
+        parser.setSkipCounterByte(true);
+        return parser.parse(details);
+    }
+}
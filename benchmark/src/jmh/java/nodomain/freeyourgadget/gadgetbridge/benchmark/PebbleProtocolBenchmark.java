@@ -0,0 +1,127 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEvent;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.CallSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
+import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
+import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.pebble.PebbleProtocol;
+
+/**
+ * Decodes synthetic frames as received from a Pebble, and encodes the messages that are sent
+ * most often.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PebbleProtocolBenchmark {
+    private static final short ENDPOINT_FIRMWAREVERSION = 16;
+    private static final short ENDPOINT_MUSICCONTROL = 32;
+    private static final short ENDPOINT_PING = 2001;
+
+    private PebbleProtocol protocol;
+    private ByteBuffer musicControlFrame;
+    private ByteBuffer pingFrame;
+    private ByteBuffer firmwareVersionFrame;
+    private NotificationSpec notificationSpec;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.setUp();
+        protocol = new PebbleProtocol(new GBDevice("AA:BB:CC:DD:EE:FF", "Pebble Time", DeviceType.PEBBLE));
+
+        musicControlFrame = frame(ENDPOINT_MUSICCONTROL, new byte[]{1}); // play/pause
+        pingFrame = frame(ENDPOINT_PING, new byte[]{0, 0x12, 0x34, 0x56, 0x78});
+
+        ByteBuffer version = ByteBuffer.allocate(47);
+        version.put((byte) 1);
+        version.putInt(0x5a000000); // timestamp
+        version.put("v4.3".getBytes());
+        version.position(37 + 9);
+        version.put((byte) 10); // hardware revision, snowy_s3
+        firmwareVersionFrame = frame(ENDPOINT_FIRMWAREVERSION, version.array());
+
+        notificationSpec = new NotificationSpec(42);
+        notificationSpec.sender = "Jane Doe";
+        notificationSpec.subject = "Lunch";
+        notificationSpec.body = "Are we still meeting at noon? I booked a table for four people, see you there!";
+        notificationSpec.type = NotificationType.GENERIC_SMS;
+        notificationSpec.sourceName = "Messaging";
+    }
+
+    private static ByteBuffer frame(short endpoint, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + payload.length);
+        frame.putShort((short) payload.length);
+        frame.putShort(endpoint);
+        frame.put(payload);
+        return frame;
+    }
+
+    private GBDeviceEvent[] decode(ByteBuffer frame) {
+        frame.clear();
+        return protocol.decodeResponse(frame);
+    }
+
+    @Benchmark
+    public GBDeviceEvent[] decodeMusicControl() {
+        return decode(musicControlFrame);
+    }
+
+    @Benchmark
+    public GBDeviceEvent[] decodePing() {
+        return decode(pingFrame);
+    }
+
+    @Benchmark
+    public GBDeviceEvent[] decodeFirmwareVersion() {
+        return decode(firmwareVersionFrame);
+    }
+
+    @Benchmark
+    public byte[] encodeNotification() {
+        return protocol.encodeNotification(notificationSpec);
+    }
+
+    @Benchmark
+    public byte[] encodeSetCallState() {
+        return protocol.encodeSetCallState("+49 30 1234567", "Jane Doe", CallSpec.CALL_INCOMING);
+    }
+
+    @Benchmark
+    public byte[] encodeSetMusicInfo() {
+        return protocol.encodeSetMusicInfo("Some Artist", "Some Album", "Some Track", 240, 12, 3);
+    }
+
+    @Benchmark
+    public byte[] encodeSetTime() {
+        return protocol.encodeSetTime();
+    }
+}
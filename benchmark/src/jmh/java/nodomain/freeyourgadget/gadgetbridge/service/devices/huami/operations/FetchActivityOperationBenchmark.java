@@ -0,0 +1,92 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.devices.huami.operations;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+import nodomain.freeyourgadget.gadgetbridge.benchmark.BenchmarkEnvironment;
+import nodomain.freeyourgadget.gadgetbridge.benchmark.Captures;
+import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiSupport;
+
+/**
+ * Buffers a day of activity data, as received in 17 byte notifications with 4 samples each.
+ * The chunks are handed over to the save thread as usual, which drops them instead of storing them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FetchActivityOperationBenchmark {
+    private static final int SAMPLES_PER_DAY = 24 * 60;
+    private static final int SAMPLES_PER_PACKET = 4;
+    private static final int BYTES_PER_SAMPLE = 4;
+
+    private static class DiscardingFetchOperation extends FetchActivityOperation {
+        private final GregorianCalendar startTimestamp = new GregorianCalendar(2019, Calendar.AUGUST, 20);
+        // only written by the save thread
+        volatile int savedSamples;
+
+        DiscardingFetchOperation(HuamiSupport support) {
+            super(support);
+        }
+
+        @Override
+        Calendar getLastStartTimestamp() {
+            return startTimestamp;
+        }
+
+        @Override
+        void saveSamples(byte[] data, int length, GregorianCalendar timestamp) {
+            savedSamples += length / BYTES_PER_SAMPLE;
+        }
+    }
+
+    private DiscardingFetchOperation operation;
+    private byte[][] packets;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.setUp();
+        operation = new DiscardingFetchOperation(new HuamiSupport());
+
+        packets = new byte[SAMPLES_PER_DAY / SAMPLES_PER_PACKET][];
+        byte[] samples = Captures.randomBytes(SAMPLES_PER_DAY * BYTES_PER_SAMPLE);
+        for (int i = 0; i < packets.length; i++) {
+            byte[] packet = new byte[1 + SAMPLES_PER_PACKET * BYTES_PER_SAMPLE];
+            packet[0] = (byte) i; // counter
+            System.arraycopy(samples, i * SAMPLES_PER_PACKET * BYTES_PER_SAMPLE, packet, 1, packet.length - 1);
+            packets[i] = packet;
+        }
+    }
+
+    @Benchmark
+    public int bufferDay() {
+        for (byte[] packet : packets) {
+            operation.bufferActivityData(packet);
+        }
+        return operation.savedSamples;
+    }
+}
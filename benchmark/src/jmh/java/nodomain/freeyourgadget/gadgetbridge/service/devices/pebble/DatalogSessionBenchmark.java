@@ -0,0 +1,172 @@
+/*  Copyright (C) 2019 Andreas Shimokawa, Carsten Pfeiffer
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.devices.pebble;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import nodomain.freeyourgadget.gadgetbridge.benchmark.BenchmarkEnvironment;
+import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEvent;
+import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivityOverlay;
+import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.DeviceType;
+
+/**
+ * Decodes synthetic Pebble Health datalog messages of the size the watch sends while catching
+ * up. The decoded records are handed to a writer that drops them instead of storing them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DatalogSessionBenchmark {
+    private static final UUID UUID_ZERO = new UUID(0, 0);
+    private static final int TIMESTAMP = 1500000000;
+
+    private static final int STEPS_RECORD_LENGTH = 15;
+    private static final int STEPS_RECORDS_PER_PACKET = 15;
+    private static final short STEPS_ITEM_SIZE = 9 + STEPS_RECORD_LENGTH * STEPS_RECORDS_PER_PACKET;
+    private static final short SLEEP_ITEM_SIZE = 24;
+    private static final short OVERLAY_ITEM_SIZE = 24;
+    private static final short HR_ITEM_SIZE = 12;
+    private static final int ITEMS_PER_MESSAGE = 8;
+
+    /**
+     * Only keeps the last record instead of storing them.
+     */
+    private static class DiscardingWriter extends DatalogHealthWriter {
+        Object lastRecord;
+
+        DiscardingWriter(GBDevice device) {
+            super(device);
+        }
+
+        @Override
+        synchronized void addSample(PebbleHealthActivitySample sample) {
+            lastRecord = sample;
+        }
+
+        @Override
+        synchronized void addOverlay(PebbleHealthActivityOverlay overlay) {
+            lastRecord = overlay;
+        }
+    }
+
+    private DiscardingWriter writer;
+    private DatalogSession stepsSession;
+    private DatalogSession sleepSession;
+    private DatalogSession overlaySession;
+    private DatalogSession heartRateSession;
+    private ByteBuffer stepsMessage;
+    private ByteBuffer sleepMessage;
+    private ByteBuffer overlayMessage;
+    private ByteBuffer heartRateMessage;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.setUp();
+        writer = new DiscardingWriter(new GBDevice("AA:BB:CC:DD:EE:FF", "Pebble Time", DeviceType.PEBBLE));
+
+        stepsSession = new DatalogSessionHealthSteps((byte) 1, UUID_ZERO, TIMESTAMP, 81, (byte) 2, STEPS_ITEM_SIZE, writer);
+        sleepSession = new DatalogSessionHealthSleep((byte) 2, UUID_ZERO, TIMESTAMP, 83, (byte) 2, SLEEP_ITEM_SIZE, writer);
+        overlaySession = new DatalogSessionHealthOverlayData((byte) 3, UUID_ZERO, TIMESTAMP, 84, (byte) 2, OVERLAY_ITEM_SIZE, writer);
+        heartRateSession = new DatalogSessionHealthHR((byte) 4, UUID_ZERO, TIMESTAMP, 85, (byte) 2, HR_ITEM_SIZE, writer);
+
+        stepsMessage = createStepsMessage();
+        sleepMessage = createSleepMessage();
+        overlayMessage = createOverlayMessage();
+        heartRateMessage = ByteBuffer.allocate(HR_ITEM_SIZE * ITEMS_PER_MESSAGE);
+    }
+
+    private static ByteBuffer createStepsMessage() {
+        ByteBuffer buf = ByteBuffer.allocate(STEPS_ITEM_SIZE * ITEMS_PER_MESSAGE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int packet = 0; packet < ITEMS_PER_MESSAGE; packet++) {
+            buf.putShort((short) 13); // record version
+            buf.putInt(TIMESTAMP + packet * STEPS_RECORDS_PER_PACKET * 60);
+            buf.put((byte) 0);
+            buf.put((byte) STEPS_RECORD_LENGTH);
+            buf.put((byte) STEPS_RECORDS_PER_PACKET);
+            for (int record = 0; record < STEPS_RECORDS_PER_PACKET; record++) {
+                int start = buf.position();
+                buf.put((byte) (record * 7)); // steps
+                buf.put((byte) 0); // orientation
+                buf.putShort((short) (record * 100)); // intensity
+                buf.put(start + 12, (byte) (60 + record)); // heart rate
+                buf.position(start + STEPS_RECORD_LENGTH);
+            }
+        }
+        return buf;
+    }
+
+    private static ByteBuffer createSleepMessage() {
+        ByteBuffer buf = ByteBuffer.allocate(SLEEP_ITEM_SIZE * ITEMS_PER_MESSAGE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int item = 0; item < ITEMS_PER_MESSAGE; item++) {
+            int start = item * SLEEP_ITEM_SIZE;
+            buf.putShort(start, (short) 1); // version
+            buf.putInt(start + 6, TIMESTAMP + item * 86400);
+            buf.putInt(start + 10, TIMESTAMP + item * 86400 + 8 * 3600);
+        }
+        return buf;
+    }
+
+    private static ByteBuffer createOverlayMessage() {
+        ByteBuffer buf = ByteBuffer.allocate(OVERLAY_ITEM_SIZE * ITEMS_PER_MESSAGE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int item = 0; item < ITEMS_PER_MESSAGE; item++) {
+            int start = item * OVERLAY_ITEM_SIZE;
+            buf.putShort(start, (short) 1); // version
+            buf.putShort(start + 4, (short) (item % 2 + 1)); // sleep or deep sleep
+            buf.putInt(start + 10, TIMESTAMP + item * 3600);
+            buf.putInt(start + 14, 1800);
+        }
+        return buf;
+    }
+
+    private static GBDeviceEvent[] handle(DatalogSession session, ByteBuffer message) {
+        message.clear();
+        return session.handleMessage(message, message.capacity());
+    }
+
+    @Benchmark
+    public GBDeviceEvent[] steps() {
+        return handle(stepsSession, stepsMessage);
+    }
+
+    @Benchmark
+    public GBDeviceEvent[] sleep() {
+        return handle(sleepSession, sleepMessage);
+    }
+
+    @Benchmark
+    public GBDeviceEvent[] overlay() {
+        return handle(overlaySession, overlayMessage);
+    }
+
+    @Benchmark
+    public GBDeviceEvent[] heartRate() {
+        return handle(heartRateSession, heartRateMessage);
+    }
+}